@@ -2,6 +2,7 @@ package com.redhat.cajun.navy.process;
 
 import javax.persistence.EntityManagerFactory;
 
+import com.redhat.cajun.navy.process.runtime.PooledSessionRuntimeManagerFactory;
 import com.redhat.cajun.navy.process.spring.SpringKModuleDeploymentService;
 import org.jbpm.kie.services.impl.FormManagerService;
 import org.jbpm.kie.services.impl.bpmn2.BPMN2DataServiceImpl;
@@ -11,7 +12,9 @@ import org.jbpm.services.api.DeploymentService;
 import org.kie.api.executor.ExecutorService;
 import org.kie.api.runtime.manager.RuntimeManagerFactory;
 import org.kie.internal.identity.IdentityProvider;
+import org.kie.spring.manager.SpringRuntimeManagerFactoryImpl;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.ApplicationContext;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
@@ -26,6 +29,15 @@ public class JbpmDeploymentServiceConfiguration {
     @Autowired
     private ExecutorService executorService;
 
+    @Value("${incident.deployment.runtime-strategy}")
+    private String runtimeStrategy;
+
+    @Value("${incident.deployment.pool.size}")
+    private int poolSize;
+
+    @Value("${incident.deployment.pool.borrow-timeout}")
+    private long borrowTimeout;
+
     public JbpmDeploymentServiceConfiguration(ApplicationContext applicationContext) {
         this.applicationContext = applicationContext;
     }
@@ -39,6 +51,10 @@ public class JbpmDeploymentServiceConfiguration {
         ((SpringKModuleDeploymentService) deploymentService).setBpmn2Service(definitionService);
         ((SpringKModuleDeploymentService) deploymentService).setEmf(entityManagerFactory);
         ((SpringKModuleDeploymentService) deploymentService).setIdentityProvider(identityProvider);
+        if (PooledSessionRuntimeManagerFactory.isPooled(runtimeStrategy)) {
+            runtimeManagerFactory = new PooledSessionRuntimeManagerFactory(applicationContext,
+                    (SpringRuntimeManagerFactoryImpl) runtimeManagerFactory, poolSize, borrowTimeout);
+        }
         ((SpringKModuleDeploymentService) deploymentService).setManagerFactory(runtimeManagerFactory);
         ((SpringKModuleDeploymentService) deploymentService).setFormManagerService(formService);
         ((SpringKModuleDeploymentService) deploymentService).setContext(applicationContext);
@@ -1,5 +1,7 @@
 package com.redhat.cajun.navy.process;
 
+import javax.sql.DataSource;
+
 import org.jbpm.kie.services.impl.query.SqlQueryDefinition;
 import org.jbpm.services.api.query.QueryNotFoundException;
 import org.jbpm.services.api.query.QueryService;
@@ -7,6 +9,7 @@ import org.jbpm.services.api.query.model.QueryDefinition;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.jdbc.core.JdbcTemplate;
 
 @Configuration
 public class JbpmQueryConfiguration {
@@ -30,4 +33,9 @@ public class JbpmQueryConfiguration {
         }
         return signalsByCorrelationKeyQuery;
     }
+
+    @Bean
+    public JdbcTemplate jdbcTemplate(DataSource dataSource) {
+        return new JdbcTemplate(dataSource);
+    }
 }
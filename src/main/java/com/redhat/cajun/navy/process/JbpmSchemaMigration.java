@@ -0,0 +1,53 @@
+package com.redhat.cajun.navy.process;
+
+import javax.annotation.PostConstruct;
+import javax.sql.DataSource;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.datasource.init.DatabasePopulatorUtils;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Adds the indexes and tables this service relies on to the jBPM schema. The scripts are idempotent, and run at startup.
+ */
+@Component
+public class JbpmSchemaMigration {
+
+    private static final Logger log = LoggerFactory.getLogger(JbpmSchemaMigration.class);
+
+    private static final String[] SCRIPTS = {"db/signals-by-correlation-key-indexes.sql", "db/processed-message.sql",
+            "db/message-outbox.sql"};
+
+    @Value("${jbpm.schema.migrate}")
+    private boolean migrate;
+
+    @Autowired
+    private DataSource dataSource;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @PostConstruct
+    public void migrate() {
+        if (!migrate) {
+            return;
+        }
+        ResourceDatabasePopulator populator = new ResourceDatabasePopulator();
+        for (String script : SCRIPTS) {
+            populator.addScript(new ClassPathResource(script));
+        }
+        new TransactionTemplate(transactionManager).execute((TransactionStatus s) -> {
+            DatabasePopulatorUtils.execute(populator, dataSource);
+            return null;
+        });
+        log.info("Applied jBPM schema migration scripts");
+    }
+}
@@ -3,11 +3,20 @@ package com.redhat.cajun.navy.process;
 import java.util.HashMap;
 import java.util.Map;
 
+import com.redhat.cajun.navy.process.message.MessageSerializer;
+import com.redhat.cajun.navy.process.message.listeners.CompositeRebalanceListener;
+import com.redhat.cajun.navy.process.message.listeners.FailedRecordRouter;
+import com.redhat.cajun.navy.process.message.listeners.OffsetTracker;
+import com.redhat.cajun.navy.process.message.listeners.MessageTypeRecordFilterStrategy;
+import com.redhat.cajun.navy.process.message.listeners.PartitionStateHandoff;
 import com.redhat.cajun.navy.process.message.model.Message;
 import org.apache.kafka.clients.consumer.ConsumerConfig;
 import org.apache.kafka.clients.producer.ProducerConfig;
+import org.apache.kafka.common.serialization.ByteArrayDeserializer;
+import org.apache.kafka.common.serialization.ByteArraySerializer;
 import org.apache.kafka.common.serialization.StringDeserializer;
 import org.apache.kafka.common.serialization.StringSerializer;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
@@ -21,7 +30,8 @@ import org.springframework.kafka.core.KafkaTemplate;
 import org.springframework.kafka.core.ProducerFactory;
 import org.springframework.kafka.listener.ConcurrentMessageListenerContainer;
 import org.springframework.kafka.listener.ContainerProperties;
-import org.springframework.kafka.support.serializer.JsonSerializer;
+import org.springframework.kafka.listener.SeekToCurrentBatchErrorHandler;
+import org.springframework.kafka.listener.SeekToCurrentErrorHandler;
 
 @Configuration
 @EnableKafka
@@ -36,12 +46,56 @@ public class KafkaConfiguration {
     @Value(value = "${kafka.concurrency}")
     private Integer concurrency;
 
+    @Value(value = "${kafka.consumer.value-format}")
+    private String valueFormat;
+
+    @Value(value = "${kafka.batch.max-poll-records}")
+    private Integer batchMaxPollRecords;
+
+    @Value(value = "${kafka.parallel.idle-commit-interval}")
+    private Long parallelIdleCommitInterval;
+
+    @Value(value = "${sender.binary-topics}")
+    private String binaryTopics;
+
+    @Value(value = "${sender.outbox.linger-ms}")
+    private Integer outboxLingerMs;
+
+    @Value(value = "${kafka.retry.max-poll-records}")
+    private Integer retryMaxPollRecords;
+
+    @Value(value = "${kafka.retry.idle-event-interval}")
+    private Long retryIdleEventInterval;
+
+    @Value(value = "${kafka.offsets.commit-interval}")
+    private Long offsetsCommitInterval;
+
+    @Value(value = "${kafka.rebalance.assignors}")
+    private String assignors;
+
+    @Autowired
+    private MessageTypeRecordFilterStrategy recordFilterStrategy;
+
+    @Autowired
+    private FailedRecordRouter failedRecordRouter;
+
+    @Autowired
+    private OffsetTracker offsetTracker;
+
+    @Autowired
+    private PartitionStateHandoff partitionStateHandoff;
+
+    /**
+     * Messages are sent as JSON, except to the topics listed in {@code sender.binary-topics}, which get the binary
+     * Smile form of the message.
+     */
     @Bean
     public ProducerFactory<String, Message<?>> producerFactory() {
         Map<String, Object> configProps = new HashMap<>();
         configProps.put(ProducerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapAddress);
         configProps.put(ProducerConfig.KEY_SERIALIZER_CLASS_CONFIG, StringSerializer.class);
-        configProps.put(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, JsonSerializer.class);
+        configProps.put(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, MessageSerializer.class);
+        configProps.put(MessageSerializer.BINARY_TOPICS_CONFIG, binaryTopics);
         return new DefaultKafkaProducerFactory<>(configProps);
     }
 
@@ -50,25 +104,221 @@ public class KafkaConfiguration {
         return new KafkaTemplate<>(producerFactory());
     }
 
+    /**
+     * Producer for the outbox relay, which sends the messages in the form encoded by the relay. The producer is
+     * idempotent, so that the retries of a batch do not reorder the messages of a partition.
+     */
     @Bean
-    public ConsumerFactory<String, String> consumerFactory() {
+    public ProducerFactory<String, byte[]> outboxProducerFactory() {
+        Map<String, Object> configProps = new HashMap<>();
+        configProps.put(ProducerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapAddress);
+        configProps.put(ProducerConfig.KEY_SERIALIZER_CLASS_CONFIG, StringSerializer.class);
+        configProps.put(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, ByteArraySerializer.class);
+        configProps.put(ProducerConfig.ENABLE_IDEMPOTENCE_CONFIG, Boolean.TRUE);
+        configProps.put(ProducerConfig.ACKS_CONFIG, "all");
+        configProps.put(ProducerConfig.LINGER_MS_CONFIG, outboxLingerMs);
+        return new DefaultKafkaProducerFactory<>(configProps);
+    }
+
+    @Bean
+    public KafkaTemplate<String, byte[]> outboxKafkaTemplate() {
+        return new KafkaTemplate<>(outboxProducerFactory());
+    }
+
+    /**
+     * Template for the records routed to the retry and dead letter topics by the {@link FailedRecordRouter}, which
+     * are sent with the value they were received with.
+     */
+    @Bean
+    public KafkaTemplate<String, byte[]> failedRecordKafkaTemplate() {
+        return new KafkaTemplate<>(outboxProducerFactory());
+    }
+
+    /**
+     * Template for the records re-keyed by incident by the {@code SignalRekeyer}, which are sent with the value they
+     * were received with.
+     */
+    @Bean
+    public KafkaTemplate<String, byte[]> rekeyKafkaTemplate() {
+        return new KafkaTemplate<>(outboxProducerFactory());
+    }
+
+    @Bean
+    public ConsumerFactory<String, Object> consumerFactory() {
         Map<String, Object> configProps = new HashMap<>();
         configProps.put(ConsumerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapAddress);
         configProps.put(ConsumerConfig.KEY_DESERIALIZER_CLASS_CONFIG, StringDeserializer.class);
-        configProps.put(ConsumerConfig.VALUE_DESERIALIZER_CLASS_CONFIG, StringDeserializer.class);
+        configProps.put(ConsumerConfig.VALUE_DESERIALIZER_CLASS_CONFIG, valueDeserializer());
         configProps.put(ConsumerConfig.GROUP_ID_CONFIG, groupId);
         configProps.put(ConsumerConfig.AUTO_OFFSET_RESET_CONFIG, "earliest");
         configProps.put(ConsumerConfig.ENABLE_AUTO_COMMIT_CONFIG, Boolean.FALSE);
+        configProps.put(ConsumerConfig.PARTITION_ASSIGNMENT_STRATEGY_CONFIG, assignors);
         return new DefaultKafkaConsumerFactory<>(configProps);
     }
 
+    /**
+     * Rebalance listener of the listener containers: the {@link OffsetTracker} commits the offsets of the revoked
+     * partitions, then the {@link PartitionStateHandoff} hands off the in-memory signal state of the partitions which
+     * changed hands.
+     */
     @Bean
-    public KafkaListenerContainerFactory<ConcurrentMessageListenerContainer<String, String>> kafkaListenerContainerFactory() {
-        ConcurrentKafkaListenerContainerFactory<String, String> factory = new ConcurrentKafkaListenerContainerFactory<>();
+    public CompositeRebalanceListener rebalanceListener() {
+        return new CompositeRebalanceListener(offsetTracker, partitionStateHandoff);
+    }
+
+    /**
+     * Container factory for the record listeners. The listeners acknowledge the records through the
+     * {@link OffsetTracker}, which commits them either right away or asynchronously. Idle events give the tracker the
+     * opportunity to commit the offsets of the last records once the topic goes quiet.
+     */
+    @Bean
+    public KafkaListenerContainerFactory<ConcurrentMessageListenerContainer<String, Object>> kafkaListenerContainerFactory() {
+        ConcurrentKafkaListenerContainerFactory<String, Object> factory = new ConcurrentKafkaListenerContainerFactory<>();
         factory.setConsumerFactory(consumerFactory());
         factory.setConcurrency(concurrency);
+        factory.setRecordFilterStrategy(record -> {
+            boolean discarded = recordFilterStrategy.filter(record);
+            if (discarded) {
+                offsetTracker.discarded(record);
+            }
+            return discarded;
+        });
+        factory.setAckDiscarded(true);
         factory.getContainerProperties().setAckMode(ContainerProperties.AckMode.MANUAL_IMMEDIATE);
+        factory.getContainerProperties().setConsumerRebalanceListener(rebalanceListener());
+        factory.getContainerProperties().setIdleEventInterval(offsetsCommitInterval);
+        factory.setErrorHandler(failedRecordErrorHandler());
         factory.setAutoStartup(false);
         return factory;
     }
+
+    @Bean
+    public ConsumerFactory<String, Object> retryConsumerFactory() {
+        Map<String, Object> configProps = new HashMap<>();
+        configProps.put(ConsumerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapAddress);
+        configProps.put(ConsumerConfig.KEY_DESERIALIZER_CLASS_CONFIG, StringDeserializer.class);
+        configProps.put(ConsumerConfig.VALUE_DESERIALIZER_CLASS_CONFIG, valueDeserializer());
+        configProps.put(ConsumerConfig.GROUP_ID_CONFIG, groupId);
+        configProps.put(ConsumerConfig.AUTO_OFFSET_RESET_CONFIG, "earliest");
+        configProps.put(ConsumerConfig.ENABLE_AUTO_COMMIT_CONFIG, Boolean.FALSE);
+        configProps.put(ConsumerConfig.MAX_POLL_RECORDS_CONFIG, retryMaxPollRecords);
+        configProps.put(ConsumerConfig.PARTITION_ASSIGNMENT_STRATEGY_CONFIG, assignors);
+        return new DefaultKafkaConsumerFactory<>(configProps);
+    }
+
+    /**
+     * Container factory for the listeners of the retry topics. The partitions whose next record is not due are paused
+     * by the {@link FailedRecordRouter}, and resumed once it is due. Idle events give the router the opportunity to
+     * resume them when all the partitions of the consumer are paused.
+     */
+    @Bean
+    public KafkaListenerContainerFactory<ConcurrentMessageListenerContainer<String, Object>> retryKafkaListenerContainerFactory() {
+        ConcurrentKafkaListenerContainerFactory<String, Object> factory = new ConcurrentKafkaListenerContainerFactory<>();
+        factory.setConsumerFactory(retryConsumerFactory());
+        factory.setConcurrency(1);
+        factory.getContainerProperties().setAckMode(ContainerProperties.AckMode.MANUAL_IMMEDIATE);
+        factory.getContainerProperties().setConsumerRebalanceListener(rebalanceListener());
+        factory.getContainerProperties().setIdleEventInterval(retryIdleEventInterval);
+        factory.setErrorHandler(failedRecordErrorHandler());
+        factory.setAutoStartup(false);
+        return factory;
+    }
+
+    /**
+     * Hands a failed record over to the {@link FailedRecordRouter} on its first failure, and commits its offset once
+     * routed. The remaining records of the poll are fetched again. If the record cannot be routed, it is redelivered.
+     */
+    @Bean
+    public SeekToCurrentErrorHandler failedRecordErrorHandler() {
+        SeekToCurrentErrorHandler errorHandler = new SeekToCurrentErrorHandler((record, e) -> {
+            failedRecordRouter.route(record, e);
+            offsetTracker.recovered(record);
+        }, 1);
+        errorHandler.setCommitRecovered(true);
+        return errorHandler;
+    }
+
+    /**
+     * Consumer for the replay of the dead letter topics, with a group of its own so that its progress is independent
+     * of the listeners.
+     */
+    @Bean
+    public ConsumerFactory<String, byte[]> deadLetterConsumerFactory() {
+        Map<String, Object> configProps = new HashMap<>();
+        configProps.put(ConsumerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapAddress);
+        configProps.put(ConsumerConfig.KEY_DESERIALIZER_CLASS_CONFIG, StringDeserializer.class);
+        configProps.put(ConsumerConfig.VALUE_DESERIALIZER_CLASS_CONFIG, ByteArrayDeserializer.class);
+        configProps.put(ConsumerConfig.GROUP_ID_CONFIG, groupId + "-dlt-replay");
+        configProps.put(ConsumerConfig.AUTO_OFFSET_RESET_CONFIG, "earliest");
+        configProps.put(ConsumerConfig.ENABLE_AUTO_COMMIT_CONFIG, Boolean.FALSE);
+        return new DefaultKafkaConsumerFactory<>(configProps);
+    }
+
+    @Bean
+    public ConsumerFactory<String, Object> batchConsumerFactory() {
+        Map<String, Object> configProps = new HashMap<>();
+        configProps.put(ConsumerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapAddress);
+        configProps.put(ConsumerConfig.KEY_DESERIALIZER_CLASS_CONFIG, StringDeserializer.class);
+        configProps.put(ConsumerConfig.VALUE_DESERIALIZER_CLASS_CONFIG, valueDeserializer());
+        configProps.put(ConsumerConfig.GROUP_ID_CONFIG, groupId);
+        configProps.put(ConsumerConfig.AUTO_OFFSET_RESET_CONFIG, "earliest");
+        configProps.put(ConsumerConfig.ENABLE_AUTO_COMMIT_CONFIG, Boolean.FALSE);
+        configProps.put(ConsumerConfig.MAX_POLL_RECORDS_CONFIG, batchMaxPollRecords);
+        configProps.put(ConsumerConfig.PARTITION_ASSIGNMENT_STRATEGY_CONFIG, assignors);
+        return new DefaultKafkaConsumerFactory<>(configProps);
+    }
+
+    /**
+     * Container factory for the batch listeners. A poll's worth of records is handed to the listener in one call,
+     * and the offsets are committed once the whole batch has been processed, including the records discarded by the
+     * record filter. A batch which fails as a whole is fetched again.
+     */
+    @Bean
+    public KafkaListenerContainerFactory<ConcurrentMessageListenerContainer<String, Object>> batchKafkaListenerContainerFactory() {
+        ConcurrentKafkaListenerContainerFactory<String, Object> factory = new ConcurrentKafkaListenerContainerFactory<>();
+        factory.setConsumerFactory(batchConsumerFactory());
+        factory.setConcurrency(concurrency);
+        factory.setBatchListener(true);
+        factory.setRecordFilterStrategy(recordFilterStrategy);
+        factory.setAckDiscarded(true);
+        factory.getContainerProperties().setAckMode(ContainerProperties.AckMode.MANUAL_IMMEDIATE);
+        factory.getContainerProperties().setConsumerRebalanceListener(rebalanceListener());
+        factory.setBatchErrorHandler(new SeekToCurrentBatchErrorHandler());
+        factory.setAutoStartup(false);
+        return factory;
+    }
+
+    /**
+     * Container factory for the parallel listeners. Records are dispatched to a keyed worker pool, and their offsets
+     * are committed by the {@link OffsetTracker} through the consumer, so the container never acknowledges. The records
+     * are filtered by the dispatcher rather than by the container, so that the tracker sees the discarded records too.
+     * Idle events give the tracker the opportunity to commit the offsets of records which completed after the last poll.
+     */
+    @Bean
+    public KafkaListenerContainerFactory<ConcurrentMessageListenerContainer<String, Object>> parallelKafkaListenerContainerFactory() {
+        ConcurrentKafkaListenerContainerFactory<String, Object> factory = new ConcurrentKafkaListenerContainerFactory<>();
+        factory.setConsumerFactory(batchConsumerFactory());
+        factory.setConcurrency(concurrency);
+        factory.setBatchListener(true);
+        factory.getContainerProperties().setAckMode(ContainerProperties.AckMode.MANUAL);
+        factory.getContainerProperties().setConsumerRebalanceListener(rebalanceListener());
+        factory.getContainerProperties().setIdleEventInterval(parallelIdleCommitInterval);
+        factory.setAutoStartup(false);
+        return factory;
+    }
+
+    /**
+     * With the {@code bytes} value format, record values are handed to the listeners as the raw {@code byte[]} and
+     * the message is bound directly from the bytes, without decoding the payload into a {@code String} first.
+     */
+    private Class<?> valueDeserializer() {
+        switch (valueFormat.trim().toLowerCase()) {
+            case "string":
+                return StringDeserializer.class;
+            case "bytes":
+                return ByteArrayDeserializer.class;
+            default:
+                throw new IllegalStateException("Unsupported value format '" + valueFormat + "'. Expected 'string' or 'bytes'.");
+        }
+    }
 }
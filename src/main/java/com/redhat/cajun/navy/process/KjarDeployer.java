@@ -1,7 +1,15 @@
 package com.redhat.cajun.navy.process;
 
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
 
+import com.redhat.cajun.navy.process.runtime.KieBaseCache;
+import com.redhat.cajun.navy.process.runtime.PooledSessionRuntimeManagerFactory;
 import org.jbpm.kie.services.impl.CustomIdKModuleDeploymentUnit;
 import org.jbpm.services.api.DeploymentService;
 import org.jbpm.services.api.RuntimeDataService;
@@ -22,29 +30,87 @@ public class KjarDeployer implements InitializingBean {
 
     private final static Logger log = LoggerFactory.getLogger(KjarDeployer.class);
 
+    public static final String PHASE_CONTAINER = "container";
+
+    public static final String PHASE_KIEBASE = "kiebase";
+
+    public static final String PHASE_DEPLOY = "deploy";
+
+    public static final String PHASE_TOTAL = "total";
+
+    public static final List<String> PHASES = Arrays.asList(PHASE_CONTAINER, PHASE_KIEBASE, PHASE_DEPLOY, PHASE_TOTAL);
+
     @Autowired
     private DeploymentService deploymentService;
 
     @Autowired
     private RuntimeDataService runtimeDataService;
 
+    @Autowired
+    private KieBaseCache kieBaseCache;
+
     @Value("${incident.deployment.id}")
     private String deploymentId;
 
+    @Value("${incident.deployment.runtime-strategy}")
+    private String runtimeStrategy;
+
+    private final Map<String, Long> timings = new ConcurrentHashMap<>();
 
     @Override
     public void afterPropertiesSet() throws Exception {
+        long start = System.nanoTime();
         CustomIdKModuleDeploymentUnit unit = new CustomIdKModuleDeploymentUnit(deploymentId, "com.redhat.cajun.navy", "process-service", "1.0");
 
-        unit.setStrategy(RuntimeStrategy.PER_REQUEST);
+        unit.setStrategy(strategy());
 
-        KieContainer kieContainer = KieServices.Factory.get().newKieClasspathContainer();
+        KieContainer kieContainer = kieBaseCache.container(KieServices.Factory.get().newKieClasspathContainer());
+        long phase = time(PHASE_CONTAINER, start);
+        // built here rather than by the deployment service, to time it on its own
+        kieContainer.getKieBase();
+        phase = time(PHASE_KIEBASE, phase);
         unit.setKieContainer(kieContainer);
         log.info("Service up and running");
 
         deploymentService.deploy(unit);
+        time(PHASE_DEPLOY, phase);
+        time(PHASE_TOTAL, start);
+        log.info("Deployment " + deploymentId + " started in " + PHASES.stream()
+                .map(p -> p + " " + timings.get(p) + " ms").collect(Collectors.joining(", "))
+                + (kieBaseCache.isLoaded() ? ", kie base read from the cache" : ""));
 
         Collection<ProcessDefinition> processes = runtimeDataService.getProcesses(new QueryContext());
         processes.forEach(p -> log.info(p.getName()));
     }
+
+    /**
+     * @return the duration of the startup phase in milliseconds, or -1 when the phase has not completed
+     */
+    public long startupTime(String phase) {
+        return timings.getOrDefault(phase, -1L);
+    }
+
+    /**
+     * @return whether the kie base of the deployment was read from the kie base cache
+     */
+    public boolean isKieBaseCached() {
+        return kieBaseCache.isLoaded();
+    }
+
+    private long time(String phase, long start) {
+        long end = System.nanoTime();
+        timings.put(phase, TimeUnit.NANOSECONDS.toMillis(end - start));
+        return end;
+    }
+
+    /**
+     * @return the strategy of the deployment unit: sessions of the pooled strategy are handed out by the runtime
+     * manager of the per request strategy
+     */
+    private RuntimeStrategy strategy() {
+        if (PooledSessionRuntimeManagerFactory.isPooled(runtimeStrategy)) {
+            return RuntimeStrategy.PER_REQUEST;
+        }
+        return RuntimeStrategy.valueOf(runtimeStrategy.trim().toUpperCase());
+    }
 }
@@ -0,0 +1,50 @@
+package com.redhat.cajun.navy.process;
+
+import java.util.Arrays;
+
+/**
+ * Consumption modes of the Kafka listeners.
+ *
+ * Every listener registers one container per mode. The id of the container is the id of the listener followed by the
+ * suffix of the mode, and only the containers of the configured {@code kafka.listener.mode} are started. The
+ * containers of the retry topics have the {@code -retry} suffix, and run next to the containers of any mode.
+ */
+public enum ListenerMode {
+
+    RECORD(""),
+    BATCH("-batch"),
+    PARALLEL("-parallel");
+
+    private static final String RETRY_SUFFIX = "-retry";
+
+    private final String suffix;
+
+    ListenerMode(String suffix) {
+        this.suffix = suffix;
+    }
+
+    public boolean owns(String listenerId) {
+        if (isRetry(listenerId)) {
+            return false;
+        }
+        if (this == RECORD) {
+            return Arrays.stream(values()).filter(m -> m != RECORD).noneMatch(m -> m.owns(listenerId));
+        }
+        return listenerId.endsWith(suffix);
+    }
+
+    /**
+     * @return the id of the container of the listener in this mode
+     */
+    public String containerId(String listenerId) {
+        return listenerId + suffix;
+    }
+
+    public static boolean isRetry(String listenerId) {
+        return listenerId.endsWith(RETRY_SUFFIX);
+    }
+
+    public static ListenerMode from(String mode) {
+        return valueOf(mode.trim().toUpperCase());
+    }
+}
@@ -3,6 +3,7 @@ package com.redhat.cajun.navy.process;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.CommandLineRunner;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
@@ -37,9 +38,19 @@ public class ProcessServiceApplication {
             @Autowired
             private KafkaListenerEndpointRegistry kafkaListenerEndpointRegistry;
 
+            @Value("${kafka.listener.mode}")
+            private String listenerMode;
+
+            @Value("${kafka.retry.enabled}")
+            private boolean retryEnabled;
+
             @Override
             public void run(String... strings) throws Exception {
-                kafkaListenerEndpointRegistry.start();
+                ListenerMode mode = ListenerMode.from(listenerMode);
+                log.info("Starting Kafka listeners in '" + mode.name().toLowerCase() + "' mode");
+                kafkaListenerEndpointRegistry.getListenerContainerIds().stream()
+                        .filter(id -> mode.owns(id) || (retryEnabled && ListenerMode.isRetry(id)))
+                        .forEach(id -> kafkaListenerEndpointRegistry.getListenerContainer(id).start());
             }
         };
     }
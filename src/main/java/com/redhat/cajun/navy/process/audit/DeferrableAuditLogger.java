@@ -0,0 +1,97 @@
+package com.redhat.cajun.navy.process.audit;
+
+import org.kie.api.event.process.ProcessCompletedEvent;
+import org.kie.api.event.process.ProcessEventListener;
+import org.kie.api.event.process.ProcessNodeLeftEvent;
+import org.kie.api.event.process.ProcessNodeTriggeredEvent;
+import org.kie.api.event.process.ProcessStartedEvent;
+import org.kie.api.event.process.ProcessVariableChangedEvent;
+import org.kie.api.event.process.SLAViolatedEvent;
+
+/**
+ * Audit logger which writes the audit log entries in the transactions of the process instances, or queues them in the
+ * {@link DeferredAuditLog} while the audit is deferred.
+ *
+ * The audit mode is checked for each event rather than when the listener is registered, so that sessions which outlive
+ * a change of mode, such as the pooled sessions of a
+ * {@link com.redhat.cajun.navy.process.runtime.PooledSessionRuntimeManager}, follow it. The entries of a transaction
+ * which queued entries are queued until it completes, as its entries count as pending until then.
+ */
+public class DeferrableAuditLogger implements ProcessEventListener {
+
+    private final ProcessEventListener auditLogger;
+
+    private final ProcessEventListener deferredAuditLogger;
+
+    private final DeferredAuditLog deferredAuditLog;
+
+    public DeferrableAuditLogger(ProcessEventListener auditLogger, ProcessEventListener deferredAuditLogger, DeferredAuditLog deferredAuditLog) {
+        this.auditLogger = auditLogger;
+        this.deferredAuditLogger = deferredAuditLogger;
+        this.deferredAuditLog = deferredAuditLog;
+    }
+
+    @Override
+    public void beforeProcessStarted(ProcessStartedEvent event) {
+        delegate().beforeProcessStarted(event);
+    }
+
+    @Override
+    public void afterProcessStarted(ProcessStartedEvent event) {
+        delegate().afterProcessStarted(event);
+    }
+
+    @Override
+    public void beforeProcessCompleted(ProcessCompletedEvent event) {
+        delegate().beforeProcessCompleted(event);
+    }
+
+    @Override
+    public void afterProcessCompleted(ProcessCompletedEvent event) {
+        delegate().afterProcessCompleted(event);
+    }
+
+    @Override
+    public void beforeNodeTriggered(ProcessNodeTriggeredEvent event) {
+        delegate().beforeNodeTriggered(event);
+    }
+
+    @Override
+    public void afterNodeTriggered(ProcessNodeTriggeredEvent event) {
+        delegate().afterNodeTriggered(event);
+    }
+
+    @Override
+    public void beforeNodeLeft(ProcessNodeLeftEvent event) {
+        delegate().beforeNodeLeft(event);
+    }
+
+    @Override
+    public void afterNodeLeft(ProcessNodeLeftEvent event) {
+        delegate().afterNodeLeft(event);
+    }
+
+    @Override
+    public void beforeVariableChanged(ProcessVariableChangedEvent event) {
+        delegate().beforeVariableChanged(event);
+    }
+
+    @Override
+    public void afterVariableChanged(ProcessVariableChangedEvent event) {
+        delegate().afterVariableChanged(event);
+    }
+
+    @Override
+    public void beforeSLAViolated(SLAViolatedEvent event) {
+        delegate().beforeSLAViolated(event);
+    }
+
+    @Override
+    public void afterSLAViolated(SLAViolatedEvent event) {
+        delegate().afterSLAViolated(event);
+    }
+
+    private ProcessEventListener delegate() {
+        return deferredAuditLog.isDeferring() ? deferredAuditLogger : auditLogger;
+    }
+}
@@ -0,0 +1,231 @@
+package com.redhat.cajun.navy.process.audit;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+
+import org.jbpm.process.audit.AbstractAuditLogger;
+import org.jbpm.process.audit.NodeInstanceLog;
+import org.jbpm.process.audit.ProcessInstanceLog;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Audit log entries written after the transactions of the process instances they are about.
+ *
+ * While deferred, the process runtimes queue their audit log entries here instead of writing them in the transaction
+ * which moves the process instance on. The entries are written in the order they were queued, in batches of
+ * {@code audit.deferred.batch-size} every {@code audit.deferred.flush-interval} milliseconds, each batch in a
+ * transaction of its own. The updates of the process instance and work item logs are applied like the JMS audit log
+ * receiver of jBPM applies them. Runtimes keep queuing until the queue is drained, so that the entries of a process
+ * instance are not written out of order when the audit is no longer deferred. The entries built in a transaction which
+ * has not completed yet count as pending from the time they are built, until they are queued or dropped with their
+ * transaction.
+ *
+ * Entries still queued at shutdown are written then. The entries of a service which crashes are lost.
+ */
+@Component
+public class DeferredAuditLog {
+
+    private static final Logger log = LoggerFactory.getLogger(DeferredAuditLog.class);
+
+    private static final String NODE_INSTANCE_LOG = "from NodeInstanceLog as log where log.nodeInstanceId = :nodeId and log.type = 0";
+
+    private static final String PROCESS_INSTANCE_LOG = "from ProcessInstanceLog as log where log.processInstanceId = :piId and log.end is null";
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Value("${audit.deferred.batch-size}")
+    private int batchSize;
+
+    @Value("${audit.deferred.flush-interval}")
+    private long flushInterval;
+
+    private final ConcurrentLinkedDeque<Entry> entries = new ConcurrentLinkedDeque<>();
+
+    private final AtomicLong pending = new AtomicLong();
+
+    private final LongAdder written = new LongAdder();
+
+    private volatile boolean deferred;
+
+    private ScheduledExecutorService writer;
+
+    @PostConstruct
+    public void init() {
+        writer = Executors.newSingleThreadScheduledExecutor(new CustomizableThreadFactory("deferred-audit-"));
+        writer.scheduleWithFixedDelay(this::flush, flushInterval, flushInterval, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        writer.shutdown();
+        writer.awaitTermination(30, TimeUnit.SECONDS);
+        flush();
+        if (pending.get() > 0) {
+            log.warn(pending.get() + " deferred audit log entries could not be written");
+        }
+    }
+
+    public void defer(boolean deferred) {
+        if (this.deferred != deferred) {
+            log.info(deferred ? "Deferring audit log writes" : "Writing audit logs in the process transactions again");
+        }
+        this.deferred = deferred;
+    }
+
+    /**
+     * @return whether the audit log entries are to be queued
+     */
+    public boolean isDeferring() {
+        return deferred || pending.get() > 0;
+    }
+
+    /**
+     * @param eventType the type of the event the entry was built from, one of the {@link AbstractAuditLogger} event types
+     */
+    public void add(Object entry, int eventType) {
+        pending.incrementAndGet();
+        entries.offer(new Entry(entry, eventType));
+    }
+
+    /**
+     * Counts an entry built in a transaction which has not completed yet as pending, until it is queued with
+     * {@link #addHeld} or dropped with {@link #dropHeld}.
+     */
+    void hold() {
+        pending.incrementAndGet();
+    }
+
+    /**
+     * Queues an entry which was counted as pending by {@link #hold}.
+     */
+    void addHeld(Object entry, int eventType) {
+        entries.offer(new Entry(entry, eventType));
+    }
+
+    /**
+     * Drops entries which were counted as pending by {@link #hold}.
+     */
+    void dropHeld(int count) {
+        pending.addAndGet(-count);
+    }
+
+    public long pendingCount() {
+        return pending.get();
+    }
+
+    public long writtenCount() {
+        return written.sum();
+    }
+
+    /**
+     * Writes the queued entries, batch after batch. A batch which fails is written again on the next flush.
+     */
+    void flush() {
+        while (true) {
+            List<Entry> batch = new ArrayList<>();
+            Entry entry;
+            while (batch.size() < batchSize && (entry = entries.poll()) != null) {
+                batch.add(entry);
+            }
+            if (batch.isEmpty()) {
+                return;
+            }
+            try {
+                write(batch);
+            } catch (RuntimeException e) {
+                log.error("Error writing " + batch.size() + " deferred audit log entries", e);
+                for (int i = batch.size() - 1; i >= 0; i--) {
+                    entries.offerFirst(batch.get(i));
+                }
+                return;
+            }
+            pending.addAndGet(-batch.size());
+            written.add(batch.size());
+        }
+    }
+
+    private void write(List<Entry> batch) {
+        new TransactionTemplate(transactionManager).execute((TransactionStatus s) -> {
+            EntityManager em = entityManagerFactory.createEntityManager();
+            try {
+                em.joinTransaction();
+                batch.forEach(entry -> write(em, entry));
+                em.flush();
+            } finally {
+                em.close();
+            }
+            return null;
+        });
+    }
+
+    private void write(EntityManager em, Entry entry) {
+        switch (entry.eventType) {
+            case AbstractAuditLogger.AFTER_NODE_ENTER_EVENT_TYPE: {
+                NodeInstanceLog nodeInstanceLog = (NodeInstanceLog) entry.log;
+                if (nodeInstanceLog.getWorkItemId() == null) {
+                    return;
+                }
+                @SuppressWarnings("unchecked")
+                List<NodeInstanceLog> result = em.createQuery(NODE_INSTANCE_LOG)
+                        .setParameter("nodeId", nodeInstanceLog.getNodeInstanceId()).getResultList();
+                if (!result.isEmpty()) {
+                    NodeInstanceLog entered = result.get(result.size() - 1);
+                    entered.setWorkItemId(nodeInstanceLog.getWorkItemId());
+                    em.merge(entered);
+                }
+                return;
+            }
+            case AbstractAuditLogger.AFTER_COMPLETE_EVENT_TYPE: {
+                ProcessInstanceLog processInstanceLog = (ProcessInstanceLog) entry.log;
+                @SuppressWarnings("unchecked")
+                List<ProcessInstanceLog> result = em.createQuery(PROCESS_INSTANCE_LOG)
+                        .setParameter("piId", processInstanceLog.getProcessInstanceId()).getResultList();
+                if (!result.isEmpty()) {
+                    ProcessInstanceLog started = result.get(result.size() - 1);
+                    started.setOutcome(processInstanceLog.getOutcome());
+                    started.setStatus(processInstanceLog.getStatus());
+                    started.setEnd(processInstanceLog.getEnd());
+                    started.setDuration(processInstanceLog.getDuration());
+                    em.merge(started);
+                }
+                return;
+            }
+            default:
+                em.persist(entry.log);
+        }
+    }
+
+    private static class Entry {
+
+        private final Object log;
+
+        private final int eventType;
+
+        Entry(Object log, int eventType) {
+            this.log = log;
+            this.eventType = eventType;
+        }
+    }
+}
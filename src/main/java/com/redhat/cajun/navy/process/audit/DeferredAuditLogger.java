@@ -0,0 +1,80 @@
+package com.redhat.cajun.navy.process.audit;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import javax.transaction.Status;
+import javax.transaction.Synchronization;
+import javax.transaction.Transaction;
+
+import com.redhat.cajun.navy.process.signal.JtaTransactions;
+import org.jbpm.process.audit.jms.AsyncAuditLogProducer;
+import org.springframework.transaction.PlatformTransactionManager;
+
+/**
+ * Audit logger which builds the audit log entries like the JMS audit logger of jBPM, and queues them in the
+ * {@link DeferredAuditLog} instead of sending them to a queue.
+ *
+ * The entries built in a transaction are queued once the transaction commits, so that a transaction which rolls back,
+ * and is retried, does not leave entries for changes which were never made. They count as pending in the
+ * {@link DeferredAuditLog} as soon as they are built, so that the audit stays deferred until they are written. Entries
+ * built outside a transaction are queued right away.
+ */
+public class DeferredAuditLogger extends AsyncAuditLogProducer {
+
+    private final DeferredAuditLog deferredAuditLog;
+
+    private final PlatformTransactionManager transactionManager;
+
+    private final Map<Transaction, List<Runnable>> pendingEntries = new ConcurrentHashMap<>();
+
+    public DeferredAuditLogger(DeferredAuditLog deferredAuditLog, PlatformTransactionManager transactionManager) {
+        this.deferredAuditLog = deferredAuditLog;
+        this.transactionManager = transactionManager;
+    }
+
+    @Override
+    protected void sendMessage(Object messageContent, Integer eventType, int priority) {
+        Transaction transaction = JtaTransactions.activeTransaction(transactionManager);
+        List<Runnable> entries = transaction == null ? null : pendingEntries.computeIfAbsent(transaction, t -> {
+            if (!JtaTransactions.register(t, new AuditSynchronization(t))) {
+                return null;
+            }
+            return new ArrayList<>();
+        });
+        if (entries == null) {
+            deferredAuditLog.add(messageContent, eventType);
+            return;
+        }
+        // a transaction is used by one thread at a time
+        deferredAuditLog.hold();
+        entries.add(() -> deferredAuditLog.addHeld(messageContent, eventType));
+    }
+
+    private class AuditSynchronization implements Synchronization {
+
+        private final Transaction transaction;
+
+        AuditSynchronization(Transaction transaction) {
+            this.transaction = transaction;
+        }
+
+        @Override
+        public void beforeCompletion() {
+        }
+
+        @Override
+        public void afterCompletion(int status) {
+            List<Runnable> entries = pendingEntries.remove(transaction);
+            if (entries == null) {
+                return;
+            }
+            if (status == Status.STATUS_COMMITTED) {
+                entries.forEach(Runnable::run);
+            } else {
+                deferredAuditLog.dropHeld(entries.size());
+            }
+        }
+    }
+}
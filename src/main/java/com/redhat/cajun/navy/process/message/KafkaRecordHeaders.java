@@ -0,0 +1,53 @@
+package com.redhat.cajun.navy.process.message;
+
+import java.nio.charset.StandardCharsets;
+
+import org.apache.kafka.common.header.Header;
+import org.apache.kafka.common.header.Headers;
+
+/**
+ * Names of the Kafka record headers stamped on the messages sent by the process service.
+ */
+public final class KafkaRecordHeaders {
+
+    public static final String MESSAGE_TYPE = "messageType";
+
+    public static final String INCIDENT_ID = "incidentId";
+
+    public static final String CONTENT_TYPE = "contentType";
+
+    public static final String CONTENT_TYPE_JSON = "application/json";
+
+    public static final String CONTENT_TYPE_SMILE = "application/x-jackson-smile";
+
+    public static final String ORIGINAL_TOPIC = "originalTopic";
+
+    public static final String ORIGINAL_PARTITION = "originalPartition";
+
+    public static final String ORIGINAL_OFFSET = "originalOffset";
+
+    public static final String ERROR_CLASS = "errorClass";
+
+    public static final String ERROR_MESSAGE = "errorMessage";
+
+    public static final String RETRY_ATTEMPT = "retryAttempt";
+
+    public static final String RETRY_DUE_AT = "retryDueAt";
+
+    private KafkaRecordHeaders() {
+    }
+
+    /**
+     * @return the value of the last header with the given name, or null if the record has no such header
+     */
+    public static String value(Headers headers, String name) {
+        if (headers == null) {
+            return null;
+        }
+        Header header = headers.lastHeader(name);
+        if (header == null || header.value() == null) {
+            return null;
+        }
+        return new String(header.value(), StandardCharsets.UTF_8);
+    }
+}
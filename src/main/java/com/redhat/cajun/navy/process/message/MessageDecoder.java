@@ -0,0 +1,201 @@
+package com.redhat.cajun.navy.process.message;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
+import com.fasterxml.jackson.dataformat.smile.SmileConstants;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.redhat.cajun.navy.process.message.model.Message;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+/**
+ * Decodes the {@link Message} envelope of a record in a single pass with a streaming parser.
+ *
+ * Decoding stops as soon as the {@code messageType} turns out not to be one of the types accepted by the caller.
+ * The body is bound with an {@link ObjectReader} cached per body type. When the body precedes the {@code messageType}
+ * in the payload, it is buffered as tokens and bound once the type is known.
+ *
+ * Payloads are either a {@code String} or the raw {@code byte[]} of the record value, which is parsed in place.
+ * A {@code byte[]} payload starting with the Smile header is parsed as Smile, the binary form of JSON sent by the
+ * {@link MessageSerializer} to binary topics. Binary topics therefore require the {@code bytes} value format.
+ */
+@Component
+public class MessageDecoder {
+
+    private static final Logger log = LoggerFactory.getLogger(MessageDecoder.class);
+
+    private final ObjectMapper objectMapper = MessageObjectMappers.decoder();
+
+    private final SmileFactory smileFactory = new SmileFactory();
+
+    private final ObjectReader headerReader = objectMapper.readerFor(new TypeReference<Map<String, String>>() {});
+
+    private final Map<Class<?>, ObjectReader> readers = new ConcurrentHashMap<>();
+
+    /**
+     * @param payload the JSON payload of the record, as a {@code String} or a {@code byte[]}
+     * @param bodyTypes the accepted message types, mapped to the type of their body
+     * @return the decoded message, or null if the message has no or an unaccepted {@code messageType}
+     * @throws IOException if the body of an accepted message cannot be bound
+     */
+    public <T> Message<T> decode(Object payload, Map<String, Class<?>> bodyTypes) throws IOException {
+        if (payload == null) {
+            log.warn("Unexpected message without payload.");
+            return null;
+        }
+        try (JsonParser parser = createParser(payload)) {
+            return decode(parser, bodyTypes);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> Message<T> decode(JsonParser parser, Map<String, Class<?>> bodyTypes) throws IOException {
+        String messageType = null;
+        Class<?> bodyType = null;
+        String id = null;
+        String invokingService = null;
+        long timestamp = 0;
+        Map<String, String> header = null;
+        Object body = null;
+        TokenBuffer bufferedBody = null;
+        try {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                log.warn("Unexpected message which is not a JSON object.");
+                return null;
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                JsonToken token = parser.nextToken();
+                switch (field) {
+                    case "messageType":
+                        messageType = parser.getValueAsString();
+                        bodyType = bodyTypes.get(messageType);
+                        if (bodyType == null) {
+                            log.debug("Message with type '" + messageType + "' is ignored");
+                            return null;
+                        }
+                        break;
+                    case "id":
+                        id = parser.getValueAsString();
+                        break;
+                    case "invokingService":
+                        invokingService = parser.getValueAsString();
+                        break;
+                    case "timestamp":
+                        timestamp = parser.getValueAsLong();
+                        break;
+                    case "header":
+                        header = token == JsonToken.VALUE_NULL ? null : headerReader.readValue(parser);
+                        break;
+                    case "body":
+                        if (bodyType != null) {
+                            body = reader(bodyType).readValue(parser);
+                        } else {
+                            bufferedBody = new TokenBuffer(parser);
+                            bufferedBody.copyCurrentStructure(parser);
+                        }
+                        break;
+                    default:
+                        parser.skipChildren();
+                }
+            }
+        } catch (IOException e) {
+            if (bodyType == null) {
+                log.warn("Unexpected message which cannot be parsed.");
+                return null;
+            }
+            throw e;
+        }
+        if (messageType == null) {
+            log.warn("Unexpected message without 'messageType' field.");
+            return null;
+        }
+        if (bufferedBody != null) {
+            body = reader(bodyType).readValue(bufferedBody.asParser());
+        }
+        Message.Builder<T> builder = new Message.Builder<>(messageType, invokingService, (T) body).id(id).timestamp(timestamp);
+        if (header != null) {
+            header.forEach(builder::header);
+        }
+        return builder.build();
+    }
+
+    /**
+     * Reads a single value of the message header, without binding the rest of the message.
+     *
+     * @return the header value, or null if the message has no such header or cannot be parsed
+     */
+    public String headerValue(Object payload, String key) {
+        if (payload == null) {
+            return null;
+        }
+        try (JsonParser parser = createParser(payload)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                return null;
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                JsonToken token = parser.nextToken();
+                if (!"header".equals(field) || token != JsonToken.START_OBJECT) {
+                    parser.skipChildren();
+                    continue;
+                }
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    String name = parser.getCurrentName();
+                    parser.nextToken();
+                    if (key.equals(name)) {
+                        return parser.getValueAsString();
+                    }
+                    parser.skipChildren();
+                }
+                return null;
+            }
+        } catch (IOException e) {
+            log.debug("Message cannot be parsed. Header '" + key + "' not found.");
+        }
+        return null;
+    }
+
+    /**
+     * @return the payload as a {@code String}, for logging
+     */
+    public static String asString(Object payload) {
+        if (payload instanceof byte[]) {
+            return new String((byte[]) payload, StandardCharsets.UTF_8);
+        }
+        return String.valueOf(payload);
+    }
+
+    private JsonParser createParser(Object payload) throws IOException {
+        if (payload instanceof String) {
+            return objectMapper.getFactory().createParser((String) payload);
+        }
+        if (payload instanceof byte[]) {
+            byte[] bytes = (byte[]) payload;
+            if (isSmile(bytes)) {
+                return smileFactory.createParser(bytes);
+            }
+            return objectMapper.getFactory().createParser(bytes);
+        }
+        throw new IllegalArgumentException("Unsupported payload type " + payload.getClass().getName());
+    }
+
+    private static boolean isSmile(byte[] bytes) {
+        return bytes.length >= 3 && bytes[0] == SmileConstants.HEADER_BYTE_1 && bytes[1] == SmileConstants.HEADER_BYTE_2
+                && bytes[2] == SmileConstants.HEADER_BYTE_3;
+    }
+
+    private ObjectReader reader(Class<?> bodyType) {
+        return readers.computeIfAbsent(bodyType, objectMapper::readerFor);
+    }
+}
@@ -0,0 +1,40 @@
+package com.redhat.cajun.navy.process.message;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.MapperFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.fasterxml.jackson.module.afterburner.AfterburnerModule;
+
+/**
+ * Object mappers for the messages sent by the process service.
+ *
+ * The configuration of the mappers which write messages is the one of the Kafka {@code JsonSerializer}, so the payloads
+ * are unchanged. The mapper which reads messages keeps the default configuration the listeners bound messages with.
+ * The Afterburner module generates the bytecode to access the properties of the message model classes, in place of
+ * reflection. Afterburner only reaches public accessors and non-private fields: the model classes are bound through
+ * their getters and setters.
+ */
+final class MessageObjectMappers {
+
+    private MessageObjectMappers() {
+    }
+
+    static ObjectMapper json() {
+        return configure(new ObjectMapper());
+    }
+
+    static ObjectMapper smile() {
+        return configure(new ObjectMapper(new SmileFactory()));
+    }
+
+    static ObjectMapper decoder() {
+        return new ObjectMapper().registerModule(new AfterburnerModule());
+    }
+
+    private static ObjectMapper configure(ObjectMapper objectMapper) {
+        return objectMapper.registerModule(new AfterburnerModule())
+                .configure(MapperFeature.DEFAULT_VIEW_INCLUSION, false)
+                .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+    }
+}
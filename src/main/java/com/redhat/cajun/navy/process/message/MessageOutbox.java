@@ -0,0 +1,74 @@
+package com.redhat.cajun.navy.process.message;
+
+import java.sql.Timestamp;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.redhat.cajun.navy.process.message.model.Message;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Writes outgoing messages to the {@code message_outbox} table, in the current transaction. The messages are sent to
+ * Kafka by the {@link MessageOutboxRelay} once the transaction has committed.
+ *
+ * The row of the message key in {@code message_outbox_key} is locked before the message is written, so that
+ * transactions writing messages with the same key wait for each other: the messages of a key get their ids in the order
+ * in which they are committed, and the relay never sees a message of a key before the ones written ahead of it.
+ */
+@Component
+public class MessageOutbox {
+
+    private final ObjectMapper objectMapper = MessageObjectMappers.json();
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    public void add(String destination, String key, String incidentId, Message<?> msg) {
+        String payload;
+        try {
+            payload = objectMapper.writeValueAsString(msg);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Error serializing '" + msg.getMessageType() + "' message with key " + key, e);
+        }
+        if (key != null) {
+            lockKey(key);
+        }
+        jdbcTemplate.update("INSERT INTO message_outbox (destination, message_key, message_type, incident_id, payload, created_at) " +
+                "VALUES (?, ?, ?, ?, ?, ?)", destination, key, msg.getMessageType(), incidentId, payload,
+                new Timestamp(System.currentTimeMillis()));
+    }
+
+    private void lockKey(String key) {
+        if (updateKey(key) > 0) {
+            return;
+        }
+        // the row of a new key is created in a transaction of its own, so that concurrent writers wait on it rather
+        // than fail on a duplicate
+        TransactionTemplate template = new TransactionTemplate(transactionManager);
+        template.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        try {
+            template.execute((TransactionStatus s) -> jdbcTemplate.update("INSERT INTO message_outbox_key (message_key, updated_at) VALUES (?, ?)",
+                    key, new Timestamp(System.currentTimeMillis())));
+        } catch (DuplicateKeyException e) {
+            // created by a concurrent writer
+        }
+        if (updateKey(key) == 0) {
+            throw new IllegalStateException("Outbox key row for key " + key + " was removed concurrently");
+        }
+    }
+
+    private int updateKey(String key) {
+        return jdbcTemplate.update("UPDATE message_outbox_key SET updated_at = ? WHERE message_key = ?",
+                new Timestamp(System.currentTimeMillis()), key);
+    }
+}
@@ -0,0 +1,260 @@
+package com.redhat.cajun.navy.process.message;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.sql.ResultSet;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import com.redhat.cajun.navy.process.message.model.Message;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.support.SendResult;
+import org.springframework.kafka.support.converter.AbstractJavaTypeMapper;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.StringUtils;
+import org.springframework.util.concurrent.ListenableFuture;
+
+/**
+ * Sends the messages written to the {@code message_outbox} table by the {@link MessageOutbox} to Kafka.
+ *
+ * Only committed rows are visible to the relay. Rows are claimed in batches of {@code sender.outbox.batch-size}, in the
+ * order of their ids, which is the order in which the messages of a key were committed. Claims are made one relay at a
+ * time, and skip the keys which have claimed messages in flight, so that relays of other service instances never send
+ * messages of the same key concurrently. The claim is committed before the batch is sent, so no lock is held while
+ * waiting for the broker. The batch is sent in one go, and deleted once every message has been acknowledged. The claim
+ * of a failed batch is released, and the batch is retried on the next poll; a claim which is not released, because
+ * its relay stopped, expires after {@code sender.outbox.claim-timeout} milliseconds. Messages are thus sent at least
+ * once, in order per key. Messages are stored as JSON, and converted to Smile on the way out for the topics listed in
+ * {@code sender.binary-topics}.
+ */
+@Component
+@DependsOn("jbpmSchemaMigration")
+public class MessageOutboxRelay {
+
+    private static final Logger log = LoggerFactory.getLogger(MessageOutboxRelay.class);
+
+    private static final String LOCK_RELAY = "SELECT id FROM message_outbox_relay WHERE id = 1 FOR UPDATE";
+
+    private static final String OUTBOX_BATCH = "SELECT id, destination, message_key, message_type, incident_id, payload " +
+            "FROM message_outbox m WHERE (m.claimed_at IS NULL OR m.claimed_at < ?) AND NOT EXISTS (" +
+            "SELECT 1 FROM message_outbox c WHERE c.message_key = m.message_key AND c.claimed_at >= ?) ORDER BY id LIMIT ?";
+
+    private static final String PRUNE_KEYS = "DELETE FROM message_outbox_key k WHERE k.updated_at < ? AND NOT EXISTS (" +
+            "SELECT 1 FROM message_outbox m WHERE m.message_key = k.message_key)";
+
+    private static final long KEY_RETENTION = 60000;
+
+    private static final long SEND_TIMEOUT = 30000;
+
+    @Autowired
+    private KafkaTemplate<String, byte[]> outboxKafkaTemplate;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Value("${sender.mode}")
+    private String mode;
+
+    @Value("${sender.binary-topics}")
+    private String binaryTopics;
+
+    @Value("${sender.outbox.batch-size}")
+    private int batchSize;
+
+    @Value("${sender.outbox.poll-interval}")
+    private long pollInterval;
+
+    @Value("${sender.outbox.claim-timeout}")
+    private long claimTimeout;
+
+    private final AtomicLong backlog = new AtomicLong();
+
+    private final LongAdder relayed = new LongAdder();
+
+    private final LongAdder failures = new LongAdder();
+
+    private Set<String> binaryTopicSet = Collections.emptySet();
+
+    private ScheduledExecutorService relay;
+
+    private long keysPrunedAt;
+
+    @PostConstruct
+    public void init() {
+        if (!"outbox".equalsIgnoreCase(mode.trim())) {
+            return;
+        }
+        binaryTopicSet = StringUtils.commaDelimitedListToSet(StringUtils.trimAllWhitespace(binaryTopics));
+        relay = Executors.newSingleThreadScheduledExecutor(new CustomizableThreadFactory("message-outbox-relay-"));
+        relay.scheduleWithFixedDelay(this::drain, pollInterval, pollInterval, TimeUnit.MILLISECONDS);
+        log.info("Relaying outbox messages every " + pollInterval + " ms, in batches of " + batchSize);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (relay != null) {
+            relay.shutdownNow();
+        }
+    }
+
+    /**
+     * Sends batches of outbox messages until the outbox is drained.
+     */
+    void drain() {
+        try {
+            int sent;
+            do {
+                sent = relayBatch();
+            } while (sent == batchSize);
+            Long count = new TransactionTemplate(transactionManager).execute((TransactionStatus s) ->
+                    jdbcTemplate.queryForObject("SELECT COUNT(*) FROM message_outbox", Long.class));
+            backlog.set(count == null ? 0 : count);
+            pruneKeys();
+        } catch (RuntimeException e) {
+            failures.increment();
+            log.error("Error relaying outbox messages", e);
+        }
+    }
+
+    public long backlog() {
+        return backlog.get();
+    }
+
+    public long relayedCount() {
+        return relayed.sum();
+    }
+
+    public long failureCount() {
+        return failures.sum();
+    }
+
+    private int relayBatch() {
+        List<Long> ids = new ArrayList<>();
+        List<ProducerRecord<String, byte[]>> records = new ArrayList<>();
+        new TransactionTemplate(transactionManager).execute((TransactionStatus s) -> {
+            claim(ids, records);
+            return null;
+        });
+        if (ids.isEmpty()) {
+            return 0;
+        }
+        try {
+            List<ListenableFuture<SendResult<String, byte[]>>> futures = new ArrayList<>();
+            records.forEach(r -> futures.add(outboxKafkaTemplate.send(r)));
+            outboxKafkaTemplate.flush();
+            for (ListenableFuture<SendResult<String, byte[]>> future : futures) {
+                await(future);
+            }
+        } catch (RuntimeException e) {
+            release(ids);
+            throw e;
+        }
+        new TransactionTemplate(transactionManager).execute((TransactionStatus s) ->
+                jdbcTemplate.batchUpdate("DELETE FROM message_outbox WHERE id = ?", batchArgs(ids)));
+        relayed.add(ids.size());
+        log.debug("Relayed " + ids.size() + " outbox messages");
+        return ids.size();
+    }
+
+    private void claim(List<Long> ids, List<ProducerRecord<String, byte[]>> records) {
+        jdbcTemplate.queryForList(LOCK_RELAY);
+        Timestamp now = new Timestamp(System.currentTimeMillis());
+        Timestamp expired = new Timestamp(now.getTime() - claimTimeout);
+        jdbcTemplate.query(OUTBOX_BATCH, (ResultSet rs) -> {
+            ids.add(rs.getLong(1));
+            records.add(record(rs.getString(2), rs.getString(3), rs.getString(4), rs.getString(5), rs.getString(6)));
+        }, expired, expired, batchSize);
+        if (!ids.isEmpty()) {
+            List<Object[]> batchArgs = new ArrayList<>();
+            ids.forEach(id -> batchArgs.add(new Object[]{now, id}));
+            jdbcTemplate.batchUpdate("UPDATE message_outbox SET claimed_at = ? WHERE id = ?", batchArgs);
+        }
+    }
+
+    private void release(List<Long> ids) {
+        try {
+            new TransactionTemplate(transactionManager).execute((TransactionStatus s) ->
+                    jdbcTemplate.batchUpdate("UPDATE message_outbox SET claimed_at = NULL WHERE id = ?", batchArgs(ids)));
+        } catch (RuntimeException e) {
+            log.warn("Error releasing the claim of " + ids.size() + " outbox messages. The claim expires in " + claimTimeout + " ms", e);
+        }
+    }
+
+    /**
+     * Deletes the rows of the keys which have no messages left, once they have not been written for a while.
+     */
+    private void pruneKeys() {
+        long now = System.currentTimeMillis();
+        if (now - keysPrunedAt < KEY_RETENTION) {
+            return;
+        }
+        keysPrunedAt = now;
+        new TransactionTemplate(transactionManager).execute((TransactionStatus s) ->
+                jdbcTemplate.update(PRUNE_KEYS, new Timestamp(now - KEY_RETENTION)));
+    }
+
+    private static List<Object[]> batchArgs(List<Long> ids) {
+        List<Object[]> batchArgs = new ArrayList<>();
+        ids.forEach(id -> batchArgs.add(new Object[]{id}));
+        return batchArgs;
+    }
+
+    private ProducerRecord<String, byte[]> record(String destination, String key, String messageType, String incidentId, String payload) {
+        ProducerRecord<String, byte[]> record;
+        if (binaryTopicSet.contains(destination)) {
+            try {
+                record = new ProducerRecord<>(destination, key, MessageSerializer.jsonToSmile(payload));
+            } catch (IOException e) {
+                throw new IllegalStateException("Error encoding outbox message for topic " + destination, e);
+            }
+            record.headers().add(KafkaRecordHeaders.CONTENT_TYPE, KafkaRecordHeaders.CONTENT_TYPE_SMILE.getBytes(StandardCharsets.UTF_8));
+        } else {
+            record = new ProducerRecord<>(destination, key, payload.getBytes(StandardCharsets.UTF_8));
+            record.headers().add(KafkaRecordHeaders.CONTENT_TYPE, KafkaRecordHeaders.CONTENT_TYPE_JSON.getBytes(StandardCharsets.UTF_8));
+        }
+        record.headers().add(KafkaRecordHeaders.MESSAGE_TYPE, messageType.getBytes(StandardCharsets.UTF_8));
+        if (incidentId != null) {
+            record.headers().add(KafkaRecordHeaders.INCIDENT_ID, incidentId.getBytes(StandardCharsets.UTF_8));
+        }
+        // the type header the MessageSerializer adds to the records sent directly
+        record.headers().add(AbstractJavaTypeMapper.DEFAULT_CLASSID_FIELD_NAME, Message.class.getName().getBytes(StandardCharsets.UTF_8));
+        return record;
+    }
+
+    private void await(ListenableFuture<SendResult<String, byte[]>> future) {
+        try {
+            future.get(SEND_TIMEOUT, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while relaying outbox messages", e);
+        } catch (ExecutionException | TimeoutException e) {
+            throw new IllegalStateException("Error sending outbox message", e);
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package com.redhat.cajun.navy.process.message;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.redhat.cajun.navy.process.message.model.Message;
+import org.apache.kafka.common.errors.SerializationException;
+import org.apache.kafka.common.header.Headers;
+import org.apache.kafka.common.serialization.ExtendedSerializer;
+import org.springframework.kafka.support.converter.AbstractJavaTypeMapper;
+import org.springframework.util.StringUtils;
+
+/**
+ * Serializes messages as JSON, or as Smile, the binary form of JSON, for the topics listed in the
+ * {@link #BINARY_TOPICS_CONFIG} producer property.
+ *
+ * The format is announced with the {@code contentType} record header. Smile payloads start with the Smile header,
+ * which is how the {@link MessageDecoder} tells them apart from JSON.
+ *
+ * Messages are written with an {@link ObjectWriter} resolved once per body type, so the serializer of the message is
+ * not looked up on every send.
+ */
+public class MessageSerializer implements ExtendedSerializer<Message<?>> {
+
+    public static final String BINARY_TOPICS_CONFIG = "message.binary-topics";
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    private static final SmileFactory SMILE_FACTORY = new SmileFactory();
+
+    private static final byte[] TYPE_ID = Message.class.getName().getBytes(StandardCharsets.UTF_8);
+
+    private final ObjectMapper jsonMapper = MessageObjectMappers.json();
+
+    private final ObjectMapper smileMapper = MessageObjectMappers.smile();
+
+    private final Map<Class<?>, ObjectWriter> jsonWriters = new ConcurrentHashMap<>();
+
+    private final Map<Class<?>, ObjectWriter> smileWriters = new ConcurrentHashMap<>();
+
+    private Set<String> binaryTopics = Collections.emptySet();
+
+    @Override
+    public void configure(Map<String, ?> configs, boolean isKey) {
+        Object topics = configs.get(BINARY_TOPICS_CONFIG);
+        if (topics != null) {
+            binaryTopics = StringUtils.commaDelimitedListToSet(StringUtils.trimAllWhitespace(topics.toString()));
+            binaryTopics.remove("");
+        }
+    }
+
+    @Override
+    public byte[] serialize(String topic, Headers headers, Message<?> data) {
+        if (data == null) {
+            return null;
+        }
+        headers.add(KafkaRecordHeaders.CONTENT_TYPE, (isBinary(topic) ? KafkaRecordHeaders.CONTENT_TYPE_SMILE
+                : KafkaRecordHeaders.CONTENT_TYPE_JSON).getBytes(StandardCharsets.UTF_8));
+        // the type header the JsonSerializer adds
+        headers.add(AbstractJavaTypeMapper.DEFAULT_CLASSID_FIELD_NAME, TYPE_ID);
+        return serialize(topic, data);
+    }
+
+    @Override
+    public byte[] serialize(String topic, Message<?> data) {
+        if (data == null) {
+            return null;
+        }
+        try {
+            if (isBinary(topic)) {
+                return writer(smileMapper, smileWriters, data).writeValueAsBytes(data);
+            }
+            return writer(jsonMapper, jsonWriters, data).writeValueAsBytes(data);
+        } catch (IOException e) {
+            throw new SerializationException("Can't serialize data [" + data + "] for topic [" + topic + "]", e);
+        }
+    }
+
+    @Override
+    public void close() {
+    }
+
+    boolean isBinary(String topic) {
+        return binaryTopics.contains(topic);
+    }
+
+    private static ObjectWriter writer(ObjectMapper objectMapper, Map<Class<?>, ObjectWriter> writers, Message<?> data) {
+        Class<?> bodyType = data.getBody() == null ? Object.class : data.getBody().getClass();
+        return writers.computeIfAbsent(bodyType, t ->
+                objectMapper.writerFor(objectMapper.getTypeFactory().constructParametricType(Message.class, t)));
+    }
+
+    /**
+     * Converts a JSON payload to Smile, token by token, without binding it.
+     */
+    public static byte[] jsonToSmile(String json) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(json.length());
+        try (JsonParser parser = JSON_FACTORY.createParser(json);
+             JsonGenerator generator = SMILE_FACTORY.createGenerator(out)) {
+            parser.nextToken();
+            generator.copyCurrentStructure(parser);
+        }
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,119 @@
+package com.redhat.cajun.navy.process.message;
+
+import java.sql.ResultSet;
+import java.sql.Timestamp;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Records the ids of the messages which were processed, so that redelivered messages are not processed twice.
+ *
+ * Ids are written to the {@code processed_message} table in the transaction of the process operation, and kept for
+ * {@code message.dedup.retention} milliseconds. A Bloom filter in front of the table answers for most messages, which
+ * were never seen, without a database round trip. The filter is rotated every retention period, so it only holds the
+ * ids of the last two periods.
+ */
+@Component
+@DependsOn("jbpmSchemaMigration")
+public class ProcessedMessageStore {
+
+    private static final Logger log = LoggerFactory.getLogger(ProcessedMessageStore.class);
+
+    private static final double FALSE_POSITIVE_PROBABILITY = 0.01;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Value("${message.dedup.retention}")
+    private long retention;
+
+    @Value("${message.dedup.expected-messages}")
+    private long expectedMessages;
+
+    @Value("${message.dedup.prune-interval}")
+    private long pruneInterval;
+
+    private volatile BloomFilter current;
+
+    private volatile BloomFilter previous;
+
+    private volatile long rotatedAt;
+
+    private ScheduledExecutorService pruner;
+
+    @PostConstruct
+    public void init() {
+        current = new BloomFilter(expectedMessages, FALSE_POSITIVE_PROBABILITY);
+        previous = new BloomFilter(1, FALSE_POSITIVE_PROBABILITY);
+        rotatedAt = System.currentTimeMillis();
+        new TransactionTemplate(transactionManager).execute((TransactionStatus s) -> {
+            jdbcTemplate.query("SELECT message_id FROM processed_message WHERE processed_at >= ?",
+                    (ResultSet rs) -> current.put(rs.getString(1)), new Timestamp(rotatedAt - retention));
+            return null;
+        });
+        pruner = Executors.newSingleThreadScheduledExecutor(new CustomizableThreadFactory("processed-message-pruner-"));
+        pruner.scheduleWithFixedDelay(this::prune, pruneInterval, pruneInterval, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        pruner.shutdownNow();
+    }
+
+    public boolean isProcessed(String messageId) {
+        if (messageId == null) {
+            return false;
+        }
+        if (!current.mightContain(messageId) && !previous.mightContain(messageId)) {
+            return false;
+        }
+        Integer count = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM processed_message WHERE message_id = ?", Integer.class, messageId);
+        return count != null && count > 0;
+    }
+
+    /**
+     * Records the message id in the current transaction.
+     */
+    public void markProcessed(String messageId) {
+        if (messageId == null) {
+            return;
+        }
+        jdbcTemplate.update("INSERT INTO processed_message (message_id, processed_at) VALUES (?, ?)", messageId,
+                new Timestamp(System.currentTimeMillis()));
+        current.put(messageId);
+    }
+
+    void prune() {
+        long now = System.currentTimeMillis();
+        try {
+            Integer deleted = new TransactionTemplate(transactionManager).execute((TransactionStatus s) ->
+                    jdbcTemplate.update("DELETE FROM processed_message WHERE processed_at < ?", new Timestamp(now - retention)));
+            log.debug("Pruned " + deleted + " processed message ids");
+        } catch (RuntimeException e) {
+            log.warn("Error pruning processed message ids", e);
+        }
+        if (now - rotatedAt >= retention) {
+            previous = current;
+            current = new BloomFilter(expectedMessages, FALSE_POSITIVE_PROBABILITY);
+            rotatedAt = now;
+        }
+    }
+}
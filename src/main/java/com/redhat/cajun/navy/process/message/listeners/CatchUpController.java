@@ -0,0 +1,226 @@
+package com.redhat.cajun.navy.process.message.listeners;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import com.redhat.cajun.navy.process.ListenerMode;
+import com.redhat.cajun.navy.process.audit.DeferredAuditLog;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.kafka.config.KafkaListenerEndpointRegistry;
+import org.springframework.kafka.listener.ConcurrentMessageListenerContainer;
+import org.springframework.kafka.listener.MessageListenerContainer;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+
+/**
+ * Switches the listeners to throughput optimised settings while they work through a backlog.
+ *
+ * Every {@code kafka.catchup.interval} milliseconds, a listener in {@code kafka.catchup.listeners} whose lag exceeds
+ * {@code kafka.catchup.lag-high} enters catch-up: its container of the {@code kafka.listener.mode} is stopped and its
+ * container of the {@code kafka.catchup.mode} is started, which by default fetches larger polls and handles them in
+ * group transactions. While any listener is catching up, the audit logs are deferred when
+ * {@code kafka.catchup.defer-audit} is set, and the responder updates of a poll which are superseded by a later update
+ * of the same responder for the same incident are skipped. The listener goes back to its steady mode once its lag is
+ * under {@code kafka.catchup.lag-low}. The mode of a listener changes at most once per {@code kafka.catchup.min-duration}.
+ *
+ * The containers of a listener are only stopped and started while holding its lock, see
+ * {@link #withListenerLock(String, Runnable)}, so that a mode switch does not interleave with a restart by the
+ * {@link ListenerConcurrencyController}.
+ */
+@Component
+public class CatchUpController {
+
+    private static final Logger log = LoggerFactory.getLogger(CatchUpController.class);
+
+    @Autowired
+    private KafkaListenerEndpointRegistry kafkaListenerEndpointRegistry;
+
+    @Autowired
+    private DeferredAuditLog deferredAuditLog;
+
+    @Value("${kafka.listener.mode}")
+    private String listenerMode;
+
+    @Value("${kafka.catchup.enabled}")
+    private boolean enabled;
+
+    @Value("${kafka.catchup.listeners}")
+    private String listenerIds;
+
+    @Value("${kafka.catchup.mode}")
+    private String catchUpMode;
+
+    @Value("${kafka.catchup.interval}")
+    private long interval;
+
+    @Value("${kafka.catchup.min-duration}")
+    private long minDuration;
+
+    @Value("${kafka.catchup.lag-high}")
+    private long lagHigh;
+
+    @Value("${kafka.catchup.lag-low}")
+    private long lagLow;
+
+    @Value("${kafka.catchup.defer-audit}")
+    private boolean deferAudit;
+
+    private final Map<String, ListenerCatchUp> listeners = new LinkedHashMap<>();
+
+    private final Map<String, Object> locks = new ConcurrentHashMap<>();
+
+    private ScheduledExecutorService checker;
+
+    @PostConstruct
+    public void init() {
+        for (String listenerId : StringUtils.commaDelimitedListToSet(StringUtils.trimAllWhitespace(listenerIds))) {
+            if (!listenerId.isEmpty()) {
+                listeners.put(listenerId, new ListenerCatchUp());
+            }
+        }
+        if (!enabled) {
+            return;
+        }
+        checker = Executors.newSingleThreadScheduledExecutor(new CustomizableThreadFactory("listener-catchup-"));
+        checker.scheduleWithFixedDelay(this::check, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (checker != null) {
+            checker.shutdownNow();
+        }
+    }
+
+    public Set<String> listenerIds() {
+        return listeners.keySet();
+    }
+
+    public boolean isCatchingUp(String listenerId) {
+        ListenerCatchUp catchUp = listeners.get(listenerId);
+        return catchUp != null && catchUp.active;
+    }
+
+    /**
+     * @return the mode of the container of the listener which is currently running
+     */
+    public ListenerMode mode(String listenerId) {
+        return ListenerMode.from(isCatchingUp(listenerId) ? catchUpMode : listenerMode);
+    }
+
+    /**
+     * Runs the action while the mode of the listener cannot change. The action should resolve the container of the
+     * listener from {@link #mode(String)} itself, as the mode may have changed while waiting for the lock.
+     */
+    public void withListenerLock(String listenerId, Runnable action) {
+        synchronized (locks.computeIfAbsent(listenerId, id -> new Object())) {
+            action.run();
+        }
+    }
+
+    /**
+     * Records the number of records of the listener skipped as superseded.
+     */
+    public void recordCoalesced(String listenerId, int count) {
+        ListenerCatchUp catchUp = listeners.get(listenerId);
+        if (catchUp != null) {
+            catchUp.coalesced.add(count);
+        }
+    }
+
+    public long lag(String listenerId) {
+        return listeners.get(listenerId).lag;
+    }
+
+    public long enteredCount(String listenerId) {
+        return listeners.get(listenerId).entered.sum();
+    }
+
+    public long exitedCount(String listenerId) {
+        return listeners.get(listenerId).exited.sum();
+    }
+
+    public long coalescedCount(String listenerId) {
+        return listeners.get(listenerId).coalesced.sum();
+    }
+
+    void check() {
+        listeners.forEach((listenerId, catchUp) -> {
+            try {
+                withListenerLock(listenerId, () -> check(listenerId, catchUp));
+            } catch (RuntimeException e) {
+                log.error("Error checking the backlog of listener '" + listenerId + "'", e);
+            }
+        });
+        if (deferAudit) {
+            deferredAuditLog.defer(listeners.values().stream().anyMatch(c -> c.active));
+        }
+    }
+
+    private void check(String listenerId, ListenerCatchUp catchUp) {
+        MessageListenerContainer container = kafkaListenerEndpointRegistry.getListenerContainer(mode(listenerId).containerId(listenerId));
+        // the lag of a paused container says nothing about the backlog
+        if (!(container instanceof ConcurrentMessageListenerContainer) || !container.isRunning() || container.isPauseRequested()) {
+            return;
+        }
+        long lag = ListenerConcurrencyController.lag(((ConcurrentMessageListenerContainer<?, ?>) container).metrics());
+        catchUp.lag = lag;
+        long now = System.currentTimeMillis();
+        if (now - catchUp.changedAt < minDuration) {
+            return;
+        }
+        if (!catchUp.active && lag > lagHigh) {
+            log.info("Listener '" + listenerId + "' is catching up with a lag of " + lag + ". Switching to " + catchUpMode + " mode.");
+            switchContainers(container, kafkaListenerEndpointRegistry.getListenerContainer(ListenerMode.from(catchUpMode).containerId(listenerId)));
+            catchUp.active = true;
+            catchUp.entered.increment();
+        } else if (catchUp.active && lag <= lagLow) {
+            log.info("Listener '" + listenerId + "' caught up with a lag of " + lag + ". Switching back to " + listenerMode + " mode.");
+            switchContainers(container, kafkaListenerEndpointRegistry.getListenerContainer(ListenerMode.from(listenerMode).containerId(listenerId)));
+            catchUp.active = false;
+            catchUp.exited.increment();
+        } else {
+            return;
+        }
+        catchUp.changedAt = now;
+    }
+
+    /**
+     * Stops the container before starting the other, so that the records are not handled by both while the consumer
+     * group rebalances.
+     */
+    void switchContainers(MessageListenerContainer from, MessageListenerContainer to) {
+        if (from == to) {
+            return;
+        }
+        from.stop();
+        to.start();
+    }
+
+    static class ListenerCatchUp {
+
+        private volatile boolean active;
+
+        private volatile long lag;
+
+        private volatile long changedAt;
+
+        private final LongAdder entered = new LongAdder();
+
+        private final LongAdder exited = new LongAdder();
+
+        private final LongAdder coalesced = new LongAdder();
+    }
+}
@@ -0,0 +1,36 @@
+package com.redhat.cajun.navy.process.message.listeners;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.common.TopicPartition;
+import org.springframework.kafka.listener.ConsumerAwareRebalanceListener;
+
+/**
+ * Hands the rebalance callbacks of a container over to several listeners, in order.
+ */
+public class CompositeRebalanceListener implements ConsumerAwareRebalanceListener {
+
+    private final List<ConsumerAwareRebalanceListener> listeners;
+
+    public CompositeRebalanceListener(ConsumerAwareRebalanceListener... listeners) {
+        this.listeners = Arrays.asList(listeners);
+    }
+
+    @Override
+    public void onPartitionsRevokedBeforeCommit(Consumer<?, ?> consumer, Collection<TopicPartition> partitions) {
+        listeners.forEach(l -> l.onPartitionsRevokedBeforeCommit(consumer, partitions));
+    }
+
+    @Override
+    public void onPartitionsRevokedAfterCommit(Consumer<?, ?> consumer, Collection<TopicPartition> partitions) {
+        listeners.forEach(l -> l.onPartitionsRevokedAfterCommit(consumer, partitions));
+    }
+
+    @Override
+    public void onPartitionsAssigned(Consumer<?, ?> consumer, Collection<TopicPartition> partitions) {
+        listeners.forEach(l -> l.onPartitionsAssigned(consumer, partitions));
+    }
+}
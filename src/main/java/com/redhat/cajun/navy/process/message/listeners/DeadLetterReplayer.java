@@ -0,0 +1,144 @@
+package com.redhat.cajun.navy.process.message.listeners;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+
+import com.redhat.cajun.navy.process.message.KafkaRecordHeaders;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.PartitionInfo;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.header.Header;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.WriteOperation;
+import org.springframework.kafka.core.ConsumerFactory;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.support.SendResult;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Component;
+import org.springframework.util.concurrent.ListenableFuture;
+
+/**
+ * Re-injects the records of a dead letter topic into the topic they originally failed on.
+ *
+ * Exposed as the {@code deadletters} actuator endpoint: {@code POST /actuator/deadletters} with a body such as
+ * {@code {"topic": "topic-mission-event", "maxRecords": 100}} replays the records of {@code topic-mission-event-dlt}.
+ * The replayed records get a fresh set of retries. The replay progress is committed under a consumer group of its own,
+ * so a record is replayed once, and the records dead-lettered after a replay are picked up by the next one.
+ */
+@Component
+@Endpoint(id = "deadletters")
+public class DeadLetterReplayer {
+
+    private static final Logger log = LoggerFactory.getLogger(DeadLetterReplayer.class);
+
+    private static final Duration POLL_TIMEOUT = Duration.ofSeconds(1);
+
+    private static final long SEND_TIMEOUT = 30000;
+
+    @Autowired
+    private ConsumerFactory<String, byte[]> deadLetterConsumerFactory;
+
+    @Autowired
+    private KafkaTemplate<String, byte[]> failedRecordKafkaTemplate;
+
+    private final LongAdder replayed = new LongAdder();
+
+    /**
+     * Replays the records of the dead letter topic of {@code topic}, up to {@code maxRecords} records if given.
+     */
+    @WriteOperation
+    public Map<String, Object> replay(String topic, @Nullable Integer maxRecords) {
+        String deadLetterTopic = FailedRecordRouter.deadLetterTopic(topic);
+        long max = maxRecords == null ? Long.MAX_VALUE : maxRecords;
+        long count = 0;
+        try (Consumer<String, byte[]> consumer = deadLetterConsumerFactory.createConsumer()) {
+            List<PartitionInfo> partitionInfos = consumer.partitionsFor(deadLetterTopic);
+            if (partitionInfos == null || partitionInfos.isEmpty()) {
+                throw new IllegalStateException("Topic " + deadLetterTopic + " does not exist");
+            }
+            List<TopicPartition> partitions = partitionInfos.stream()
+                    .map(p -> new TopicPartition(p.topic(), p.partition()))
+                    .collect(Collectors.toList());
+            consumer.assign(partitions);
+            Map<TopicPartition, Long> endOffsets = consumer.endOffsets(partitions);
+            while (count < max && !caughtUp(consumer, endOffsets)) {
+                List<ListenableFuture<SendResult<String, byte[]>>> futures = new ArrayList<>();
+                Map<TopicPartition, OffsetAndMetadata> offsets = new HashMap<>();
+                for (ConsumerRecord<String, byte[]> record : consumer.poll(POLL_TIMEOUT)) {
+                    if (count >= max) {
+                        break;
+                    }
+                    futures.add(failedRecordKafkaTemplate.send(replayRecord(record)));
+                    offsets.put(new TopicPartition(record.topic(), record.partition()), new OffsetAndMetadata(record.offset() + 1));
+                    count++;
+                }
+                if (offsets.isEmpty()) {
+                    break;
+                }
+                failedRecordKafkaTemplate.flush();
+                for (ListenableFuture<SendResult<String, byte[]>> future : futures) {
+                    await(future);
+                }
+                consumer.commitSync(offsets);
+                replayed.add(futures.size());
+            }
+        }
+        log.info("Replayed " + count + " records from topic " + deadLetterTopic);
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("topic", deadLetterTopic);
+        result.put("replayed", count);
+        return result;
+    }
+
+    public long replayedCount() {
+        return replayed.sum();
+    }
+
+    /**
+     * @return whether the consumer has read the partitions up to the offsets they had when the replay started
+     */
+    private static boolean caughtUp(Consumer<?, ?> consumer, Map<TopicPartition, Long> endOffsets) {
+        return endOffsets.entrySet().stream().allMatch(e -> consumer.position(e.getKey()) >= e.getValue());
+    }
+
+    private static ProducerRecord<String, byte[]> replayRecord(ConsumerRecord<String, byte[]> record) {
+        String topic = KafkaRecordHeaders.value(record.headers(), KafkaRecordHeaders.ORIGINAL_TOPIC);
+        if (topic == null) {
+            throw new IllegalStateException("Record " + record.topic() + ":" + record.partition() + "@" + record.offset()
+                    + " has no " + KafkaRecordHeaders.ORIGINAL_TOPIC + " header");
+        }
+        ProducerRecord<String, byte[]> replay = new ProducerRecord<>(topic, record.key(), record.value());
+        for (Header header : record.headers()) {
+            if (!FailedRecordRouter.ROUTING_HEADERS.contains(header.key())) {
+                replay.headers().add(header);
+            }
+        }
+        return replay;
+    }
+
+    private static void await(ListenableFuture<SendResult<String, byte[]>> future) {
+        try {
+            future.get(SEND_TIMEOUT, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while replaying records", e);
+        } catch (ExecutionException | TimeoutException e) {
+            throw new IllegalStateException("Error replaying record", e);
+        }
+    }
+}
@@ -0,0 +1,253 @@
+package com.redhat.cajun.navy.process.message.listeners;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+import javax.annotation.PostConstruct;
+
+import com.redhat.cajun.navy.process.message.KafkaRecordHeaders;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.header.Header;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.NestedExceptionUtils;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.event.ListenerContainerIdleEvent;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+
+/**
+ * Routes the records which fail to be processed to retry topics, and eventually to a dead letter topic.
+ *
+ * A record of topic {@code <topic>} which fails for the n-th time is sent to the retry topic {@code <topic>-retry-<n>},
+ * to be processed again once the n-th delay of {@code kafka.retry.delays} has elapsed. A record which still fails
+ * after the last retry is sent to the dead letter topic {@code <topic>-dlt}. The records carry the topic, partition
+ * and offset of the original record and the last error in their headers.
+ *
+ * The original partition is not blocked while a record backs off: the record is acknowledged as soon as it has been
+ * sent to the next topic. When {@code kafka.retry.enabled} is off, failed records are logged and skipped.
+ *
+ * The retry listeners do not wait on the consumer thread for a record to be due. A partition of a retry topic whose
+ * next record is not due is positioned back on the record and paused until then, while the other partitions, and the
+ * other retry topics, are consumed on. Paused partitions are resumed as records are consumed, and on the idle events of
+ * the retry containers.
+ */
+@Component
+public class FailedRecordRouter {
+
+    private static final Logger log = LoggerFactory.getLogger(FailedRecordRouter.class);
+
+    private static final String RETRY_SUFFIX = "-retry-";
+
+    private static final String DEAD_LETTER_SUFFIX = "-dlt";
+
+    private static final long SEND_TIMEOUT = 30000;
+
+    /**
+     * The headers added by the router, which are replaced on every hop.
+     */
+    static final Set<String> ROUTING_HEADERS = Collections.unmodifiableSet(new HashSet<>(Arrays.asList(
+            KafkaRecordHeaders.ORIGINAL_TOPIC, KafkaRecordHeaders.ORIGINAL_PARTITION, KafkaRecordHeaders.ORIGINAL_OFFSET,
+            KafkaRecordHeaders.ERROR_CLASS, KafkaRecordHeaders.ERROR_MESSAGE, KafkaRecordHeaders.RETRY_ATTEMPT,
+            KafkaRecordHeaders.RETRY_DUE_AT)));
+
+    @Autowired
+    private KafkaTemplate<String, byte[]> failedRecordKafkaTemplate;
+
+    @Value("${kafka.retry.enabled}")
+    private boolean enabled;
+
+    @Value("${kafka.retry.delays}")
+    private String delays;
+
+    private long[] retryDelays = new long[0];
+
+    private final LongAdder retried = new LongAdder();
+
+    private final LongAdder deadLettered = new LongAdder();
+
+    private final Map<TopicPartition, Long> backOffs = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void init() {
+        retryDelays = Arrays.stream(StringUtils.commaDelimitedListToStringArray(StringUtils.trimAllWhitespace(delays)))
+                .filter(d -> !d.isEmpty())
+                .mapToLong(Long::parseLong)
+                .toArray();
+        if (retryDelays.length == 0) {
+            throw new IllegalStateException("Property kafka.retry.delays must list at least one delay");
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * @return the retry topics of the topics, for the retry listeners to subscribe to
+     */
+    public String[] retryTopics(String... topics) {
+        String[] retryTopics = new String[topics.length * retryDelays.length];
+        for (int t = 0; t < topics.length; t++) {
+            for (int i = 0; i < retryDelays.length; i++) {
+                retryTopics[t * retryDelays.length + i] = retryTopic(topics[t], i + 1);
+            }
+        }
+        return retryTopics;
+    }
+
+    public static String retryTopic(String topic, int attempt) {
+        return topic + RETRY_SUFFIX + attempt;
+    }
+
+    public static String deadLetterTopic(String topic) {
+        return topic + DEAD_LETTER_SUFFIX;
+    }
+
+    /**
+     * Sends the failed record to its next retry topic, or to the dead letter topic once the retries are exhausted.
+     *
+     * @throws IllegalStateException if the record could not be sent, so that it is redelivered rather than lost
+     */
+    public void route(ConsumerRecord<?, ?> record, Exception e) {
+        String coordinates = record.topic() + ":" + record.partition() + "@" + record.offset();
+        if (!enabled) {
+            log.error("Error processing record " + coordinates + ". Record is skipped.", e);
+            return;
+        }
+        String attemptHeader = KafkaRecordHeaders.value(record.headers(), KafkaRecordHeaders.RETRY_ATTEMPT);
+        int attempt = attemptHeader == null ? 0 : Integer.parseInt(attemptHeader);
+        String originalTopic = header(record, KafkaRecordHeaders.ORIGINAL_TOPIC, record.topic());
+        ProducerRecord<String, byte[]> failed;
+        if (attempt < retryDelays.length) {
+            failed = failedRecord(retryTopic(originalTopic, attempt + 1), record, originalTopic, e);
+            header(failed, KafkaRecordHeaders.RETRY_ATTEMPT, Integer.toString(attempt + 1));
+            header(failed, KafkaRecordHeaders.RETRY_DUE_AT, Long.toString(System.currentTimeMillis() + retryDelays[attempt]));
+            log.warn("Error processing record " + coordinates + ". Record is retried from topic " + failed.topic()
+                    + " in " + retryDelays[attempt] + " ms.", e);
+        } else {
+            failed = failedRecord(deadLetterTopic(originalTopic), record, originalTopic, e);
+            log.error("Error processing record " + coordinates + " after " + attempt + " retries. Record is sent to topic "
+                    + failed.topic(), e);
+        }
+        send(failed);
+        if (attempt < retryDelays.length) {
+            retried.increment();
+        } else {
+            deadLettered.increment();
+        }
+    }
+
+    /**
+     * Checks whether a record of a retry topic is due. When it is not, the partition of the record is positioned back
+     * on it and paused until it is due, and the records of the partition which were fetched with it are not due either.
+     * Must be called on the consumer thread.
+     *
+     * @return whether the record is to be processed now
+     */
+    public boolean isDue(ConsumerRecord<?, ?> record, Consumer<?, ?> consumer) {
+        resumeDue(consumer);
+        TopicPartition topicPartition = new TopicPartition(record.topic(), record.partition());
+        if (consumer.paused().contains(topicPartition)) {
+            return false;
+        }
+        String dueAt = KafkaRecordHeaders.value(record.headers(), KafkaRecordHeaders.RETRY_DUE_AT);
+        if (dueAt == null || Long.parseLong(dueAt) <= System.currentTimeMillis()) {
+            return true;
+        }
+        consumer.seek(topicPartition, record.offset());
+        consumer.pause(Collections.singleton(topicPartition));
+        backOffs.put(topicPartition, Long.parseLong(dueAt));
+        return false;
+    }
+
+    @EventListener
+    public void onIdle(ListenerContainerIdleEvent event) {
+        if (event.getConsumer() != null) {
+            resumeDue(event.getConsumer());
+        }
+    }
+
+    /**
+     * Resumes the partitions of the consumer whose record is due.
+     */
+    private void resumeDue(Consumer<?, ?> consumer) {
+        if (backOffs.isEmpty()) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        Set<TopicPartition> assignment = consumer.assignment();
+        backOffs.forEach((topicPartition, dueAt) -> {
+            if (dueAt <= now && assignment.contains(topicPartition)) {
+                consumer.resume(Collections.singleton(topicPartition));
+                backOffs.remove(topicPartition, dueAt);
+            }
+        });
+    }
+
+    public long retriedCount() {
+        return retried.sum();
+    }
+
+    public long deadLetteredCount() {
+        return deadLettered.sum();
+    }
+
+    private ProducerRecord<String, byte[]> failedRecord(String topic, ConsumerRecord<?, ?> record, String originalTopic, Exception e) {
+        ProducerRecord<String, byte[]> failed = new ProducerRecord<>(topic, record.key() == null ? null : record.key().toString(), value(record));
+        for (Header header : record.headers()) {
+            if (!ROUTING_HEADERS.contains(header.key())) {
+                failed.headers().add(header);
+            }
+        }
+        Throwable cause = NestedExceptionUtils.getMostSpecificCause(e);
+        header(failed, KafkaRecordHeaders.ORIGINAL_TOPIC, originalTopic);
+        header(failed, KafkaRecordHeaders.ORIGINAL_PARTITION, header(record, KafkaRecordHeaders.ORIGINAL_PARTITION, Integer.toString(record.partition())));
+        header(failed, KafkaRecordHeaders.ORIGINAL_OFFSET, header(record, KafkaRecordHeaders.ORIGINAL_OFFSET, Long.toString(record.offset())));
+        header(failed, KafkaRecordHeaders.ERROR_CLASS, cause.getClass().getName());
+        header(failed, KafkaRecordHeaders.ERROR_MESSAGE, String.valueOf(cause.getMessage()));
+        return failed;
+    }
+
+    private void send(ProducerRecord<String, byte[]> record) {
+        try {
+            failedRecordKafkaTemplate.send(record).get(SEND_TIMEOUT, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while sending record to topic " + record.topic(), e);
+        } catch (ExecutionException | TimeoutException e) {
+            throw new IllegalStateException("Error sending record to topic " + record.topic(), e);
+        }
+    }
+
+    static byte[] value(ConsumerRecord<?, ?> record) {
+        Object value = record.value();
+        if (value == null || value instanceof byte[]) {
+            return (byte[]) value;
+        }
+        return value.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static String header(ConsumerRecord<?, ?> record, String name, String defaultValue) {
+        String value = KafkaRecordHeaders.value(record.headers(), name);
+        return value == null ? defaultValue : value;
+    }
+
+    private static void header(ProducerRecord<?, ?> record, String name, String value) {
+        record.headers().add(name, value.getBytes(StandardCharsets.UTF_8));
+    }
+}
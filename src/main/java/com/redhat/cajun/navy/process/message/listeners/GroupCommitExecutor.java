@@ -0,0 +1,154 @@
+package com.redhat.cajun.navy.process.message.listeners;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.common.TopicPartition;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Processes a batch of records in a bounded number of grouped transactions.
+ *
+ * A group holds at most {@code kafka.batch.transaction-size} records, and never two records with the same key, so that
+ * successive operations on the same process instance are not executed in the same transaction.
+ * The handlers run their own {@link TransactionTemplate}s, which join the group transaction.
+ * When a group transaction rolls back, the group is split in two halves which are retried separately, until the
+ * failing record is isolated. A record which fails on its own is handed over to the {@link FailedRecordRouter}, so that
+ * it does not roll back the rest of the group: it is sent to a retry topic, or skipped when {@code kafka.retry.enabled}
+ * is off, as the record listeners do.
+ * When the record could not be sent to a retry topic, the processing of the batch stops: the offsets of the records
+ * processed before it are committed, and the consumer is positioned back on the failed record and the records after
+ * it, so that they are fetched again rather than lost.
+ */
+@Component
+public class GroupCommitExecutor {
+
+    private static final Logger log = LoggerFactory.getLogger(GroupCommitExecutor.class);
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private FailedRecordRouter failedRecordRouter;
+
+    @Value("${kafka.batch.transaction-size}")
+    private int transactionSize;
+
+    /**
+     * Processes the records. Must be called on the consumer thread.
+     *
+     * @return whether all the records were processed or routed, and can be acknowledged; when not, the consumer has
+     *          been positioned back on the records which were not processed
+     */
+    public <K, V> boolean execute(List<ConsumerRecord<K, V>> records, Consumer<?, ?> consumer,
+                                  java.util.function.Consumer<ConsumerRecord<K, V>> handler) {
+        try {
+            for (List<ConsumerRecord<K, V>> group : groups(records)) {
+                executeGroup(group, handler);
+            }
+            return true;
+        } catch (UnroutedRecordException e) {
+            rewind(records, e, consumer);
+            return false;
+        }
+    }
+
+    <K, V> List<List<ConsumerRecord<K, V>>> groups(List<ConsumerRecord<K, V>> records) {
+        List<List<ConsumerRecord<K, V>>> groups = new ArrayList<>();
+        List<ConsumerRecord<K, V>> group = new ArrayList<>();
+        Set<K> keys = new HashSet<>();
+        for (ConsumerRecord<K, V> record : records) {
+            boolean duplicateKey = record.key() != null && keys.contains(record.key());
+            if (group.size() >= transactionSize || duplicateKey) {
+                groups.add(group);
+                group = new ArrayList<>();
+                keys.clear();
+            }
+            group.add(record);
+            if (record.key() != null) {
+                keys.add(record.key());
+            }
+        }
+        if (!group.isEmpty()) {
+            groups.add(group);
+        }
+        return groups;
+    }
+
+    private <K, V> void executeGroup(List<ConsumerRecord<K, V>> group, java.util.function.Consumer<ConsumerRecord<K, V>> handler) {
+        try {
+            new TransactionTemplate(transactionManager).execute((TransactionStatus s) -> {
+                group.forEach(handler);
+                return null;
+            });
+        } catch (RuntimeException e) {
+            if (group.size() == 1) {
+                route(group.get(0), e);
+                return;
+            }
+            log.warn("Transaction for a group of " + group.size() + " records rolled back. Splitting the group.");
+            int half = group.size() / 2;
+            executeGroup(group.subList(0, half), handler);
+            executeGroup(group.subList(half, group.size()), handler);
+        }
+    }
+
+    private void route(ConsumerRecord<?, ?> record, RuntimeException e) {
+        try {
+            failedRecordRouter.route(record, e);
+        } catch (RuntimeException re) {
+            throw new UnroutedRecordException(record, re);
+        }
+    }
+
+    /**
+     * Commits the offsets of the records before the failed record, and seeks the partitions of the failed record and
+     * of the records after it back to the first of them.
+     */
+    private void rewind(List<? extends ConsumerRecord<?, ?>> records, UnroutedRecordException e, Consumer<?, ?> consumer) {
+        ConsumerRecord<?, ?> failed = e.record;
+        Map<TopicPartition, OffsetAndMetadata> commits = new LinkedHashMap<>();
+        Map<TopicPartition, Long> positions = new LinkedHashMap<>();
+        boolean processed = true;
+        for (ConsumerRecord<?, ?> record : records) {
+            processed &= record != failed;
+            TopicPartition topicPartition = new TopicPartition(record.topic(), record.partition());
+            if (processed) {
+                commits.put(topicPartition, new OffsetAndMetadata(record.offset() + 1));
+            } else {
+                positions.putIfAbsent(topicPartition, record.offset());
+            }
+        }
+        positions.forEach((topicPartition, offset) -> {
+            commits.put(topicPartition, new OffsetAndMetadata(offset));
+            consumer.seek(topicPartition, offset);
+        });
+        log.error("Error processing record " + failed.topic() + ":" + failed.partition() + "@" + failed.offset()
+                + ". Records are fetched again from offsets " + positions, e.getCause());
+        consumer.commitSync(commits);
+    }
+
+    private static class UnroutedRecordException extends RuntimeException {
+
+        private final ConsumerRecord<?, ?> record;
+
+        UnroutedRecordException(ConsumerRecord<?, ?> record, Throwable cause) {
+            super(cause);
+            this.record = record;
+        }
+    }
+}
@@ -1,20 +1,25 @@
 package com.redhat.cajun.navy.process.message.listeners;
 
+import java.io.IOException;
 import java.math.BigDecimal;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.TreeMap;
 import java.util.stream.Collectors;
+import javax.annotation.PostConstruct;
 
-import com.fasterxml.jackson.core.type.TypeReference;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.jayway.jsonpath.JsonPath;
+import com.redhat.cajun.navy.process.message.MessageDecoder;
+import com.redhat.cajun.navy.process.message.ProcessedMessageStore;
 import com.redhat.cajun.navy.process.message.model.DestinationLocations;
 import com.redhat.cajun.navy.process.message.model.IncidentReportedEvent;
 import com.redhat.cajun.navy.process.message.model.Message;
+import com.redhat.cajun.navy.process.signal.ProcessInstanceIdCache;
 import com.redhat.cajun.navy.rules.model.Destination;
 import com.redhat.cajun.navy.rules.model.Destinations;
 import com.redhat.cajun.navy.rules.model.Incident;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
 import org.jbpm.services.api.ProcessService;
 import org.kie.internal.KieInternalServices;
 import org.kie.internal.process.CorrelationKey;
@@ -40,6 +45,12 @@ public class IncidentReportedEventMessageListener {
 
     private static final String TYPE_INCIDENT_REPORTED_EVENT = "IncidentReportedEvent";
 
+    private static final Map<String, Class<?>> BODY_TYPES = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+
+    static {
+        BODY_TYPES.put(TYPE_INCIDENT_REPORTED_EVENT, IncidentReportedEvent.class);
+    }
+
     private CorrelationKeyFactory correlationKeyFactory = KieInternalServices.Factory.get().newCorrelationKeyFactory();
 
     @Autowired
@@ -48,6 +59,9 @@ public class IncidentReportedEventMessageListener {
     @Autowired
     private PlatformTransactionManager transactionManager;
 
+    @Autowired
+    private ProcessInstanceIdCache processInstanceIdCache;
+
     @Value("${incident.deployment.id}")
     private String deploymentId;
 
@@ -60,24 +74,111 @@ public class IncidentReportedEventMessageListener {
     @Autowired
     private DestinationLocations destinationLocations;
 
-    @KafkaListener(topics = "${listener.destination.incident-reported-event}")
-    public void processMessage(@Payload String messageAsJson, @Header(KafkaHeaders.RECEIVED_MESSAGE_KEY) String key,
+    @Autowired
+    private MessageDecoder messageDecoder;
+
+    @Autowired
+    private ProcessedMessageStore processedMessageStore;
+
+    @Autowired
+    private MessageTypeRecordFilterStrategy recordFilterStrategy;
+
+    @Autowired
+    private GroupCommitExecutor groupCommitExecutor;
+
+    @Autowired
+    private KeyedRecordDispatcher keyedRecordDispatcher;
+
+    @Autowired
+    private ListenerConcurrencyController listenerConcurrencyController;
+
+    @Autowired
+    private SaturationMonitor saturationMonitor;
+
+    @Autowired
+    private FailedRecordRouter failedRecordRouter;
+
+    @Autowired
+    private OffsetTracker offsetTracker;
+
+    @Value("${listener.destination.incident-reported-event}")
+    private String destination;
+
+    @PostConstruct
+    public void init() {
+        recordFilterStrategy.register(destination, BODY_TYPES);
+    }
+
+    @KafkaListener(id = "incident-reported-event", idIsGroup = false, topics = "${listener.destination.incident-reported-event}",
+            concurrency = "${kafka.concurrency.incident-reported-event}")
+    public void processMessage(@Payload Object payload, @Header(KafkaHeaders.RECEIVED_MESSAGE_KEY) String key,
                                @Header(KafkaHeaders.RECEIVED_TOPIC) String topic,
-                               @Header(KafkaHeaders.RECEIVED_PARTITION_ID) int partition, Acknowledgment ack) {
+                               @Header(KafkaHeaders.RECEIVED_PARTITION_ID) int partition,
+                               @Header(KafkaHeaders.OFFSET) long offset, Acknowledgment ack, Consumer<?, ?> consumer) {
 
-        if (!accept(messageAsJson)) {
+        handleMessage(payload, key, topic, partition);
+        offsetTracker.acknowledge(topic, partition, offset, ack, consumer);
+    }
+
+    @KafkaListener(id = "incident-reported-event-batch", idIsGroup = false, topics = "${listener.destination.incident-reported-event}",
+            concurrency = "${kafka.concurrency.incident-reported-event}",
+            containerFactory = "batchKafkaListenerContainerFactory")
+    public void processMessages(List<ConsumerRecord<String, Object>> records, Acknowledgment ack, Consumer<?, ?> consumer) {
+        if (groupCommitExecutor.execute(records, consumer, r -> handleMessage(r.value(), r.key(), r.topic(), r.partition()))) {
             ack.acknowledge();
+        }
+    }
+
+    @KafkaListener(id = "incident-reported-event-parallel", idIsGroup = false, topics = "${listener.destination.incident-reported-event}",
+            concurrency = "${kafka.concurrency.incident-reported-event}",
+            containerFactory = "parallelKafkaListenerContainerFactory")
+    public void dispatchMessages(List<ConsumerRecord<String, Object>> records, Consumer<?, ?> consumer) {
+        keyedRecordDispatcher.dispatch(records, consumer, ConsumerRecord::key, r -> handleMessage(r.value(), r.key(), r.topic(), r.partition()));
+    }
+
+    @KafkaListener(id = "incident-reported-event-retry", idIsGroup = false,
+            topics = "#{@failedRecordRouter.retryTopics('${listener.destination.incident-reported-event}')}",
+            containerFactory = "retryKafkaListenerContainerFactory")
+    public void retryMessage(ConsumerRecord<String, Object> record, Acknowledgment ack, Consumer<?, ?> consumer) {
+        if (!failedRecordRouter.isDue(record, consumer)) {
             return;
         }
-        log.debug("Processing 'IncidentReportedEvent' message for incident " + key + " from topic:partition " + topic + ":" + partition);
-        doProcessMessage(messageAsJson, ack);
+        handleMessage(record.value(), record.key(), record.topic(), record.partition());
+        offsetTracker.acknowledge(record.topic(), record.partition(), record.offset(), ack, consumer);
     }
 
-    private void doProcessMessage(String messageAsJson, Acknowledgment ack) {
+    private void handleMessage(Object payload, String key, String topic, int partition) {
+        long start = System.nanoTime();
+        saturationMonitor.handlerStarted();
+        try {
+            doHandleMessage(payload, key, topic, partition);
+        } finally {
+            saturationMonitor.handlerFinished();
+            listenerConcurrencyController.recordLatency("incident-reported-event", System.nanoTime() - start);
+        }
+    }
+
+    private void doHandleMessage(Object payload, String key, String topic, int partition) {
         Message<IncidentReportedEvent> message;
         try {
+            message = messageDecoder.decode(payload, BODY_TYPES);
+        } catch (IOException e) {
+            log.error("Error processing msg " + MessageDecoder.asString(payload), e);
+            throw new IllegalStateException(e.getMessage(), e);
+        }
+        if (message == null) {
+            return;
+        }
+        if (processedMessageStore.isProcessed(message.getId())) {
+            log.debug("Message " + message.getId() + " was processed already. Message is ignored.");
+            return;
+        }
+        log.debug("Processing 'IncidentReportedEvent' message for incident " + key + " from topic:partition " + topic + ":" + partition);
+        doProcessMessage(message);
+    }
 
-            message = new ObjectMapper().readValue(messageAsJson, new TypeReference<Message<IncidentReportedEvent>>() {});
+    private void doProcessMessage(Message<IncidentReportedEvent> message) {
+        try {
 
             String incidentId = message.getBody().getId();
 
@@ -110,26 +211,13 @@ public class IncidentReportedEventMessageListener {
             template.execute((TransactionStatus s) -> {
                 Long pi = processService.startProcess(deploymentId, processId, correlationKey, parameters);
                 log.debug("Started incident process for incident " + incidentId + ". ProcessInstanceId = " + pi);
+                processInstanceIdCache.put(incidentId, pi);
+                processedMessageStore.markProcessed(message.getId());
                 return null;
             });
-            ack.acknowledge();
         } catch (Exception e) {
-            log.error("Error processing msg " + messageAsJson, e);
+            log.error("Error processing msg " + message.getId(), e);
             throw new IllegalStateException(e.getMessage(), e);
         }
     }
-
-    private boolean accept(String messageAsJson) {
-        try {
-            String messageType = JsonPath.read(messageAsJson, "$.messageType");
-            if (TYPE_INCIDENT_REPORTED_EVENT.equalsIgnoreCase(messageType) ) {
-                return true;
-            } else {
-                log.debug("Message with type '" + messageType + "' is ignored");
-            }
-        } catch (Exception e) {
-            log.warn("Unexpected message without 'messageType' field.");
-        }
-        return false;
-    }
 }
@@ -0,0 +1,147 @@
+package com.redhat.cajun.navy.process.message.listeners;
+
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+
+/**
+ * Hands records over from the Kafka consumer threads to a bounded pool of worker lanes.
+ *
+ * Records are routed to a lane by key (the incidentId), so records for the same incident are processed in order while
+ * records for different incidents run in parallel, even when they come from the same partition.
+ * When a lane is full, the consumer thread blocks until there is room again.
+ *
+ * Records discarded by the {@link MessageTypeRecordFilterStrategy} are not dispatched, but are tracked as processed, so
+ * that the watermark of their partition moves past them.
+ * Offsets are tracked by the {@link OffsetTracker}, and committed from the consumer thread up to the lowest record of
+ * each partition which is not fully processed yet. Failed records are handed over to the {@link FailedRecordRouter},
+ * which skips them when {@code kafka.retry.enabled} is off, as the record listeners do. A failed record which could not
+ * be sent to a retry topic holds back the watermark of its partition, and the records of the partition after it are not
+ * processed: the {@link OffsetTracker} positions the consumer back on it, so that it is fetched again rather than lost.
+ */
+@Component
+public class KeyedRecordDispatcher {
+
+    private static final Logger log = LoggerFactory.getLogger(KeyedRecordDispatcher.class);
+
+    @Autowired
+    private FailedRecordRouter failedRecordRouter;
+
+    @Autowired
+    private OffsetTracker offsetTracker;
+
+    @Autowired
+    private MessageTypeRecordFilterStrategy recordFilterStrategy;
+
+    @Value("${kafka.parallel.workers}")
+    private int workers;
+
+    @Value("${kafka.parallel.queue-capacity}")
+    private int queueCapacity;
+
+    private ThreadPoolExecutor[] lanes;
+
+    @PostConstruct
+    public void init() {
+        int size = workers > 0 ? workers : Runtime.getRuntime().availableProcessors();
+        lanes = new ThreadPoolExecutor[size];
+        for (int i = 0; i < size; i++) {
+            lanes[i] = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(queueCapacity),
+                    new CustomizableThreadFactory("kafka-worker-" + i + "-"), KeyedRecordDispatcher::enqueue);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        for (ThreadPoolExecutor lane : lanes) {
+            lane.shutdown();
+        }
+        for (ThreadPoolExecutor lane : lanes) {
+            if (!lane.awaitTermination(30, TimeUnit.SECONDS)) {
+                log.warn("Worker lane did not terminate in time. Records in flight will be redelivered.");
+            }
+        }
+    }
+
+    public <K, V> void dispatch(List<ConsumerRecord<K, V>> records, Consumer<?, ?> consumer, Function<ConsumerRecord<K, V>, String> routingKey,
+                                java.util.function.Consumer<ConsumerRecord<K, V>> handler) {
+        for (ConsumerRecord<K, V> record : records) {
+            OffsetTracker.InFlightRecord inFlight = offsetTracker.dispatched(record);
+            if (recordFilterStrategy.discards(record)) {
+                inFlight.completed();
+                continue;
+            }
+            lane(routingKey.apply(record)).execute(() -> {
+                if (inFlight.isHeldBack()) {
+                    return;
+                }
+                boolean processed = false;
+                try {
+                    handler.accept(record);
+                    processed = true;
+                } catch (RuntimeException e) {
+                    processed = routeFailed(record, e);
+                } finally {
+                    if (processed) {
+                        inFlight.completed();
+                    } else {
+                        inFlight.failed();
+                    }
+                }
+            });
+        }
+        offsetTracker.commitIfDue(consumer);
+    }
+
+    /**
+     * Commits the offsets of the partitions assigned to the consumer. Must be called on the consumer thread.
+     */
+    public void commit(Consumer<?, ?> consumer) {
+        offsetTracker.commitAsync(consumer);
+    }
+
+    /**
+     * @return whether the failed record was routed, or skipped when retries are off
+     */
+    private boolean routeFailed(ConsumerRecord<?, ?> record, RuntimeException e) {
+        try {
+            failedRecordRouter.route(record, e);
+            return true;
+        } catch (RuntimeException re) {
+            log.error("Error routing failed record " + record.topic() + ":" + record.partition() + "@" + record.offset()
+                    + ". Record is fetched again.", re);
+            return false;
+        }
+    }
+
+    private ThreadPoolExecutor lane(String key) {
+        return lanes[Math.floorMod(Objects.hashCode(key), lanes.length)];
+    }
+
+    private static void enqueue(Runnable task, ThreadPoolExecutor executor) {
+        if (executor.isShutdown()) {
+            throw new RejectedExecutionException("Worker lane is shut down");
+        }
+        try {
+            executor.getQueue().put(task);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RejectedExecutionException(e);
+        }
+    }
+}
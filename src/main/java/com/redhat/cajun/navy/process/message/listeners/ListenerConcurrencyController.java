@@ -0,0 +1,259 @@
+package com.redhat.cajun.navy.process.message.listeners;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import com.redhat.cajun.navy.process.ListenerMode;
+import org.apache.kafka.common.Metric;
+import org.apache.kafka.common.MetricName;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.env.Environment;
+import org.springframework.kafka.config.KafkaListenerEndpointRegistry;
+import org.springframework.kafka.listener.ConcurrentMessageListenerContainer;
+import org.springframework.kafka.listener.MessageListenerContainer;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+
+/**
+ * Adjusts the concurrency of the listener containers to the consumer lag and the handler latency.
+ *
+ * Every {@code kafka.autoscale.interval} milliseconds, the container of each listener in {@code kafka.autoscale.listeners}
+ * gets one more consumer when its lag exceeds {@code kafka.autoscale.lag-high}, or exceeds
+ * {@code kafka.autoscale.lag-low} while messages take more than {@code kafka.autoscale.latency-high} milliseconds to
+ * handle. It gets one consumer less when the lag is back under {@code kafka.autoscale.lag-low}. The concurrency stays
+ * within the {@code kafka.concurrency.<listener>.min} and {@code .max} bounds, and changes at most once per
+ * {@code kafka.autoscale.cooldown}.
+ *
+ * The container is restarted with the new concurrency, which rebalances the consumer group. Records in flight are
+ * redelivered, and skipped as duplicates if they were processed. The restart holds the lock of the listener in the
+ * {@link CatchUpController}, so that it does not race a switch to or from the catch-up mode.
+ */
+@Component
+public class ListenerConcurrencyController {
+
+    private static final Logger log = LoggerFactory.getLogger(ListenerConcurrencyController.class);
+
+    private static final String RECORDS_LAG_MAX = "records-lag-max";
+
+    @Autowired
+    private KafkaListenerEndpointRegistry kafkaListenerEndpointRegistry;
+
+    @Autowired
+    private Environment environment;
+
+    @Autowired
+    private CatchUpController catchUpController;
+
+    @Value("${kafka.listener.mode}")
+    private String listenerMode;
+
+    @Value("${kafka.autoscale.enabled}")
+    private boolean enabled;
+
+    @Value("${kafka.autoscale.listeners}")
+    private String listenerIds;
+
+    @Value("${kafka.autoscale.interval}")
+    private long interval;
+
+    @Value("${kafka.autoscale.cooldown}")
+    private long cooldown;
+
+    @Value("${kafka.autoscale.lag-high}")
+    private long lagHigh;
+
+    @Value("${kafka.autoscale.lag-low}")
+    private long lagLow;
+
+    @Value("${kafka.autoscale.latency-high}")
+    private long latencyHigh;
+
+    private final Map<String, ListenerScaling> listeners = new LinkedHashMap<>();
+
+    private ScheduledExecutorService scaler;
+
+    @PostConstruct
+    public void init() {
+        for (String listenerId : StringUtils.commaDelimitedListToSet(StringUtils.trimAllWhitespace(listenerIds))) {
+            if (listenerId.isEmpty()) {
+                continue;
+            }
+            int min = environment.getRequiredProperty("kafka.concurrency." + listenerId + ".min", Integer.class);
+            int max = environment.getRequiredProperty("kafka.concurrency." + listenerId + ".max", Integer.class);
+            int concurrency = environment.getRequiredProperty("kafka.concurrency." + listenerId, Integer.class);
+            listeners.put(listenerId, new ListenerScaling(min, max, concurrency));
+        }
+        if (!enabled) {
+            return;
+        }
+        scaler = Executors.newSingleThreadScheduledExecutor(new CustomizableThreadFactory("listener-concurrency-"));
+        scaler.scheduleWithFixedDelay(this::adjust, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (scaler != null) {
+            scaler.shutdownNow();
+        }
+    }
+
+    /**
+     * Records the time it took the listener to handle a message.
+     */
+    public void recordLatency(String listenerId, long nanos) {
+        ListenerScaling scaling = listeners.get(listenerId);
+        if (scaling != null) {
+            scaling.latencyNanos.add(nanos);
+            scaling.handled.increment();
+        }
+    }
+
+    public Set<String> listenerIds() {
+        return listeners.keySet();
+    }
+
+    public int concurrency(String listenerId) {
+        return listeners.get(listenerId).concurrency;
+    }
+
+    public long lag(String listenerId) {
+        return listeners.get(listenerId).lag;
+    }
+
+    public long scaleUpCount(String listenerId) {
+        return listeners.get(listenerId).scaleUps.sum();
+    }
+
+    public long scaleDownCount(String listenerId) {
+        return listeners.get(listenerId).scaleDowns.sum();
+    }
+
+    void adjust() {
+        ListenerMode mode = ListenerMode.from(listenerMode);
+        listeners.forEach((listenerId, scaling) -> {
+            try {
+                // the mode is resolved under the lock, so that the container is not restarted while it is switched
+                catchUpController.withListenerLock(listenerId, () -> {
+                    // a listener which is catching up runs in the container of the catch-up mode
+                    ListenerMode containerMode = catchUpController.isCatchingUp(listenerId) ? catchUpController.mode(listenerId) : mode;
+                    adjust(listenerId, scaling, kafkaListenerEndpointRegistry.getListenerContainer(containerMode.containerId(listenerId)));
+                });
+            } catch (RuntimeException e) {
+                log.error("Error adjusting the concurrency of listener '" + listenerId + "'", e);
+            }
+        });
+    }
+
+    private void adjust(String listenerId, ListenerScaling scaling, MessageListenerContainer container) {
+        long handled = scaling.handled.sumThenReset();
+        long latencyNanos = scaling.latencyNanos.sumThenReset();
+        // the lag of a paused container says nothing about its capacity
+        if (!(container instanceof ConcurrentMessageListenerContainer) || !container.isRunning() || container.isPauseRequested()) {
+            return;
+        }
+        ConcurrentMessageListenerContainer<?, ?> concurrentContainer = (ConcurrentMessageListenerContainer<?, ?>) container;
+        int current = concurrentContainer.getConcurrency();
+        long lag = lag(concurrentContainer.metrics());
+        long latency = handled == 0 ? 0 : TimeUnit.NANOSECONDS.toMillis(latencyNanos / handled);
+        scaling.concurrency = current;
+        scaling.lag = lag;
+        long now = System.currentTimeMillis();
+        if (now - scaling.changedAt < cooldown) {
+            return;
+        }
+        int target = scaling.target(current, lag, latency, lagHigh, lagLow, latencyHigh);
+        if (target == current) {
+            return;
+        }
+        log.info("Changing concurrency of listener '" + listenerId + "' from " + current + " to " + target + ". Lag " + lag
+                + ", latency " + latency + " ms.");
+        restart(concurrentContainer, target);
+        scaling.concurrency = target;
+        scaling.changedAt = now;
+        if (target > current) {
+            scaling.scaleUps.increment();
+        } else {
+            scaling.scaleDowns.increment();
+        }
+    }
+
+    void restart(ConcurrentMessageListenerContainer<?, ?> container, int concurrency) {
+        container.stop();
+        container.setConcurrency(concurrency);
+        container.start();
+    }
+
+    /**
+     * @return the sum of the maximum lag of the consumers of the container
+     */
+    static long lag(Map<String, ? extends Map<MetricName, ? extends Metric>> metrics) {
+        long lag = 0;
+        for (Map<MetricName, ? extends Metric> consumerMetrics : metrics.values()) {
+            for (Map.Entry<MetricName, ? extends Metric> metric : consumerMetrics.entrySet()) {
+                // the per topic and partition metrics have the same name
+                if (!RECORDS_LAG_MAX.equals(metric.getKey().name()) || metric.getKey().tags().containsKey("topic")) {
+                    continue;
+                }
+                Object value = metric.getValue().metricValue();
+                if (value instanceof Double && !((Double) value).isNaN() && !((Double) value).isInfinite()) {
+                    lag += ((Double) value).longValue();
+                }
+            }
+        }
+        return lag;
+    }
+
+    static class ListenerScaling {
+
+        private final int min;
+
+        private final int max;
+
+        private volatile int concurrency;
+
+        private volatile long lag;
+
+        private volatile long changedAt;
+
+        private final LongAdder latencyNanos = new LongAdder();
+
+        private final LongAdder handled = new LongAdder();
+
+        private final LongAdder scaleUps = new LongAdder();
+
+        private final LongAdder scaleDowns = new LongAdder();
+
+        ListenerScaling(int min, int max, int concurrency) {
+            this.min = min;
+            this.max = max;
+            this.concurrency = concurrency;
+        }
+
+        int target(int current, long lag, long latency, long lagHigh, long lagLow, long latencyHigh) {
+            if (current < min) {
+                return min;
+            }
+            if (current > max) {
+                return max;
+            }
+            if (current < max && (lag > lagHigh || (lag > lagLow && latency > latencyHigh))) {
+                return current + 1;
+            }
+            if (current > min && lag <= lagLow) {
+                return current - 1;
+            }
+            return current;
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package com.redhat.cajun.navy.process.message.listeners;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.redhat.cajun.navy.process.message.KafkaRecordHeaders;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.kafka.listener.adapter.RecordFilterStrategy;
+import org.springframework.stereotype.Component;
+
+/**
+ * Discards records whose {@code messageType} header is not accepted by any listener of the topic, without reading the
+ * payload.
+ *
+ * Listeners register the message types they accept per topic. Records without a {@code messageType} header, and
+ * records from topics nobody registered for, are passed on to the listeners, which fall back to the payload.
+ *
+ * Discarded records are acknowledged like the records processed by the listeners, so that the committed offsets do
+ * not stay behind them: by the container for the record and batch listeners, and by the {@link OffsetTracker} for the
+ * records tracked by it. The parallel listeners filter the records in the {@link KeyedRecordDispatcher}.
+ */
+@Component
+public class MessageTypeRecordFilterStrategy implements RecordFilterStrategy<String, Object> {
+
+    private static final Logger log = LoggerFactory.getLogger(MessageTypeRecordFilterStrategy.class);
+
+    private final Map<String, Map<String, Class<?>>> acceptedTypes = new ConcurrentHashMap<>();
+
+    public void register(String topic, Map<String, Class<?>> bodyTypes) {
+        acceptedTypes.computeIfAbsent(topic, t -> new TreeMap<>(String.CASE_INSENSITIVE_ORDER)).putAll(bodyTypes);
+    }
+
+    @Override
+    public boolean filter(ConsumerRecord<String, Object> consumerRecord) {
+        return discards(consumerRecord);
+    }
+
+    public boolean discards(ConsumerRecord<?, ?> consumerRecord) {
+        Map<String, Class<?>> types = acceptedTypes.get(consumerRecord.topic());
+        if (types == null) {
+            return false;
+        }
+        String messageType = KafkaRecordHeaders.value(consumerRecord.headers(), KafkaRecordHeaders.MESSAGE_TYPE);
+        if (messageType == null || types.containsKey(messageType)) {
+            return false;
+        }
+        log.debug("Message with type '" + messageType + "' is ignored");
+        return true;
+    }
+}
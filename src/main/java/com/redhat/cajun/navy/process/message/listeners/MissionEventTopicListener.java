@@ -1,33 +1,30 @@
 package com.redhat.cajun.navy.process.message.listeners;
 
-import java.util.Arrays;
-import java.util.Optional;
-
-import com.fasterxml.jackson.core.type.TypeReference;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.jayway.jsonpath.JsonPath;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import javax.annotation.PostConstruct;
+
+import com.redhat.cajun.navy.process.message.MessageDecoder;
+import com.redhat.cajun.navy.process.message.ProcessedMessageStore;
 import com.redhat.cajun.navy.process.message.model.Message;
 import com.redhat.cajun.navy.process.message.model.MissionStartedEvent;
 import com.redhat.cajun.navy.process.message.model.VictimDeliveredEvent;
 import com.redhat.cajun.navy.process.message.model.VictimPickedUpEvent;
-import org.jbpm.services.api.ProcessService;
-import org.jbpm.services.api.query.QueryService;
-import org.kie.api.runtime.process.ProcessInstance;
-import org.kie.internal.KieInternalServices;
-import org.kie.internal.process.CorrelationKey;
-import org.kie.internal.process.CorrelationKeyFactory;
+import com.redhat.cajun.navy.process.signal.ProcessSignaller;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.kafka.annotation.KafkaListener;
 import org.springframework.kafka.support.Acknowledgment;
 import org.springframework.kafka.support.KafkaHeaders;
 import org.springframework.messaging.handler.annotation.Header;
 import org.springframework.messaging.handler.annotation.Payload;
 import org.springframework.stereotype.Component;
-import org.springframework.transaction.PlatformTransactionManager;
-import org.springframework.transaction.TransactionStatus;
-import org.springframework.transaction.support.TransactionTemplate;
 
 @Component
 public class MissionEventTopicListener {
@@ -37,171 +34,173 @@ public class MissionEventTopicListener {
     private static final String TYPE_MISSION_STARTED_EVENT = "MissionStartedEvent";
     private static final String TYPE_MISSION_PICKEDUP_EVENT = "MissionPickedUpEvent";
     private static final String TYPE_MISSION_COMPLETED_EVENT = "MissionCompletedEvent";
-    private static final String[] ACCEPTED_MESSAGE_TYPES = {TYPE_MISSION_STARTED_EVENT, TYPE_MISSION_PICKEDUP_EVENT, TYPE_MISSION_COMPLETED_EVENT};
+
+    private static final Map<String, Class<?>> BODY_TYPES = new HashMap<>();
+
+    static {
+        BODY_TYPES.put(TYPE_MISSION_STARTED_EVENT, MissionStartedEvent.class);
+        BODY_TYPES.put(TYPE_MISSION_PICKEDUP_EVENT, VictimPickedUpEvent.class);
+        BODY_TYPES.put(TYPE_MISSION_COMPLETED_EVENT, VictimDeliveredEvent.class);
+    }
 
     private static final String SIGNAL_MISSION_STARTED = "MissionStarted";
     private static final String SIGNAL_VICTIM_PICKEDUP = "VictimPickedUp";
     private static final String SIGNAL_VICTIM_DELIVERED = "VictimDelivered";
 
-    private CorrelationKeyFactory correlationKeyFactory = KieInternalServices.Factory.get().newCorrelationKeyFactory();
+    @Autowired
+    private ProcessSignaller processSignaller;
+
+    @Autowired
+    private MessageDecoder messageDecoder;
 
     @Autowired
-    private ProcessService processService;
+    private ProcessedMessageStore processedMessageStore;
 
     @Autowired
-    private QueryService queryService;
+    private MessageTypeRecordFilterStrategy recordFilterStrategy;
 
     @Autowired
-    private PlatformTransactionManager transactionManager;
+    private GroupCommitExecutor groupCommitExecutor;
 
-    @KafkaListener(topics = "${listener.destination.mission-event}")
-    public void processMessage(@Payload String messageAsJson,
+    @Autowired
+    private KeyedRecordDispatcher keyedRecordDispatcher;
+
+    @Autowired
+    private ListenerConcurrencyController listenerConcurrencyController;
+
+    @Autowired
+    private SaturationMonitor saturationMonitor;
+
+    @Autowired
+    private FailedRecordRouter failedRecordRouter;
+
+    @Autowired
+    private OffsetTracker offsetTracker;
+
+    @Value("${listener.destination.mission-event}")
+    private String destination;
+
+    @PostConstruct
+    public void init() {
+        recordFilterStrategy.register(destination, BODY_TYPES);
+    }
+
+    @KafkaListener(id = "mission-event", idIsGroup = false, topics = "${listener.destination.mission-event}",
+            concurrency = "${kafka.concurrency.mission-event}")
+    public void processMessage(@Payload Object payload,
                                @Header(KafkaHeaders.RECEIVED_TOPIC) String topic,
-                               @Header(KafkaHeaders.RECEIVED_PARTITION_ID) int partition, Acknowledgment ack) {
-
-        messageType(messageAsJson, ack).ifPresent(s -> {
-            switch (s) {
-                case TYPE_MISSION_STARTED_EVENT:
-                    processMissionStartedEvent(messageAsJson, topic, partition, ack);
-                    break;
-                case TYPE_MISSION_PICKEDUP_EVENT:
-                    processVictimPickedUpEvent(messageAsJson, topic, partition, ack);
-                    break;
-                case TYPE_MISSION_COMPLETED_EVENT:
-                    processVictimDeliveredEvent(messageAsJson, topic, partition, ack);
-                    break;
-            }
-        });
+                               @Header(KafkaHeaders.RECEIVED_PARTITION_ID) int partition,
+                               @Header(KafkaHeaders.OFFSET) long offset, Acknowledgment ack, Consumer<?, ?> consumer) {
+
+        handleMessage(payload, topic, partition);
+        offsetTracker.acknowledge(topic, partition, offset, ack, consumer);
+    }
+
+    @KafkaListener(id = "mission-event-batch", idIsGroup = false, topics = "${listener.destination.mission-event}",
+            concurrency = "${kafka.concurrency.mission-event}",
+            containerFactory = "batchKafkaListenerContainerFactory")
+    public void processMessages(List<ConsumerRecord<String, Object>> records, Acknowledgment ack, Consumer<?, ?> consumer) {
+        if (groupCommitExecutor.execute(records, consumer, r -> handleMessage(r.value(), r.topic(), r.partition()))) {
+            ack.acknowledge();
+        }
+    }
+
+    @KafkaListener(id = "mission-event-parallel", idIsGroup = false, topics = "${listener.destination.mission-event}",
+            concurrency = "${kafka.concurrency.mission-event}",
+            containerFactory = "parallelKafkaListenerContainerFactory")
+    public void dispatchMessages(List<ConsumerRecord<String, Object>> records, Consumer<?, ?> consumer) {
+        keyedRecordDispatcher.dispatch(records, consumer, ConsumerRecord::key, r -> handleMessage(r.value(), r.topic(), r.partition()));
+    }
+
+    @KafkaListener(id = "mission-event-retry", idIsGroup = false,
+            topics = "#{@failedRecordRouter.retryTopics('${listener.destination.mission-event}')}",
+            containerFactory = "retryKafkaListenerContainerFactory")
+    public void retryMessage(ConsumerRecord<String, Object> record, Acknowledgment ack, Consumer<?, ?> consumer) {
+        if (!failedRecordRouter.isDue(record, consumer)) {
+            return;
+        }
+        handleMessage(record.value(), record.topic(), record.partition());
+        offsetTracker.acknowledge(record.topic(), record.partition(), record.offset(), ack, consumer);
+    }
+
+    private void handleMessage(Object payload, String topic, int partition) {
+        long start = System.nanoTime();
+        saturationMonitor.handlerStarted();
+        try {
+            doHandleMessage(payload, topic, partition);
+        } finally {
+            saturationMonitor.handlerFinished();
+            listenerConcurrencyController.recordLatency("mission-event", System.nanoTime() - start);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void doHandleMessage(Object payload, String topic, int partition) {
+        Message<?> message;
+        try {
+            message = messageDecoder.decode(payload, BODY_TYPES);
+        } catch (IOException e) {
+            log.error("Error processing msg " + MessageDecoder.asString(payload), e);
+            throw new IllegalStateException(e.getMessage(), e);
+        }
+        if (message == null) {
+            return;
+        }
+        if (processedMessageStore.isProcessed(message.getId())) {
+            log.debug("Message " + message.getId() + " was processed already. Message is ignored.");
+            return;
+        }
+        switch (message.getMessageType()) {
+            case TYPE_MISSION_STARTED_EVENT:
+                processMissionStartedEvent((Message<MissionStartedEvent>) message, topic, partition);
+                break;
+            case TYPE_MISSION_PICKEDUP_EVENT:
+                processVictimPickedUpEvent((Message<VictimPickedUpEvent>) message, topic, partition);
+                break;
+            case TYPE_MISSION_COMPLETED_EVENT:
+                processVictimDeliveredEvent((Message<VictimDeliveredEvent>) message, topic, partition);
+                break;
+        }
     }
 
-    private void processMissionStartedEvent(String messageAsJson, String topic, int partition, Acknowledgment ack) {
-        Message<MissionStartedEvent> message;
+    private void processMissionStartedEvent(Message<MissionStartedEvent> message, String topic, int partition) {
         try {
-            message = new ObjectMapper().readValue(messageAsJson, new TypeReference<Message<MissionStartedEvent>>() {});
             String incidentId = message.getBody().getIncidentId();
             log.debug("Processing '" + TYPE_MISSION_STARTED_EVENT + "' message for incident '" + incidentId + "' from topic:partition " + topic + ":" + partition);
-            signalProcess(incidentId, SIGNAL_MISSION_STARTED);
-            ack.acknowledge();
+            signalProcess(incidentId, SIGNAL_MISSION_STARTED, message.getId());
        } catch (Exception e) {
-            log.error("Error processing msg " + messageAsJson, e);
+            log.error("Error processing msg " + message.getId(), e);
             throw new IllegalStateException(e.getMessage(), e);
         }
     }
 
-    private void processVictimPickedUpEvent(String messageAsJson, String topic, int partition, Acknowledgment ack) {
-        Message<VictimPickedUpEvent> message;
+    private void processVictimPickedUpEvent(Message<VictimPickedUpEvent> message, String topic, int partition) {
         try {
-            message = new ObjectMapper().readValue(messageAsJson, new TypeReference<Message<VictimPickedUpEvent>>() {});
             String incidentId = message.getBody().getIncidentId();
             log.debug("Processing '" + TYPE_MISSION_PICKEDUP_EVENT + "' message for incident '" + incidentId + "' from topic:partition " + topic + ":" + partition);
-            signalProcess(incidentId, SIGNAL_VICTIM_PICKEDUP);
-            ack.acknowledge();
+            signalProcess(incidentId, SIGNAL_VICTIM_PICKEDUP, message.getId());
         } catch (Exception e) {
-            log.error("Error processing msg " + messageAsJson, e);
+            log.error("Error processing msg " + message.getId(), e);
             throw new IllegalStateException(e.getMessage(), e);
         }
     }
 
-    private void processVictimDeliveredEvent(String messageAsJson, String topic, int partition, Acknowledgment ack) {
-        Message<VictimDeliveredEvent> message;
+    private void processVictimDeliveredEvent(Message<VictimDeliveredEvent> message, String topic, int partition) {
         try {
-            message = new ObjectMapper().readValue(messageAsJson, new TypeReference<Message<VictimDeliveredEvent>>() {});
             String incidentId = message.getBody().getIncidentId();
             log.debug("Processing '" + TYPE_MISSION_COMPLETED_EVENT + "' message for incident '" + incidentId + "' from topic:partition " + topic + ":" + partition);
-            signalProcess(incidentId, SIGNAL_VICTIM_DELIVERED);
-            ack.acknowledge();
+            signalProcess(incidentId, SIGNAL_VICTIM_DELIVERED, message.getId());
         } catch (Exception e) {
-            log.error("Error processing msg " + messageAsJson, e);
+            log.error("Error processing msg " + message.getId(), e);
             throw new IllegalStateException(e.getMessage(), e);
         }
     }
 
-    private void signalProcess(String incidentId, String signal) throws Exception {
+    private void signalProcess(String incidentId, String signal, String messageId) {
         if (incidentId == null || incidentId.isEmpty()) {
             log.warn("Message contains no value for incidentId. Message cannot be processed!");
             return;
         }
-        final IntegerHolder holder = new IntegerHolder(5);
-        while (holder.counting()) {
-            TransactionTemplate template = new TransactionTemplate(transactionManager);
-            template.execute((TransactionStatus s) -> {
-                // check if process is waiting on signal
-                if (!SignalsByCorrelationKeyHelper.waitingForSignal(queryService, incidentId, signal)) {
-                    log.warn("Try " + holder.getValue() + " - Process instance with correlationKey '" + incidentId + "' is not waiting for signal '" + signal + "'.");
-                    holder.add();
-                    return null;
-                }
-                holder.reset();
-                return null;
-            });
-            if (holder.limit()) {
-                log.warn("Process instance with correlationKey '" + incidentId + "' is not waiting for signal '" + signal + "'. Process instance is not signaled.");
-            } else if (holder.counting()) {
-                log.info("Sleeping for 300 ms");
-                Thread.sleep(300);
-            }
-        }
-
-        CorrelationKey correlationKey = correlationKeyFactory.newCorrelationKey(incidentId);
-        new TransactionTemplate(transactionManager).execute((TransactionStatus s) -> {
-            ProcessInstance processInstance = processService.getProcessInstance(correlationKey);
-            if (processInstance == null) {
-                log.warn("Process instance with correlationKey '" + incidentId + "' not found.");
-                return null;
-            }
-            processService.signalProcessInstance(processInstance.getId(), signal, null);
-            return null;
-        });
-    }
-
-    private Optional<String> messageType(String messageAsJson, Acknowledgment ack) {
-        try {
-            String messageType = JsonPath.read(messageAsJson, "$.messageType");
-            if (Arrays.asList(ACCEPTED_MESSAGE_TYPES).contains(messageType)) {
-                return Optional.of(messageType);
-            }
-            log.debug("Message with type '" + messageType + "' is ignored");
-        } catch (Exception e) {
-            log.warn("Unexpected message without 'messageType' field.");
-        }
-        ack.acknowledge();
-        return Optional.empty();
-    }
-
-    public static class IntegerHolder {
-
-        private int value;
-
-        private int limit;
-
-        public IntegerHolder(int limit) {
-            value = 1;
-            this.limit = limit;
-        }
-
-        public void add() {
-            value++;
-        }
-
-        public int getValue() {
-            return value;
-        }
-
-        public void reset() {
-            value = 0;
-        }
-
-        public boolean limit() {
-            return value > limit;
-        }
-
-        public boolean counting() {
-            return value > 0 && value <= limit;
-        }
-
-        public boolean done() {
-            return value == 0;
-        }
-
+        processSignaller.signal(incidentId, signal, null, messageId);
     }
 }
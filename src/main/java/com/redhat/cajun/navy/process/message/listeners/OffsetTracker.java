@@ -0,0 +1,296 @@
+package com.redhat.cajun.navy.process.message.listeners;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.common.TopicPartition;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.kafka.event.ConsumerStoppingEvent;
+import org.springframework.kafka.event.ListenerContainerIdleEvent;
+import org.springframework.kafka.listener.ConsumerAwareRebalanceListener;
+import org.springframework.kafka.support.Acknowledgment;
+import org.springframework.stereotype.Component;
+
+/**
+ * Tracks the offsets of the records being processed, and commits them asynchronously.
+ *
+ * The offset committed for a partition is its watermark: the offset of the lowest record still in flight, or the offset
+ * after the last record dispatched when none is. Records which complete out of order are thus never committed before
+ * the records ahead of them are done. The watermarks are committed with {@code commitAsync}, once
+ * {@code kafka.offsets.commit-records} records completed since the last commit of the partition, or
+ * {@code kafka.offsets.commit-interval} milliseconds elapsed. The watermarks of revoked partitions and of stopping
+ * consumers are committed synchronously, so that only the records in flight are redelivered.
+ *
+ * A record which failed and could not be routed stays in flight, so the watermark of its partition is held back on it,
+ * and the records dispatched after it are not processed. Once the records ahead of it are done, the consumer is
+ * positioned back on it, so that it is fetched again with the records after it.
+ *
+ * Consumers are not thread safe: the commits must be triggered from the consumer thread.
+ */
+@Component
+public class OffsetTracker implements ConsumerAwareRebalanceListener {
+
+    private static final Logger log = LoggerFactory.getLogger(OffsetTracker.class);
+
+    @Value("${kafka.offsets.async-commit}")
+    private boolean asyncCommit;
+
+    @Value("${kafka.offsets.commit-records}")
+    private long commitRecords;
+
+    @Value("${kafka.offsets.commit-interval}")
+    private long commitInterval;
+
+    private final Map<TopicPartition, PartitionOffsets> offsets = new ConcurrentHashMap<>();
+
+    /**
+     * Acknowledges a record processed by a record listener: either right away through the container, or through the
+     * tracker when {@code kafka.offsets.async-commit} is on.
+     */
+    public void acknowledge(String topic, int partition, long offset, Acknowledgment ack, Consumer<?, ?> consumer) {
+        if (!asyncCommit) {
+            ack.acknowledge();
+            return;
+        }
+        processed(new TopicPartition(topic, partition), offset);
+        commitIfDue(consumer);
+    }
+
+    /**
+     * Marks a record which failed and was handed over to the {@link FailedRecordRouter} as processed.
+     */
+    public void recovered(ConsumerRecord<?, ?> record) {
+        if (asyncCommit) {
+            processed(new TopicPartition(record.topic(), record.partition()), record.offset());
+        }
+    }
+
+    /**
+     * Marks a record discarded by the record filter of a record listener as processed, as the container acknowledges
+     * it, so that the watermark of its partition does not stay behind it.
+     */
+    public void discarded(ConsumerRecord<?, ?> record) {
+        if (asyncCommit) {
+            processed(new TopicPartition(record.topic(), record.partition()), record.offset());
+        }
+    }
+
+    /**
+     * Marks the record as in flight.
+     *
+     * @return the record in flight, to complete once the record is processed, on any thread
+     */
+    public InFlightRecord dispatched(ConsumerRecord<?, ?> record) {
+        PartitionOffsets partitionOffsets = partitionOffsets(new TopicPartition(record.topic(), record.partition()));
+        partitionOffsets.dispatched(record.offset());
+        // bound to the tracking of the partition at dispatch time, which is dropped if the partition is revoked
+        return new InFlightRecord(partitionOffsets, record.offset());
+    }
+
+    /**
+     * Commits the watermarks of the partitions of the consumer which are due for a commit.
+     */
+    public void commitIfDue(Consumer<?, ?> consumer) {
+        long now = System.currentTimeMillis();
+        commitAsync(consumer, p -> p.uncommitted.get() >= commitRecords || now - p.committedAt >= commitInterval);
+    }
+
+    /**
+     * Commits the watermarks of all the partitions of the consumer which moved since their last commit.
+     */
+    public void commitAsync(Consumer<?, ?> consumer) {
+        commitAsync(consumer, p -> true);
+    }
+
+    /**
+     * Commits the watermarks of the partitions synchronously, and stops tracking them.
+     */
+    public void commitSync(Consumer<?, ?> consumer, Collection<TopicPartition> partitions) {
+        Map<TopicPartition, OffsetAndMetadata> commits = committable(partitions, p -> true);
+        try {
+            if (!commits.isEmpty()) {
+                consumer.commitSync(commits);
+            }
+        } finally {
+            partitions.forEach(offsets::remove);
+        }
+    }
+
+    @Override
+    public void onPartitionsRevokedBeforeCommit(Consumer<?, ?> consumer, Collection<TopicPartition> partitions) {
+        commitSync(consumer, partitions);
+    }
+
+    @EventListener
+    public void onStopping(ConsumerStoppingEvent event) {
+        if (event.getConsumer() != null && event.getPartitions() != null) {
+            commitSync(event.getConsumer(), event.getPartitions());
+        }
+    }
+
+    @EventListener
+    public void onIdle(ListenerContainerIdleEvent event) {
+        if (event.getConsumer() != null) {
+            commitAsync(event.getConsumer());
+        }
+    }
+
+    private void commitAsync(Consumer<?, ?> consumer, Predicate<PartitionOffsets> due) {
+        rewindFailed(consumer);
+        Map<TopicPartition, OffsetAndMetadata> commits = committable(consumer.assignment(), due);
+        if (commits.isEmpty()) {
+            return;
+        }
+        consumer.commitAsync(commits, (o, e) -> {
+            if (e != null) {
+                log.warn("Error committing offsets " + o, e);
+                // commit the watermarks again on the next opportunity
+                o.keySet().forEach(tp -> {
+                    PartitionOffsets partitionOffsets = offsets.get(tp);
+                    if (partitionOffsets != null) {
+                        partitionOffsets.committed = -1;
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Positions the consumer back on the failed record of its partitions, once the records ahead of it are done. The
+     * tracking of the partition starts over from the failed record.
+     */
+    private void rewindFailed(Consumer<?, ?> consumer) {
+        for (TopicPartition topicPartition : consumer.assignment()) {
+            PartitionOffsets partitionOffsets = offsets.get(topicPartition);
+            if (partitionOffsets == null || !partitionOffsets.isFailed()) {
+                continue;
+            }
+            long failed = partitionOffsets.failed.get();
+            if (partitionOffsets.watermark() < failed) {
+                continue;
+            }
+            consumer.seek(topicPartition, failed);
+            offsets.put(topicPartition, partitionOffsets.rewound());
+            log.warn("Record " + topicPartition + "@" + failed + " failed. Records are fetched again from offset " + failed);
+        }
+    }
+
+    private Map<TopicPartition, OffsetAndMetadata> committable(Collection<TopicPartition> partitions, Predicate<PartitionOffsets> due) {
+        long now = System.currentTimeMillis();
+        Map<TopicPartition, OffsetAndMetadata> commits = new HashMap<>();
+        for (TopicPartition topicPartition : partitions) {
+            PartitionOffsets partitionOffsets = offsets.get(topicPartition);
+            if (partitionOffsets == null || !due.test(partitionOffsets)) {
+                continue;
+            }
+            long watermark = partitionOffsets.watermark();
+            if (watermark > partitionOffsets.committed) {
+                commits.put(topicPartition, new OffsetAndMetadata(watermark));
+                partitionOffsets.committed = watermark;
+                partitionOffsets.committedAt = now;
+                partitionOffsets.uncommitted.set(0);
+            }
+        }
+        return commits;
+    }
+
+    private void processed(TopicPartition topicPartition, long offset) {
+        PartitionOffsets partitionOffsets = partitionOffsets(topicPartition);
+        partitionOffsets.dispatched(offset);
+        partitionOffsets.completed(offset);
+    }
+
+    private PartitionOffsets partitionOffsets(TopicPartition topicPartition) {
+        return offsets.computeIfAbsent(topicPartition, tp -> new PartitionOffsets());
+    }
+
+    /**
+     * A record dispatched to a worker, bound to the tracking of its partition at dispatch time.
+     */
+    public static class InFlightRecord {
+
+        private final PartitionOffsets partitionOffsets;
+
+        private final long offset;
+
+        InFlightRecord(PartitionOffsets partitionOffsets, long offset) {
+            this.partitionOffsets = partitionOffsets;
+            this.offset = offset;
+        }
+
+        /**
+         * @return whether a record dispatched before this one failed, in which case this record is fetched again
+         *          rather than processed
+         */
+        public boolean isHeldBack() {
+            return offset > partitionOffsets.failed.get();
+        }
+
+        public void completed() {
+            partitionOffsets.completed(offset);
+        }
+
+        /**
+         * Marks the record as failed: it stays in flight until the consumer is positioned back on it.
+         */
+        public void failed() {
+            partitionOffsets.failed.accumulateAndGet(offset, Math::min);
+        }
+    }
+
+    static class PartitionOffsets {
+
+        private final ConcurrentSkipListSet<Long> inFlight = new ConcurrentSkipListSet<>();
+
+        private final AtomicLong uncommitted = new AtomicLong();
+
+        private final AtomicLong failed = new AtomicLong(Long.MAX_VALUE);
+
+        private volatile long next = -1;
+
+        private volatile long committed = -1;
+
+        private volatile long committedAt;
+
+        void dispatched(long offset) {
+            inFlight.add(offset);
+            next = offset + 1;
+        }
+
+        void completed(long offset) {
+            inFlight.remove(offset);
+            uncommitted.incrementAndGet();
+        }
+
+        long watermark() {
+            Long lowest = inFlight.ceiling(Long.MIN_VALUE);
+            return lowest != null ? lowest : next;
+        }
+
+        boolean isFailed() {
+            return failed.get() != Long.MAX_VALUE;
+        }
+
+        /**
+         * @return the tracking of the partition, starting over from the failed record
+         */
+        PartitionOffsets rewound() {
+            PartitionOffsets rewound = new PartitionOffsets();
+            rewound.next = failed.get();
+            rewound.committed = committed;
+            rewound.committedAt = committedAt;
+            return rewound;
+        }
+    }
+}
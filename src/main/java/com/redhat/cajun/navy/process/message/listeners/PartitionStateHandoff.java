@@ -0,0 +1,188 @@
+package com.redhat.cajun.navy.process.message.listeners;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+import javax.annotation.PostConstruct;
+
+import com.redhat.cajun.navy.process.signal.ProcessInstanceIdCache;
+import com.redhat.cajun.navy.process.signal.ProcessSignaller;
+import com.redhat.cajun.navy.process.signal.WaitingSignalIndex;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.common.PartitionInfo;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.utils.Utils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.kafka.event.ConsumerStoppingEvent;
+import org.springframework.kafka.listener.ConsumerAwareRebalanceListener;
+import org.springframework.stereotype.Component;
+
+/**
+ * Moves the in-memory signal state along with the partitions of the topics keyed by incident.
+ *
+ * The topics in {@code kafka.rebalance.state-topics}, and the topics re-keyed by the {@link SignalRekeyer}, are keyed
+ * by incident and have the same number of partitions, so an incident belongs to the same partition number in each of
+ * them. The service instance which owns that partition number in any of the topics owns the incident.
+ *
+ * The consumers give up all their partitions at the start of a rebalance, and get most of them back with the sticky
+ * assignor. The state is therefore only handed off once the new assignment is known, and only for the partitions which
+ * actually changed hands: when the last partition for a partition number is lost, the signals parked for its incidents
+ * are delivered if their process instances are waiting for them, and the waiting signals and process instance ids of
+ * its incidents are dropped, as the new owner moves the process instances on. When a partition number is gained, the
+ * waiting signals of its incidents are dropped and loaded again from the database before the consumer fetches its first
+ * records, as the previous owner may have moved the process instances on.
+ *
+ * The waiting signals are thus only loaded for the incidents this service instance owns. When there are no topics keyed
+ * by incident, this service instance owns all the incidents, and the waiting signals of all of them are loaded at
+ * startup.
+ */
+@Component
+public class PartitionStateHandoff implements ConsumerAwareRebalanceListener {
+
+    private static final Logger log = LoggerFactory.getLogger(PartitionStateHandoff.class);
+
+    @Autowired
+    private WaitingSignalIndex waitingSignalIndex;
+
+    @Autowired
+    private ProcessInstanceIdCache processInstanceIdCache;
+
+    @Autowired
+    private ProcessSignaller processSignaller;
+
+    @Autowired
+    private SignalRekeyer signalRekeyer;
+
+    @Value("${kafka.rebalance.state-topics}")
+    private String stateTopics;
+
+    private Set<String> topics;
+
+    // partition number -> partitions of the state topics with that number owned by the consumers of this service
+    private final Map<Integer, Set<TopicPartition>> owned = new HashMap<>();
+
+    private final Map<Consumer<?, ?>, Collection<TopicPartition>> revoked = new ConcurrentHashMap<>();
+
+    private final Map<String, Integer> partitionCounts = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void init() {
+        topics = new HashSet<>();
+        for (String topic : stateTopics.split(",")) {
+            if (!topic.trim().isEmpty()) {
+                topics.add(topic.trim());
+            }
+        }
+        if (topics.isEmpty() && !signalRekeyer.isEnabled()) {
+            int loaded = waitingSignalIndex.load(incidentId -> true);
+            log.info("Indexed waiting signals of " + loaded + " process instances");
+        }
+    }
+
+    @Override
+    public void onPartitionsRevokedAfterCommit(Consumer<?, ?> consumer, Collection<TopicPartition> partitions) {
+        revoked.put(consumer, stateTopicPartitions(partitions));
+    }
+
+    @Override
+    public void onPartitionsAssigned(Consumer<?, ?> consumer, Collection<TopicPartition> partitions) {
+        Collection<TopicPartition> previous = revoked.remove(consumer);
+        reassigned(consumer, previous == null ? Collections.emptySet() : previous, stateTopicPartitions(partitions));
+    }
+
+    /**
+     * Stopped consumers leave the group without their partitions being revoked.
+     */
+    @EventListener
+    public void onStopping(ConsumerStoppingEvent event) {
+        if (event.getConsumer() != null && event.getPartitions() != null) {
+            revoked.remove(event.getConsumer());
+            reassigned(event.getConsumer(), stateTopicPartitions(event.getPartitions()), Collections.emptySet());
+        }
+    }
+
+    private void reassigned(Consumer<?, ?> consumer, Collection<TopicPartition> previous, Set<TopicPartition> assigned) {
+        Set<TopicPartition> lost = new HashSet<>(previous);
+        lost.removeAll(assigned);
+        Set<TopicPartition> gained = new HashSet<>(assigned);
+        gained.removeAll(previous);
+        Set<Integer> lostNumbers = new HashSet<>();
+        Set<Integer> gainedNumbers = new HashSet<>();
+        synchronized (owned) {
+            for (TopicPartition topicPartition : lost) {
+                Set<TopicPartition> owners = owned.get(topicPartition.partition());
+                if (owners != null && owners.remove(topicPartition) && owners.isEmpty()) {
+                    owned.remove(topicPartition.partition());
+                    lostNumbers.add(topicPartition.partition());
+                }
+            }
+            for (TopicPartition topicPartition : gained) {
+                Set<TopicPartition> owners = owned.computeIfAbsent(topicPartition.partition(), p -> new HashSet<>());
+                if (owners.add(topicPartition) && owners.size() == 1) {
+                    gainedNumbers.add(topicPartition.partition());
+                }
+            }
+        }
+        // a partition number which went from one topic to another is still owned, with its state
+        Set<Integer> kept = new HashSet<>(lostNumbers);
+        kept.retainAll(gainedNumbers);
+        lostNumbers.removeAll(kept);
+        gainedNumbers.removeAll(kept);
+        if (!lostNumbers.isEmpty()) {
+            release(partitionCount(consumer, lost), lostNumbers);
+        }
+        if (!gainedNumbers.isEmpty()) {
+            acquire(partitionCount(consumer, gained), gainedNumbers);
+        }
+    }
+
+    static int partition(String incidentId, int partitions) {
+        // the partition the default partitioner sends a record keyed by the incident to
+        return Utils.toPositive(Utils.murmur2(incidentId.getBytes(StandardCharsets.UTF_8))) % partitions;
+    }
+
+    private void release(int partitions, Set<Integer> numbers) {
+        Predicate<String> incidents = incidentId -> numbers.contains(partition(incidentId, partitions));
+        processSignaller.deliverPending(incidents);
+        int evicted = waitingSignalIndex.evict(incidents);
+        processInstanceIdCache.evict(incidents);
+        log.info("Released partitions " + numbers + ": dropped waiting signals of " + evicted + " process instances");
+    }
+
+    private void acquire(int partitions, Set<Integer> numbers) {
+        Predicate<String> incidents = incidentId -> numbers.contains(partition(incidentId, partitions));
+        // entries left from an earlier ownership of the partitions may be stale
+        waitingSignalIndex.evict(incidents);
+        int loaded = waitingSignalIndex.load(incidents);
+        log.info("Acquired partitions " + numbers + ": indexed waiting signals of " + loaded + " process instances");
+    }
+
+    private int partitionCount(Consumer<?, ?> consumer, Set<TopicPartition> partitions) {
+        String topic = partitions.iterator().next().topic();
+        return partitionCounts.computeIfAbsent(topic, t -> {
+            List<PartitionInfo> partitionInfos = consumer.partitionsFor(t);
+            if (partitionInfos == null || partitionInfos.isEmpty()) {
+                throw new IllegalStateException("No partitions found for topic " + t);
+            }
+            return partitionInfos.size();
+        });
+    }
+
+    private Set<TopicPartition> stateTopicPartitions(Collection<TopicPartition> partitions) {
+        return partitions.stream()
+                .filter(tp -> topics.contains(tp.topic()) || SignalRekeyer.isRekeyedTopic(tp.topic()))
+                .collect(Collectors.toSet());
+    }
+}
@@ -1,28 +1,29 @@
 package com.redhat.cajun.navy.process.message.listeners;
 
-import com.fasterxml.jackson.core.type.TypeReference;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.jayway.jsonpath.JsonPath;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import javax.annotation.PostConstruct;
+
+import com.redhat.cajun.navy.process.message.KafkaRecordHeaders;
+import com.redhat.cajun.navy.process.message.MessageDecoder;
+import com.redhat.cajun.navy.process.message.ProcessedMessageStore;
 import com.redhat.cajun.navy.process.message.model.Message;
 import com.redhat.cajun.navy.process.message.model.ResponderUpdatedEvent;
-import org.jbpm.services.api.ProcessService;
-import org.jbpm.services.api.query.QueryService;
-import org.kie.api.runtime.process.ProcessInstance;
-import org.kie.internal.KieInternalServices;
-import org.kie.internal.process.CorrelationKey;
-import org.kie.internal.process.CorrelationKeyFactory;
+import com.redhat.cajun.navy.process.signal.ProcessSignaller;
+import com.redhat.cajun.navy.process.wih.ResponderFactBase;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.kafka.annotation.KafkaListener;
 import org.springframework.kafka.support.Acknowledgment;
-import org.springframework.kafka.support.KafkaHeaders;
-import org.springframework.messaging.handler.annotation.Header;
-import org.springframework.messaging.handler.annotation.Payload;
 import org.springframework.stereotype.Component;
-import org.springframework.transaction.PlatformTransactionManager;
-import org.springframework.transaction.TransactionStatus;
-import org.springframework.transaction.support.TransactionTemplate;
 
 @Component
 public class ResponderUpdatedEventMessageListener {
@@ -33,130 +34,196 @@ public class ResponderUpdatedEventMessageListener {
 
     private static final String SIGNAL_RESPONDER_AVAILABLE = "ResponderAvailable";
 
+    private static final Map<String, Class<?>> BODY_TYPES = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+
+    static {
+        BODY_TYPES.put(TYPE_RESPONDER_UPDATED_EVENT, ResponderUpdatedEvent.class);
+    }
+
+    @Autowired
+    private ProcessSignaller processSignaller;
+
     @Autowired
-    private ProcessService processService;
+    private MessageDecoder messageDecoder;
 
     @Autowired
-    private QueryService queryService;
+    private ProcessedMessageStore processedMessageStore;
 
     @Autowired
-    private PlatformTransactionManager transactionManager;
+    private MessageTypeRecordFilterStrategy recordFilterStrategy;
 
-    private CorrelationKeyFactory correlationKeyFactory = KieInternalServices.Factory.get().newCorrelationKeyFactory();
+    @Autowired
+    private GroupCommitExecutor groupCommitExecutor;
+
+    @Autowired
+    private KeyedRecordDispatcher keyedRecordDispatcher;
+
+    @Autowired
+    private ListenerConcurrencyController listenerConcurrencyController;
 
-    @KafkaListener(topics = "${listener.destination.responder-updated-event}")
-    public void processMessage(@Payload String messageAsJson, @Header(KafkaHeaders.RECEIVED_MESSAGE_KEY) String key,
-                               @Header(KafkaHeaders.RECEIVED_TOPIC) String topic,
-                               @Header(KafkaHeaders.RECEIVED_PARTITION_ID) int partition, Acknowledgment ack) {
+    @Autowired
+    private SaturationMonitor saturationMonitor;
+
+    @Autowired
+    private FailedRecordRouter failedRecordRouter;
+
+    @Autowired
+    private OffsetTracker offsetTracker;
+
+    @Autowired
+    private SignalRekeyer signalRekeyer;
+
+    @Autowired
+    private CatchUpController catchUpController;
 
-        if (!accept(messageAsJson)) {
+    @Autowired
+    private ResponderFactBase responderFactBase;
+
+    @Value("${listener.destination.responder-updated-event}")
+    private String destination;
+
+    @PostConstruct
+    public void init() {
+        recordFilterStrategy.register(destination, BODY_TYPES);
+        if (signalRekeyer.isEnabled()) {
+            recordFilterStrategy.register(SignalRekeyer.rekeyedTopic(destination), BODY_TYPES);
+        }
+    }
+
+    @KafkaListener(id = "responder-updated-event", idIsGroup = false, topics = "#{@signalRekeyer.topics('${listener.destination.responder-updated-event}')}",
+            concurrency = "${kafka.concurrency.responder-updated-event}")
+    public void processMessage(ConsumerRecord<String, Object> record, Acknowledgment ack, Consumer<?, ?> consumer) {
+        handleMessage(record);
+        offsetTracker.acknowledge(record.topic(), record.partition(), record.offset(), ack, consumer);
+    }
+
+    @KafkaListener(id = "responder-updated-event-batch", idIsGroup = false, topics = "#{@signalRekeyer.topics('${listener.destination.responder-updated-event}')}",
+            concurrency = "${kafka.concurrency.responder-updated-event}",
+            containerFactory = "batchKafkaListenerContainerFactory")
+    public void processMessages(List<ConsumerRecord<String, Object>> records, Acknowledgment ack, Consumer<?, ?> consumer) {
+        if (groupCommitExecutor.execute(coalesce(records), consumer, this::handleMessage)) {
             ack.acknowledge();
+        }
+    }
+
+    @KafkaListener(id = "responder-updated-event-parallel", idIsGroup = false, topics = "#{@signalRekeyer.topics('${listener.destination.responder-updated-event}')}",
+            concurrency = "${kafka.concurrency.responder-updated-event}",
+            containerFactory = "parallelKafkaListenerContainerFactory")
+    public void dispatchMessages(List<ConsumerRecord<String, Object>> records, Consumer<?, ?> consumer) {
+        keyedRecordDispatcher.dispatch(coalesce(records), consumer, this::incidentId, this::handleMessage);
+    }
+
+    @KafkaListener(id = "responder-updated-event-retry", idIsGroup = false,
+            topics = "#{@failedRecordRouter.retryTopics(@signalRekeyer.topics('${listener.destination.responder-updated-event}'))}",
+            containerFactory = "retryKafkaListenerContainerFactory")
+    public void retryMessage(ConsumerRecord<String, Object> record, Acknowledgment ack, Consumer<?, ?> consumer) {
+        if (!failedRecordRouter.isDue(record, consumer)) {
             return;
         }
+        handleMessage(record);
+        offsetTracker.acknowledge(record.topic(), record.partition(), record.offset(), ack, consumer);
+    }
 
-        log.debug("Processing '" + TYPE_RESPONDER_UPDATED_EVENT + "' message for responder '" + key + "' from topic:partition '" + topic + ":" + partition + "'");
+    private void handleMessage(ConsumerRecord<String, Object> record) {
+        long start = System.nanoTime();
+        saturationMonitor.handlerStarted();
+        try {
+            doHandleMessage(record);
+        } finally {
+            saturationMonitor.handlerFinished();
+            listenerConcurrencyController.recordLatency("responder-updated-event", System.nanoTime() - start);
+        }
+    }
 
+    private void doHandleMessage(ConsumerRecord<String, Object> record) {
+        Object payload = record.value();
+        String key = record.key();
+        String topic = record.topic();
+        int partition = record.partition();
+        // records keyed by responder are handled once received again keyed by incident
+        if (signalRekeyer.isEnabled() && topic.equals(destination)
+                && signalRekeyer.rekey(topic, payload, record.headers(), () -> messageDecoder.headerValue(payload, "incidentId"))) {
+            return;
+        }
         Message<ResponderUpdatedEvent> message;
         try {
+            message = messageDecoder.decode(payload, BODY_TYPES);
+        } catch (IOException e) {
+            log.error("Error processing msg " + MessageDecoder.asString(payload), e);
+            throw new IllegalStateException(e.getMessage(), e);
+        }
+        if (message == null) {
+            return;
+        }
+        if (processedMessageStore.isProcessed(message.getId())) {
+            log.debug("Message " + message.getId() + " was processed already. Message is ignored.");
+            return;
+        }
 
-            message = new ObjectMapper().readValue(messageAsJson, new TypeReference<Message<ResponderUpdatedEvent>>() {});
+        log.debug("Processing '" + TYPE_RESPONDER_UPDATED_EVENT + "' message for responder '" + key + "' from topic:partition '" + topic + ":" + partition + "'");
+
+        if ("success".equals(message.getBody().getStatus())) {
+            responderFactBase.update(message.getBody().getResponder());
+        }
+
+        try {
 
             String incidentId = message.getHeaderValue("incidentId");
             if (incidentId == null || incidentId.isEmpty()) {
                 log.warn("Message contains no header value for incidentId. Message cannot be processed!");
-                ack.acknowledge();
                 return;
             }
 
-            CorrelationKey correlationKey = correlationKeyFactory.newCorrelationKey(incidentId);
-
             Boolean available = "success".equals(message.getBody().getStatus());
 
-            log.debug("Signaling process with correlationkey '" + correlationKey + ". Responder '" + key + "', available '" + available + "'." );
-            final IntegerHolder holder = new IntegerHolder(5);
-            while (holder.counting()) {
-                TransactionTemplate template = new TransactionTemplate(transactionManager);
-                template.execute((TransactionStatus s) -> {
-                    // check if process is waiting on 'ResponderAvailable' signal
-                    if (!SignalsByCorrelationKeyHelper.waitingForSignal(queryService, incidentId, "ResponderAvailable")) {
-                        log.warn("Try " + holder.getValue() + " - Process instance with correlationKey '" + incidentId + "' is not waiting for signal 'ResponderAvailable'.");
-                        holder.add();
-                        return null;
-                    }
-                    holder.reset();
-                    return null;
-                });
-                if (holder.limit()) {
-                    log.warn("Process instance with correlationKey '" + incidentId + "' is not waiting for signal 'ResponderAvailable'. Process instance is not signaled.");
-                } else if (holder.counting()) {
-                    log.info("Sleeping for 300 ms");
-                    Thread.sleep(300);
-                }
-            }
-            if (holder.done()) {
-                TransactionTemplate template = new TransactionTemplate(transactionManager);
-                template.execute((TransactionStatus s) -> {
-                    ProcessInstance instance = processService.getProcessInstance(correlationKey);
-                    processService.signalProcessInstance(instance.getId(), SIGNAL_RESPONDER_AVAILABLE, available);
-                    return null;
-                });
-            }
-            ack.acknowledge();
+            log.debug("Signaling process with correlationkey '" + incidentId + ". Responder '" + key + "', available '" + available + "'." );
+            processSignaller.signal(incidentId, SIGNAL_RESPONDER_AVAILABLE, available, message.getId());
         } catch (Exception e) {
-            log.error("Error processing msg " + messageAsJson, e);
+            log.error("Error processing msg " + MessageDecoder.asString(payload), e);
             throw new IllegalStateException(e.getMessage(), e);
         }
 
     }
 
-    private boolean accept(String messageAsJson) {
-        try {
-            String messageType = JsonPath.read(messageAsJson, "$.messageType");
-            if (TYPE_RESPONDER_UPDATED_EVENT.equalsIgnoreCase(messageType) ) {
-                return true;
-            } else {
-                log.debug("Message with type '" + messageType + "' is ignored");
-            }
-        } catch (Exception e) {
-            log.warn("Unexpected message without 'messageType' field.");
-        }
-        return false;
-    }
-
-    public static class IntegerHolder {
-
-        private int value;
-
-        private int limit;
-
-        public IntegerHolder(int limit) {
-            value = 1;
-            this.limit = limit;
-        }
-
-        public void add() {
-            value++;
+    /**
+     * While the listener is catching up, skips the updates of a responder for an incident which are followed by a later
+     * update of the same responder for the same incident in the records. Only the records keyed by responder are
+     * coalesced.
+     */
+    List<ConsumerRecord<String, Object>> coalesce(List<ConsumerRecord<String, Object>> records) {
+        if (!catchUpController.isCatchingUp("responder-updated-event")) {
+            return records;
         }
-
-        public int getValue() {
-            return value;
-        }
-
-        public void reset() {
-            value = 0;
+        String[] keys = new String[records.size()];
+        Map<String, Integer> latest = new HashMap<>();
+        for (int i = 0; i < records.size(); i++) {
+            ConsumerRecord<String, Object> record = records.get(i);
+            String incidentId = record.topic().equals(destination) ? messageDecoder.headerValue(record.value(), "incidentId") : null;
+            if (incidentId != null && record.key() != null) {
+                keys[i] = incidentId + "/" + record.key();
+                latest.put(keys[i], i);
+            }
         }
-
-        public boolean limit() {
-            return value > limit;
+        List<ConsumerRecord<String, Object>> coalesced = new ArrayList<>(records.size());
+        for (int i = 0; i < records.size(); i++) {
+            if (keys[i] == null || latest.get(keys[i]) == i) {
+                coalesced.add(records.get(i));
+            }
         }
+        catchUpController.recordCoalesced("responder-updated-event", records.size() - coalesced.size());
+        return coalesced;
+    }
 
-        public boolean counting() {
-            return value > 0 && value <= limit;
+    private String incidentId(ConsumerRecord<String, Object> record) {
+        // records are keyed by responder, the incident is carried in the message header
+        String incidentId = KafkaRecordHeaders.value(record.headers(), KafkaRecordHeaders.INCIDENT_ID);
+        if (incidentId == null) {
+            incidentId = messageDecoder.headerValue(record.value(), "incidentId");
         }
-
-        public boolean done() {
-            return value == 0;
+        if (incidentId == null) {
+            log.debug("Message without 'incidentId' header. Dispatching on record key.");
+            return record.key();
         }
-
+        return incidentId;
     }
 }
@@ -0,0 +1,245 @@
+package com.redhat.cajun.navy.process.message.listeners;
+
+import java.lang.reflect.Method;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.sql.DataSource;
+
+import org.apache.commons.dbcp2.BasicDataSource;
+import org.apache.commons.pool2.impl.GenericObjectPool;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.kafka.config.KafkaListenerEndpointRegistry;
+import org.springframework.kafka.listener.MessageListenerContainer;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.ReflectionUtils;
+
+/**
+ * Pauses the listener containers while the database connection pool or the jBPM executor is saturated.
+ *
+ * Every {@code backpressure.interval} milliseconds, the monitor samples the utilization of the connection pool, the
+ * number of threads waiting for a connection and their mean wait time, the number of due jBPM executor requests, and
+ * the number of messages being handled. The running containers are paused as soon as one of them exceeds its high
+ * watermark, and resumed once all of them are back under their low watermark, so the consumers do not flap around a
+ * single threshold. Paused consumers keep polling, so they stay in the group.
+ */
+@Component
+public class SaturationMonitor {
+
+    private static final Logger log = LoggerFactory.getLogger(SaturationMonitor.class);
+
+    private static final String EXECUTOR_QUEUE = "SELECT COUNT(*) FROM requestinfo WHERE status IN ('QUEUED', 'RETRYING') AND timestamp <= ?";
+
+    // the pool is not exposed by the BasicDataSource, but it is the only place with the number of waiting threads
+    private static final Method CONNECTION_POOL = ReflectionUtils.findMethod(BasicDataSource.class, "getConnectionPool");
+
+    static {
+        if (CONNECTION_POOL != null) {
+            ReflectionUtils.makeAccessible(CONNECTION_POOL);
+        }
+    }
+
+    @Autowired
+    private KafkaListenerEndpointRegistry kafkaListenerEndpointRegistry;
+
+    @Autowired
+    private DataSource dataSource;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Value("${backpressure.enabled}")
+    private boolean enabled;
+
+    @Value("${backpressure.interval}")
+    private long interval;
+
+    @Value("${backpressure.pool.utilization-high}")
+    private double poolUtilizationHigh;
+
+    @Value("${backpressure.pool.utilization-low}")
+    private double poolUtilizationLow;
+
+    @Value("${backpressure.pool.wait-high}")
+    private long poolWaitHigh;
+
+    @Value("${backpressure.pool.wait-low}")
+    private long poolWaitLow;
+
+    @Value("${backpressure.executor.queue-high}")
+    private long executorQueueHigh;
+
+    @Value("${backpressure.executor.queue-low}")
+    private long executorQueueLow;
+
+    @Value("${backpressure.in-flight-high}")
+    private int inFlightHigh;
+
+    @Value("${backpressure.in-flight-low}")
+    private int inFlightLow;
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    private final Set<String> pausedContainers = ConcurrentHashMap.newKeySet();
+
+    private final LongAdder pauses = new LongAdder();
+
+    private volatile boolean saturated;
+
+    private volatile double poolUtilization;
+
+    private volatile int poolWaiters;
+
+    private volatile long poolWait;
+
+    private volatile long executorQueue;
+
+    private BasicDataSource pool;
+
+    private ScheduledExecutorService monitor;
+
+    @PostConstruct
+    public void init() {
+        if (!enabled) {
+            return;
+        }
+        pool = basicDataSource(dataSource);
+        if (pool == null) {
+            log.warn("Connection pool of type " + dataSource.getClass().getName() + " cannot be monitored");
+        }
+        monitor = Executors.newSingleThreadScheduledExecutor(new CustomizableThreadFactory("saturation-monitor-"));
+        monitor.scheduleWithFixedDelay(this::check, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (monitor != null) {
+            monitor.shutdownNow();
+        }
+    }
+
+    public void handlerStarted() {
+        inFlight.incrementAndGet();
+    }
+
+    public void handlerFinished() {
+        inFlight.decrementAndGet();
+    }
+
+    public boolean isSaturated() {
+        return saturated;
+    }
+
+    public int inFlight() {
+        return inFlight.get();
+    }
+
+    public double poolUtilization() {
+        return poolUtilization;
+    }
+
+    public int poolWaiters() {
+        return poolWaiters;
+    }
+
+    public long poolWait() {
+        return poolWait;
+    }
+
+    public long executorQueue() {
+        return executorQueue;
+    }
+
+    public long pauseCount() {
+        return pauses.sum();
+    }
+
+    void check() {
+        try {
+            sample();
+            int handlers = inFlight.get();
+            if (!saturated && (poolUtilization >= poolUtilizationHigh || poolWait >= poolWaitHigh
+                    || executorQueue >= executorQueueHigh || handlers >= inFlightHigh)) {
+                saturated = true;
+                pauses.increment();
+                log.warn("Saturation detected. Pausing listeners. Pool utilization " + poolUtilization + ", waiters "
+                        + poolWaiters + ", wait " + poolWait + " ms, executor queue " + executorQueue + ", in flight " + handlers);
+            } else if (saturated && poolUtilization <= poolUtilizationLow && poolWait <= poolWaitLow
+                    && executorQueue <= executorQueueLow && handlers <= inFlightLow) {
+                saturated = false;
+                log.info("Saturation cleared. Resuming listeners.");
+            }
+            apply();
+        } catch (RuntimeException e) {
+            log.error("Error checking for saturation", e);
+        }
+    }
+
+    private void sample() {
+        if (pool != null) {
+            poolUtilization = pool.getMaxTotal() > 0 ? (double) pool.getNumActive() / pool.getMaxTotal() : 0;
+            GenericObjectPool<?> connectionPool = connectionPool(pool);
+            if (connectionPool != null) {
+                poolWaiters = connectionPool.getNumWaiters();
+                // the mean wait time of the last borrows is meaningless once nobody waits anymore
+                poolWait = poolWaiters > 0 ? connectionPool.getMeanBorrowWaitTimeMillis() : 0;
+            }
+        }
+        Long queued = new TransactionTemplate(transactionManager).execute((TransactionStatus s) ->
+                jdbcTemplate.queryForObject(EXECUTOR_QUEUE, Long.class, new Timestamp(System.currentTimeMillis())));
+        executorQueue = queued == null ? 0 : queued;
+    }
+
+    /**
+     * Pauses the running containers while saturated, and resumes the containers paused by the monitor otherwise.
+     * Containers restarted in the meantime are paused again.
+     */
+    private void apply() {
+        for (MessageListenerContainer container : kafkaListenerEndpointRegistry.getListenerContainers()) {
+            String id = container.getListenerId();
+            if (saturated && container.isRunning() && !container.isPauseRequested()) {
+                container.pause();
+                pausedContainers.add(id);
+            } else if (!saturated && pausedContainers.remove(id)) {
+                container.resume();
+            }
+        }
+    }
+
+    private static BasicDataSource basicDataSource(DataSource dataSource) {
+        try {
+            if (dataSource.isWrapperFor(BasicDataSource.class)) {
+                return dataSource.unwrap(BasicDataSource.class);
+            }
+        } catch (SQLException e) {
+            log.debug("Data source does not wrap a BasicDataSource", e);
+        }
+        return null;
+    }
+
+    private static GenericObjectPool<?> connectionPool(BasicDataSource basicDataSource) {
+        if (CONNECTION_POOL == null) {
+            return null;
+        }
+        return (GenericObjectPool<?>) ReflectionUtils.invokeMethod(CONNECTION_POOL, basicDataSource);
+    }
+}
@@ -0,0 +1,114 @@
+package com.redhat.cajun.navy.process.message.listeners;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+import com.redhat.cajun.navy.process.message.KafkaRecordHeaders;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.header.Header;
+import org.apache.kafka.common.header.Headers;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.stereotype.Component;
+
+/**
+ * Republishes the records of topics which are not keyed by incident to an internal topic keyed by incident.
+ *
+ * With {@code kafka.rekey.enabled}, a record of topic {@code <topic>} is not handled where it is received, but sent to
+ * {@code <topic>-by-incident} with the incidentId as key, and handled when it is received from there. All the signals
+ * for an incident then go through the same partition, which has the same number as the partitions of the incident
+ * topics when the topics have the same number of partitions. Signals for the same process instance are thus handled one
+ * after the other rather than concurrently by different consumers.
+ */
+@Component
+public class SignalRekeyer {
+
+    private static final Logger log = LoggerFactory.getLogger(SignalRekeyer.class);
+
+    private static final String REKEYED_SUFFIX = "-by-incident";
+
+    private static final long SEND_TIMEOUT = 30000;
+
+    @Autowired
+    private KafkaTemplate<String, byte[]> rekeyKafkaTemplate;
+
+    @Value("${kafka.rekey.enabled}")
+    private boolean enabled;
+
+    private final LongAdder rekeyed = new LongAdder();
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * @return the topics the listeners of the topic subscribe to: the topic, and its re-keyed topic if enabled
+     */
+    public String[] topics(String topic) {
+        return enabled ? new String[]{topic, rekeyedTopic(topic)} : new String[]{topic};
+    }
+
+    public static String rekeyedTopic(String topic) {
+        return topic + REKEYED_SUFFIX;
+    }
+
+    public static boolean isRekeyedTopic(String topic) {
+        return topic.endsWith(REKEYED_SUFFIX);
+    }
+
+    /**
+     * Sends the payload received from the topic to its re-keyed topic, with the headers it was received with, such as
+     * the message type and content type, and the incidentId.
+     *
+     * @return whether the payload was sent, or is to be handled where it was received because re-keying is off or the
+     * message has no incidentId
+     * @throws IllegalStateException if the payload could not be sent, so that it is not acknowledged
+     */
+    public boolean rekey(String topic, Object payload, Headers headers, Supplier<String> incidentId) {
+        if (!enabled) {
+            return false;
+        }
+        String key = incidentId.get();
+        if (key == null || key.isEmpty()) {
+            return false;
+        }
+        ProducerRecord<String, byte[]> record = new ProducerRecord<>(rekeyedTopic(topic), key, value(payload));
+        if (headers != null) {
+            for (Header header : headers) {
+                if (!KafkaRecordHeaders.INCIDENT_ID.equals(header.key())) {
+                    record.headers().add(header);
+                }
+            }
+        }
+        record.headers().add(KafkaRecordHeaders.INCIDENT_ID, key.getBytes(StandardCharsets.UTF_8));
+        try {
+            rekeyKafkaTemplate.send(record).get(SEND_TIMEOUT, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while sending record to topic " + record.topic(), e);
+        } catch (ExecutionException | TimeoutException e) {
+            throw new IllegalStateException("Error sending record to topic " + record.topic(), e);
+        }
+        rekeyed.increment();
+        log.debug("Record for incident '" + key + "' from topic " + topic + " sent to topic " + record.topic());
+        return true;
+    }
+
+    public long rekeyedCount() {
+        return rekeyed.sum();
+    }
+
+    private static byte[] value(Object payload) {
+        if (payload instanceof byte[]) {
+            return (byte[]) payload;
+        }
+        return payload.toString().getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -1,6 +1,7 @@
 package com.redhat.cajun.navy.process.message.listeners;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 
@@ -10,9 +11,46 @@ import org.jbpm.services.api.query.QueryResultMapper;
 import org.jbpm.services.api.query.QueryService;
 import org.jbpm.services.api.query.model.QueryParam;
 import org.kie.internal.query.QueryContext;
+import org.springframework.jdbc.core.JdbcTemplate;
 
 public class SignalsByCorrelationKeyHelper {
 
+    // backed by the indexes created by db/signals-by-correlation-key-indexes.sql
+    private static final String WAITING_SIGNALS_BY_CORRELATION_KEY = "SELECT c.processinstanceid, e.element " +
+            "FROM correlationkeyinfo c " +
+            "LEFT JOIN eventtypes e ON (e.instanceid = c.processinstanceid) " +
+            "WHERE c.name = ?";
+
+    private static final String WAITING_SIGNALS_BY_PROCESS_INSTANCE_ID = "SELECT e.element FROM eventtypes e WHERE e.instanceid = ?";
+
+    /**
+     * Looks up the process instance with the correlation key and the signals it is waiting for in one round trip.
+     *
+     * @return the process instance and its signals, or null if there is no active process instance with the correlation key
+     */
+    public static ProcessInstanceSignals waitingSignals(JdbcTemplate jdbcTemplate, String correlationKey) {
+        return jdbcTemplate.query(WAITING_SIGNALS_BY_CORRELATION_KEY, rs -> {
+            Long processInstanceId = null;
+            List<String> signals = new ArrayList<>();
+            while (rs.next()) {
+                processInstanceId = rs.getLong(1);
+                String signal = rs.getString(2);
+                if (signal != null) {
+                    signals.add(signal);
+                }
+            }
+            return processInstanceId == null ? null : new ProcessInstanceSignals(processInstanceId, signals);
+        }, correlationKey);
+    }
+
+    /**
+     * Looks up the signals the process instance is waiting for, when its id is already known.
+     */
+    public static ProcessInstanceSignals waitingSignals(JdbcTemplate jdbcTemplate, long processInstanceId) {
+        List<String> signals = jdbcTemplate.queryForList(WAITING_SIGNALS_BY_PROCESS_INSTANCE_ID, String.class, processInstanceId);
+        return new ProcessInstanceSignals(processInstanceId, signals);
+    }
+
     public static boolean waitingForSignal(QueryService queryService, String correlationKey, String signal) {
         List<String> signals = queryService.query("signalsByCorrelationKey", new SignalsByCorrelationKeyQueryMapper(), new QueryContext(),
                 QueryParam.equalsTo("name", correlationKey));
@@ -63,4 +101,27 @@ public class SignalsByCorrelationKeyHelper {
         }
     }
 
+    public static class ProcessInstanceSignals {
+
+        private final long processInstanceId;
+
+        private final List<String> signals;
+
+        public ProcessInstanceSignals(long processInstanceId, List<String> signals) {
+            this.processInstanceId = processInstanceId;
+            this.signals = Collections.unmodifiableList(signals);
+        }
+
+        public long getProcessInstanceId() {
+            return processInstanceId;
+        }
+
+        public List<String> getSignals() {
+            return signals;
+        }
+
+        public boolean isWaitingFor(String signal) {
+            return signals.contains(signal);
+        }
+    }
 }
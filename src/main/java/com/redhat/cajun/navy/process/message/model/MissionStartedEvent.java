@@ -16,8 +16,16 @@ public class MissionStartedEvent {
         return missionId;
     }
 
+    public void setMissionId(String missionId) {
+        this.missionId = missionId;
+    }
+
     public String getIncidentId() {
         return incidentId;
     }
 
+    public void setIncidentId(String incidentId) {
+        this.incidentId = incidentId;
+    }
+
 }
@@ -15,8 +15,16 @@ public class VictimDeliveredEvent {
         return missionId;
     }
 
+    public void setMissionId(String missionId) {
+        this.missionId = missionId;
+    }
+
     public String getIncidentId() {
         return incidentId;
     }
 
+    public void setIncidentId(String incidentId) {
+        this.incidentId = incidentId;
+    }
+
 }
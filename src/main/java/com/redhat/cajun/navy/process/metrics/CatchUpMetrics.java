@@ -0,0 +1,79 @@
+package com.redhat.cajun.navy.process.metrics;
+
+import java.util.Collections;
+
+import com.redhat.cajun.navy.process.audit.DeferredAuditLog;
+import com.redhat.cajun.navy.process.message.listeners.CatchUpController;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tag;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+public class CatchUpMetrics implements MeterBinder {
+
+    private final Iterable<Tag> tags;
+
+    private CatchUpController controller;
+
+    private DeferredAuditLog deferredAuditLog;
+
+    public CatchUpMetrics(CatchUpController controller, DeferredAuditLog deferredAuditLog) {
+        this(controller, deferredAuditLog, Collections.emptyList());
+    }
+
+    public CatchUpMetrics(CatchUpController controller, DeferredAuditLog deferredAuditLog, Iterable<Tag> tags) {
+        this.controller = controller;
+        this.deferredAuditLog = deferredAuditLog;
+        this.tags = tags;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry meterRegistry) {
+
+        for (String listenerId : controller.listenerIds()) {
+
+            Gauge.builder("kafka.listener.catchup", controller, c -> c.isCatchingUp(listenerId) ? 1 : 0)
+                    .tags(tags)
+                    .tag("listener", listenerId)
+                    .description("Whether the listener is in catch-up mode")
+                    .register(meterRegistry);
+
+            Gauge.builder("kafka.listener.catchup.lag", controller, c -> c.lag(listenerId))
+                    .tags(tags)
+                    .tag("listener", listenerId)
+                    .description("Consumer lag of the listener, as of the last backlog check")
+                    .register(meterRegistry);
+
+            FunctionCounter.builder("kafka.listener.catchup.changes", controller, c -> c.enteredCount(listenerId))
+                    .tags(tags)
+                    .tag("listener", listenerId)
+                    .tag("mode", "catchup")
+                    .description("Number of times the listener switched to catch-up mode")
+                    .register(meterRegistry);
+
+            FunctionCounter.builder("kafka.listener.catchup.changes", controller, c -> c.exitedCount(listenerId))
+                    .tags(tags)
+                    .tag("listener", listenerId)
+                    .tag("mode", "steady")
+                    .description("Number of times the listener switched back to its steady mode")
+                    .register(meterRegistry);
+
+            FunctionCounter.builder("kafka.records.coalesced", controller, c -> c.coalescedCount(listenerId))
+                    .tags(tags)
+                    .tag("listener", listenerId)
+                    .description("Number of records skipped as superseded by a later record")
+                    .register(meterRegistry);
+        }
+
+        Gauge.builder("audit.deferred.pending", deferredAuditLog, DeferredAuditLog::pendingCount)
+                .tags(tags)
+                .description("Number of deferred audit log entries waiting to be written")
+                .register(meterRegistry);
+
+        FunctionCounter.builder("audit.deferred.written", deferredAuditLog, DeferredAuditLog::writtenCount)
+                .tags(tags)
+                .description("Number of deferred audit log entries written")
+                .register(meterRegistry);
+    }
+}
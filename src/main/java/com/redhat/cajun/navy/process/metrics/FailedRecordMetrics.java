@@ -0,0 +1,48 @@
+package com.redhat.cajun.navy.process.metrics;
+
+import java.util.Collections;
+
+import com.redhat.cajun.navy.process.message.listeners.DeadLetterReplayer;
+import com.redhat.cajun.navy.process.message.listeners.FailedRecordRouter;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tag;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+public class FailedRecordMetrics implements MeterBinder {
+
+    private final Iterable<Tag> tags;
+
+    private FailedRecordRouter router;
+
+    private DeadLetterReplayer replayer;
+
+    public FailedRecordMetrics(FailedRecordRouter router, DeadLetterReplayer replayer) {
+        this(router, replayer, Collections.emptyList());
+    }
+
+    public FailedRecordMetrics(FailedRecordRouter router, DeadLetterReplayer replayer, Iterable<Tag> tags) {
+        this.router = router;
+        this.replayer = replayer;
+        this.tags = tags;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry meterRegistry) {
+
+        FunctionCounter.builder("kafka.records.retried", router, FailedRecordRouter::retriedCount)
+                .tags(tags)
+                .description("Number of failed records sent to a retry topic")
+                .register(meterRegistry);
+
+        FunctionCounter.builder("kafka.records.dead.lettered", router, FailedRecordRouter::deadLetteredCount)
+                .tags(tags)
+                .description("Number of failed records sent to a dead letter topic")
+                .register(meterRegistry);
+
+        FunctionCounter.builder("kafka.records.replayed", replayer, DeadLetterReplayer::replayedCount)
+                .tags(tags)
+                .description("Number of dead letter records replayed")
+                .register(meterRegistry);
+    }
+}
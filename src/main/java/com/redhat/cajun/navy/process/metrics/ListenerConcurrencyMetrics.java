@@ -0,0 +1,59 @@
+package com.redhat.cajun.navy.process.metrics;
+
+import java.util.Collections;
+
+import com.redhat.cajun.navy.process.message.listeners.ListenerConcurrencyController;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tag;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+public class ListenerConcurrencyMetrics implements MeterBinder {
+
+    private final Iterable<Tag> tags;
+
+    private ListenerConcurrencyController controller;
+
+    public ListenerConcurrencyMetrics(ListenerConcurrencyController controller) {
+        this(controller, Collections.emptyList());
+    }
+
+    public ListenerConcurrencyMetrics(ListenerConcurrencyController controller, Iterable<Tag> tags) {
+        this.controller = controller;
+        this.tags = tags;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry meterRegistry) {
+
+        for (String listenerId : controller.listenerIds()) {
+
+            Gauge.builder("kafka.listener.concurrency", controller, c -> c.concurrency(listenerId))
+                    .tags(tags)
+                    .tag("listener", listenerId)
+                    .description("Number of consumers of the listener")
+                    .register(meterRegistry);
+
+            Gauge.builder("kafka.listener.lag", controller, c -> c.lag(listenerId))
+                    .tags(tags)
+                    .tag("listener", listenerId)
+                    .description("Consumer lag of the listener, as of the last concurrency check")
+                    .register(meterRegistry);
+
+            FunctionCounter.builder("kafka.listener.concurrency.changes", controller, c -> c.scaleUpCount(listenerId))
+                    .tags(tags)
+                    .tag("listener", listenerId)
+                    .tag("direction", "up")
+                    .description("Number of times a consumer was added to the listener")
+                    .register(meterRegistry);
+
+            FunctionCounter.builder("kafka.listener.concurrency.changes", controller, c -> c.scaleDownCount(listenerId))
+                    .tags(tags)
+                    .tag("listener", listenerId)
+                    .tag("direction", "down")
+                    .description("Number of times a consumer was removed from the listener")
+                    .register(meterRegistry);
+        }
+    }
+}
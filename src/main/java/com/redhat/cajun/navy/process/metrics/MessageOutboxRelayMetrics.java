@@ -0,0 +1,45 @@
+package com.redhat.cajun.navy.process.metrics;
+
+import java.util.Collections;
+
+import com.redhat.cajun.navy.process.message.MessageOutboxRelay;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tag;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+public class MessageOutboxRelayMetrics implements MeterBinder {
+
+    private final Iterable<Tag> tags;
+
+    private MessageOutboxRelay relay;
+
+    public MessageOutboxRelayMetrics(MessageOutboxRelay relay) {
+        this(relay, Collections.emptyList());
+    }
+
+    public MessageOutboxRelayMetrics(MessageOutboxRelay relay, Iterable<Tag> tags) {
+        this.relay = relay;
+        this.tags = tags;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry meterRegistry) {
+
+        Gauge.builder("message.outbox.backlog", relay, MessageOutboxRelay::backlog)
+                .tags(tags)
+                .description("Number of outbox messages waiting to be relayed, as of the last drain of the outbox")
+                .register(meterRegistry);
+
+        FunctionCounter.builder("message.outbox.relayed", relay, MessageOutboxRelay::relayedCount)
+                .tags(tags)
+                .description("Number of outbox messages relayed to Kafka")
+                .register(meterRegistry);
+
+        FunctionCounter.builder("message.outbox.relay.failures", relay, MessageOutboxRelay::failureCount)
+                .tags(tags)
+                .description("Number of failed attempts to drain the outbox")
+                .register(meterRegistry);
+    }
+}
@@ -1,5 +1,15 @@
 package com.redhat.cajun.navy.process.metrics;
 
+import com.redhat.cajun.navy.process.KjarDeployer;
+import com.redhat.cajun.navy.process.audit.DeferredAuditLog;
+import com.redhat.cajun.navy.process.message.MessageOutboxRelay;
+import com.redhat.cajun.navy.process.message.listeners.CatchUpController;
+import com.redhat.cajun.navy.process.message.listeners.DeadLetterReplayer;
+import com.redhat.cajun.navy.process.message.listeners.FailedRecordRouter;
+import com.redhat.cajun.navy.process.message.listeners.ListenerConcurrencyController;
+import com.redhat.cajun.navy.process.message.listeners.SaturationMonitor;
+import com.redhat.cajun.navy.process.message.listeners.SignalRekeyer;
+import com.redhat.cajun.navy.process.signal.ProcessInstanceIdCache;
 import io.micrometer.core.instrument.MeterRegistry;
 import org.jbpm.services.api.RuntimeDataService;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -15,6 +25,36 @@ public class MetricsConfiguration {
     @Autowired
     private RuntimeDataService runtimeDataService;
 
+    @Autowired
+    private ProcessInstanceIdCache processInstanceIdCache;
+
+    @Autowired
+    private MessageOutboxRelay messageOutboxRelay;
+
+    @Autowired
+    private ListenerConcurrencyController listenerConcurrencyController;
+
+    @Autowired
+    private SaturationMonitor saturationMonitor;
+
+    @Autowired
+    private FailedRecordRouter failedRecordRouter;
+
+    @Autowired
+    private DeadLetterReplayer deadLetterReplayer;
+
+    @Autowired
+    private SignalRekeyer signalRekeyer;
+
+    @Autowired
+    private CatchUpController catchUpController;
+
+    @Autowired
+    private DeferredAuditLog deferredAuditLog;
+
+    @Autowired
+    private KjarDeployer kjarDeployer;
+
     @Bean
     public ProcessMetrics processMetrics() {
         ProcessMetrics processMetrics = new ProcessMetrics(runtimeDataService);
@@ -22,4 +62,60 @@ public class MetricsConfiguration {
         return processMetrics;
     }
 
+    @Bean
+    public ProcessInstanceIdCacheMetrics processInstanceIdCacheMetrics() {
+        ProcessInstanceIdCacheMetrics processInstanceIdCacheMetrics = new ProcessInstanceIdCacheMetrics(processInstanceIdCache);
+        processInstanceIdCacheMetrics.bindTo(meterRegistry);
+        return processInstanceIdCacheMetrics;
+    }
+
+    @Bean
+    public MessageOutboxRelayMetrics messageOutboxRelayMetrics() {
+        MessageOutboxRelayMetrics messageOutboxRelayMetrics = new MessageOutboxRelayMetrics(messageOutboxRelay);
+        messageOutboxRelayMetrics.bindTo(meterRegistry);
+        return messageOutboxRelayMetrics;
+    }
+
+    @Bean
+    public ListenerConcurrencyMetrics listenerConcurrencyMetrics() {
+        ListenerConcurrencyMetrics listenerConcurrencyMetrics = new ListenerConcurrencyMetrics(listenerConcurrencyController);
+        listenerConcurrencyMetrics.bindTo(meterRegistry);
+        return listenerConcurrencyMetrics;
+    }
+
+    @Bean
+    public SaturationMetrics saturationMetrics() {
+        SaturationMetrics saturationMetrics = new SaturationMetrics(saturationMonitor);
+        saturationMetrics.bindTo(meterRegistry);
+        return saturationMetrics;
+    }
+
+    @Bean
+    public FailedRecordMetrics failedRecordMetrics() {
+        FailedRecordMetrics failedRecordMetrics = new FailedRecordMetrics(failedRecordRouter, deadLetterReplayer);
+        failedRecordMetrics.bindTo(meterRegistry);
+        return failedRecordMetrics;
+    }
+
+    @Bean
+    public SignalRekeyerMetrics signalRekeyerMetrics() {
+        SignalRekeyerMetrics signalRekeyerMetrics = new SignalRekeyerMetrics(signalRekeyer);
+        signalRekeyerMetrics.bindTo(meterRegistry);
+        return signalRekeyerMetrics;
+    }
+
+    @Bean
+    public CatchUpMetrics catchUpMetrics() {
+        CatchUpMetrics catchUpMetrics = new CatchUpMetrics(catchUpController, deferredAuditLog);
+        catchUpMetrics.bindTo(meterRegistry);
+        return catchUpMetrics;
+    }
+
+    @Bean
+    public StartupMetrics startupMetrics() {
+        StartupMetrics startupMetrics = new StartupMetrics(kjarDeployer);
+        startupMetrics.bindTo(meterRegistry);
+        return startupMetrics;
+    }
+
 }
@@ -0,0 +1,52 @@
+package com.redhat.cajun.navy.process.metrics;
+
+import java.util.Collections;
+
+import com.redhat.cajun.navy.process.signal.ProcessInstanceIdCache;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tag;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+public class ProcessInstanceIdCacheMetrics implements MeterBinder {
+
+    private final Iterable<Tag> tags;
+
+    private ProcessInstanceIdCache cache;
+
+    public ProcessInstanceIdCacheMetrics(ProcessInstanceIdCache cache) {
+        this(cache, Collections.emptyList());
+    }
+
+    public ProcessInstanceIdCacheMetrics(ProcessInstanceIdCache cache, Iterable<Tag> tags) {
+        this.cache = cache;
+        this.tags = tags;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry meterRegistry) {
+
+        FunctionCounter.builder("process.instance.id.cache.requests", cache, ProcessInstanceIdCache::hitCount)
+                .tags(tags)
+                .tag("result", "hit")
+                .description("Number of process instance id lookups answered by the cache")
+                .register(meterRegistry);
+
+        FunctionCounter.builder("process.instance.id.cache.requests", cache, ProcessInstanceIdCache::missCount)
+                .tags(tags)
+                .tag("result", "miss")
+                .description("Number of process instance id lookups not answered by the cache")
+                .register(meterRegistry);
+
+        FunctionCounter.builder("process.instance.id.cache.evictions", cache, ProcessInstanceIdCache::evictionCount)
+                .tags(tags)
+                .description("Number of process instance ids evicted from the cache")
+                .register(meterRegistry);
+
+        Gauge.builder("process.instance.id.cache.size", cache, ProcessInstanceIdCache::size)
+                .tags(tags)
+                .description("Number of process instance ids in the cache")
+                .register(meterRegistry);
+    }
+}
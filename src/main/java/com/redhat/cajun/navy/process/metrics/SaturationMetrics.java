@@ -0,0 +1,60 @@
+package com.redhat.cajun.navy.process.metrics;
+
+import java.util.Collections;
+
+import com.redhat.cajun.navy.process.message.listeners.SaturationMonitor;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tag;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+public class SaturationMetrics implements MeterBinder {
+
+    private final Iterable<Tag> tags;
+
+    private SaturationMonitor monitor;
+
+    public SaturationMetrics(SaturationMonitor monitor) {
+        this(monitor, Collections.emptyList());
+    }
+
+    public SaturationMetrics(SaturationMonitor monitor, Iterable<Tag> tags) {
+        this.monitor = monitor;
+        this.tags = tags;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry meterRegistry) {
+
+        Gauge.builder("kafka.listener.paused", monitor, m -> m.isSaturated() ? 1 : 0)
+                .tags(tags)
+                .description("Whether the listeners are paused because of saturation")
+                .register(meterRegistry);
+
+        FunctionCounter.builder("kafka.listener.pauses", monitor, SaturationMonitor::pauseCount)
+                .tags(tags)
+                .description("Number of times the listeners were paused because of saturation")
+                .register(meterRegistry);
+
+        Gauge.builder("kafka.listener.in.flight", monitor, SaturationMonitor::inFlight)
+                .tags(tags)
+                .description("Number of messages being handled")
+                .register(meterRegistry);
+
+        Gauge.builder("datasource.pool.utilization", monitor, SaturationMonitor::poolUtilization)
+                .tags(tags)
+                .description("Share of the connections of the pool in use, as of the last saturation check")
+                .register(meterRegistry);
+
+        Gauge.builder("datasource.pool.waiters", monitor, SaturationMonitor::poolWaiters)
+                .tags(tags)
+                .description("Number of threads waiting for a connection, as of the last saturation check")
+                .register(meterRegistry);
+
+        Gauge.builder("jbpm.executor.queue", monitor, SaturationMonitor::executorQueue)
+                .tags(tags)
+                .description("Number of due jBPM executor requests, as of the last saturation check")
+                .register(meterRegistry);
+    }
+}
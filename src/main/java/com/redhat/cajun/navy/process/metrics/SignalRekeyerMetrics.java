@@ -0,0 +1,34 @@
+package com.redhat.cajun.navy.process.metrics;
+
+import java.util.Collections;
+
+import com.redhat.cajun.navy.process.message.listeners.SignalRekeyer;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tag;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+public class SignalRekeyerMetrics implements MeterBinder {
+
+    private final Iterable<Tag> tags;
+
+    private SignalRekeyer rekeyer;
+
+    public SignalRekeyerMetrics(SignalRekeyer rekeyer) {
+        this(rekeyer, Collections.emptyList());
+    }
+
+    public SignalRekeyerMetrics(SignalRekeyer rekeyer, Iterable<Tag> tags) {
+        this.rekeyer = rekeyer;
+        this.tags = tags;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry meterRegistry) {
+
+        FunctionCounter.builder("kafka.records.rekeyed", rekeyer, SignalRekeyer::rekeyedCount)
+                .tags(tags)
+                .description("Number of records republished keyed by incident")
+                .register(meterRegistry);
+    }
+}
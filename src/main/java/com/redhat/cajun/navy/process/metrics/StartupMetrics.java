@@ -0,0 +1,44 @@
+package com.redhat.cajun.navy.process.metrics;
+
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import com.redhat.cajun.navy.process.KjarDeployer;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tag;
+import io.micrometer.core.instrument.TimeGauge;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+public class StartupMetrics implements MeterBinder {
+
+    private final Iterable<Tag> tags;
+
+    private KjarDeployer kjarDeployer;
+
+    public StartupMetrics(KjarDeployer kjarDeployer) {
+        this(kjarDeployer, Collections.emptyList());
+    }
+
+    public StartupMetrics(KjarDeployer kjarDeployer, Iterable<Tag> tags) {
+        this.kjarDeployer = kjarDeployer;
+        this.tags = tags;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry meterRegistry) {
+
+        for (String phase : KjarDeployer.PHASES) {
+            TimeGauge.builder("process.startup.duration", kjarDeployer, TimeUnit.MILLISECONDS, d -> d.startupTime(phase))
+                    .tags(tags)
+                    .tag("phase", phase)
+                    .description("Duration of the startup phase of the process deployment")
+                    .register(meterRegistry);
+        }
+
+        Gauge.builder("process.startup.kiebase.cached", kjarDeployer, d -> d.isKieBaseCached() ? 1 : 0)
+                .tags(tags)
+                .description("Whether the kie base was read from the kie base cache at startup")
+                .register(meterRegistry);
+    }
+}
@@ -0,0 +1,47 @@
+package com.redhat.cajun.navy.process.runtime;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.drools.compiler.kie.builder.impl.KieContainerImpl;
+import org.drools.core.impl.InternalKnowledgeBase;
+import org.kie.api.KieBase;
+import org.kie.api.KieServices;
+
+/**
+ * Container of the kie project of a container, which takes its kie bases from the {@link KieBaseCache}.
+ */
+class CachedKieContainer extends KieContainerImpl {
+
+    private final KieBaseCache cache;
+
+    private final Map<String, KieBase> kieBases = new ConcurrentHashMap<>();
+
+    CachedKieContainer(KieContainerImpl container, KieBaseCache cache) {
+        super(container.getContainerId(), container.getKieProject(), KieServices.Factory.get().getRepository());
+        this.cache = cache;
+    }
+
+    @Override
+    public KieBase getKieBase(String kBaseName) {
+        return kieBases.computeIfAbsent(kBaseName, name -> cache.getKieBase(this, name, () -> super.getKieBase(name)));
+    }
+
+    /**
+     * Attaches a kie base read from the cache to this container, as the container does for the kie bases it builds.
+     */
+    KieBase attach(KieBase kieBase) {
+        InternalKnowledgeBase knowledgeBase = (InternalKnowledgeBase) kieBase;
+        knowledgeBase.setResolvedReleaseId(getReleaseId());
+        knowledgeBase.setContainerId(getContainerId());
+        knowledgeBase.setKieContainer(this);
+        knowledgeBase.initMBeans();
+        return kieBase;
+    }
+
+    @Override
+    public void dispose() {
+        kieBases.clear();
+        super.dispose();
+    }
+}
@@ -0,0 +1,159 @@
+package com.redhat.cajun.navy.process.runtime;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Supplier;
+
+import org.drools.compiler.kie.builder.impl.InternalKieModule;
+import org.drools.compiler.kie.builder.impl.KieContainerImpl;
+import org.drools.core.common.DroolsObjectInputStream;
+import org.drools.core.common.DroolsObjectOutputStream;
+import org.drools.core.util.Drools;
+import org.kie.api.KieBase;
+import org.kie.api.runtime.KieContainer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Caches the kie bases of the deployment in local files, so that the processes are not parsed and compiled again on
+ * each boot.
+ *
+ * With {@code incident.deployment.kbase-cache.enabled}, a kie base built by the container is serialized to
+ * {@code <kbase>-<hash>.kbase} in {@code incident.deployment.kbase-cache.dir}, where the hash is computed from the
+ * contents of the kie module of the kie base and the Drools version. On the next boot, the kie base is read from that
+ * file when it exists, and built again when the kie module changed or the file cannot be read.
+ */
+@Component
+public class KieBaseCache {
+
+    private static final Logger log = LoggerFactory.getLogger(KieBaseCache.class);
+
+    private static final String SUFFIX = ".kbase";
+
+    @Value("${incident.deployment.kbase-cache.enabled}")
+    private boolean enabled;
+
+    @Value("${incident.deployment.kbase-cache.dir}")
+    private String dir;
+
+    private volatile boolean loaded;
+
+    /**
+     * @return the container, which takes its kie bases from the cache if enabled
+     */
+    public KieContainer container(KieContainer kieContainer) {
+        if (!enabled) {
+            return kieContainer;
+        }
+        return new CachedKieContainer((KieContainerImpl) kieContainer, this);
+    }
+
+    /**
+     * @return whether the last kie base was read from the cache rather than built
+     */
+    public boolean isLoaded() {
+        return loaded;
+    }
+
+    KieBase getKieBase(CachedKieContainer container, String kBaseName, Supplier<KieBase> build) {
+        Path file;
+        try {
+            file = Paths.get(dir, kBaseName + "-" + hash(container, kBaseName) + SUFFIX);
+        } catch (RuntimeException e) {
+            log.warn("Error computing the hash of kie base " + kBaseName + ", the kie base is not cached", e);
+            loaded = false;
+            return build.get();
+        }
+        if (Files.isReadable(file)) {
+            try {
+                KieBase kieBase = container.attach(read(file, container.getClassLoader()));
+                log.info("Kie base " + kBaseName + " read from " + file);
+                loaded = true;
+                return kieBase;
+            } catch (IOException | ClassNotFoundException | RuntimeException e) {
+                log.warn("Error reading kie base " + kBaseName + " from " + file + ", building it", e);
+            }
+        }
+        loaded = false;
+        KieBase kieBase = build.get();
+        try {
+            write(file, kieBase);
+            removeStale(file.getParent(), kBaseName, file);
+            log.info("Kie base " + kBaseName + " written to " + file);
+        } catch (IOException | RuntimeException e) {
+            log.warn("Error writing kie base " + kBaseName + " to " + file, e);
+        }
+        return kieBase;
+    }
+
+    static String hash(KieContainerImpl container, String kBaseName) {
+        InternalKieModule kieModule = (InternalKieModule) container.getKieModuleForKBase(kBaseName);
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        digest.update(Drools.getFullVersion().getBytes(StandardCharsets.UTF_8));
+        digest.update(kBaseName.getBytes(StandardCharsets.UTF_8));
+        List<String> fileNames = new ArrayList<>(kieModule.getFileNames());
+        Collections.sort(fileNames);
+        for (String fileName : fileNames) {
+            digest.update(fileName.getBytes(StandardCharsets.UTF_8));
+            byte[] bytes = kieModule.getBytes(fileName);
+            if (bytes != null) {
+                digest.update(bytes);
+            }
+        }
+        StringBuilder hash = new StringBuilder();
+        for (byte b : digest.digest()) {
+            hash.append(String.format("%02x", b));
+        }
+        return hash.toString();
+    }
+
+    private static KieBase read(Path file, ClassLoader classLoader) throws IOException, ClassNotFoundException {
+        try (ObjectInputStream in = new DroolsObjectInputStream(new BufferedInputStream(Files.newInputStream(file)), classLoader)) {
+            return (KieBase) in.readObject();
+        }
+    }
+
+    private static void write(Path file, KieBase kieBase) throws IOException {
+        Files.createDirectories(file.getParent());
+        Path tmp = Files.createTempFile(file.getParent(), file.getFileName().toString(), ".tmp");
+        try {
+            try (ObjectOutputStream out = new DroolsObjectOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+                out.writeObject(kieBase);
+            }
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    private static void removeStale(Path dir, String kBaseName, Path current) throws IOException {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, kBaseName + "-*" + SUFFIX)) {
+            for (Path file : files) {
+                if (!file.equals(current)) {
+                    Files.deleteIfExists(file);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,242 @@
+package com.redhat.cajun.navy.process.runtime;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.drools.core.time.TimerService;
+import org.jbpm.process.core.timer.TimerServiceRegistry;
+import org.jbpm.process.core.timer.impl.GlobalTimerService;
+import org.jbpm.runtime.manager.impl.PerRequestRuntimeManager;
+import org.jbpm.runtime.manager.impl.RuntimeEngineImpl;
+import org.jbpm.runtime.manager.impl.RuntimeEngineInitlializer;
+import org.jbpm.runtime.manager.impl.tx.DisposeSessionTransactionSynchronization;
+import org.kie.api.runtime.KieSession;
+import org.kie.api.runtime.manager.Context;
+import org.kie.api.runtime.manager.RuntimeEngine;
+import org.kie.api.runtime.manager.RuntimeEnvironment;
+import org.kie.api.task.TaskService;
+import org.kie.internal.runtime.manager.Disposable;
+import org.kie.internal.runtime.manager.InternalRuntimeManager;
+import org.kie.internal.runtime.manager.SessionFactory;
+import org.kie.internal.runtime.manager.TaskServiceFactory;
+import org.kie.internal.task.api.InternalTaskService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Per request runtime manager which takes the sessions of its runtime engines from a bounded pool, rather than creating
+ * a session for each request and destroying it afterwards.
+ *
+ * The sessions of the pool are created when the manager is initialised, with the handlers and listeners of the
+ * deployment registered on them once. A runtime engine borrows an idle session when its session is first used, and
+ * returns it to the pool once disposed, after the transaction completed. The session is then reset: the timer job
+ * instances it registered are cleared, as they are for destroyed sessions. Process instances are not kept by the
+ * sessions, they are loaded in the transaction of each request as with per request sessions. A runtime engine waits up
+ * to the borrow timeout for a session when all the sessions are in use.
+ *
+ * The sessions of the pool are destroyed when the manager is closed.
+ */
+public class PooledSessionRuntimeManager extends PerRequestRuntimeManager {
+
+    private static final Logger log = LoggerFactory.getLogger(PooledSessionRuntimeManager.class);
+
+    private final int poolSize;
+
+    private final long borrowTimeout;
+
+    private final BlockingQueue<RuntimeEngineImpl> idle;
+
+    private final ThreadLocal<RuntimeEngine> local = new ThreadLocal<>();
+
+    private final RuntimeEngineInitlializer initializer = new PooledSessionInitializer();
+
+    public PooledSessionRuntimeManager(RuntimeEnvironment environment, SessionFactory factory, TaskServiceFactory taskServiceFactory,
+                                       String identifier, int poolSize, long borrowTimeout) {
+        super(environment, factory, taskServiceFactory, identifier);
+        if (poolSize < 1) {
+            throw new IllegalArgumentException("Pool size of runtime manager " + identifier + " must be at least 1");
+        }
+        this.poolSize = poolSize;
+        this.borrowTimeout = borrowTimeout;
+        this.idle = new ArrayBlockingQueue<>(poolSize);
+    }
+
+    @Override
+    public void init() {
+        super.init();
+        for (int i = 0; i < poolSize; i++) {
+            idle.offer(newPooledSession());
+        }
+        log.info("Runtime manager " + identifier + " initialised with a pool of " + poolSize + " sessions");
+    }
+
+    @Override
+    public RuntimeEngine getRuntimeEngine(Context<?> context) {
+        if (isClosed()) {
+            throw new IllegalStateException("Runtime manager " + identifier + " is already closed");
+        }
+        RuntimeEngine runtime = local.get();
+        if (runtime != null && !((RuntimeEngineImpl) runtime).isDisposed()) {
+            return runtime;
+        }
+        PooledRuntimeEngine engine = new PooledRuntimeEngine(context, initializer);
+        engine.setManager(this);
+        local.set(engine);
+        return engine;
+    }
+
+    @Override
+    public void validate(KieSession ksession, Context<?> context) throws IllegalStateException {
+        if (isClosed()) {
+            throw new IllegalStateException("Runtime manager " + identifier + " is already closed");
+        }
+        RuntimeEngine runtime = local.get();
+        if (runtime != null && ((RuntimeEngineImpl) runtime).isInitialized()
+                && ((RuntimeEngineImpl) runtime).internalGetKieSession().getIdentifier() != ksession.getIdentifier()) {
+            throw new IllegalStateException("Invalid session was used for this context " + context);
+        }
+    }
+
+    @Override
+    public void disposeRuntimeEngine(RuntimeEngine runtime) {
+        if (isClosed()) {
+            log.warn("Runtime manager " + identifier + " is already closed");
+            return;
+        }
+        if (!canDispose(runtime)) {
+            // disposed once the transaction completed
+            return;
+        }
+        if (local.get() == runtime) {
+            local.remove();
+        }
+        ((Disposable) runtime).dispose();
+    }
+
+    @Override
+    public void softDispose(RuntimeEngine runtime) {
+        super.softDispose(runtime);
+        local.remove();
+    }
+
+    @Override
+    public void close() {
+        RuntimeEngineImpl pooled;
+        while ((pooled = idle.poll()) != null) {
+            try {
+                pooled.getKieSession().destroy();
+            } catch (RuntimeException e) {
+                log.warn("Error destroying session " + pooled.getKieSessionId() + " of runtime manager " + identifier, e);
+            }
+        }
+        super.close();
+    }
+
+    public int getPoolSize() {
+        return poolSize;
+    }
+
+    public int idleCount() {
+        return idle.size();
+    }
+
+    private RuntimeEngineImpl newPooledSession() {
+        KieSession ksession = getFactory().newKieSession();
+        InternalTaskService taskService = newTaskService(getTaskServiceFactory());
+        RuntimeEngineImpl pooled = new RuntimeEngineImpl(ksession, taskService);
+        pooled.setManager(this);
+        if (taskService != null) {
+            configureRuntimeOnTaskService(taskService, pooled);
+        }
+        registerItems(pooled);
+        attachManager(pooled);
+        return pooled;
+    }
+
+    private RuntimeEngineImpl borrow() {
+        RuntimeEngineImpl pooled;
+        try {
+            pooled = idle.poll(borrowTimeout, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for a session of runtime manager " + identifier, e);
+        }
+        if (pooled == null) {
+            throw new IllegalStateException("No session of runtime manager " + identifier + " available after " + borrowTimeout + " ms");
+        }
+        return pooled;
+    }
+
+    private void release(RuntimeEngineImpl pooled) {
+        TimerService timerService = TimerServiceRegistry.getInstance().get(identifier + TimerServiceRegistry.TIMER_SERVICE_SUFFIX);
+        if (timerService instanceof GlobalTimerService) {
+            ((GlobalTimerService) timerService).clearTimerJobInstances(pooled.getKieSessionId());
+        }
+        idle.offer(pooled);
+    }
+
+    private class PooledSessionInitializer implements RuntimeEngineInitlializer {
+
+        @Override
+        public KieSession initKieSession(Context<?> context, InternalRuntimeManager manager, RuntimeEngine engine) {
+            RuntimeEngineImpl pooled = borrow();
+            try {
+                registerDisposeCallback(engine, new DisposeSessionTransactionSynchronization(manager, engine), pooled.getKieSession().getEnvironment());
+            } catch (RuntimeException e) {
+                release(pooled);
+                throw e;
+            }
+            ((PooledRuntimeEngine) engine).pooled = pooled;
+            return pooled.getKieSession();
+        }
+
+        @Override
+        public TaskService initTaskService(Context<?> context, InternalRuntimeManager manager, RuntimeEngine engine) {
+            InternalTaskService taskService = newTaskService(getTaskServiceFactory());
+            if (taskService != null) {
+                configureRuntimeOnTaskService(taskService, engine);
+            }
+            return taskService;
+        }
+    }
+
+    /**
+     * Runtime engine of a request, which returns its session to the pool rather than disposing it.
+     */
+    private class PooledRuntimeEngine extends RuntimeEngineImpl {
+
+        private volatile RuntimeEngineImpl pooled;
+
+        private volatile boolean released;
+
+        PooledRuntimeEngine(Context<?> context, RuntimeEngineInitlializer initializer) {
+            super(context, initializer);
+        }
+
+        @Override
+        public KieSession getKieSession() {
+            if (released) {
+                throw new IllegalStateException("This runtime is already disposed");
+            }
+            return super.getKieSession();
+        }
+
+        @Override
+        public boolean isDisposed() {
+            return released;
+        }
+
+        @Override
+        public synchronized void dispose() {
+            if (released) {
+                return;
+            }
+            released = true;
+            if (pooled != null) {
+                release(pooled);
+                pooled = null;
+            }
+        }
+    }
+}
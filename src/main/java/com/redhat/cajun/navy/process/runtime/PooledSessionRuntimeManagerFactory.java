@@ -0,0 +1,53 @@
+package com.redhat.cajun.navy.process.runtime;
+
+import org.jbpm.runtime.manager.impl.AbstractRuntimeManager;
+import org.kie.api.runtime.manager.RuntimeEnvironment;
+import org.kie.api.runtime.manager.RuntimeManager;
+import org.kie.internal.runtime.manager.SessionFactory;
+import org.kie.internal.runtime.manager.TaskServiceFactory;
+import org.kie.spring.manager.SpringRuntimeManagerFactoryImpl;
+import org.springframework.context.ApplicationContext;
+
+/**
+ * Runtime manager factory which creates a {@link PooledSessionRuntimeManager} for the per request strategy, configured
+ * as the factory it replaces.
+ *
+ * jBPM has no runtime strategy for pooled sessions: deployment units with the {@link #POOLED} strategy are deployed
+ * with the per request strategy, and get pooled sessions through this factory.
+ */
+public class PooledSessionRuntimeManagerFactory extends SpringRuntimeManagerFactoryImpl {
+
+    public static final String POOLED = "POOLED";
+
+    private final int poolSize;
+
+    private final long borrowTimeout;
+
+    public PooledSessionRuntimeManagerFactory(ApplicationContext applicationContext, SpringRuntimeManagerFactoryImpl factory,
+                                              int poolSize, long borrowTimeout) {
+        super(applicationContext);
+        setTransactionManager(factory.getTransactionManager());
+        setUserGroupCallback(factory.getUserGroupCallback());
+        setUserInfo(factory.getUserInfo());
+        setEntityManager(factory.getEntityManager());
+        setPessimisticLocking(factory.isPessimisticLocking());
+        setSchedulerService(factory.getSchedulerService());
+        this.poolSize = poolSize;
+        this.borrowTimeout = borrowTimeout;
+    }
+
+    public static boolean isPooled(String strategy) {
+        return strategy != null && POOLED.equalsIgnoreCase(strategy.trim());
+    }
+
+    @Override
+    public RuntimeManager newPerRequestRuntimeManager(RuntimeEnvironment environment, String identifier) {
+        disallowSharedTaskService(environment);
+        adjustEnvironment(environment);
+        SessionFactory factory = getSessionFactory(environment, identifier);
+        TaskServiceFactory taskServiceFactory = getTaskServiceFactory(environment);
+        RuntimeManager manager = new PooledSessionRuntimeManager(environment, factory, taskServiceFactory, identifier, poolSize, borrowTimeout);
+        ((AbstractRuntimeManager) manager).init();
+        return manager;
+    }
+}
@@ -0,0 +1,67 @@
+package com.redhat.cajun.navy.process.signal;
+
+import javax.transaction.Status;
+import javax.transaction.Synchronization;
+import javax.transaction.Transaction;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.jta.JtaTransactionManager;
+
+public final class JtaTransactions {
+
+    private static final Logger log = LoggerFactory.getLogger(JtaTransactions.class);
+
+    private JtaTransactions() {
+    }
+
+    /**
+     * @return the JTA transaction associated with the current thread, or null if there is no active transaction
+     */
+    public static Transaction activeTransaction(PlatformTransactionManager transactionManager) {
+        if (!(transactionManager instanceof JtaTransactionManager)) {
+            return null;
+        }
+        try {
+            Transaction transaction = ((JtaTransactionManager) transactionManager).getTransactionManager().getTransaction();
+            if (transaction == null || transaction.getStatus() != Status.STATUS_ACTIVE) {
+                return null;
+            }
+            return transaction;
+        } catch (Exception e) {
+            log.warn("Unable to obtain the current transaction.", e);
+            return null;
+        }
+    }
+
+    /**
+     * Runs the action once the transaction has committed.
+     *
+     * @return false if the action could not be registered with the transaction
+     */
+    static boolean afterCommit(Transaction transaction, Runnable action) {
+        return register(transaction, new Synchronization() {
+            @Override
+            public void beforeCompletion() {
+            }
+
+            @Override
+            public void afterCompletion(int status) {
+                if (status == Status.STATUS_COMMITTED) {
+                    action.run();
+                }
+            }
+        });
+    }
+
+    public static boolean register(Transaction transaction, Synchronization synchronization) {
+        try {
+            transaction.registerSynchronization(synchronization);
+            return true;
+        } catch (Exception e) {
+            log.warn("Unable to register transaction synchronization.", e);
+            return false;
+        }
+    }
+}
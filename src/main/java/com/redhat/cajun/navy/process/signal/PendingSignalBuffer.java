@@ -0,0 +1,162 @@
+package com.redhat.cajun.navy.process.signal;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+
+/**
+ * Holds signals for process instances which were not waiting for them yet, by correlation key.
+ *
+ * Signals for the same correlation key are taken in the order they were parked. A signal which is not taken within
+ * {@code incident.process.pending-signal-expiry} milliseconds is logged and discarded.
+ */
+@Component
+public class PendingSignalBuffer {
+
+    private static final Logger log = LoggerFactory.getLogger(PendingSignalBuffer.class);
+
+    @Value("${incident.process.pending-signal-expiry}")
+    private long expiry;
+
+    private final Map<String, List<PendingSignal>> pendingSignals = new ConcurrentHashMap<>();
+
+    private ScheduledExecutorService sweeper;
+
+    @PostConstruct
+    public void init() {
+        sweeper = Executors.newSingleThreadScheduledExecutor(new CustomizableThreadFactory("pending-signal-sweeper-"));
+        sweeper.scheduleWithFixedDelay(this::expire, expiry, expiry, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        sweeper.shutdownNow();
+    }
+
+    public void park(String correlationKey, String signal, Object event, String messageId) {
+        PendingSignal pendingSignal = new PendingSignal(signal, event, messageId, System.currentTimeMillis() + expiry);
+        pendingSignals.compute(correlationKey, (k, signals) -> {
+            List<PendingSignal> result = signals == null ? new ArrayList<>() : signals;
+            synchronized (result) {
+                result.add(pendingSignal);
+            }
+            return result;
+        });
+    }
+
+    public boolean contains(String correlationKey, String signal) {
+        List<PendingSignal> signals = pendingSignals.get(correlationKey);
+        if (signals == null) {
+            return false;
+        }
+        synchronized (signals) {
+            return signals.stream().anyMatch(s -> s.getSignal().equals(signal));
+        }
+    }
+
+    /**
+     * @return the signals parked for the matching correlation keys, by correlation key
+     */
+    public Map<String, Set<String>> parked(Predicate<String> correlationKeys) {
+        Map<String, Set<String>> parked = new HashMap<>();
+        pendingSignals.forEach((correlationKey, signals) -> {
+            if (!correlationKeys.test(correlationKey)) {
+                return;
+            }
+            synchronized (signals) {
+                Set<String> names = new LinkedHashSet<>();
+                signals.forEach(s -> names.add(s.getSignal()));
+                parked.put(correlationKey, names);
+            }
+        });
+        return parked;
+    }
+
+    /**
+     * @return the oldest unexpired signal parked for the correlation key, or null if there is none
+     */
+    public PendingSignal take(String correlationKey, String signal) {
+        PendingSignal[] taken = new PendingSignal[1];
+        long now = System.currentTimeMillis();
+        pendingSignals.computeIfPresent(correlationKey, (k, signals) -> {
+            synchronized (signals) {
+                Iterator<PendingSignal> iterator = signals.iterator();
+                while (iterator.hasNext()) {
+                    PendingSignal pendingSignal = iterator.next();
+                    if (pendingSignal.getSignal().equals(signal) && pendingSignal.expiresAt > now) {
+                        iterator.remove();
+                        taken[0] = pendingSignal;
+                        break;
+                    }
+                }
+                return signals.isEmpty() ? null : signals;
+            }
+        });
+        return taken[0];
+    }
+
+    void expire() {
+        long now = System.currentTimeMillis();
+        for (String correlationKey : pendingSignals.keySet()) {
+            pendingSignals.computeIfPresent(correlationKey, (k, signals) -> {
+                synchronized (signals) {
+                    signals.removeIf(s -> {
+                        if (s.expiresAt > now) {
+                            return false;
+                        }
+                        log.warn("Process instance with correlationKey '" + k + "' is not waiting for signal '" + s.getSignal() + "'. Process instance is not signaled.");
+                        return true;
+                    });
+                    return signals.isEmpty() ? null : signals;
+                }
+            });
+        }
+    }
+
+    public static class PendingSignal {
+
+        private final String signal;
+
+        private final Object event;
+
+        private final String messageId;
+
+        private final long expiresAt;
+
+        PendingSignal(String signal, Object event, String messageId, long expiresAt) {
+            this.signal = signal;
+            this.event = event;
+            this.messageId = messageId;
+            this.expiresAt = expiresAt;
+        }
+
+        public String getSignal() {
+            return signal;
+        }
+
+        public Object getEvent() {
+            return event;
+        }
+
+        public String getMessageId() {
+            return messageId;
+        }
+    }
+}
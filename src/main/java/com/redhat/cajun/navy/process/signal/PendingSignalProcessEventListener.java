@@ -0,0 +1,37 @@
+package com.redhat.cajun.navy.process.signal;
+
+import org.jbpm.workflow.core.node.EventNode;
+import org.jbpm.workflow.instance.impl.WorkflowProcessInstanceImpl;
+import org.kie.api.definition.process.Node;
+import org.kie.api.event.process.DefaultProcessEventListener;
+import org.kie.api.event.process.ProcessNodeTriggeredEvent;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.stereotype.Component;
+
+/**
+ * Delivers parked signals when a process instance reaches a catch event for them.
+ *
+ * Registered on the process runtime through the {@code SpringRegisterableItemsFactory}.
+ */
+@Component
+public class PendingSignalProcessEventListener extends DefaultProcessEventListener {
+
+    // lazy, as the process runtime looks up its event listeners while the process services are being set up
+    @Autowired
+    @Lazy
+    private ProcessSignaller processSignaller;
+
+    @Override
+    public void afterNodeTriggered(ProcessNodeTriggeredEvent event) {
+        Node node = event.getNodeInstance().getNode();
+        if (!(node instanceof EventNode) || !(event.getProcessInstance() instanceof WorkflowProcessInstanceImpl)) {
+            return;
+        }
+        String correlationKey = ((WorkflowProcessInstanceImpl) event.getProcessInstance()).getCorrelationKey();
+        if (correlationKey == null) {
+            return;
+        }
+        processSignaller.deliverPendingAfterCommit(correlationKey, ((EventNode) node).getType());
+    }
+}
@@ -0,0 +1,116 @@
+package com.redhat.cajun.navy.process.signal;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Predicate;
+import javax.transaction.Transaction;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+
+/**
+ * Bounded cache of process instance ids by correlation key.
+ *
+ * Entries are added when a process instance is started or looked up, and evicted when the process instance completes
+ * or is aborted. Once {@code incident.process.id-cache.size} entries are cached, the least recently used entry is
+ * evicted.
+ */
+@Component
+public class ProcessInstanceIdCache {
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Value("${incident.process.id-cache.size}")
+    private int size;
+
+    private Map<String, Long> processInstanceIds;
+
+    private final LongAdder hits = new LongAdder();
+
+    private final LongAdder misses = new LongAdder();
+
+    private final LongAdder evictions = new LongAdder();
+
+    public ProcessInstanceIdCache() {
+        processInstanceIds = new LinkedHashMap<String, Long>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Long> eldest) {
+                if (size() > size) {
+                    evictions.increment();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    public Long get(String correlationKey) {
+        Long processInstanceId;
+        synchronized (processInstanceIds) {
+            processInstanceId = processInstanceIds.get(correlationKey);
+        }
+        if (processInstanceId == null) {
+            misses.increment();
+        } else {
+            hits.increment();
+        }
+        return processInstanceId;
+    }
+
+    /**
+     * Caches the process instance id once the current transaction commits, or right away when there is no transaction.
+     */
+    public void put(String correlationKey, long processInstanceId) {
+        Runnable put = () -> {
+            synchronized (processInstanceIds) {
+                processInstanceIds.put(correlationKey, processInstanceId);
+            }
+        };
+        Transaction transaction = JtaTransactions.activeTransaction(transactionManager);
+        if (transaction == null || !JtaTransactions.afterCommit(transaction, put)) {
+            put.run();
+        }
+    }
+
+    public void evict(String correlationKey) {
+        synchronized (processInstanceIds) {
+            if (processInstanceIds.remove(correlationKey) != null) {
+                evictions.increment();
+            }
+        }
+    }
+
+    public void evict(Predicate<String> correlationKeys) {
+        synchronized (processInstanceIds) {
+            processInstanceIds.keySet().removeIf(correlationKey -> {
+                if (correlationKeys.test(correlationKey)) {
+                    evictions.increment();
+                    return true;
+                }
+                return false;
+            });
+        }
+    }
+
+    public int size() {
+        synchronized (processInstanceIds) {
+            return processInstanceIds.size();
+        }
+    }
+
+    public long hitCount() {
+        return hits.sum();
+    }
+
+    public long missCount() {
+        return misses.sum();
+    }
+
+    public long evictionCount() {
+        return evictions.sum();
+    }
+}
@@ -0,0 +1,32 @@
+package com.redhat.cajun.navy.process.signal;
+
+import org.jbpm.workflow.instance.impl.WorkflowProcessInstanceImpl;
+import org.kie.api.event.process.DefaultProcessEventListener;
+import org.kie.api.event.process.ProcessCompletedEvent;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.stereotype.Component;
+
+/**
+ * Evicts process instances from the {@link ProcessInstanceIdCache} when they complete or are aborted.
+ *
+ * Registered on the process runtime through the {@code SpringRegisterableItemsFactory}.
+ */
+@Component
+public class ProcessInstanceIdCacheProcessEventListener extends DefaultProcessEventListener {
+
+    @Autowired
+    @Lazy
+    private ProcessInstanceIdCache processInstanceIdCache;
+
+    @Override
+    public void afterProcessCompleted(ProcessCompletedEvent event) {
+        if (!(event.getProcessInstance() instanceof WorkflowProcessInstanceImpl)) {
+            return;
+        }
+        String correlationKey = ((WorkflowProcessInstanceImpl) event.getProcessInstance()).getCorrelationKey();
+        if (correlationKey != null) {
+            processInstanceIdCache.evict(correlationKey);
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package com.redhat.cajun.navy.process.signal;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.transaction.Transaction;
+
+import com.redhat.cajun.navy.process.message.ProcessedMessageStore;
+import com.redhat.cajun.navy.process.message.listeners.SignalsByCorrelationKeyHelper.ProcessInstanceSignals;
+import org.jbpm.services.api.ProcessService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Signals process instances by correlation key, without waiting for them to reach the catch event.
+ *
+ * A signal for a process instance which is not waiting for it is parked in the {@link PendingSignalBuffer}. It is
+ * delivered by {@link PendingSignalProcessEventListener} once the transaction in which the process instance reaches
+ * the matching catch event has committed.
+ */
+@Component
+public class ProcessSignaller {
+
+    private static final Logger log = LoggerFactory.getLogger(ProcessSignaller.class);
+
+    @Autowired
+    private ProcessService processService;
+
+    @Autowired
+    private WaitingSignalIndex waitingSignalIndex;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private PendingSignalBuffer pendingSignalBuffer;
+
+    @Autowired
+    private ProcessedMessageStore processedMessageStore;
+
+    private ExecutorService deliveryExecutor;
+
+    @PostConstruct
+    public void init() {
+        deliveryExecutor = Executors.newSingleThreadExecutor(new CustomizableThreadFactory("pending-signal-delivery-"));
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        deliveryExecutor.shutdown();
+        deliveryExecutor.awaitTermination(30, TimeUnit.SECONDS);
+    }
+
+    /**
+     * @param messageId the id of the message the signal originates from, which is recorded as processed in the
+     *                  transaction in which the signal is delivered
+     */
+    public void signal(String correlationKey, String signal, Object event, String messageId) {
+        if (deliver(correlationKey, signal, event, messageId)) {
+            return;
+        }
+        log.debug("Process instance with correlationKey '" + correlationKey + "' is not waiting for signal '" + signal + "'. Signal is parked.");
+        pendingSignalBuffer.park(correlationKey, signal, event, messageId);
+        // the process instance may have reached the catch event before the signal was parked
+        deliverPending(correlationKey, signal);
+    }
+
+    /**
+     * Delivers a signal parked for the correlation key once the current transaction commits, or right away when there
+     * is no transaction.
+     */
+    void deliverPendingAfterCommit(String correlationKey, String signal) {
+        Runnable delivery = () -> {
+            if (pendingSignalBuffer.contains(correlationKey, signal)) {
+                deliveryExecutor.execute(() -> deliverPending(correlationKey, signal));
+            }
+        };
+        Transaction transaction = JtaTransactions.activeTransaction(transactionManager);
+        if (transaction == null || !JtaTransactions.afterCommit(transaction, delivery)) {
+            delivery.run();
+        }
+    }
+
+    /**
+     * Delivers the signals parked for the matching correlation keys to the process instances which are waiting for them.
+     * Signals which cannot be delivered stay parked until they expire.
+     */
+    public void deliverPending(Predicate<String> correlationKeys) {
+        pendingSignalBuffer.parked(correlationKeys).forEach((correlationKey, signals) ->
+                signals.forEach(signal -> deliverPending(correlationKey, signal)));
+    }
+
+    void deliverPending(String correlationKey, String signal) {
+        try {
+            new TransactionTemplate(transactionManager).execute((TransactionStatus s) -> {
+                ProcessInstanceSignals processInstanceSignals = waitingSignalIndex.waitingSignals(correlationKey, signal);
+                if (processInstanceSignals == null || !processInstanceSignals.isWaitingFor(signal)) {
+                    return null;
+                }
+                PendingSignalBuffer.PendingSignal pendingSignal = pendingSignalBuffer.take(correlationKey, signal);
+                if (pendingSignal != null) {
+                    log.debug("Delivering parked signal '" + signal + "' to process instance with correlationKey '" + correlationKey + "'.");
+                    processService.signalProcessInstance(processInstanceSignals.getProcessInstanceId(), signal, pendingSignal.getEvent());
+                    processedMessageStore.markProcessed(pendingSignal.getMessageId());
+                }
+                return null;
+            });
+        } catch (RuntimeException e) {
+            log.error("Error delivering signal '" + signal + "' to process instance with correlationKey '" + correlationKey + "'", e);
+        }
+    }
+
+    private boolean deliver(String correlationKey, String signal, Object event, String messageId) {
+        return new TransactionTemplate(transactionManager).execute((TransactionStatus s) -> {
+            ProcessInstanceSignals processInstanceSignals = waitingSignalIndex.waitingSignals(correlationKey, signal);
+            if (processInstanceSignals == null || !processInstanceSignals.isWaitingFor(signal)) {
+                return false;
+            }
+            processService.signalProcessInstance(processInstanceSignals.getProcessInstanceId(), signal, event);
+            processedMessageStore.markProcessed(messageId);
+            return true;
+        });
+    }
+}
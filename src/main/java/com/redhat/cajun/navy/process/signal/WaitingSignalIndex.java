@@ -0,0 +1,198 @@
+package com.redhat.cajun.navy.process.signal;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
+import javax.transaction.Status;
+import javax.transaction.Synchronization;
+import javax.transaction.Transaction;
+
+import com.redhat.cajun.navy.process.message.listeners.SignalsByCorrelationKeyHelper;
+import com.redhat.cajun.navy.process.message.listeners.SignalsByCorrelationKeyHelper.ProcessInstanceSignals;
+import org.jbpm.workflow.instance.impl.WorkflowProcessInstanceImpl;
+import org.kie.api.runtime.process.ProcessInstance;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * In-memory index of the signals the process instances are waiting for, by correlation key.
+ *
+ * The index is loaded from the database for the incidents this service instance owns, by the
+ * {@link com.redhat.cajun.navy.process.message.listeners.PartitionStateHandoff}, and kept current by
+ * {@link WaitingSignalIndexProcessEventListener} as process instances executed by this service move from one wait state
+ * to the next. Changes are applied when the transaction commits. A signal which is not in the index is looked up in the
+ * database, by process instance id when it is in the {@link ProcessInstanceIdCache}, so process instances executed
+ * elsewhere are still found.
+ *
+ * An entry is only current as long as no other service instance moves its process instance on. The entries of an
+ * incident are dropped when its partition is lost, and loaded again when it is gained. A process instance of an owned
+ * incident which is moved on elsewhere, for example by a responder event handled by the instance which owns the
+ * responder while {@code kafka.rekey.enabled} is off, leaves a stale entry: a signal the process instance is no longer
+ * waiting for is then delivered to it, and is lost.
+ */
+@Component
+public class WaitingSignalIndex {
+
+    private static final String WAITING_SIGNALS = "SELECT c.name, c.processinstanceid, e.element " +
+            "FROM correlationkeyinfo c " +
+            "INNER JOIN eventtypes e ON (e.instanceid = c.processinstanceid)";
+
+    private static final int FETCH_SIZE = 1000;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private ProcessInstanceIdCache processInstanceIdCache;
+
+    private final Map<String, ProcessInstanceSignals> waitingSignals = new ConcurrentHashMap<>();
+
+    private final Map<Transaction, Map<Long, WorkflowProcessInstanceImpl>> pendingChanges = new ConcurrentHashMap<>();
+
+    /**
+     * Loads the waiting signals of the process instances with the matching correlation keys from the database. Entries
+     * already in the index are kept, as they were updated by a transaction which committed after the load started.
+     *
+     * @return the number of process instances loaded
+     */
+    public int load(Predicate<String> correlationKeys) {
+        return new TransactionTemplate(transactionManager).execute((TransactionStatus s) -> {
+            Map<String, Long> processInstanceIds = new HashMap<>();
+            Map<String, List<String>> signals = new HashMap<>();
+            jdbcTemplate.query(connection -> {
+                PreparedStatement ps = connection.prepareStatement(WAITING_SIGNALS);
+                ps.setFetchSize(FETCH_SIZE);
+                return ps;
+            }, (ResultSet rs) -> {
+                String correlationKey = rs.getString(1);
+                if (!correlationKeys.test(correlationKey)) {
+                    return;
+                }
+                processInstanceIds.put(correlationKey, rs.getLong(2));
+                signals.computeIfAbsent(correlationKey, k -> new ArrayList<>()).add(rs.getString(3));
+            });
+            processInstanceIds.forEach((correlationKey, processInstanceId) -> waitingSignals.putIfAbsent(correlationKey,
+                    new ProcessInstanceSignals(processInstanceId, signals.get(correlationKey))));
+            return processInstanceIds.size();
+        });
+    }
+
+    /**
+     * Drops the entries with the matching correlation keys, whose process instances are about to be moved on by another
+     * service instance.
+     *
+     * @return the number of entries dropped
+     */
+    public int evict(Predicate<String> correlationKeys) {
+        int evicted = 0;
+        for (String correlationKey : waitingSignals.keySet()) {
+            if (correlationKeys.test(correlationKey) && waitingSignals.remove(correlationKey) != null) {
+                evicted++;
+            }
+        }
+        return evicted;
+    }
+
+    /**
+     * @return the process instance with the correlation key and the signals it is waiting for, or null if there is no
+     * active process instance with the correlation key
+     */
+    public ProcessInstanceSignals waitingSignals(String correlationKey, String signal) {
+        ProcessInstanceSignals processInstanceSignals = waitingSignals.get(correlationKey);
+        if (processInstanceSignals != null && processInstanceSignals.isWaitingFor(signal)) {
+            return processInstanceSignals;
+        }
+        Long processInstanceId = processInstanceIdCache.get(correlationKey);
+        if (processInstanceId != null) {
+            return SignalsByCorrelationKeyHelper.waitingSignals(jdbcTemplate, processInstanceId);
+        }
+        processInstanceSignals = SignalsByCorrelationKeyHelper.waitingSignals(jdbcTemplate, correlationKey);
+        if (processInstanceSignals != null) {
+            processInstanceIdCache.put(correlationKey, processInstanceSignals.getProcessInstanceId());
+        }
+        return processInstanceSignals;
+    }
+
+    /**
+     * Records the signals the process instance is waiting for once the current transaction commits, or right away when
+     * there is no transaction.
+     */
+    void track(WorkflowProcessInstanceImpl processInstance) {
+        if (processInstance.getCorrelationKey() == null) {
+            return;
+        }
+        Transaction transaction = JtaTransactions.activeTransaction(transactionManager);
+        if (transaction == null) {
+            update(processInstance.getCorrelationKey(), waitingSignals(processInstance));
+            return;
+        }
+        Map<Long, WorkflowProcessInstanceImpl> processInstances = pendingChanges.computeIfAbsent(transaction, t -> {
+            if (!JtaTransactions.register(t, new IndexSynchronization(t))) {
+                return null;
+            }
+            return new ConcurrentHashMap<>();
+        });
+        if (processInstances == null) {
+            update(processInstance.getCorrelationKey(), waitingSignals(processInstance));
+            return;
+        }
+        processInstances.put(processInstance.getId(), processInstance);
+    }
+
+    void update(String correlationKey, ProcessInstanceSignals processInstanceSignals) {
+        if (processInstanceSignals == null) {
+            waitingSignals.remove(correlationKey);
+        } else {
+            waitingSignals.put(correlationKey, processInstanceSignals);
+        }
+    }
+
+    private ProcessInstanceSignals waitingSignals(WorkflowProcessInstanceImpl processInstance) {
+        String[] eventTypes = processInstance.getEventTypes();
+        if (processInstance.getState() != ProcessInstance.STATE_ACTIVE || eventTypes == null || eventTypes.length == 0) {
+            return null;
+        }
+        return new ProcessInstanceSignals(processInstance.getId(), Arrays.asList(eventTypes));
+    }
+
+    private class IndexSynchronization implements Synchronization {
+
+        private final Transaction transaction;
+
+        private final Map<String, ProcessInstanceSignals> changes = new HashMap<>();
+
+        IndexSynchronization(Transaction transaction) {
+            this.transaction = transaction;
+        }
+
+        @Override
+        public void beforeCompletion() {
+            // the process instances are not to be touched anymore once the transaction has completed
+            Map<Long, WorkflowProcessInstanceImpl> processInstances = pendingChanges.get(transaction);
+            if (processInstances != null) {
+                processInstances.values().forEach(pi -> changes.put(pi.getCorrelationKey(), waitingSignals(pi)));
+            }
+        }
+
+        @Override
+        public void afterCompletion(int status) {
+            pendingChanges.remove(transaction);
+            if (status == Status.STATUS_COMMITTED) {
+                changes.forEach(WaitingSignalIndex.this::update);
+            }
+        }
+    }
+}
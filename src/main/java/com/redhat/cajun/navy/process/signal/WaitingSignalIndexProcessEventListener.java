@@ -0,0 +1,46 @@
+package com.redhat.cajun.navy.process.signal;
+
+import org.jbpm.workflow.instance.impl.WorkflowProcessInstanceImpl;
+import org.kie.api.event.process.DefaultProcessEventListener;
+import org.kie.api.event.process.ProcessCompletedEvent;
+import org.kie.api.event.process.ProcessNodeLeftEvent;
+import org.kie.api.event.process.ProcessNodeTriggeredEvent;
+import org.kie.api.runtime.process.ProcessInstance;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.stereotype.Component;
+
+/**
+ * Keeps the {@link WaitingSignalIndex} current as process instances enter and leave wait states.
+ *
+ * Registered on the process runtime through the {@code SpringRegisterableItemsFactory}.
+ */
+@Component
+public class WaitingSignalIndexProcessEventListener extends DefaultProcessEventListener {
+
+    // lazy, as the process runtime may look up its event listeners before the query service is set up
+    @Autowired
+    @Lazy
+    private WaitingSignalIndex waitingSignalIndex;
+
+    @Override
+    public void afterNodeTriggered(ProcessNodeTriggeredEvent event) {
+        track(event.getProcessInstance());
+    }
+
+    @Override
+    public void afterNodeLeft(ProcessNodeLeftEvent event) {
+        track(event.getProcessInstance());
+    }
+
+    @Override
+    public void afterProcessCompleted(ProcessCompletedEvent event) {
+        track(event.getProcessInstance());
+    }
+
+    private void track(ProcessInstance processInstance) {
+        if (processInstance instanceof WorkflowProcessInstanceImpl) {
+            waitingSignalIndex.track((WorkflowProcessInstanceImpl) processInstance);
+        }
+    }
+}
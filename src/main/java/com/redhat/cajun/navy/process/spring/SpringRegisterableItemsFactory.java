@@ -1,14 +1,59 @@
 package com.redhat.cajun.navy.process.spring;
 
+import java.util.List;
+
+import com.redhat.cajun.navy.process.audit.DeferrableAuditLogger;
+import com.redhat.cajun.navy.process.audit.DeferredAuditLog;
+import com.redhat.cajun.navy.process.audit.DeferredAuditLogger;
+import com.redhat.cajun.navy.process.runtime.PooledSessionRuntimeManager;
+import org.jbpm.process.audit.JPAWorkingMemoryDbLogger;
+import org.kie.api.event.process.ProcessEventListener;
 import org.kie.api.runtime.KieContainer;
+import org.kie.api.runtime.manager.RuntimeEngine;
 import org.springframework.context.ApplicationContext;
+import org.springframework.transaction.PlatformTransactionManager;
 
 public class SpringRegisterableItemsFactory extends org.jbpm.springboot.services.SpringRegisterableItemsFactory {
 
     private volatile Boolean initialized = null;
 
+    private final ApplicationContext context;
+
+    private volatile DeferredAuditLogger deferredAuditLogger;
+
     public SpringRegisterableItemsFactory(ApplicationContext context, KieContainer kieContainer, String ksessionName) {
         super(context, kieContainer, ksessionName);
+        this.context = context;
+    }
+
+    /**
+     * While the audit is deferred, the audit logs of the runtime engine are queued in the {@link DeferredAuditLog}
+     * rather than written in the transactions of the engine. The audit mode is checked for each event by a
+     * {@link DeferrableAuditLogger}, as the pooled sessions of a {@link PooledSessionRuntimeManager} are registered with
+     * their listeners once.
+     */
+    @Override
+    public List<ProcessEventListener> getProcessEventListeners(RuntimeEngine runtime) {
+        List<ProcessEventListener> listeners = super.getProcessEventListeners(runtime);
+        DeferredAuditLog deferredAuditLog = context.getBean(DeferredAuditLog.class);
+        listeners.replaceAll(l -> l instanceof JPAWorkingMemoryDbLogger
+                ? new DeferrableAuditLogger(l, deferredAuditLogger(deferredAuditLog), deferredAuditLog) : l);
+        return listeners;
+    }
+
+    private DeferredAuditLogger deferredAuditLogger(DeferredAuditLog deferredAuditLog) {
+        DeferredAuditLogger result = deferredAuditLogger;
+        if (result == null) {
+            synchronized (this) {
+                if (deferredAuditLogger == null) {
+                    DeferredAuditLogger auditLogger = new DeferredAuditLogger(deferredAuditLog, context.getBean(PlatformTransactionManager.class));
+                    auditLogger.setBuilder(getAuditBuilder());
+                    deferredAuditLogger = auditLogger;
+                }
+                result = deferredAuditLogger;
+            }
+        }
+        return result;
     }
 
     @Override
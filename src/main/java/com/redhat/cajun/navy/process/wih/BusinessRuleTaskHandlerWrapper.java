@@ -1,26 +1,73 @@
 package com.redhat.cajun.navy.process.wih;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.Map;
 import javax.annotation.PostConstruct;
 
 import com.redhat.cajun.navy.rules.model.Incident;
 import com.redhat.cajun.navy.rules.model.Mission;
+import org.drools.modelcompiler.CanonicalKieModule;
 import org.jbpm.process.workitem.bpmn2.BusinessRuleTaskHandler;
 import org.jbpm.process.workitem.core.AbstractLogOrThrowWorkItemHandler;
+import org.kie.api.KieServices;
+import org.kie.api.builder.KieModule;
+import org.kie.api.builder.ReleaseId;
+import org.kie.api.runtime.KieContainer;
 import org.kie.api.runtime.process.WorkItem;
 import org.kie.api.runtime.process.WorkItemManager;
 import org.kie.internal.runtime.Cacheable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.Resource;
 import org.springframework.stereotype.Component;
+import org.springframework.util.StreamUtils;
 
+/**
+ * Executes the assignment rules of the {@code cajun-navy-rules} kjar.
+ *
+ * In the {@code maven} mode of {@code mission.assignment.rules.mode}, the kjar is resolved from the Maven repository
+ * and its rules are compiled when the handler is created. In the {@code precompiled} mode, the kjar is read from
+ * {@code mission.assignment.rules.precompiled.location}, where the {@code executable-rules} build profile puts it, and
+ * is expected to hold the executable model of the rules: nothing is resolved nor compiled at runtime, and the kie bases
+ * are created when the handler is created rather than on the first evaluation.
+ *
+ * With {@code mission.assignment.rules.execution}, the rules are evaluated by the {@link BusinessRuleTaskHandler}
+ * ({@code handler}) or in sessions of a {@link RuleSessionPool} ({@code pooled}), one evaluation per session. With
+ * {@code mission.assignment.rules.responder-facts.enabled}, they are evaluated in the long-lived session of the
+ * {@link ResponderFactBase} instead. DMN decisions are always evaluated by the handler.
+ */
 @Component("BusinessRuleTask")
 public class BusinessRuleTaskHandlerWrapper extends AbstractLogOrThrowWorkItemHandler implements Cacheable {
 
     private static Logger log = LoggerFactory.getLogger(BusinessRuleTaskHandlerWrapper.class);
 
+    static final String MODE_MAVEN = "maven";
+
+    static final String MODE_PRECOMPILED = "precompiled";
+
+    private static final String LANGUAGE = "Language";
+
+    private static final String SESSION_NAME = "KieSessionName";
+
+    private static final String SESSION_TYPE = "KieSessionType";
+
+    private static final String DMN = "DMN";
+
+    static final String EXECUTION_HANDLER = "handler";
+
+    static final String EXECUTION_POOLED = "pooled";
+
     private BusinessRuleTaskHandler businessRuleTaskHandler;
 
+    private RuleSessionPool sessionPool;
+
+    @Autowired
+    private ResponderFactBase responderFactBase;
+
     @Value("${mission.assignment.rules.groupid}")
     private String groupId;
 
@@ -33,17 +80,91 @@ public class BusinessRuleTaskHandlerWrapper extends AbstractLogOrThrowWorkItemHa
     @Value("${mission.assignment.rules.scannerinterval}")
     private String scannerInterval;
 
+    @Value("${mission.assignment.rules.mode}")
+    private String mode;
+
+    @Value("${mission.assignment.rules.precompiled.location}")
+    private Resource precompiledLocation;
+
+    @Value("${mission.assignment.rules.execution}")
+    private String execution;
+
+    @Value("${mission.assignment.rules.pool.size}")
+    private int poolSize;
+
     @PostConstruct
     public void init() {
-        businessRuleTaskHandler = new BusinessRuleTaskHandler(groupId, artifactId, version, new Long(scannerInterval));
+        initHandler();
+        if (EXECUTION_POOLED.equalsIgnoreCase(execution.trim())) {
+            sessionPool = new RuleSessionPool(businessRuleTaskHandler.getKieContainer(), poolSize);
+        } else if (!EXECUTION_HANDLER.equalsIgnoreCase(execution.trim())) {
+            throw new IllegalStateException("Unknown assignment rules execution '" + execution + "'");
+        }
+        responderFactBase.start(businessRuleTaskHandler.getKieContainer());
+    }
+
+    private void initHandler() {
+        if (MODE_PRECOMPILED.equalsIgnoreCase(mode.trim())) {
+            long start = System.currentTimeMillis();
+            registerPrecompiledRules();
+            // the kie module is registered with the kie repository: the handler does not resolve it, nor scan for it
+            businessRuleTaskHandler = new BusinessRuleTaskHandler(groupId, artifactId, version, -1L);
+            KieContainer kieContainer = businessRuleTaskHandler.getKieContainer();
+            kieContainer.getKieBaseNames().forEach(kieContainer::getKieBase);
+            log.info("Assignment rules loaded from " + precompiledLocation + " in " + (System.currentTimeMillis() - start) + " ms");
+        } else if (MODE_MAVEN.equalsIgnoreCase(mode.trim())) {
+            businessRuleTaskHandler = new BusinessRuleTaskHandler(groupId, artifactId, version, new Long(scannerInterval));
+        } else {
+            throw new IllegalStateException("Unknown assignment rules mode '" + mode + "'");
+        }
+    }
+
+    private void registerPrecompiledRules() {
+        KieServices kieServices = KieServices.Factory.get();
+        byte[] kjar;
+        try (InputStream in = precompiledLocation.getInputStream()) {
+            kjar = StreamUtils.copyToByteArray(in);
+        } catch (IOException e) {
+            throw new IllegalStateException("Error reading the assignment rules from " + precompiledLocation, e);
+        }
+        KieModule kieModule = kieServices.getRepository().addKieModule(kieServices.getResources().newByteArrayResource(kjar));
+        ReleaseId releaseId = kieServices.newReleaseId(groupId, artifactId, version);
+        if (!releaseId.equals(kieModule.getReleaseId())) {
+            throw new IllegalStateException("Assignment rules in " + precompiledLocation + " are " + kieModule.getReleaseId()
+                    + ", expected " + releaseId);
+        }
+        if (!(kieModule instanceof CanonicalKieModule)) {
+            log.warn("Assignment rules in " + precompiledLocation + " are not an executable model, the rules are compiled at startup");
+        }
     }
 
     @Override
     public void executeWorkItem(WorkItem workItem, WorkItemManager manager) {
         Incident incident = (Incident) workItem.getParameter("Incident");
         log.debug("Executing assignment rules for incident '" + incident.getId() + "'");
-        businessRuleTaskHandler.executeWorkItem(workItem, manager);
-        Mission mission = (Mission) workItem.getResult("Mission");
+        Mission mission;
+        if ((sessionPool == null && !responderFactBase.isStarted()) || DMN.equalsIgnoreCase((String) workItem.getParameter(LANGUAGE))) {
+            businessRuleTaskHandler.executeWorkItem(workItem, manager);
+            mission = (Mission) workItem.getResult("Mission");
+        } else {
+            Map<String, Object> facts = new HashMap<>(workItem.getParameters());
+            facts.remove(LANGUAGE);
+            String sessionName = (String) facts.remove(SESSION_NAME);
+            String sessionType = (String) facts.remove(SESSION_TYPE);
+            Map<String, Object> results;
+            try {
+                if (responderFactBase.isStarted()) {
+                    results = responderFactBase.evaluate(facts);
+                } else {
+                    results = sessionPool.execute(sessionName, sessionType, facts);
+                }
+            } catch (RuntimeException e) {
+                handleException(e);
+                return;
+            }
+            manager.completeWorkItem(workItem.getId(), results);
+            mission = (Mission) results.get("Mission");
+        }
         log.debug("Assignment status for incident '" + incident.getId() + "': " + mission.getStatus().name());
     }
 
@@ -54,6 +175,9 @@ public class BusinessRuleTaskHandlerWrapper extends AbstractLogOrThrowWorkItemHa
 
     @Override
     public void close() {
+        if (sessionPool != null) {
+            sessionPool.shutdown();
+        }
         businessRuleTaskHandler.close();
     }
 }
@@ -12,6 +12,7 @@ import org.kie.api.runtime.process.WorkItemHandler;
 import org.kie.api.runtime.process.WorkItemManager;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.core.ParameterizedTypeReference;
 import org.springframework.http.HttpMethod;
@@ -25,6 +26,9 @@ public class GetRespondersRestWorkItemHandler implements WorkItemHandler {
 
     private static Logger log = LoggerFactory.getLogger(GetRespondersRestWorkItemHandler.class);
 
+    @Autowired
+    private ResponderFactBase responderFactBase;
+
     @Value("${responder.service.scheme}")
     private String responderServiceScheme;
 
@@ -55,6 +59,7 @@ public class GetRespondersRestWorkItemHandler implements WorkItemHandler {
                 responder.setPerson(r.isPerson());
                 return responder;
             }).collect(Collectors.toList()));
+            responderFactBase.reconcile(responders.getResponders());
 
         } catch (HttpClientErrorException e) {
             log.error("Http Exception when calling responder service - response code : " + e.getRawStatusCode(), e);
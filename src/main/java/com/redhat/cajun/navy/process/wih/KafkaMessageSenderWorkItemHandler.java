@@ -1,15 +1,19 @@
 package com.redhat.cajun.navy.process.wih;
 
+import java.nio.charset.StandardCharsets;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.function.BiFunction;
 import javax.annotation.PostConstruct;
 
+import com.redhat.cajun.navy.process.message.KafkaRecordHeaders;
+import com.redhat.cajun.navy.process.message.MessageOutbox;
 import com.redhat.cajun.navy.process.message.model.Message;
 import org.apache.commons.lang3.tuple.ImmutableTriple;
 import org.apache.commons.lang3.tuple.Pair;
 import org.apache.commons.lang3.tuple.Triple;
+import org.apache.kafka.clients.producer.ProducerRecord;
 import org.kie.api.runtime.process.WorkItem;
 import org.kie.api.runtime.process.WorkItemHandler;
 import org.kie.api.runtime.process.WorkItemManager;
@@ -22,6 +26,10 @@ import org.springframework.kafka.support.SendResult;
 import org.springframework.stereotype.Component;
 import org.springframework.util.concurrent.ListenableFuture;
 
+/**
+ * Sends messages to Kafka. In {@code outbox} mode the messages are written to the {@link MessageOutbox} in the
+ * transaction of the process operation instead, so they are only sent once the transaction has committed.
+ */
 @Component("SendMessage")
 public class KafkaMessageSenderWorkItemHandler implements WorkItemHandler {
 
@@ -30,6 +38,12 @@ public class KafkaMessageSenderWorkItemHandler implements WorkItemHandler {
     @Autowired
     private KafkaTemplate<String, Message<?>> kafkaTemplate;
 
+    @Autowired
+    private MessageOutbox messageOutbox;
+
+    @Value("${sender.mode}")
+    private String mode;
+
     @Value("${sender.destination.create-mission-command}")
     private String createMissionCommandDestination;
 
@@ -42,6 +56,8 @@ public class KafkaMessageSenderWorkItemHandler implements WorkItemHandler {
     @Value("${sender.destination.incident-assignment-event}")
     private String incidentAssignmentEventDestination;
 
+    private boolean outbox;
+
     private Map<String, Triple<String, String, BiFunction<String, Map<String, Object>, Pair<String, Message<?>>>>> payloadBuilders = new HashMap<>();
 
     @Override
@@ -63,7 +79,18 @@ public class KafkaMessageSenderWorkItemHandler implements WorkItemHandler {
     }
 
     private void send(String destination, String key, Message<?> msg) {
-        ListenableFuture<SendResult<String, Message<?>>> future = kafkaTemplate.send(destination, key, msg);
+        // messages are keyed by incident, unless the incident is carried in the message header
+        String incidentId = msg.getHeaderValue("incidentId") != null ? msg.getHeaderValue("incidentId") : key;
+        if (outbox) {
+            messageOutbox.add(destination, key, incidentId, msg);
+            return;
+        }
+        ProducerRecord<String, Message<?>> record = new ProducerRecord<>(destination, key, msg);
+        record.headers().add(KafkaRecordHeaders.MESSAGE_TYPE, msg.getMessageType().getBytes(StandardCharsets.UTF_8));
+        if (incidentId != null) {
+            record.headers().add(KafkaRecordHeaders.INCIDENT_ID, incidentId.getBytes(StandardCharsets.UTF_8));
+        }
+        ListenableFuture<SendResult<String, Message<?>>> future = kafkaTemplate.send(record);
         future.addCallback(
                 result -> log.debug("Sent '" + msg.getMessageType() + "' message with key " + key + " to topic " + destination),
                 ex -> log.error("Error sending '" + msg.getMessageType() + "' message with key " + key, ex));
@@ -76,6 +103,16 @@ public class KafkaMessageSenderWorkItemHandler implements WorkItemHandler {
 
     @PostConstruct
     public void init() {
+        switch (mode.trim().toLowerCase()) {
+            case "direct":
+                outbox = false;
+                break;
+            case "outbox":
+                outbox = true;
+                break;
+            default:
+                throw new IllegalStateException("Unsupported sender mode '" + mode + "'. Expected 'direct' or 'outbox'.");
+        }
         addPayloadBuilder("CreateMission", "CreateMissionCommand", createMissionCommandDestination, CreateMissionCommandBuilder::builder);
         addPayloadBuilder("SetResponderUnavailable", "UpdateResponderCommand", updateResponderCommandDestination, SetResponderUnavailableCommandBuilder::builder);
         addPayloadBuilder("UpdateIncident", "UpdateIncidentCommand", updateIncidentCommandDestination, UpdateIncidentCommandBuilder::builder);
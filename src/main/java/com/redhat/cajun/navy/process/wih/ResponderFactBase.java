@@ -0,0 +1,339 @@
+package com.redhat.cajun.navy.process.wih;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.PreDestroy;
+
+import com.redhat.cajun.navy.rules.model.Responder;
+import com.redhat.cajun.navy.rules.model.Responders;
+import org.kie.api.event.rule.DefaultRuleRuntimeEventListener;
+import org.kie.api.event.rule.ObjectInsertedEvent;
+import org.kie.api.runtime.KieContainer;
+import org.kie.api.runtime.KieSession;
+import org.kie.api.runtime.rule.FactHandle;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+
+/**
+ * Long-lived rule session which holds the available responders as facts, for the assignment rules.
+ *
+ * The session holds a {@link Responder} fact for each available responder, and a {@link Responders} fact with all of
+ * them. The facts are updated as responders change, rather than inserted again for each assignment: with the
+ * responders fetched by the {@link GetRespondersRestWorkItemHandler}, and with the responder updated events. An
+ * assignment inserts the other facts of the work item, fires the rules and deletes them again, so only the new
+ * incident is matched against the responders. The facts the rules insert, in an assignment or as the responders change,
+ * are deleted once the rules have fired, so that the session only ever holds the responders.
+ *
+ * The responders are written to {@code mission.assignment.rules.responder-facts.snapshot-file} every
+ * {@code mission.assignment.rules.responder-facts.snapshot-interval} milliseconds when they changed, and at shutdown,
+ * and are read back from it at startup.
+ */
+@Component
+public class ResponderFactBase {
+
+    private static final Logger log = LoggerFactory.getLogger(ResponderFactBase.class);
+
+    static final String RESPONDERS = "Responders";
+
+    @Value("${mission.assignment.rules.responder-facts.enabled}")
+    private boolean enabled;
+
+    @Value("${mission.assignment.rules.responder-facts.snapshot-file}")
+    private String snapshotFile;
+
+    @Value("${mission.assignment.rules.responder-facts.snapshot-interval}")
+    private long snapshotInterval;
+
+    private KieSession session;
+
+    private final Map<String, FactHandle> handles = new LinkedHashMap<>();
+
+    private final Responders responders = new Responders(new ArrayList<>());
+
+    private FactHandle respondersHandle;
+
+    private final List<FactHandle> ruleInserted = new ArrayList<>();
+
+    private boolean dirty;
+
+    private ScheduledExecutorService snapshotter;
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Creates the session in the default kie base of the assignment rules, with the responders of the snapshot.
+     */
+    public synchronized void start(KieContainer kieContainer) {
+        if (!enabled || session != null) {
+            return;
+        }
+        session = kieContainer.getKieBase(RuleSessionPool.kieBaseName(kieContainer, null, null)).newKieSession();
+        session.addEventListener(new DefaultRuleRuntimeEventListener() {
+            @Override
+            public void objectInserted(ObjectInsertedEvent event) {
+                if (event.getRule() != null) {
+                    ruleInserted.add(event.getFactHandle());
+                }
+            }
+        });
+        respondersHandle = session.insert(responders);
+        List<Responder> restored = restore();
+        if (!restored.isEmpty()) {
+            reconcile(restored);
+            dirty = false;
+            log.info(restored.size() + " responders restored from " + snapshotFile);
+        }
+        if (snapshotInterval > 0 && !snapshotFile.isEmpty()) {
+            snapshotter = Executors.newSingleThreadScheduledExecutor(new CustomizableThreadFactory("responder-facts-"));
+            snapshotter.scheduleWithFixedDelay(this::snapshot, snapshotInterval, snapshotInterval, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    public synchronized boolean isStarted() {
+        return session != null;
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        if (snapshotter != null) {
+            snapshotter.shutdown();
+            snapshotter.awaitTermination(30, TimeUnit.SECONDS);
+        }
+        synchronized (this) {
+            if (session == null) {
+                return;
+            }
+            snapshot();
+            session.dispose();
+            session = null;
+            handles.clear();
+            ruleInserted.clear();
+            responders.getResponders().clear();
+        }
+    }
+
+    /**
+     * Replaces the responders with the available responders: responders which are no longer available are deleted,
+     * new ones are inserted and the others are updated when they changed. The facts are copies of the responders.
+     */
+    public synchronized void reconcile(List<Responder> available) {
+        if (session == null) {
+            return;
+        }
+        Map<String, Responder> byId = new LinkedHashMap<>();
+        available.forEach(r -> byId.put(r.getId(), copy(r)));
+        boolean changed = false;
+        for (String id : new ArrayList<>(handles.keySet())) {
+            if (!byId.containsKey(id)) {
+                changed |= delete(id);
+            }
+        }
+        for (Responder responder : byId.values()) {
+            changed |= upsert(responder);
+        }
+        if (changed) {
+            updateResponders();
+        }
+    }
+
+    /**
+     * Applies a responder update: an unavailable responder is deleted, a known responder is updated with the fields
+     * which are set in the update. An update only carries the fields which changed, so an update for a responder which
+     * is not known is ignored: the responder is inserted with all its fields by the next {@link #reconcile}.
+     */
+    public synchronized void update(com.redhat.cajun.navy.process.message.model.Responder update) {
+        if (session == null || update == null || update.getId() == null) {
+            return;
+        }
+        boolean changed;
+        if (Boolean.FALSE.equals(update.isAvailable())) {
+            changed = delete(update.getId());
+        } else {
+            FactHandle handle = handles.get(update.getId());
+            if (handle == null) {
+                log.debug("Update for responder '" + update.getId() + "' which is not known is ignored");
+                return;
+            }
+            changed = upsert(merge((Responder) session.getObject(handle), update));
+        }
+        if (changed) {
+            updateResponders();
+        }
+    }
+
+    /**
+     * Fires the rules for the facts of a work item, against the responders of the session. The responders of the work
+     * item, if any, are not inserted. The facts of the work item, and the facts the rules inserted, are deleted again.
+     */
+    public synchronized Map<String, Object> evaluate(Map<String, Object> facts) {
+        if (session == null) {
+            throw new IllegalStateException("Responder fact base is not started");
+        }
+        Map<String, FactHandle> factHandles = new HashMap<>();
+        try {
+            facts.forEach((name, fact) -> {
+                if (!RESPONDERS.equals(name)) {
+                    factHandles.put(name, session.insert(fact));
+                }
+            });
+            session.fireAllRules();
+            Map<String, Object> results = new HashMap<>();
+            factHandles.forEach((name, handle) -> results.put(name, session.getObject(handle)));
+            return results;
+        } finally {
+            factHandles.values().forEach(session::delete);
+            deleteRuleInserted();
+        }
+    }
+
+    public synchronized int size() {
+        return handles.size();
+    }
+
+    synchronized void snapshot() {
+        if (!dirty || snapshotFile.isEmpty()) {
+            return;
+        }
+        Path file = Paths.get(snapshotFile);
+        try {
+            Path dir = file.toAbsolutePath().getParent();
+            Files.createDirectories(dir);
+            Path tmp = Files.createTempFile(dir, file.getFileName().toString(), ".tmp");
+            try {
+                try (ObjectOutputStream out = new ObjectOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+                    out.writeObject(new ArrayList<>(responders.getResponders()));
+                }
+                Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                Files.deleteIfExists(tmp);
+            }
+            dirty = false;
+        } catch (IOException | RuntimeException e) {
+            log.warn("Error writing the responder snapshot to " + file, e);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<Responder> restore() {
+        if (snapshotFile.isEmpty() || !Files.isReadable(Paths.get(snapshotFile))) {
+            return new ArrayList<>();
+        }
+        try (ObjectInputStream in = new ObjectInputStream(new BufferedInputStream(Files.newInputStream(Paths.get(snapshotFile))))) {
+            return (List<Responder>) in.readObject();
+        } catch (IOException | ClassNotFoundException | RuntimeException e) {
+            log.warn("Error reading the responder snapshot from " + snapshotFile + ", starting without responders", e);
+            return new ArrayList<>();
+        }
+    }
+
+    private boolean upsert(Responder responder) {
+        FactHandle handle = handles.get(responder.getId());
+        if (handle == null) {
+            handles.put(responder.getId(), session.insert(responder));
+            return true;
+        }
+        if (same((Responder) session.getObject(handle), responder)) {
+            return false;
+        }
+        session.update(handle, responder);
+        return true;
+    }
+
+    private boolean delete(String id) {
+        FactHandle handle = handles.remove(id);
+        if (handle == null) {
+            return false;
+        }
+        session.delete(handle);
+        return true;
+    }
+
+    private void updateResponders() {
+        List<Responder> list = responders.getResponders();
+        list.clear();
+        handles.values().forEach(h -> list.add((Responder) session.getObject(h)));
+        session.update(respondersHandle, responders);
+        session.fireAllRules();
+        deleteRuleInserted();
+        dirty = true;
+    }
+
+    private void deleteRuleInserted() {
+        for (FactHandle handle : ruleInserted) {
+            // logically inserted facts may be gone already with the facts they were inserted for
+            if (session.getObject(handle) != null) {
+                session.delete(handle);
+            }
+        }
+        ruleInserted.clear();
+    }
+
+    private static Responder copy(Responder source) {
+        Responder responder = new Responder();
+        responder.setId(source.getId());
+        responder.setFullname(source.getFullname());
+        responder.setPhoneNumber(source.getPhoneNumber());
+        responder.setLatitude(source.getLatitude());
+        responder.setLongitude(source.getLongitude());
+        responder.setBoatCapacity(source.getBoatCapacity());
+        responder.setHasMedical(source.getHasMedical());
+        responder.setPerson(source.getPerson());
+        return responder;
+    }
+
+    static Responder merge(Responder current, com.redhat.cajun.navy.process.message.model.Responder update) {
+        Responder responder = copy(current);
+        responder.setId(update.getId());
+        if (update.getName() != null) {
+            responder.setFullname(update.getName());
+        }
+        if (update.getPhoneNumber() != null) {
+            responder.setPhoneNumber(update.getPhoneNumber());
+        }
+        if (update.getLatitude() != null) {
+            responder.setLatitude(update.getLatitude());
+        }
+        if (update.getLongitude() != null) {
+            responder.setLongitude(update.getLongitude());
+        }
+        if (update.getBoatCapacity() != null) {
+            responder.setBoatCapacity(update.getBoatCapacity());
+        }
+        if (update.isMedicalKit() != null) {
+            responder.setHasMedical(update.isMedicalKit());
+        }
+        return responder;
+    }
+
+    private static boolean same(Responder a, Responder b) {
+        return Objects.equals(a.getId(), b.getId())
+                && Objects.equals(a.getFullname(), b.getFullname())
+                && Objects.equals(a.getPhoneNumber(), b.getPhoneNumber())
+                && Objects.equals(a.getLatitude(), b.getLatitude())
+                && Objects.equals(a.getLongitude(), b.getLongitude())
+                && Objects.equals(a.getBoatCapacity(), b.getBoatCapacity())
+                && Objects.equals(a.getHasMedical(), b.getHasMedical())
+                && Objects.equals(a.getPerson(), b.getPerson());
+    }
+}
@@ -0,0 +1,91 @@
+package com.redhat.cajun.navy.process.wih;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.drools.compiler.kie.builder.impl.KieContainerImpl;
+import org.drools.compiler.kie.builder.impl.KieProject;
+import org.kie.api.builder.model.KieBaseModel;
+import org.kie.api.builder.model.KieSessionModel;
+import org.kie.api.runtime.KieContainer;
+import org.kie.api.runtime.KieSession;
+import org.kie.api.runtime.KieSessionsPool;
+import org.kie.api.runtime.rule.FactHandle;
+
+/**
+ * Evaluates rules in sessions taken from a {@link KieSessionsPool} of the kie base of the session, rather than in a new
+ * session for each evaluation.
+ *
+ * Each evaluation has a session of its own: the facts of the evaluation are inserted and the rules are fired, so the rules
+ * only ever match the facts of one work item. The results of an evaluation are its facts, as they are after the rules
+ * fired, under the names they were inserted with. The session is reset when it goes back to the pool, so stateless and
+ * stateful sessions are evaluated alike: the session type only selects the default session of the kie module when no
+ * session name is given.
+ */
+public class RuleSessionPool {
+
+    static final String STATEFUL = "stateful";
+
+    static final String STATEFULL = "statefull";
+
+    private final KieContainer kieContainer;
+
+    private final int size;
+
+    private final Map<String, KieSessionsPool> pools = new ConcurrentHashMap<>();
+
+    public RuleSessionPool(KieContainer kieContainer, int size) {
+        this.kieContainer = kieContainer;
+        this.size = size;
+    }
+
+    public Map<String, Object> execute(String sessionName, String sessionType, Map<String, Object> facts) {
+        KieSession session = pool(sessionName, sessionType).newKieSession();
+        try {
+            Map<String, FactHandle> factHandles = new HashMap<>();
+            facts.forEach((name, fact) -> factHandles.put(name, session.insert(fact)));
+            session.fireAllRules();
+
+            Map<String, Object> results = new HashMap<>();
+            factHandles.forEach((name, handle) -> results.put(name, session.getObject(handle)));
+            return results;
+        } finally {
+            // resets the session and returns it to the pool
+            session.dispose();
+        }
+    }
+
+    public void shutdown() {
+        pools.values().forEach(KieSessionsPool::shutdown);
+        pools.clear();
+    }
+
+    private KieSessionsPool pool(String sessionName, String sessionType) {
+        String kieBaseName = kieBaseName(kieContainer, sessionName, sessionType);
+        return pools.computeIfAbsent(kieBaseName, name -> kieContainer.getKieBase(name).newKieSessionsPool(size));
+    }
+
+    /**
+     * @return the kie base of the session, or of the default session of the type when no session name is given
+     */
+    static String kieBaseName(KieContainer kieContainer, String sessionName, String sessionType) {
+        KieProject kieProject = ((KieContainerImpl) kieContainer).getKieProject();
+        KieSessionModel kieSessionModel;
+        if (sessionName != null) {
+            kieSessionModel = kieContainer.getKieSessionModel(sessionName);
+            if (kieSessionModel == null) {
+                throw new IllegalStateException("No session '" + sessionName + "' in the kie module");
+            }
+        } else if (STATEFUL.equalsIgnoreCase(sessionType) || STATEFULL.equalsIgnoreCase(sessionType)) {
+            kieSessionModel = kieProject.getDefaultKieSession();
+        } else {
+            kieSessionModel = kieProject.getDefaultStatelessKieSession();
+        }
+        KieBaseModel kieBaseModel = kieSessionModel != null ? kieSessionModel.getKieBaseModel() : kieProject.getDefaultKieBaseModel();
+        if (kieBaseModel == null) {
+            throw new IllegalStateException("No default session nor kie base in the kie module");
+        }
+        return kieBaseModel.getName();
+    }
+}
@@ -0,0 +1,26 @@
+-- Messages written by the SendMessage work item handler in outbox mode, in the transaction of the process operation.
+-- Rows are claimed by a relay before they are sent, and deleted once the message has been acknowledged by Kafka.
+CREATE TABLE IF NOT EXISTS message_outbox (
+    id BIGSERIAL NOT NULL PRIMARY KEY,
+    destination VARCHAR(255) NOT NULL,
+    message_key VARCHAR(255),
+    message_type VARCHAR(255) NOT NULL,
+    incident_id VARCHAR(255),
+    payload TEXT NOT NULL,
+    created_at TIMESTAMP NOT NULL,
+    claimed_at TIMESTAMP
+);
+CREATE INDEX IF NOT EXISTS idx_message_outbox_message_key ON message_outbox (message_key);
+
+-- One row per message key, locked by the transactions writing messages with the key until they commit, so that the
+-- messages of a key are committed in the order of their ids.
+CREATE TABLE IF NOT EXISTS message_outbox_key (
+    message_key VARCHAR(255) NOT NULL PRIMARY KEY,
+    updated_at TIMESTAMP NOT NULL
+);
+
+-- Single row locked by the relays while they claim a batch, so that two relays never claim messages of the same key.
+CREATE TABLE IF NOT EXISTS message_outbox_relay (
+    id INT NOT NULL PRIMARY KEY
+);
+INSERT INTO message_outbox_relay (id) SELECT 1 WHERE NOT EXISTS (SELECT 1 FROM message_outbox_relay WHERE id = 1);
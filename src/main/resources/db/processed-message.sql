@@ -0,0 +1,7 @@
+-- Ids of the messages which were processed, for de-duplication of redelivered messages.
+-- Rows older than message.dedup.retention are pruned by the service.
+CREATE TABLE IF NOT EXISTS processed_message (
+    message_id VARCHAR(255) NOT NULL PRIMARY KEY,
+    processed_at TIMESTAMP NOT NULL
+);
+CREATE INDEX IF NOT EXISTS idx_processed_message_processed_at ON processed_message (processed_at);
@@ -0,0 +1,4 @@
+-- Supporting indexes for the waiting signals lookup by correlation key.
+-- Both indexes cover the columns read by the lookup, so it is answered from the indexes alone.
+CREATE INDEX IF NOT EXISTS idx_corrkeyinfo_name_pid ON correlationkeyinfo (name, processinstanceid);
+CREATE INDEX IF NOT EXISTS idx_eventtypes_instanceid_element ON eventtypes (instanceid, element);
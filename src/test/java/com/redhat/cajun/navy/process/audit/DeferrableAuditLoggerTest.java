@@ -0,0 +1,59 @@
+package com.redhat.cajun.navy.process.audit;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.MockitoAnnotations.initMocks;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.kie.api.event.process.ProcessEventListener;
+import org.kie.api.event.process.ProcessStartedEvent;
+import org.mockito.Mock;
+
+public class DeferrableAuditLoggerTest {
+
+    @Mock
+    private ProcessEventListener auditLogger;
+
+    @Mock
+    private ProcessEventListener deferredAuditLogger;
+
+    private DeferredAuditLog deferredAuditLog;
+
+    private DeferrableAuditLogger deferrableAuditLogger;
+
+    @Before
+    public void init() {
+        initMocks(this);
+        deferredAuditLog = new DeferredAuditLog();
+        deferrableAuditLogger = new DeferrableAuditLogger(auditLogger, deferredAuditLogger, deferredAuditLog);
+    }
+
+    @Test
+    public void testAuditModeIsCheckedForEachEvent() {
+        ProcessStartedEvent started = mock(ProcessStartedEvent.class);
+        ProcessStartedEvent deferred = mock(ProcessStartedEvent.class);
+
+        deferrableAuditLogger.beforeProcessStarted(started);
+        deferredAuditLog.defer(true);
+        deferrableAuditLogger.beforeProcessStarted(deferred);
+
+        verify(auditLogger).beforeProcessStarted(started);
+        verify(auditLogger, never()).beforeProcessStarted(deferred);
+        verify(deferredAuditLogger).beforeProcessStarted(deferred);
+    }
+
+    @Test
+    public void testAuditStaysDeferredWhileEntriesArePending() {
+        ProcessStartedEvent started = mock(ProcessStartedEvent.class);
+        deferredAuditLog.defer(true);
+        deferredAuditLog.hold();
+        deferredAuditLog.defer(false);
+
+        deferrableAuditLogger.beforeProcessStarted(started);
+
+        verify(deferredAuditLogger).beforeProcessStarted(started);
+        verify(auditLogger, never()).beforeProcessStarted(started);
+    }
+}
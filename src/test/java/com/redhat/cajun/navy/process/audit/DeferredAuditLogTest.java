@@ -0,0 +1,123 @@
+package com.redhat.cajun.navy.process.audit;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.mockito.MockitoAnnotations.initMocks;
+import static org.springframework.test.util.ReflectionTestUtils.setField;
+
+import java.util.Collections;
+import java.util.Date;
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.PersistenceException;
+import javax.persistence.Query;
+
+import org.jbpm.process.audit.AbstractAuditLogger;
+import org.jbpm.process.audit.NodeInstanceLog;
+import org.jbpm.process.audit.ProcessInstanceLog;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionStatus;
+
+public class DeferredAuditLogTest {
+
+    @Mock
+    private EntityManagerFactory entityManagerFactory;
+
+    @Mock
+    private EntityManager entityManager;
+
+    @Mock
+    private Query query;
+
+    @Mock
+    private PlatformTransactionManager ptm;
+
+    @Mock
+    private TransactionStatus transactionStatus;
+
+    private DeferredAuditLog deferredAuditLog;
+
+    @Before
+    public void init() {
+        initMocks(this);
+        when(ptm.getTransaction(any())).thenReturn(transactionStatus);
+        when(entityManagerFactory.createEntityManager()).thenReturn(entityManager);
+        when(entityManager.createQuery(anyString())).thenReturn(query);
+        when(query.setParameter(anyString(), any())).thenReturn(query);
+        deferredAuditLog = new DeferredAuditLog();
+        setField(deferredAuditLog, null, entityManagerFactory, EntityManagerFactory.class);
+        setField(deferredAuditLog, null, ptm, PlatformTransactionManager.class);
+        setField(deferredAuditLog, "batchSize", 10, int.class);
+    }
+
+    @Test
+    public void testWriteEntriesInOrder() {
+        ProcessInstanceLog started = new ProcessInstanceLog(1L, "incident-process");
+        NodeInstanceLog node = new NodeInstanceLog();
+        deferredAuditLog.add(started, AbstractAuditLogger.BEFORE_START_EVENT_TYPE);
+        deferredAuditLog.add(node, AbstractAuditLogger.BEFORE_NODE_ENTER_EVENT_TYPE);
+
+        deferredAuditLog.flush();
+
+        InOrder inOrder = inOrder(entityManager);
+        inOrder.verify(entityManager).joinTransaction();
+        inOrder.verify(entityManager).persist(started);
+        inOrder.verify(entityManager).persist(node);
+        inOrder.verify(entityManager).flush();
+        inOrder.verify(entityManager).close();
+        verify(ptm).commit(transactionStatus);
+        assertThat(deferredAuditLog.pendingCount(), equalTo(0L));
+        assertThat(deferredAuditLog.writtenCount(), equalTo(2L));
+    }
+
+    @Test
+    public void testUpdateProcessInstanceLogOnCompletion() {
+        ProcessInstanceLog started = new ProcessInstanceLog(1L, "incident-process");
+        when(query.getResultList()).thenReturn(Collections.singletonList(started));
+        ProcessInstanceLog completed = new ProcessInstanceLog(1L, "incident-process");
+        completed.setStatus(2);
+        completed.setEnd(new Date());
+        completed.setDuration(1000L);
+        deferredAuditLog.add(completed, AbstractAuditLogger.AFTER_COMPLETE_EVENT_TYPE);
+
+        deferredAuditLog.flush();
+
+        verify(entityManager).merge(started);
+        assertThat(started.getStatus(), equalTo(2));
+        assertThat(started.getDuration(), equalTo(1000L));
+    }
+
+    @Test
+    public void testKeepEntriesWhenWriteFails() {
+        ProcessInstanceLog started = new ProcessInstanceLog(1L, "incident-process");
+        doThrow(new PersistenceException("database down")).when(entityManager).persist(started);
+        deferredAuditLog.add(started, AbstractAuditLogger.BEFORE_START_EVENT_TYPE);
+
+        deferredAuditLog.flush();
+
+        assertThat(deferredAuditLog.pendingCount(), equalTo(1L));
+        assertThat(deferredAuditLog.writtenCount(), equalTo(0L));
+        verify(ptm).rollback(transactionStatus);
+    }
+
+    @Test
+    public void testDeferUntilQueueIsDrained() {
+        deferredAuditLog.defer(true);
+        deferredAuditLog.add(new ProcessInstanceLog(1L, "incident-process"), AbstractAuditLogger.BEFORE_START_EVENT_TYPE);
+        deferredAuditLog.defer(false);
+
+        assertThat(deferredAuditLog.isDeferring(), equalTo(true));
+        deferredAuditLog.flush();
+        assertThat(deferredAuditLog.isDeferring(), equalTo(false));
+    }
+}
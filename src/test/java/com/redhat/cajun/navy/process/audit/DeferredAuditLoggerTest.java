@@ -0,0 +1,102 @@
+package com.redhat.cajun.navy.process.audit;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.mockito.MockitoAnnotations.initMocks;
+
+import javax.transaction.Status;
+import javax.transaction.Synchronization;
+import javax.transaction.Transaction;
+import javax.transaction.TransactionManager;
+import javax.transaction.UserTransaction;
+
+import org.jbpm.process.audit.AbstractAuditLogger;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Captor;
+import org.mockito.Mock;
+import org.springframework.transaction.jta.JtaTransactionManager;
+
+public class DeferredAuditLoggerTest {
+
+    private DeferredAuditLog deferredAuditLog;
+
+    @Mock
+    private TransactionManager transactionManager;
+
+    @Mock
+    private UserTransaction userTransaction;
+
+    @Mock
+    private Transaction transaction;
+
+    @Captor
+    private ArgumentCaptor<Synchronization> synchronizationCaptor;
+
+    private DeferredAuditLogger auditLogger;
+
+    @Before
+    public void init() throws Exception {
+        initMocks(this);
+        deferredAuditLog = spy(new DeferredAuditLog());
+        when(transactionManager.getTransaction()).thenReturn(transaction);
+        when(transaction.getStatus()).thenReturn(Status.STATUS_ACTIVE);
+        auditLogger = new DeferredAuditLogger(deferredAuditLog, new JtaTransactionManager(userTransaction, transactionManager));
+    }
+
+    @Test
+    public void testEntriesAreQueuedWhenTheTransactionCommits() throws Exception {
+        auditLogger.sendMessage("entry1", AbstractAuditLogger.BEFORE_START_EVENT_TYPE, 0);
+        auditLogger.sendMessage("entry2", AbstractAuditLogger.AFTER_COMPLETE_EVENT_TYPE, 0);
+
+        verify(deferredAuditLog, never()).addHeld(any(), anyInt());
+        verify(transaction, times(1)).registerSynchronization(synchronizationCaptor.capture());
+        // the entries of the open transaction keep the audit deferred
+        assertThat(deferredAuditLog.pendingCount(), equalTo(2L));
+        assertThat(deferredAuditLog.isDeferring(), equalTo(true));
+
+        synchronizationCaptor.getValue().beforeCompletion();
+        synchronizationCaptor.getValue().afterCompletion(Status.STATUS_COMMITTED);
+
+        verify(deferredAuditLog).addHeld("entry1", AbstractAuditLogger.BEFORE_START_EVENT_TYPE);
+        verify(deferredAuditLog).addHeld("entry2", AbstractAuditLogger.AFTER_COMPLETE_EVENT_TYPE);
+        assertThat(deferredAuditLog.pendingCount(), equalTo(2L));
+    }
+
+    @Test
+    public void testEntriesAreDroppedWhenTheTransactionRollsBack() throws Exception {
+        auditLogger.sendMessage("entry1", AbstractAuditLogger.BEFORE_START_EVENT_TYPE, 0);
+
+        verify(transaction).registerSynchronization(synchronizationCaptor.capture());
+        synchronizationCaptor.getValue().afterCompletion(Status.STATUS_ROLLEDBACK);
+
+        verify(deferredAuditLog, never()).addHeld(any(), anyInt());
+        assertThat(deferredAuditLog.pendingCount(), equalTo(0L));
+
+        // the retried transaction starts afresh
+        auditLogger.sendMessage("entry1", AbstractAuditLogger.BEFORE_START_EVENT_TYPE, 0);
+
+        verify(transaction, times(2)).registerSynchronization(synchronizationCaptor.capture());
+        synchronizationCaptor.getValue().afterCompletion(Status.STATUS_COMMITTED);
+
+        verify(deferredAuditLog, times(1)).addHeld("entry1", AbstractAuditLogger.BEFORE_START_EVENT_TYPE);
+        assertThat(deferredAuditLog.pendingCount(), equalTo(1L));
+    }
+
+    @Test
+    public void testEntriesAreQueuedRightAwayWithoutTransaction() throws Exception {
+        when(transactionManager.getTransaction()).thenReturn(null);
+
+        auditLogger.sendMessage("entry1", AbstractAuditLogger.BEFORE_START_EVENT_TYPE, 0);
+
+        verify(deferredAuditLog).add("entry1", AbstractAuditLogger.BEFORE_START_EVENT_TYPE);
+    }
+}
@@ -0,0 +1,28 @@
+package com.redhat.cajun.navy.process.message;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.lessThan;
+
+import org.junit.Test;
+
+public class BloomFilterTest {
+
+    @Test
+    public void testMightContain() {
+        BloomFilter filter = new BloomFilter(10000, 0.01);
+        for (int i = 0; i < 10000; i++) {
+            filter.put("message" + i);
+        }
+        for (int i = 0; i < 10000; i++) {
+            assertThat(filter.mightContain("message" + i), equalTo(true));
+        }
+        int falsePositives = 0;
+        for (int i = 10000; i < 20000; i++) {
+            if (filter.mightContain("message" + i)) {
+                falsePositives++;
+            }
+        }
+        assertThat(falsePositives, lessThan(300));
+    }
+}
@@ -0,0 +1,142 @@
+package com.redhat.cajun.navy.process.message;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+
+import com.redhat.cajun.navy.process.message.model.Message;
+import com.redhat.cajun.navy.process.message.model.MissionStartedEvent;
+import org.junit.Before;
+import org.junit.Test;
+
+public class MessageDecoderTest {
+
+    private MessageDecoder decoder;
+
+    private Map<String, Class<?>> bodyTypes;
+
+    @Before
+    public void init() {
+        decoder = new MessageDecoder();
+        bodyTypes = Collections.singletonMap("MissionStartedEvent", MissionStartedEvent.class);
+    }
+
+    @Test
+    public void testDecodeMessage() throws Exception {
+        String json = "{\"messageType\":\"MissionStartedEvent\"," +
+                "\"id\":\"messageId\"," +
+                "\"invokingService\":\"messageSender\"," +
+                "\"timestamp\":1521148332397," +
+                "\"header\":{\"incidentId\":\"incident123\"}," +
+                "\"body\":{\"missionId\":\"mission123\",\"incidentId\":\"incident123\",\"responderId\":\"responder123\"}}";
+
+        Message<MissionStartedEvent> message = decoder.decode(json, bodyTypes);
+
+        assertThat(message, notNullValue());
+        assertThat(message.getMessageType(), equalTo("MissionStartedEvent"));
+        assertThat(message.getId(), equalTo("messageId"));
+        assertThat(message.getInvokingService(), equalTo("messageSender"));
+        assertThat(message.getTimestamp(), equalTo(1521148332397L));
+        assertThat(message.getHeaderValue("incidentId"), equalTo("incident123"));
+        assertThat(message.getBody().getMissionId(), equalTo("mission123"));
+        assertThat(message.getBody().getIncidentId(), equalTo("incident123"));
+    }
+
+    @Test
+    public void testDecodeMessageWithBodyBeforeMessageType() throws Exception {
+        String json = "{\"id\":\"messageId\"," +
+                "\"body\":{\"missionId\":\"mission123\",\"incidentId\":\"incident123\"}," +
+                "\"messageType\":\"MissionStartedEvent\"}";
+
+        Message<MissionStartedEvent> message = decoder.decode(json, bodyTypes);
+
+        assertThat(message, notNullValue());
+        assertThat(message.getBody().getIncidentId(), equalTo("incident123"));
+        assertThat(message.getHeader(), nullValue());
+    }
+
+    @Test
+    public void testDecodeStopsAtIgnoredMessageType() throws Exception {
+        // the rest of the payload is not read, so a malformed body does not matter
+        String json = "{\"messageType\":\"MissionCompletedEvent\",\"body\":{\"missionId\":";
+
+        Message<MissionStartedEvent> message = decoder.decode(json, bodyTypes);
+
+        assertThat(message, nullValue());
+    }
+
+    @Test
+    public void testDecodeMessageFromBytes() throws Exception {
+        String json = "{\"messageType\":\"MissionStartedEvent\",\"header\":{\"incidentId\":\"incident123\"}," +
+                "\"body\":{\"missionId\":\"mission123\",\"incidentId\":\"incident123\"}}";
+        byte[] bytes = json.getBytes(StandardCharsets.UTF_8);
+
+        Message<MissionStartedEvent> message = decoder.decode(bytes, bodyTypes);
+
+        assertThat(message, notNullValue());
+        assertThat(message.getBody().getIncidentId(), equalTo("incident123"));
+        assertThat(decoder.headerValue(bytes, "incidentId"), equalTo("incident123"));
+    }
+
+    @Test
+    public void testDecodeMessageWithoutPayload() throws Exception {
+        Message<MissionStartedEvent> message = decoder.decode(null, bodyTypes);
+
+        assertThat(message, nullValue());
+        assertThat(decoder.headerValue(null, "incidentId"), nullValue());
+    }
+
+    @Test
+    public void testDecodeMessageWithCaseInsensitiveMessageType() throws Exception {
+        Map<String, Class<?>> caseInsensitive = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        caseInsensitive.putAll(bodyTypes);
+        String json = "{\"messageType\":\"missionStartedEvent\",\"body\":{\"incidentId\":\"incident123\"}}";
+
+        Message<MissionStartedEvent> message = decoder.decode(json, caseInsensitive);
+
+        assertThat(message, notNullValue());
+        assertThat(message.getBody().getIncidentId(), equalTo("incident123"));
+    }
+
+    @Test
+    public void testDecodeMessageWithoutMessageType() throws Exception {
+        String json = "{\"field1\":\"value1\",\"field2\":\"value2\"}";
+
+        Message<MissionStartedEvent> message = decoder.decode(json, bodyTypes);
+
+        assertThat(message, nullValue());
+    }
+
+    @Test
+    public void testDecodeMessageWhichIsNotJson() throws Exception {
+        Message<MissionStartedEvent> message = decoder.decode("not json", bodyTypes);
+
+        assertThat(message, nullValue());
+    }
+
+    @Test(expected = IOException.class)
+    public void testDecodeMessageWithMalformedBody() throws Exception {
+        String json = "{\"messageType\":\"MissionStartedEvent\",\"body\":{\"incidentId\":[}}";
+
+        decoder.decode(json, bodyTypes);
+    }
+
+    @Test
+    public void testHeaderValue() {
+        String json = "{\"messageType\":\"ResponderUpdatedEvent\"," +
+                "\"body\":{\"responder\":{\"id\":\"responder123\"}}," +
+                "\"header\":{\"other\":\"value\",\"incidentId\":\"incident123\"}}";
+
+        assertThat(decoder.headerValue(json, "incidentId"), equalTo("incident123"));
+        assertThat(decoder.headerValue(json, "missing"), nullValue());
+        assertThat(decoder.headerValue("{\"messageType\":\"ResponderUpdatedEvent\"}", "incidentId"), nullValue());
+        assertThat(decoder.headerValue("not json", "incidentId"), nullValue());
+    }
+}
@@ -0,0 +1,188 @@
+package com.redhat.cajun.navy.process.message;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.mockito.MockitoAnnotations.initMocks;
+import static org.springframework.test.util.ReflectionTestUtils.setField;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+import com.redhat.cajun.navy.process.message.model.Message;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Captor;
+import org.mockito.Mock;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.jdbc.datasource.init.DatabasePopulatorUtils;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.support.SendResult;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.util.concurrent.SettableListenableFuture;
+
+public class MessageOutboxRelayTest {
+
+    @Mock
+    private PlatformTransactionManager ptm;
+
+    @Mock
+    private TransactionStatus transactionStatus;
+
+    @Mock
+    private KafkaTemplate<String, byte[]> kafkaTemplate;
+
+    @Captor
+    private ArgumentCaptor<ProducerRecord<String, byte[]>> recordCaptor;
+
+    private JdbcTemplate jdbcTemplate;
+
+    private MessageOutbox outbox;
+
+    private MessageOutboxRelay relay;
+
+    @Before
+    public void init() {
+        initMocks(this);
+        when(ptm.getTransaction(any())).thenReturn(transactionStatus);
+        DriverManagerDataSource dataSource = new DriverManagerDataSource("jdbc:h2:mem:outbox;DB_CLOSE_DELAY=-1", "sa", "");
+        DatabasePopulatorUtils.execute(new ResourceDatabasePopulator(new ClassPathResource("db/message-outbox.sql")), dataSource);
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        outbox = new MessageOutbox();
+        setField(outbox, null, jdbcTemplate, JdbcTemplate.class);
+        setField(outbox, null, ptm, PlatformTransactionManager.class);
+        relay = new MessageOutboxRelay();
+        setField(relay, null, jdbcTemplate, JdbcTemplate.class);
+        setField(relay, null, kafkaTemplate, KafkaTemplate.class);
+        setField(relay, null, ptm, PlatformTransactionManager.class);
+        setField(relay, "batchSize", 2, int.class);
+        setField(relay, "claimTimeout", 60000L, long.class);
+    }
+
+    @After
+    public void cleanup() {
+        jdbcTemplate.execute("DROP ALL OBJECTS");
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testDrain() {
+        SettableListenableFuture<SendResult<String, byte[]>> future = new SettableListenableFuture<>();
+        future.set(null);
+        when(kafkaTemplate.send(any(ProducerRecord.class))).thenReturn(future);
+        outbox.add("topic-mission-command", "incident1", "incident1", message("CreateMissionCommand"));
+        outbox.add("topic-responder-command", "responder1", "incident1", message("UpdateResponderCommand"));
+        outbox.add("topic-incident-command", "incident1", "incident1", message("UpdateIncidentCommand"));
+
+        relay.drain();
+
+        verify(kafkaTemplate, times(3)).send(recordCaptor.capture());
+        List<ProducerRecord<String, byte[]>> records = recordCaptor.getAllValues();
+        assertThat(records.get(0).topic(), equalTo("topic-mission-command"));
+        assertThat(records.get(1).topic(), equalTo("topic-responder-command"));
+        assertThat(records.get(1).key(), equalTo("responder1"));
+        assertThat(new String(records.get(1).headers().lastHeader(KafkaRecordHeaders.INCIDENT_ID).value(), StandardCharsets.UTF_8), equalTo("incident1"));
+        assertThat(new String(records.get(2).headers().lastHeader(KafkaRecordHeaders.MESSAGE_TYPE).value(), StandardCharsets.UTF_8), equalTo("UpdateIncidentCommand"));
+        assertThat(new String(records.get(2).value(), StandardCharsets.UTF_8).contains("\"messageType\":\"UpdateIncidentCommand\""), equalTo(true));
+        assertThat(jdbcTemplate.queryForObject("SELECT COUNT(*) FROM message_outbox", Long.class), equalTo(0L));
+        assertThat(relay.relayedCount(), equalTo(3L));
+        assertThat(relay.backlog(), equalTo(0L));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testDrainToBinaryTopic() throws Exception {
+        setField(relay, "binaryTopicSet", Collections.singleton("topic-mission-command"), Set.class);
+        SettableListenableFuture<SendResult<String, byte[]>> future = new SettableListenableFuture<>();
+        future.set(null);
+        when(kafkaTemplate.send(any(ProducerRecord.class))).thenReturn(future);
+        outbox.add("topic-mission-command", "incident1", "incident1", message("CreateMissionCommand"));
+
+        relay.drain();
+
+        verify(kafkaTemplate).send(recordCaptor.capture());
+        ProducerRecord<String, byte[]> record = recordCaptor.getValue();
+        assertThat(new String(record.headers().lastHeader(KafkaRecordHeaders.CONTENT_TYPE).value(), StandardCharsets.UTF_8), equalTo(KafkaRecordHeaders.CONTENT_TYPE_SMILE));
+        Message<String> message = new MessageDecoder().decode(record.value(), Collections.singletonMap("CreateMissionCommand", String.class));
+        assertThat(message.getBody(), equalTo("body"));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testDrainWhenSendFails() {
+        SettableListenableFuture<SendResult<String, byte[]>> future = new SettableListenableFuture<>();
+        future.setException(new RuntimeException("broker not available"));
+        when(kafkaTemplate.send(any(ProducerRecord.class))).thenReturn(future);
+        outbox.add("topic-mission-command", "incident1", "incident1", message("CreateMissionCommand"));
+
+        relay.drain();
+
+        assertThat(jdbcTemplate.queryForObject("SELECT COUNT(*) FROM message_outbox", Long.class), equalTo(1L));
+        // the claim is released, for the message to be sent again on the next poll
+        assertThat(jdbcTemplate.queryForObject("SELECT COUNT(*) FROM message_outbox WHERE claimed_at IS NULL", Long.class), equalTo(1L));
+        assertThat(relay.relayedCount(), equalTo(0L));
+        assertThat(relay.failureCount(), equalTo(1L));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testMessagesOfKeyWithClaimInFlightAreNotClaimed() {
+        SettableListenableFuture<SendResult<String, byte[]>> future = new SettableListenableFuture<>();
+        future.set(null);
+        when(kafkaTemplate.send(any(ProducerRecord.class))).thenReturn(future);
+        outbox.add("topic-mission-command", "incident1", "incident1", message("CreateMissionCommand"));
+        outbox.add("topic-incident-command", "incident1", "incident1", message("UpdateIncidentCommand"));
+        outbox.add("topic-incident-command", "incident2", "incident2", message("UpdateIncidentCommand"));
+        // the first message of incident1 is claimed by another relay
+        jdbcTemplate.update("UPDATE message_outbox SET claimed_at = ? WHERE id = (SELECT MIN(id) FROM message_outbox)",
+                new Timestamp(System.currentTimeMillis()));
+
+        relay.drain();
+
+        verify(kafkaTemplate).send(recordCaptor.capture());
+        assertThat(recordCaptor.getValue().key(), equalTo("incident2"));
+        assertThat(jdbcTemplate.queryForObject("SELECT COUNT(*) FROM message_outbox WHERE message_key = 'incident1'", Long.class), equalTo(2L));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testExpiredClaimIsClaimedAgain() {
+        SettableListenableFuture<SendResult<String, byte[]>> future = new SettableListenableFuture<>();
+        future.set(null);
+        when(kafkaTemplate.send(any(ProducerRecord.class))).thenReturn(future);
+        outbox.add("topic-mission-command", "incident1", "incident1", message("CreateMissionCommand"));
+        jdbcTemplate.update("UPDATE message_outbox SET claimed_at = ?", new Timestamp(System.currentTimeMillis() - 120000));
+
+        relay.drain();
+
+        verify(kafkaTemplate).send(any(ProducerRecord.class));
+        assertThat(jdbcTemplate.queryForObject("SELECT COUNT(*) FROM message_outbox", Long.class), equalTo(0L));
+    }
+
+    @Test
+    public void testKeyRowIsWrittenWithMessage() {
+        outbox.add("topic-mission-command", "incident1", "incident1", message("CreateMissionCommand"));
+        outbox.add("topic-incident-command", "incident1", "incident1", message("UpdateIncidentCommand"));
+        outbox.add("topic-incident-command", null, null, message("UpdateIncidentCommand"));
+
+        assertThat(jdbcTemplate.queryForObject("SELECT COUNT(*) FROM message_outbox_key WHERE message_key = 'incident1'", Long.class), equalTo(1L));
+        assertThat(jdbcTemplate.queryForObject("SELECT COUNT(*) FROM message_outbox_key", Long.class), equalTo(1L));
+    }
+
+    private Message<String> message(String messageType) {
+        return new Message.Builder<>(messageType, "IncidentProcessService", "body").build();
+    }
+}
@@ -0,0 +1,80 @@
+package com.redhat.cajun.navy.process.message;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.lessThan;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.Map;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.redhat.cajun.navy.process.message.model.CreateMissionCommand;
+import com.redhat.cajun.navy.process.message.model.Message;
+import org.apache.kafka.common.header.internals.RecordHeaders;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.kafka.support.converter.AbstractJavaTypeMapper;
+import org.springframework.kafka.support.serializer.JsonSerializer;
+
+public class MessageSerializerTest {
+
+    private MessageSerializer serializer;
+
+    private MessageDecoder decoder;
+
+    private Map<String, Class<?>> bodyTypes;
+
+    private Message<CreateMissionCommand> message;
+
+    @Before
+    public void init() throws Exception {
+        serializer = new MessageSerializer();
+        serializer.configure(Collections.singletonMap(MessageSerializer.BINARY_TOPICS_CONFIG, "topic-mission-command, topic-other"), false);
+        decoder = new MessageDecoder();
+        bodyTypes = Collections.singletonMap("CreateMissionCommand", CreateMissionCommand.class);
+        CreateMissionCommand command = new ObjectMapper().readValue("{\"incidentId\":\"incident123\",\"responderId\":\"responder123\"," +
+                "\"responderStartLat\":\"40.12345\",\"responderStartLong\":\"-80.98765\",\"incidentLat\":\"30.12345\"," +
+                "\"incidentLong\":\"-70.98765\",\"destinationLat\":\"50.12345\",\"destinationLong\":\"-90.98765\"}", CreateMissionCommand.class);
+        message = new Message.Builder<>("CreateMissionCommand", "IncidentProcessService", command).header("incidentId", "incident123").build();
+    }
+
+    @Test
+    public void testSerializeAsJson() throws Exception {
+        RecordHeaders headers = new RecordHeaders();
+
+        byte[] payload = serializer.serialize("topic-incident-command", headers, message);
+
+        assertThat(new String(headers.lastHeader(KafkaRecordHeaders.CONTENT_TYPE).value(), StandardCharsets.UTF_8), equalTo(KafkaRecordHeaders.CONTENT_TYPE_JSON));
+        assertThat(new String(headers.lastHeader(AbstractJavaTypeMapper.DEFAULT_CLASSID_FIELD_NAME).value(), StandardCharsets.UTF_8), equalTo(Message.class.getName()));
+        assertThat(payload, equalTo(new JsonSerializer<Message<?>>().serialize("topic-incident-command", message)));
+        Message<CreateMissionCommand> decoded = decoder.decode(payload, bodyTypes);
+        assertThat(decoded.getId(), equalTo(message.getId()));
+        assertThat(decoded.getBody().getIncidentLat(), equalTo("30.12345"));
+    }
+
+    @Test
+    public void testSerializeAsSmile() throws Exception {
+        RecordHeaders headers = new RecordHeaders();
+
+        byte[] payload = serializer.serialize("topic-mission-command", headers, message);
+
+        assertThat(new String(headers.lastHeader(KafkaRecordHeaders.CONTENT_TYPE).value(), StandardCharsets.UTF_8), equalTo(KafkaRecordHeaders.CONTENT_TYPE_SMILE));
+        Message<CreateMissionCommand> decoded = decoder.decode(payload, bodyTypes);
+        assertThat(decoded.getId(), equalTo(message.getId()));
+        assertThat(decoded.getTimestamp(), equalTo(message.getTimestamp()));
+        assertThat(decoded.getHeaderValue("incidentId"), equalTo("incident123"));
+        assertThat(decoded.getBody().getDestinationLong(), equalTo("-90.98765"));
+        assertThat(decoder.headerValue(payload, "incidentId"), equalTo("incident123"));
+        assertThat(payload.length, lessThan(serializer.serialize("topic-incident-command", message).length));
+    }
+
+    @Test
+    public void testJsonToSmile() throws Exception {
+        byte[] json = serializer.serialize("topic-incident-command", message);
+
+        byte[] smile = MessageSerializer.jsonToSmile(new String(json, StandardCharsets.UTF_8));
+
+        assertThat(smile, equalTo(serializer.serialize("topic-mission-command", message)));
+    }
+}
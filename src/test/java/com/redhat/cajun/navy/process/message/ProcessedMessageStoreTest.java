@@ -0,0 +1,91 @@
+package com.redhat.cajun.navy.process.message;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.when;
+import static org.mockito.MockitoAnnotations.initMocks;
+import static org.springframework.test.util.ReflectionTestUtils.setField;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.jdbc.datasource.init.DatabasePopulatorUtils;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionStatus;
+
+public class ProcessedMessageStoreTest {
+
+    @Mock
+    private PlatformTransactionManager ptm;
+
+    @Mock
+    private TransactionStatus transactionStatus;
+
+    private JdbcTemplate jdbcTemplate;
+
+    private ProcessedMessageStore store;
+
+    @Before
+    public void init() {
+        initMocks(this);
+        when(ptm.getTransaction(any())).thenReturn(transactionStatus);
+        DriverManagerDataSource dataSource = new DriverManagerDataSource("jdbc:h2:mem:dedup;DB_CLOSE_DELAY=-1", "sa", "");
+        DatabasePopulatorUtils.execute(new ResourceDatabasePopulator(new ClassPathResource("db/processed-message.sql")), dataSource);
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.update("INSERT INTO processed_message VALUES ('message1', CURRENT_TIMESTAMP)");
+        store = newStore();
+    }
+
+    @After
+    public void cleanup() {
+        store.shutdown();
+        jdbcTemplate.execute("DROP ALL OBJECTS");
+    }
+
+    @Test
+    public void testIsProcessed() {
+        store.markProcessed("message2");
+
+        assertThat(store.isProcessed("message1"), equalTo(true));
+        assertThat(store.isProcessed("message2"), equalTo(true));
+        assertThat(store.isProcessed("message3"), equalTo(false));
+        assertThat(store.isProcessed(null), equalTo(false));
+    }
+
+    @Test
+    public void testPrune() {
+        jdbcTemplate.update("INSERT INTO processed_message VALUES ('message0', DATEADD('DAY', -2, CURRENT_TIMESTAMP))");
+
+        store.prune();
+
+        assertThat(jdbcTemplate.queryForObject("SELECT COUNT(*) FROM processed_message", Integer.class), equalTo(1));
+        assertThat(store.isProcessed("message0"), equalTo(false));
+        assertThat(store.isProcessed("message1"), equalTo(true));
+    }
+
+    @Test
+    public void testFilterIsLoadedAtStartup() {
+        jdbcTemplate.update("INSERT INTO processed_message VALUES ('message2', CURRENT_TIMESTAMP)");
+        store.shutdown();
+        store = newStore();
+
+        assertThat(store.isProcessed("message2"), equalTo(true));
+    }
+
+    private ProcessedMessageStore newStore() {
+        ProcessedMessageStore processedMessageStore = new ProcessedMessageStore();
+        setField(processedMessageStore, null, jdbcTemplate, JdbcTemplate.class);
+        setField(processedMessageStore, null, ptm, PlatformTransactionManager.class);
+        setField(processedMessageStore, "retention", 86400000L, long.class);
+        setField(processedMessageStore, "expectedMessages", 1000L, long.class);
+        setField(processedMessageStore, "pruneInterval", 600000L, long.class);
+        processedMessageStore.init();
+        return processedMessageStore;
+    }
+}
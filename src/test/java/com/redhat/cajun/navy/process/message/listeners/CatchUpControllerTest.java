@@ -0,0 +1,160 @@
+package com.redhat.cajun.navy.process.message.listeners;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.mockito.MockitoAnnotations.initMocks;
+import static org.springframework.test.util.ReflectionTestUtils.setField;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.redhat.cajun.navy.process.ListenerMode;
+import com.redhat.cajun.navy.process.audit.DeferredAuditLog;
+import org.apache.kafka.common.Metric;
+import org.apache.kafka.common.MetricName;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.springframework.kafka.config.KafkaListenerEndpointRegistry;
+import org.springframework.kafka.listener.ConcurrentMessageListenerContainer;
+import org.springframework.kafka.listener.MessageListenerContainer;
+
+public class CatchUpControllerTest {
+
+    @Mock
+    private KafkaListenerEndpointRegistry registry;
+
+    @Mock
+    private DeferredAuditLog deferredAuditLog;
+
+    @Mock
+    private ConcurrentMessageListenerContainer<String, Object> recordContainer;
+
+    @Mock
+    private ConcurrentMessageListenerContainer<String, Object> batchContainer;
+
+    @Mock
+    private Metric lagMetric;
+
+    private CatchUpController controller;
+
+    private final List<MessageListenerContainer> switches = new ArrayList<>();
+
+    @Before
+    public void init() {
+        initMocks(this);
+        controller = new CatchUpController() {
+            @Override
+            void switchContainers(MessageListenerContainer from, MessageListenerContainer to) {
+                switches.add(from);
+                switches.add(to);
+            }
+        };
+        setField(controller, null, registry, KafkaListenerEndpointRegistry.class);
+        setField(controller, null, deferredAuditLog, DeferredAuditLog.class);
+        setField(controller, "listenerMode", "record", String.class);
+        setField(controller, "catchUpMode", "batch", String.class);
+        setField(controller, "listenerIds", "mission-event", String.class);
+        setField(controller, "lagHigh", 10000L, long.class);
+        setField(controller, "lagLow", 100L, long.class);
+        setField(controller, "deferAudit", true, boolean.class);
+        controller.init();
+        when(registry.getListenerContainer("mission-event")).thenReturn(recordContainer);
+        when(registry.getListenerContainer("mission-event-batch")).thenReturn(batchContainer);
+        when(recordContainer.isRunning()).thenReturn(true);
+        Map<MetricName, Metric> consumerMetrics = new HashMap<>();
+        consumerMetrics.put(new MetricName("records-lag-max", "consumer-fetch-manager-metrics", "", Collections.singletonMap("client-id", "consumer-1")), lagMetric);
+        doReturn(Collections.singletonMap("consumer-1", consumerMetrics)).when(recordContainer).metrics();
+        doReturn(Collections.singletonMap("consumer-1", consumerMetrics)).when(batchContainer).metrics();
+    }
+
+    @Test
+    public void testEnterCatchUpOnLag() {
+        when(lagMetric.metricValue()).thenReturn(50000.0);
+
+        controller.check();
+
+        assertThat(switches, equalTo(Arrays.asList(recordContainer, batchContainer)));
+        verify(deferredAuditLog).defer(true);
+        assertThat(controller.isCatchingUp("mission-event"), equalTo(true));
+        assertThat(controller.mode("mission-event"), equalTo(ListenerMode.BATCH));
+        assertThat(controller.enteredCount("mission-event"), equalTo(1L));
+    }
+
+    @Test
+    public void testStaySteadyUnderThreshold() {
+        when(lagMetric.metricValue()).thenReturn(5000.0);
+
+        controller.check();
+
+        assertThat(switches.isEmpty(), equalTo(true));
+        verify(deferredAuditLog).defer(false);
+        assertThat(controller.isCatchingUp("mission-event"), equalTo(false));
+        assertThat(controller.lag("mission-event"), equalTo(5000L));
+    }
+
+    @Test
+    public void testSwitchBackWhenCaughtUp() {
+        when(lagMetric.metricValue()).thenReturn(50000.0);
+        controller.check();
+        when(batchContainer.isRunning()).thenReturn(true);
+        when(lagMetric.metricValue()).thenReturn(10.0);
+
+        controller.check();
+
+        assertThat(switches, equalTo(Arrays.asList(recordContainer, batchContainer, batchContainer, recordContainer)));
+        verify(deferredAuditLog).defer(false);
+        assertThat(controller.isCatchingUp("mission-event"), equalTo(false));
+        assertThat(controller.exitedCount("mission-event"), equalTo(1L));
+    }
+
+    @Test
+    public void testNoSwitchWithinMinDuration() {
+        setField(controller, "minDuration", 60000L, long.class);
+        when(lagMetric.metricValue()).thenReturn(50000.0);
+        controller.check();
+        when(batchContainer.isRunning()).thenReturn(true);
+        when(lagMetric.metricValue()).thenReturn(10.0);
+
+        controller.check();
+
+        assertThat(switches.size(), equalTo(2));
+        assertThat(controller.isCatchingUp("mission-event"), equalTo(true));
+    }
+
+    @Test
+    public void testIgnoreLagOfPausedContainer() {
+        when(recordContainer.isPauseRequested()).thenReturn(true);
+        when(lagMetric.metricValue()).thenReturn(50000.0);
+
+        controller.check();
+
+        assertThat(switches.isEmpty(), equalTo(true));
+        assertThat(controller.isCatchingUp("mission-event"), equalTo(false));
+    }
+
+    @Test
+    public void testSwitchWaitsForListenerLock() throws Exception {
+        when(lagMetric.metricValue()).thenReturn(50000.0);
+        Thread checker = new Thread(controller::check);
+
+        controller.withListenerLock("mission-event", () -> {
+            checker.start();
+            while (checker.isAlive() && checker.getState() != Thread.State.BLOCKED) {
+                Thread.yield();
+            }
+            assertThat(switches.isEmpty(), equalTo(true));
+        });
+        checker.join();
+
+        assertThat(switches, equalTo(Arrays.asList(recordContainer, batchContainer)));
+        assertThat(controller.isCatchingUp("mission-event"), equalTo(true));
+    }
+}
@@ -0,0 +1,120 @@
+package com.redhat.cajun.navy.process.message.listeners;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.mockito.MockitoAnnotations.initMocks;
+import static org.springframework.test.util.ReflectionTestUtils.setField;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.redhat.cajun.navy.process.message.KafkaRecordHeaders;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.MockConsumer;
+import org.apache.kafka.clients.consumer.OffsetResetStrategy;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.Node;
+import org.apache.kafka.common.PartitionInfo;
+import org.apache.kafka.common.TopicPartition;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Captor;
+import org.mockito.Mock;
+import org.springframework.kafka.core.ConsumerFactory;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.support.SendResult;
+import org.springframework.util.concurrent.SettableListenableFuture;
+
+public class DeadLetterReplayerTest {
+
+    private static final TopicPartition DLT_PARTITION = new TopicPartition("topic-mission-event-dlt", 0);
+
+    @Mock
+    private ConsumerFactory<String, byte[]> consumerFactory;
+
+    @Mock
+    private KafkaTemplate<String, byte[]> kafkaTemplate;
+
+    @Captor
+    private ArgumentCaptor<ProducerRecord<String, byte[]>> recordCaptor;
+
+    private MockConsumer<String, byte[]> consumer;
+
+    private DeadLetterReplayer replayer;
+
+    @Before
+    @SuppressWarnings("unchecked")
+    public void init() {
+        initMocks(this);
+        // keeps the committed offsets readable once the replayer has closed the consumer
+        consumer = new MockConsumer<String, byte[]>(OffsetResetStrategy.EARLIEST) {
+            @Override
+            public synchronized void close() {
+            }
+        };
+        consumer.updatePartitions(DLT_PARTITION.topic(), Collections.singletonList(
+                new PartitionInfo(DLT_PARTITION.topic(), 0, Node.noNode(), new Node[0], new Node[0])));
+        consumer.updateBeginningOffsets(Collections.singletonMap(DLT_PARTITION, 0L));
+        consumer.updateEndOffsets(Collections.singletonMap(DLT_PARTITION, 3L));
+        consumer.schedulePollTask(() -> {
+            for (long offset = 0; offset < 3; offset++) {
+                consumer.addRecord(deadLetter(offset));
+            }
+        });
+        when(consumerFactory.createConsumer()).thenReturn(consumer);
+        SettableListenableFuture<SendResult<String, byte[]>> future = new SettableListenableFuture<>();
+        future.set(null);
+        when(kafkaTemplate.send(any(ProducerRecord.class))).thenReturn(future);
+        replayer = new DeadLetterReplayer();
+        setField(replayer, null, consumerFactory, ConsumerFactory.class);
+        setField(replayer, null, kafkaTemplate, KafkaTemplate.class);
+    }
+
+    @Test
+    public void testReplay() {
+        Map<String, Object> result = replayer.replay("topic-mission-event", null);
+
+        assertThat(result.get("replayed"), equalTo(3L));
+        verify(kafkaTemplate, times(3)).send(recordCaptor.capture());
+        List<ProducerRecord<String, byte[]>> records = recordCaptor.getAllValues();
+        assertThat(records.get(0).topic(), equalTo("topic-mission-event"));
+        assertThat(records.get(0).key(), equalTo("incident0"));
+        assertThat(KafkaRecordHeaders.value(records.get(0).headers(), KafkaRecordHeaders.MESSAGE_TYPE), equalTo("MissionStartedEvent"));
+        assertThat(KafkaRecordHeaders.value(records.get(0).headers(), KafkaRecordHeaders.ORIGINAL_TOPIC), nullValue());
+        assertThat(KafkaRecordHeaders.value(records.get(0).headers(), KafkaRecordHeaders.ERROR_CLASS), nullValue());
+        assertThat(consumer.committed(DLT_PARTITION).offset(), equalTo(3L));
+        assertThat(replayer.replayedCount(), equalTo(3L));
+    }
+
+    @Test
+    public void testReplayUpToMaxRecords() {
+        Map<String, Object> result = replayer.replay("topic-mission-event", 2);
+
+        assertThat(result.get("replayed"), equalTo(2L));
+        assertThat(consumer.committed(DLT_PARTITION).offset(), equalTo(2L));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testReplayUnknownTopic() {
+        replayer.replay("topic-unknown", null);
+    }
+
+    private ConsumerRecord<String, byte[]> deadLetter(long offset) {
+        ConsumerRecord<String, byte[]> record = new ConsumerRecord<>(DLT_PARTITION.topic(), 0, offset, "incident" + offset, "{}".getBytes(StandardCharsets.UTF_8));
+        Map<String, String> headers = new HashMap<>();
+        headers.put(KafkaRecordHeaders.MESSAGE_TYPE, "MissionStartedEvent");
+        headers.put(KafkaRecordHeaders.ORIGINAL_TOPIC, "topic-mission-event");
+        headers.put(KafkaRecordHeaders.ERROR_CLASS, IllegalStateException.class.getName());
+        headers.forEach((k, v) -> record.headers().add(k, v.getBytes(StandardCharsets.UTF_8)));
+        return record;
+    }
+}
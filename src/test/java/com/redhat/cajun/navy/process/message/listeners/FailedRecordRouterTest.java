@@ -0,0 +1,184 @@
+package com.redhat.cajun.navy.process.message.listeners;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.mockito.MockitoAnnotations.initMocks;
+import static org.springframework.test.util.ReflectionTestUtils.getField;
+import static org.springframework.test.util.ReflectionTestUtils.setField;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import com.redhat.cajun.navy.process.message.KafkaRecordHeaders;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.TopicPartition;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Captor;
+import org.mockito.Mock;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.event.ListenerContainerIdleEvent;
+import org.springframework.kafka.listener.ListenerExecutionFailedException;
+import org.springframework.kafka.support.SendResult;
+import org.springframework.util.concurrent.SettableListenableFuture;
+
+public class FailedRecordRouterTest {
+
+    @Mock
+    private KafkaTemplate<String, byte[]> kafkaTemplate;
+
+    @Mock
+    private Consumer<String, Object> consumer;
+
+    @Captor
+    private ArgumentCaptor<ProducerRecord<String, byte[]>> recordCaptor;
+
+    private SettableListenableFuture<SendResult<String, byte[]>> future;
+
+    private FailedRecordRouter router;
+
+    @Before
+    @SuppressWarnings("unchecked")
+    public void init() {
+        initMocks(this);
+        future = new SettableListenableFuture<>();
+        when(kafkaTemplate.send(any(ProducerRecord.class))).thenReturn(future);
+        router = new FailedRecordRouter();
+        setField(router, null, kafkaTemplate, KafkaTemplate.class);
+        setField(router, "enabled", true, boolean.class);
+        setField(router, "delays", "1000, 10000", String.class);
+        router.init();
+    }
+
+    @Test
+    public void testRouteToFirstRetryTopic() {
+        future.set(null);
+        ConsumerRecord<String, Object> record = new ConsumerRecord<>("topic-mission-event", 2, 42L, "incident1", "{}");
+        record.headers().add(KafkaRecordHeaders.MESSAGE_TYPE, "MissionStartedEvent".getBytes(StandardCharsets.UTF_8));
+
+        router.route(record, new ListenerExecutionFailedException("failed", new IllegalStateException("no process instance")));
+
+        verify(kafkaTemplate).send(recordCaptor.capture());
+        ProducerRecord<String, byte[]> retry = recordCaptor.getValue();
+        assertThat(retry.topic(), equalTo("topic-mission-event-retry-1"));
+        assertThat(retry.key(), equalTo("incident1"));
+        assertThat(new String(retry.value(), StandardCharsets.UTF_8), equalTo("{}"));
+        assertThat(KafkaRecordHeaders.value(retry.headers(), KafkaRecordHeaders.MESSAGE_TYPE), equalTo("MissionStartedEvent"));
+        assertThat(KafkaRecordHeaders.value(retry.headers(), KafkaRecordHeaders.ORIGINAL_TOPIC), equalTo("topic-mission-event"));
+        assertThat(KafkaRecordHeaders.value(retry.headers(), KafkaRecordHeaders.ORIGINAL_PARTITION), equalTo("2"));
+        assertThat(KafkaRecordHeaders.value(retry.headers(), KafkaRecordHeaders.ORIGINAL_OFFSET), equalTo("42"));
+        assertThat(KafkaRecordHeaders.value(retry.headers(), KafkaRecordHeaders.ERROR_CLASS), equalTo(IllegalStateException.class.getName()));
+        assertThat(KafkaRecordHeaders.value(retry.headers(), KafkaRecordHeaders.ERROR_MESSAGE), equalTo("no process instance"));
+        assertThat(KafkaRecordHeaders.value(retry.headers(), KafkaRecordHeaders.RETRY_ATTEMPT), equalTo("1"));
+        assertThat(router.retriedCount(), equalTo(1L));
+    }
+
+    @Test
+    public void testRouteToNextRetryTopicKeepsOriginalCoordinates() {
+        future.set(null);
+        ConsumerRecord<String, Object> record = new ConsumerRecord<>("topic-mission-event-retry-1", 0, 7L, "incident1", "{}");
+        record.headers().add(KafkaRecordHeaders.ORIGINAL_TOPIC, "topic-mission-event".getBytes(StandardCharsets.UTF_8));
+        record.headers().add(KafkaRecordHeaders.ORIGINAL_PARTITION, "2".getBytes(StandardCharsets.UTF_8));
+        record.headers().add(KafkaRecordHeaders.ORIGINAL_OFFSET, "42".getBytes(StandardCharsets.UTF_8));
+        record.headers().add(KafkaRecordHeaders.RETRY_ATTEMPT, "1".getBytes(StandardCharsets.UTF_8));
+
+        router.route(record, new IllegalStateException("still failing"));
+
+        verify(kafkaTemplate).send(recordCaptor.capture());
+        ProducerRecord<String, byte[]> retry = recordCaptor.getValue();
+        assertThat(retry.topic(), equalTo("topic-mission-event-retry-2"));
+        assertThat(KafkaRecordHeaders.value(retry.headers(), KafkaRecordHeaders.ORIGINAL_OFFSET), equalTo("42"));
+        assertThat(KafkaRecordHeaders.value(retry.headers(), KafkaRecordHeaders.RETRY_ATTEMPT), equalTo("2"));
+        assertThat(retry.headers().headers(KafkaRecordHeaders.RETRY_ATTEMPT).iterator().next().value(), equalTo("2".getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @Test
+    public void testRouteToDeadLetterTopicWhenRetriesAreExhausted() {
+        future.set(null);
+        ConsumerRecord<String, Object> record = new ConsumerRecord<>("topic-mission-event-retry-2", 0, 3L, "incident1", "{}".getBytes(StandardCharsets.UTF_8));
+        record.headers().add(KafkaRecordHeaders.ORIGINAL_TOPIC, "topic-mission-event".getBytes(StandardCharsets.UTF_8));
+        record.headers().add(KafkaRecordHeaders.RETRY_ATTEMPT, "2".getBytes(StandardCharsets.UTF_8));
+
+        router.route(record, new IllegalStateException("still failing"));
+
+        verify(kafkaTemplate).send(recordCaptor.capture());
+        ProducerRecord<String, byte[]> deadLetter = recordCaptor.getValue();
+        assertThat(deadLetter.topic(), equalTo("topic-mission-event-dlt"));
+        assertThat(KafkaRecordHeaders.value(deadLetter.headers(), KafkaRecordHeaders.RETRY_ATTEMPT), nullValue());
+        assertThat(router.deadLetteredCount(), equalTo(1L));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testRouteFailsWhenRecordCannotBeSent() {
+        future.setException(new RuntimeException("broker not available"));
+
+        router.route(new ConsumerRecord<>("topic-mission-event", 0, 1L, "incident1", "{}"), new IllegalStateException("failure"));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testSkipWhenDisabled() {
+        setField(router, "enabled", false, boolean.class);
+
+        router.route(new ConsumerRecord<>("topic-mission-event", 0, 1L, "incident1", "{}"), new IllegalStateException("failure"));
+
+        verify(kafkaTemplate, never()).send(any(ProducerRecord.class));
+    }
+
+    @Test
+    public void testRetryTopics() {
+        assertThat(Arrays.asList(router.retryTopics("topic-mission-event")),
+                equalTo(Arrays.asList("topic-mission-event-retry-1", "topic-mission-event-retry-2")));
+        assertThat(Arrays.asList(router.retryTopics("topic-responder-event", "topic-responder-event-by-incident")),
+                equalTo(Arrays.asList("topic-responder-event-retry-1", "topic-responder-event-retry-2",
+                        "topic-responder-event-by-incident-retry-1", "topic-responder-event-by-incident-retry-2")));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testPartitionIsPausedUntilRecordIsDue() {
+        TopicPartition retry1 = new TopicPartition("topic-mission-event-retry-1", 0);
+        TopicPartition retry2 = new TopicPartition("topic-mission-event-retry-2", 0);
+        Set<TopicPartition> paused = new HashSet<>();
+        when(consumer.assignment()).thenReturn(new HashSet<>(Arrays.asList(retry1, retry2)));
+        when(consumer.paused()).thenReturn(paused);
+        doAnswer(i -> paused.addAll(i.getArgument(0))).when(consumer).pause(any());
+        doAnswer(i -> paused.removeAll(i.getArgument(0))).when(consumer).resume(any());
+
+        // not due: the partition is positioned back on the record and paused, as are the records fetched with it
+        assertThat(router.isDue(retryRecord(retry2, 5L, System.currentTimeMillis() + 60000), consumer), equalTo(false));
+        verify(consumer).seek(retry2, 5L);
+        assertThat(paused, equalTo(Collections.singleton(retry2)));
+        assertThat(router.isDue(retryRecord(retry2, 6L, System.currentTimeMillis() - 1000), consumer), equalTo(false));
+
+        // the other retry topics are consumed on
+        assertThat(router.isDue(retryRecord(retry1, 3L, System.currentTimeMillis() - 1000), consumer), equalTo(true));
+
+        // resumed on the next idle event once the record is due
+        router.onIdle(new ListenerContainerIdleEvent(this, this, 1000L, "retry", Collections.singleton(retry2), consumer, true));
+        assertThat(paused.isEmpty(), equalTo(false));
+        // the record becomes due
+        ((Map<TopicPartition, Long>) getField(router, "backOffs")).put(retry2, System.currentTimeMillis() - 1);
+        router.onIdle(new ListenerContainerIdleEvent(this, this, 1000L, "retry", Collections.singleton(retry2), consumer, true));
+        assertThat(paused.isEmpty(), equalTo(true));
+    }
+
+    private ConsumerRecord<String, Object> retryRecord(TopicPartition topicPartition, long offset, long dueAt) {
+        ConsumerRecord<String, Object> record = new ConsumerRecord<>(topicPartition.topic(), topicPartition.partition(), offset, "incident1", "{}");
+        record.headers().add(KafkaRecordHeaders.RETRY_DUE_AT, Long.toString(dueAt).getBytes(StandardCharsets.UTF_8));
+        return record;
+    }
+}
@@ -0,0 +1,161 @@
+package com.redhat.cajun.navy.process.message.listeners;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.mockito.MockitoAnnotations.initMocks;
+import static org.springframework.test.util.ReflectionTestUtils.setField;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.common.TopicPartition;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionStatus;
+
+public class GroupCommitExecutorTest {
+
+    @Mock
+    private PlatformTransactionManager ptm;
+
+    @Mock
+    private TransactionStatus transactionStatus;
+
+    @Mock
+    private FailedRecordRouter failedRecordRouter;
+
+    @Mock
+    private Consumer<String, String> consumer;
+
+    private GroupCommitExecutor executor;
+
+    @Before
+    public void init() {
+        initMocks(this);
+        executor = new GroupCommitExecutor();
+        setField(executor, null, ptm, PlatformTransactionManager.class);
+        setField(executor, null, failedRecordRouter, FailedRecordRouter.class);
+        setField(executor, "transactionSize", 10, int.class);
+        when(ptm.getTransaction(any())).thenReturn(transactionStatus);
+    }
+
+    @Test
+    public void testExecuteInOneTransaction() {
+        List<Long> handled = new ArrayList<>();
+
+        boolean done = executor.execute(records("key1", "key2", "key3"), consumer, r -> handled.add(r.offset()));
+
+        assertThat(done, equalTo(true));
+        assertThat(handled, equalTo(Arrays.asList(0L, 1L, 2L)));
+        verify(ptm, times(1)).getTransaction(any());
+        verify(ptm, times(1)).commit(transactionStatus);
+    }
+
+    @Test
+    public void testExecuteSplitsGroupOnFailure() {
+        List<Long> handled = new ArrayList<>();
+
+        boolean done = executor.execute(records("key1", "key2", "key3", "key4"), consumer, r -> {
+            handled.add(r.offset());
+            if (r.offset() == 2L) {
+                throw new IllegalStateException("failure");
+            }
+        });
+
+        assertThat(done, equalTo(true));
+        // [0..3] fails at 2 -> [0,1] commits, [2,3] fails at 2 -> [2] fails, [3] commits
+        assertThat(handled, equalTo(Arrays.asList(0L, 1L, 2L, 0L, 1L, 2L, 2L, 3L)));
+        verify(ptm, times(2)).commit(transactionStatus);
+        verify(ptm, times(3)).rollback(transactionStatus);
+        verify(failedRecordRouter).route(argThat(r -> r.offset() == 2L), any(IllegalStateException.class));
+    }
+
+    @Test
+    public void testRecordsAreFetchedAgainWhenFailedRecordIsNotRouted() {
+        doThrow(new IllegalStateException("send failure")).when(failedRecordRouter).route(any(), any());
+        setField(executor, "transactionSize", 2, int.class);
+        List<ConsumerRecord<String, String>> records = records("key1", "key2", "key3", "key4", "key5");
+        records.add(new ConsumerRecord<>("topic", 1, 0L, "key6", "{}"));
+        List<Long> handled = new ArrayList<>();
+
+        boolean done = executor.execute(records, consumer, r -> {
+            handled.add(r.offset());
+            if (r.offset() == 2L) {
+                throw new IllegalStateException("failure");
+            }
+        });
+
+        // [0,1] commits, [2,3] fails at 2 -> [2] fails, and the records from 2 on are not processed
+        assertThat(done, equalTo(false));
+        assertThat(handled, equalTo(Arrays.asList(0L, 1L, 2L, 2L)));
+        verify(consumer).seek(new TopicPartition("topic", 0), 2L);
+        verify(consumer).seek(new TopicPartition("topic", 1), 0L);
+        Map<TopicPartition, OffsetAndMetadata> commits = new HashMap<>();
+        commits.put(new TopicPartition("topic", 0), new OffsetAndMetadata(2L));
+        commits.put(new TopicPartition("topic", 1), new OffsetAndMetadata(0L));
+        verify(consumer).commitSync(commits);
+    }
+
+    @Test
+    public void testFailedRecordIsSkippedWhenRetriesAreOff() {
+        setField(executor, null, new FailedRecordRouter(), FailedRecordRouter.class);
+        List<Long> handled = new ArrayList<>();
+
+        boolean done = executor.execute(records("key1", "key2", "key3"), consumer, r -> {
+            handled.add(r.offset());
+            if (r.offset() == 1L) {
+                throw new IllegalStateException("failure");
+            }
+        });
+
+        // [0..2] fails at 1 -> [0] commits, [1,2] fails at 1 -> [1] is skipped, [2] commits
+        assertThat(done, equalTo(true));
+        assertThat(handled, equalTo(Arrays.asList(0L, 1L, 0L, 1L, 1L, 2L)));
+        verify(consumer, never()).seek(any(), anyLong());
+        verify(consumer, never()).commitSync(anyMap());
+    }
+
+    @Test
+    public void testGroupsAreBoundedBySize() {
+        setField(executor, "transactionSize", 2, int.class);
+
+        List<List<ConsumerRecord<String, String>>> groups = executor.groups(records("key1", "key2", "key3", "key4", "key5"));
+
+        assertThat(groups.size(), equalTo(3));
+        assertThat(groups.get(2).size(), equalTo(1));
+    }
+
+    @Test
+    public void testGroupsDoNotContainTheSameKeyTwice() {
+        List<List<ConsumerRecord<String, String>>> groups = executor.groups(records("key1", "key2", "key1", "key3", "key2"));
+
+        assertThat(groups.size(), equalTo(2));
+        assertThat(groups.get(0).size(), equalTo(2));
+        assertThat(groups.get(1).size(), equalTo(3));
+    }
+
+    private List<ConsumerRecord<String, String>> records(String... keys) {
+        List<ConsumerRecord<String, String>> records = new ArrayList<>();
+        for (int i = 0; i < keys.length; i++) {
+            records.add(new ConsumerRecord<>("topic", 0, i, keys[i], "{}"));
+        }
+        return records;
+    }
+}
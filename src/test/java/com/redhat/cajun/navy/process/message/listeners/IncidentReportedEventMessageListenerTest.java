@@ -4,18 +4,24 @@ import static org.hamcrest.CoreMatchers.equalTo;
 import static org.hamcrest.CoreMatchers.notNullValue;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.mockito.MockitoAnnotations.initMocks;
 import static org.springframework.test.util.ReflectionTestUtils.setField;
 
 import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
 import java.util.Map;
 
+import com.redhat.cajun.navy.process.message.MessageDecoder;
+import com.redhat.cajun.navy.process.message.ProcessedMessageStore;
 import com.redhat.cajun.navy.process.message.model.DestinationLocations;
+import com.redhat.cajun.navy.process.signal.ProcessInstanceIdCache;
 import com.redhat.cajun.navy.rules.model.Destination;
 import com.redhat.cajun.navy.rules.model.Destinations;
 import com.redhat.cajun.navy.rules.model.Incident;
+import org.apache.kafka.clients.consumer.Consumer;
 import org.hamcrest.CoreMatchers;
 import org.jbpm.process.instance.ProcessInstance;
 import org.jbpm.services.api.ProcessService;
@@ -48,6 +54,12 @@ public class IncidentReportedEventMessageListenerTest {
     @Mock
     private Acknowledgment ack;
 
+    @Mock
+    private Consumer<String, Object> consumer;
+
+    @Mock
+    private ProcessedMessageStore processedMessageStore;
+
     @Captor
     private ArgumentCaptor<String> processIdCaptor;
 
@@ -57,6 +69,8 @@ public class IncidentReportedEventMessageListenerTest {
     @Captor
     private ArgumentCaptor<Map<String, Object>> parametersCaptor;
 
+    private ProcessInstanceIdCache processInstanceIdCache;
+
     private String processId = "incident";
 
     @Before
@@ -65,6 +79,15 @@ public class IncidentReportedEventMessageListenerTest {
         messageListener = new IncidentReportedEventMessageListener();
         setField(messageListener, null, ptm, PlatformTransactionManager.class);
         setField(messageListener, null, processService, ProcessService.class);
+        setField(messageListener, null, new MessageDecoder(), MessageDecoder.class);
+        setField(messageListener, null, new ListenerConcurrencyController(), ListenerConcurrencyController.class);
+        setField(messageListener, null, new SaturationMonitor(), SaturationMonitor.class);
+        setField(messageListener, null, new OffsetTracker(), OffsetTracker.class);
+        setField(messageListener, null, processedMessageStore, ProcessedMessageStore.class);
+        processInstanceIdCache = new ProcessInstanceIdCache();
+        setField(processInstanceIdCache, null, ptm, PlatformTransactionManager.class);
+        setField(processInstanceIdCache, "size", 10, int.class);
+        setField(messageListener, null, processInstanceIdCache, ProcessInstanceIdCache.class);
         setField(messageListener, "processId", processId, String.class);
         setField(messageListener, "destinationLocations", destinationLocations(), DestinationLocations.class);
         setField(messageListener, "assignmentDelay", "PT30S", String.class);
@@ -87,13 +110,14 @@ public class IncidentReportedEventMessageListenerTest {
                 "\"timestamp\": 1521148332350" +
                 "}}";
 
-        messageListener.processMessage(json, "incident123", "topic1", 1, ack);
+        messageListener.processMessage(json, "incident123", "topic1", 1, 0L, ack, consumer);
 
 
         verify(processService).startProcess(any(), processIdCaptor.capture(), correlationKeyCaptor.capture(), parametersCaptor.capture());
         assertThat(processIdCaptor.getValue(), equalTo(processId));
         CorrelationKey correlationKey = correlationKeyCaptor.getValue();
         assertThat(correlationKey.getName(), equalTo("incident123"));
+        assertThat(processInstanceIdCache.get("incident123"), equalTo(100L));
         Map<String, Object> parameters = parametersCaptor.getValue();
         assertThat(parameters.size(), equalTo(3));
         assertThat(parameters.get("assignmentDelay"), equalTo("PT30S"));
@@ -117,6 +141,56 @@ public class IncidentReportedEventMessageListenerTest {
         assertThat(destination2.getName(), equalTo("loc2"));
         assertThat(destination2.getLatitude(), equalTo(new BigDecimal("30.12345")));
         assertThat(destination2.getLongitude(), equalTo(new BigDecimal("-60.98765")));
+        verify(processedMessageStore).markProcessed("messageId");
+
+        verify(ack).acknowledge();
+    }
+
+    @Test
+    public void testProcessIncidentReportedEventMessageWhenProcessedAlready() {
+        String json = "{\"messageType\":\"IncidentReportedEvent\"," +
+                "\"id\":\"messageId\"," +
+                "\"invokingService\":\"messageSender\"," +
+                "\"timestamp\":1521148332397," +
+                "\"body\": {\"id\":\"incident123\"," +
+                "\"lat\": \"34.14338\"," +
+                "\"lon\": \"-77.86569\"," +
+                "\"numberOfPeople\": 3," +
+                "\"medicalNeeded\": true," +
+                "\"timestamp\": 1521148332350" +
+                "}}";
+
+        when(processedMessageStore.isProcessed("messageId")).thenReturn(true);
+
+        messageListener.processMessage(json, "incident123", "topic1", 1, 0L, ack, consumer);
+
+        verify(processService, never()).startProcess(any(), any(), any(), any());
+        verify(processedMessageStore, never()).markProcessed(any());
+
+        verify(ack).acknowledge();
+    }
+
+    @Test
+    public void testProcessIncidentReportedEventMessageAsBytes() {
+        String json = "{\"messageType\":\"IncidentReportedEvent\"," +
+                "\"id\":\"messageId\"," +
+                "\"invokingService\":\"messageSender\"," +
+                "\"timestamp\":1521148332397," +
+                "\"body\": {\"id\":\"incident123\"," +
+                "\"lat\": \"34.14338\"," +
+                "\"lon\": \"-77.86569\"," +
+                "\"numberOfPeople\": 3," +
+                "\"medicalNeeded\": true," +
+                "\"timestamp\": 1521148332350" +
+                "}}";
+
+        messageListener.processMessage(json.getBytes(StandardCharsets.UTF_8), "incident123", "topic1", 1, 0L, ack, consumer);
+
+        verify(processService).startProcess(any(), processIdCaptor.capture(), correlationKeyCaptor.capture(), parametersCaptor.capture());
+        assertThat(correlationKeyCaptor.getValue().getName(), equalTo("incident123"));
+        Incident incident = (Incident) parametersCaptor.getValue().get("incident");
+        assertThat(incident.getId(), equalTo("incident123"));
+        assertThat(incident.getNumPeople(), equalTo(3));
 
         verify(ack).acknowledge();
     }
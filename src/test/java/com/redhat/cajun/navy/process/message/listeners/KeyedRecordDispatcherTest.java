@@ -0,0 +1,189 @@
+package com.redhat.cajun.navy.process.message.listeners;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.atLeast;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.mockito.MockitoAnnotations.initMocks;
+import static org.springframework.test.util.ReflectionTestUtils.setField;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import com.redhat.cajun.navy.process.message.KafkaRecordHeaders;
+import com.redhat.cajun.navy.process.message.model.IncidentReportedEvent;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.clients.consumer.OffsetCommitCallback;
+import org.apache.kafka.common.TopicPartition;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Captor;
+import org.mockito.Mock;
+
+public class KeyedRecordDispatcherTest {
+
+    @Mock
+    private Consumer<String, String> consumer;
+
+    @Mock
+    private FailedRecordRouter failedRecordRouter;
+
+    @Captor
+    private ArgumentCaptor<Map<TopicPartition, OffsetAndMetadata>> offsetsCaptor;
+
+    private KeyedRecordDispatcher dispatcher;
+
+    private TopicPartition topicPartition = new TopicPartition("topic", 0);
+
+    @Before
+    public void init() {
+        initMocks(this);
+        OffsetTracker offsetTracker = new OffsetTracker();
+        setField(offsetTracker, "commitRecords", 100L, long.class);
+        setField(offsetTracker, "commitInterval", 1000L, long.class);
+        dispatcher = new KeyedRecordDispatcher();
+        setField(dispatcher, null, offsetTracker, OffsetTracker.class);
+        setField(dispatcher, null, failedRecordRouter, FailedRecordRouter.class);
+        MessageTypeRecordFilterStrategy recordFilterStrategy = new MessageTypeRecordFilterStrategy();
+        recordFilterStrategy.register("topic", Collections.singletonMap("IncidentReportedEvent", IncidentReportedEvent.class));
+        setField(dispatcher, null, recordFilterStrategy, MessageTypeRecordFilterStrategy.class);
+        setField(dispatcher, "workers", 4, int.class);
+        setField(dispatcher, "queueCapacity", 10, int.class);
+        dispatcher.init();
+        when(consumer.assignment()).thenReturn(Collections.singleton(topicPartition));
+    }
+
+    @After
+    public void cleanup() throws InterruptedException {
+        dispatcher.shutdown();
+    }
+
+    @Test
+    public void testRecordsWithSameKeyAreProcessedInOrder() throws InterruptedException {
+        List<Long> handled = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch latch = new CountDownLatch(4);
+
+        dispatcher.dispatch(records("key1", "key1", "key1", "key1"), consumer, ConsumerRecord::key, r -> {
+            handled.add(r.offset());
+            latch.countDown();
+        });
+
+        assertThat(latch.await(5, TimeUnit.SECONDS), equalTo(true));
+        assertThat(handled, equalTo(Arrays.asList(0L, 1L, 2L, 3L)));
+    }
+
+    @Test
+    public void testOffsetsAreCommittedUpToLowestRecordInFlight() throws InterruptedException {
+        CountDownLatch blocked = new CountDownLatch(1);
+        CountDownLatch others = new CountDownLatch(3);
+
+        dispatcher.dispatch(records("key1", "key2", "key3", "key4"), consumer, ConsumerRecord::key, r -> {
+            if (r.offset() == 1L) {
+                await(blocked);
+            } else {
+                others.countDown();
+            }
+        });
+        assertThat(others.await(5, TimeUnit.SECONDS), equalTo(true));
+
+        dispatcher.commit(consumer);
+        verify(consumer, atLeastOnce()).commitAsync(offsetsCaptor.capture(), any(OffsetCommitCallback.class));
+        assertThat(offsetsCaptor.getValue().get(topicPartition).offset(), equalTo(1L));
+
+        blocked.countDown();
+        dispatcher.shutdown();
+        dispatcher.commit(consumer);
+        verify(consumer, atLeast(2)).commitAsync(offsetsCaptor.capture(), any(OffsetCommitCallback.class));
+        assertThat(offsetsCaptor.getValue().get(topicPartition).offset(), equalTo(4L));
+    }
+
+    @Test
+    public void testFailedRecordIsRouted() throws InterruptedException {
+        List<Long> handled = Collections.synchronizedList(new ArrayList<>());
+
+        dispatcher.dispatch(records("key1", "key1", "key1"), consumer, ConsumerRecord::key, r -> {
+            handled.add(r.offset());
+            if (r.offset() == 1L) {
+                throw new IllegalStateException("failure");
+            }
+        });
+        dispatcher.shutdown();
+        dispatcher.commit(consumer);
+
+        // the failed record is routed, or skipped when retries are off, and the records after it are processed
+        assertThat(handled, equalTo(Arrays.asList(0L, 1L, 2L)));
+        verify(failedRecordRouter).route(any(), any());
+        verify(consumer, never()).seek(any(TopicPartition.class), anyLong());
+        verify(consumer, atLeastOnce()).commitAsync(offsetsCaptor.capture(), any(OffsetCommitCallback.class));
+        assertThat(offsetsCaptor.getValue().get(topicPartition).offset(), equalTo(3L));
+    }
+
+    @Test
+    public void testUnroutedFailedRecordIsFetchedAgain() throws InterruptedException {
+        List<Long> handled = Collections.synchronizedList(new ArrayList<>());
+        doThrow(new IllegalStateException("broker not available")).when(failedRecordRouter).route(any(), any());
+
+        dispatcher.dispatch(records("key1", "key1", "key1"), consumer, ConsumerRecord::key, r -> {
+            handled.add(r.offset());
+            if (r.offset() == 1L) {
+                throw new IllegalStateException("failure");
+            }
+        });
+        dispatcher.shutdown();
+        dispatcher.commit(consumer);
+
+        // the record after the failed one is not processed, and the watermark is held back on the failed one
+        assertThat(handled, equalTo(Arrays.asList(0L, 1L)));
+        verify(consumer).seek(topicPartition, 1L);
+        verify(consumer, atLeastOnce()).commitAsync(offsetsCaptor.capture(), any(OffsetCommitCallback.class));
+        assertThat(offsetsCaptor.getValue().get(topicPartition).offset(), equalTo(1L));
+    }
+
+    @Test
+    public void testDiscardedRecordsAreCommitted() throws InterruptedException {
+        List<Long> handled = Collections.synchronizedList(new ArrayList<>());
+        List<ConsumerRecord<String, String>> records = records("key1", "key2", "key3");
+        records.get(1).headers().add(KafkaRecordHeaders.MESSAGE_TYPE, "IncidentAssignmentEvent".getBytes(StandardCharsets.UTF_8));
+        records.get(2).headers().add(KafkaRecordHeaders.MESSAGE_TYPE, "IncidentAssignmentEvent".getBytes(StandardCharsets.UTF_8));
+
+        dispatcher.dispatch(records, consumer, ConsumerRecord::key, r -> handled.add(r.offset()));
+        dispatcher.shutdown();
+        dispatcher.commit(consumer);
+
+        assertThat(handled, equalTo(Collections.singletonList(0L)));
+        verify(consumer, atLeastOnce()).commitAsync(offsetsCaptor.capture(), any(OffsetCommitCallback.class));
+        assertThat(offsetsCaptor.getValue().get(topicPartition).offset(), equalTo(3L));
+    }
+
+    private void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private List<ConsumerRecord<String, String>> records(String... keys) {
+        List<ConsumerRecord<String, String>> records = new ArrayList<>();
+        for (int i = 0; i < keys.length; i++) {
+            records.add(new ConsumerRecord<>("topic", 0, i, keys[i], "{}"));
+        }
+        return records;
+    }
+}
@@ -0,0 +1,125 @@
+package com.redhat.cajun.navy.process.message.listeners;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.when;
+import static org.mockito.MockitoAnnotations.initMocks;
+import static org.springframework.test.util.ReflectionTestUtils.setField;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.kafka.common.Metric;
+import org.apache.kafka.common.MetricName;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.springframework.core.env.Environment;
+import org.springframework.kafka.config.KafkaListenerEndpointRegistry;
+import org.springframework.kafka.listener.ConcurrentMessageListenerContainer;
+import org.springframework.mock.env.MockEnvironment;
+
+public class ListenerConcurrencyControllerTest {
+
+    @Mock
+    private KafkaListenerEndpointRegistry registry;
+
+    @Mock
+    private ConcurrentMessageListenerContainer<String, Object> container;
+
+    @Mock
+    private Metric lagMetric;
+
+    private ListenerConcurrencyController controller;
+
+    private final List<Integer> restarts = new ArrayList<>();
+
+    @Before
+    public void init() {
+        initMocks(this);
+        MockEnvironment environment = new MockEnvironment()
+                .withProperty("kafka.concurrency.mission-event", "2")
+                .withProperty("kafka.concurrency.mission-event.min", "1")
+                .withProperty("kafka.concurrency.mission-event.max", "3");
+        controller = new ListenerConcurrencyController() {
+            @Override
+            void restart(ConcurrentMessageListenerContainer<?, ?> container, int concurrency) {
+                restarts.add(concurrency);
+            }
+        };
+        setField(controller, null, registry, KafkaListenerEndpointRegistry.class);
+        setField(controller, null, environment, Environment.class);
+        setField(controller, null, new CatchUpController(), CatchUpController.class);
+        setField(controller, "listenerMode", "batch", String.class);
+        setField(controller, "listenerIds", "mission-event", String.class);
+        setField(controller, "lagHigh", 1000L, long.class);
+        setField(controller, "lagLow", 10L, long.class);
+        setField(controller, "latencyHigh", 200L, long.class);
+        controller.init();
+        when(registry.getListenerContainer("mission-event-batch")).thenReturn(container);
+        when(container.isRunning()).thenReturn(true);
+        when(container.getConcurrency()).thenReturn(2);
+        Map<MetricName, Metric> consumerMetrics = new HashMap<>();
+        consumerMetrics.put(new MetricName("records-lag-max", "consumer-fetch-manager-metrics", "", Collections.singletonMap("client-id", "consumer-1")), lagMetric);
+        doReturn(Collections.singletonMap("consumer-1", consumerMetrics)).when(container).metrics();
+    }
+
+    @Test
+    public void testScaleUpOnLag() {
+        when(lagMetric.metricValue()).thenReturn(5000.0);
+
+        controller.adjust();
+
+        assertThat(restarts, equalTo(Collections.singletonList(3)));
+        assertThat(controller.concurrency("mission-event"), equalTo(3));
+        assertThat(controller.lag("mission-event"), equalTo(5000L));
+        assertThat(controller.scaleUpCount("mission-event"), equalTo(1L));
+    }
+
+    @Test
+    public void testScaleUpOnLatency() {
+        when(lagMetric.metricValue()).thenReturn(100.0);
+        controller.recordLatency("mission-event", 500_000_000L);
+
+        controller.adjust();
+
+        assertThat(restarts, equalTo(Collections.singletonList(3)));
+    }
+
+    @Test
+    public void testScaleDownWhenCaughtUp() {
+        when(lagMetric.metricValue()).thenReturn(0.0);
+
+        controller.adjust();
+
+        assertThat(restarts, equalTo(Collections.singletonList(1)));
+        assertThat(controller.scaleDownCount("mission-event"), equalTo(1L));
+    }
+
+    @Test
+    public void testNoChangeWithinCooldown() {
+        setField(controller, "cooldown", 60000L, long.class);
+        when(lagMetric.metricValue()).thenReturn(5000.0);
+        controller.adjust();
+        when(container.getConcurrency()).thenReturn(3);
+        when(lagMetric.metricValue()).thenReturn(0.0);
+
+        controller.adjust();
+
+        assertThat(restarts, equalTo(Collections.singletonList(3)));
+    }
+
+    @Test
+    public void testNoChangeAtMaximum() {
+        when(container.getConcurrency()).thenReturn(3);
+        when(lagMetric.metricValue()).thenReturn(5000.0);
+
+        controller.adjust();
+
+        assertThat(restarts.isEmpty(), equalTo(true));
+    }
+}
@@ -0,0 +1,53 @@
+package com.redhat.cajun.navy.process.message.listeners;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+
+import com.redhat.cajun.navy.process.message.KafkaRecordHeaders;
+import com.redhat.cajun.navy.process.message.model.IncidentReportedEvent;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.junit.Before;
+import org.junit.Test;
+
+public class MessageTypeRecordFilterStrategyTest {
+
+    private MessageTypeRecordFilterStrategy filterStrategy;
+
+    @Before
+    public void init() {
+        filterStrategy = new MessageTypeRecordFilterStrategy();
+        filterStrategy.register("topic-incident-event", Collections.singletonMap("IncidentReportedEvent", IncidentReportedEvent.class));
+    }
+
+    @Test
+    public void testRecordWithAcceptedMessageTypeIsNotDiscarded() {
+        assertThat(filterStrategy.filter(record("topic-incident-event", "IncidentReportedEvent")), equalTo(false));
+        assertThat(filterStrategy.filter(record("topic-incident-event", "incidentReportedEvent")), equalTo(false));
+    }
+
+    @Test
+    public void testRecordWithOtherMessageTypeIsDiscarded() {
+        assertThat(filterStrategy.filter(record("topic-incident-event", "IncidentAssignmentEvent")), equalTo(true));
+    }
+
+    @Test
+    public void testRecordWithoutMessageTypeHeaderIsNotDiscarded() {
+        assertThat(filterStrategy.filter(record("topic-incident-event", null)), equalTo(false));
+    }
+
+    @Test
+    public void testRecordFromUnregisteredTopicIsNotDiscarded() {
+        assertThat(filterStrategy.filter(record("topic-other", "IncidentAssignmentEvent")), equalTo(false));
+    }
+
+    private ConsumerRecord<String, Object> record(String topic, String messageType) {
+        ConsumerRecord<String, Object> record = new ConsumerRecord<>(topic, 0, 0, "incident123", "{}");
+        if (messageType != null) {
+            record.headers().add(KafkaRecordHeaders.MESSAGE_TYPE, messageType.getBytes(StandardCharsets.UTF_8));
+        }
+        return record;
+    }
+}
@@ -1,29 +1,32 @@
 package com.redhat.cajun.navy.process.message.listeners;
 
-import static org.hamcrest.CoreMatchers.equalTo;
-import static org.hamcrest.MatcherAssert.assertThat;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyZeroInteractions;
 import static org.mockito.Mockito.when;
 import static org.mockito.MockitoAnnotations.initMocks;
 import static org.springframework.test.util.ReflectionTestUtils.setField;
 
 import java.util.Collections;
 
-import org.jbpm.process.instance.ProcessInstance;
+import com.redhat.cajun.navy.process.message.MessageDecoder;
+import com.redhat.cajun.navy.process.message.ProcessedMessageStore;
+import com.redhat.cajun.navy.process.message.listeners.SignalsByCorrelationKeyHelper.ProcessInstanceSignals;
+import com.redhat.cajun.navy.process.signal.PendingSignalBuffer;
+import com.redhat.cajun.navy.process.signal.ProcessInstanceIdCache;
+import com.redhat.cajun.navy.process.signal.ProcessSignaller;
+import com.redhat.cajun.navy.process.signal.WaitingSignalIndex;
+import org.apache.kafka.clients.consumer.Consumer;
 import org.jbpm.services.api.ProcessService;
-import org.jbpm.services.api.query.QueryResultMapper;
-import org.jbpm.services.api.query.QueryService;
-import org.jbpm.services.api.query.model.QueryParam;
 import org.junit.Before;
 import org.junit.Test;
-import org.kie.api.runtime.query.QueryContext;
-import org.kie.internal.process.CorrelationKey;
-import org.mockito.ArgumentCaptor;
-import org.mockito.Captor;
 import org.mockito.Mock;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.ResultSetExtractor;
 import org.springframework.kafka.support.Acknowledgment;
 import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.transaction.TransactionStatus;
@@ -40,16 +43,16 @@ public class MissionEventTopicListenerTest {
     private ProcessService processService;
 
     @Mock
-    private ProcessInstance processInstance;
+    private JdbcTemplate jdbcTemplate;
 
     @Mock
-    private QueryService queryService;
+    private Acknowledgment ack;
 
     @Mock
-    private Acknowledgment ack;
+    private Consumer<String, Object> consumer;
 
-    @Captor
-    private ArgumentCaptor<CorrelationKey> correlationCaptor;
+    @Mock
+    private ProcessedMessageStore processedMessageStore;
 
     private MissionEventTopicListener messageListener;
 
@@ -57,11 +60,28 @@ public class MissionEventTopicListenerTest {
     public void init() {
         initMocks(this);
         messageListener = new MissionEventTopicListener();
-        setField(messageListener, null, ptm, PlatformTransactionManager.class);
-        setField(messageListener, null, processService, ProcessService.class);
-        setField(messageListener, null, queryService, QueryService.class);
+        PendingSignalBuffer pendingSignalBuffer = new PendingSignalBuffer();
+        setField(pendingSignalBuffer, "expiry", 30000L, long.class);
+        ProcessSignaller processSignaller = new ProcessSignaller();
+        setField(processSignaller, null, ptm, PlatformTransactionManager.class);
+        setField(processSignaller, null, processService, ProcessService.class);
+        WaitingSignalIndex waitingSignalIndex = new WaitingSignalIndex();
+        setField(waitingSignalIndex, null, jdbcTemplate, JdbcTemplate.class);
+        setField(waitingSignalIndex, null, ptm, PlatformTransactionManager.class);
+        ProcessInstanceIdCache processInstanceIdCache = new ProcessInstanceIdCache();
+        setField(processInstanceIdCache, null, ptm, PlatformTransactionManager.class);
+        setField(processInstanceIdCache, "size", 10, int.class);
+        setField(waitingSignalIndex, null, processInstanceIdCache, ProcessInstanceIdCache.class);
+        setField(processSignaller, null, waitingSignalIndex, WaitingSignalIndex.class);
+        setField(processSignaller, null, pendingSignalBuffer, PendingSignalBuffer.class);
+        setField(processSignaller, null, processedMessageStore, ProcessedMessageStore.class);
+        setField(messageListener, null, processSignaller, ProcessSignaller.class);
+        setField(messageListener, null, new MessageDecoder(), MessageDecoder.class);
+        setField(messageListener, null, new ListenerConcurrencyController(), ListenerConcurrencyController.class);
+        setField(messageListener, null, new SaturationMonitor(), SaturationMonitor.class);
+        setField(messageListener, null, new OffsetTracker(), OffsetTracker.class);
+        setField(messageListener, null, processedMessageStore, ProcessedMessageStore.class);
         when(ptm.getTransaction(any())).thenReturn(transactionStatus);
-        when(processInstance.getId()).thenReturn(100L);
     }
 
     @Test
@@ -84,15 +104,12 @@ public class MissionEventTopicListenerTest {
                 "\"destinationLong\" : \"-79.98765\"" +
                 "}" + "}";
 
-        when(processService.getProcessInstance(any(CorrelationKey.class))).thenReturn(processInstance);
-        when(queryService.query(anyString(), any(QueryResultMapper.class), any(QueryContext.class), any(QueryParam.class)))
-                .thenReturn(Collections.singletonList("MissionStarted"));
+        when(jdbcTemplate.query(anyString(), any(ResultSetExtractor.class), eq("incident123")))
+                .thenReturn(new ProcessInstanceSignals(100L, Collections.singletonList("MissionStarted")));
 
-        messageListener.processMessage(json, "topic", 1, ack);
+        messageListener.processMessage(json, "topic", 1, 0L, ack, consumer);
 
-        verify(processService).getProcessInstance(correlationCaptor.capture());
-        CorrelationKey correlationKey = correlationCaptor.getValue();
-        assertThat(correlationKey.getName(), equalTo("incident123"));
+        verify(jdbcTemplate).query(anyString(), any(ResultSetExtractor.class), eq("incident123"));
         verify(processService).signalProcessInstance(100L, "MissionStarted", null);
 
         verify(ack).acknowledge();
@@ -118,15 +135,12 @@ public class MissionEventTopicListenerTest {
                 "\"destinationLong\" : \"-79.98765\"" +
                 "}" + "}";
 
-        when(processService.getProcessInstance(any(CorrelationKey.class))).thenReturn(null);
-        when(queryService.query(anyString(), any(QueryResultMapper.class), any(QueryContext.class), any(QueryParam.class)))
-                .thenReturn(Collections.singletonList("MissionStarted"));
+        when(jdbcTemplate.query(anyString(), any(ResultSetExtractor.class), eq("incident123"))).thenReturn(null);
 
-        messageListener.processMessage(json, "topic", 1, ack);
+        messageListener.processMessage(json, "topic", 1, 0L, ack, consumer);
 
-        verify(processService).getProcessInstance(correlationCaptor.capture());
-        CorrelationKey correlationKey = correlationCaptor.getValue();
-        assertThat(correlationKey.getName(), equalTo("incident123"));
+        // checked once, and once more after the signal is parked
+        verify(jdbcTemplate, times(2)).query(anyString(), any(ResultSetExtractor.class), eq("incident123"));
         verify(processService, never()).signalProcessInstance(any(), any(), any());
 
         verify(ack).acknowledge();
@@ -150,9 +164,9 @@ public class MissionEventTopicListenerTest {
                 "\"destinationLong\" : \"-79.98765\"" +
                 "}" + "}";
 
-        messageListener.processMessage(json, "topic", 1, ack);
+        messageListener.processMessage(json, "topic", 1, 0L, ack, consumer);
 
-        verify(processService, never()).getProcessInstance(any(CorrelationKey.class));
+        verifyZeroInteractions(jdbcTemplate);
         verify(processService, never()).signalProcessInstance(any(), any(), any());
 
         verify(ack).acknowledge();
@@ -172,15 +186,12 @@ public class MissionEventTopicListenerTest {
                 "\"responderId\" : \"responder123\"" +
                 "}" + "}";
 
-        when(processService.getProcessInstance(any(CorrelationKey.class))).thenReturn(processInstance);
-        when(queryService.query(anyString(), any(QueryResultMapper.class), any(QueryContext.class), any(QueryParam.class)))
-                .thenReturn(Collections.singletonList("VictimPickedUp"));
+        when(jdbcTemplate.query(anyString(), any(ResultSetExtractor.class), eq("incident123")))
+                .thenReturn(new ProcessInstanceSignals(100L, Collections.singletonList("VictimPickedUp")));
 
-        messageListener.processMessage(json, "topic", 1, ack);
+        messageListener.processMessage(json, "topic", 1, 0L, ack, consumer);
 
-        verify(processService).getProcessInstance(correlationCaptor.capture());
-        CorrelationKey correlationKey = correlationCaptor.getValue();
-        assertThat(correlationKey.getName(), equalTo("incident123"));
+        verify(jdbcTemplate).query(anyString(), any(ResultSetExtractor.class), eq("incident123"));
         verify(processService).signalProcessInstance(100L, "VictimPickedUp", null);
 
         verify(ack).acknowledge();
@@ -206,15 +217,12 @@ public class MissionEventTopicListenerTest {
                 "\"destinationLong\" : \"-79.98765\"" +
                 "}" + "}";
 
-        when(processService.getProcessInstance(any(CorrelationKey.class))).thenReturn(null);
-        when(queryService.query(anyString(), any(QueryResultMapper.class), any(QueryContext.class), any(QueryParam.class)))
-                .thenReturn(Collections.singletonList("VictimPickedUp"));
+        when(jdbcTemplate.query(anyString(), any(ResultSetExtractor.class), eq("incident123"))).thenReturn(null);
 
-        messageListener.processMessage(json, "topic", 1, ack);
+        messageListener.processMessage(json, "topic", 1, 0L, ack, consumer);
 
-        verify(processService).getProcessInstance(correlationCaptor.capture());
-        CorrelationKey correlationKey = correlationCaptor.getValue();
-        assertThat(correlationKey.getName(), equalTo("incident123"));
+        // checked once, and once more after the signal is parked
+        verify(jdbcTemplate, times(2)).query(anyString(), any(ResultSetExtractor.class), eq("incident123"));
         verify(processService, never()).signalProcessInstance(any(), any(), any());
 
         verify(ack).acknowledge();
@@ -238,9 +246,9 @@ public class MissionEventTopicListenerTest {
                 "\"destinationLong\" : \"-79.98765\"" +
                 "}" + "}";
 
-        messageListener.processMessage(json, "topic", 1, ack);
+        messageListener.processMessage(json, "topic", 1, 0L, ack, consumer);
 
-        verify(processService, never()).getProcessInstance(any(CorrelationKey.class));
+        verifyZeroInteractions(jdbcTemplate);
         verify(processService, never()).signalProcessInstance(any(), any(), any());
 
         verify(ack).acknowledge();
@@ -266,15 +274,12 @@ public class MissionEventTopicListenerTest {
                 "\"destinationLong\" : \"-79.98765\"" +
                 "}" + "}";
 
-        when(processService.getProcessInstance(any(CorrelationKey.class))).thenReturn(processInstance);
-        when(queryService.query(anyString(), any(QueryResultMapper.class), any(QueryContext.class), any(QueryParam.class)))
-                .thenReturn(Collections.singletonList("VictimDelivered"));
+        when(jdbcTemplate.query(anyString(), any(ResultSetExtractor.class), eq("incident123")))
+                .thenReturn(new ProcessInstanceSignals(100L, Collections.singletonList("VictimDelivered")));
 
-        messageListener.processMessage(json, "topic", 1, ack);
+        messageListener.processMessage(json, "topic", 1, 0L, ack, consumer);
 
-        verify(processService).getProcessInstance(correlationCaptor.capture());
-        CorrelationKey correlationKey = correlationCaptor.getValue();
-        assertThat(correlationKey.getName(), equalTo("incident123"));
+        verify(jdbcTemplate).query(anyString(), any(ResultSetExtractor.class), eq("incident123"));
         verify(processService).signalProcessInstance(100L, "VictimDelivered", null);
 
         verify(ack).acknowledge();
@@ -300,15 +305,12 @@ public class MissionEventTopicListenerTest {
                 "\"destinationLong\" : \"-79.98765\"" +
                 "}" + "}";
 
-        when(processService.getProcessInstance(any(CorrelationKey.class))).thenReturn(null);
-        when(queryService.query(anyString(), any(QueryResultMapper.class), any(QueryContext.class), any(QueryParam.class)))
-                .thenReturn(Collections.singletonList("VictimPickedUp"));
+        when(jdbcTemplate.query(anyString(), any(ResultSetExtractor.class), eq("incident123"))).thenReturn(null);
 
-        messageListener.processMessage(json, "topic", 1, ack);
+        messageListener.processMessage(json, "topic", 1, 0L, ack, consumer);
 
-        verify(processService).getProcessInstance(correlationCaptor.capture());
-        CorrelationKey correlationKey = correlationCaptor.getValue();
-        assertThat(correlationKey.getName(), equalTo("incident123"));
+        // checked once, and once more after the signal is parked
+        verify(jdbcTemplate, times(2)).query(anyString(), any(ResultSetExtractor.class), eq("incident123"));
         verify(processService, never()).signalProcessInstance(any(), any(), any());
 
         verify(ack).acknowledge();
@@ -332,9 +334,9 @@ public class MissionEventTopicListenerTest {
                 "\"destinationLong\" : \"-79.98765\"" +
                 "}" + "}";
 
-        messageListener.processMessage(json, "topic", 1, ack);
+        messageListener.processMessage(json, "topic", 1, 0L, ack, consumer);
 
-        verify(processService, never()).getProcessInstance(any(CorrelationKey.class));
+        verifyZeroInteractions(jdbcTemplate);
         verify(processService, never()).signalProcessInstance(any(), any(), any());
 
         verify(ack).acknowledge();
@@ -358,9 +360,9 @@ public class MissionEventTopicListenerTest {
                 "\"destinationLong\" : \"-79.98765\"" +
                 "}" + "}";
 
-        messageListener.processMessage(json, "topic", 1, ack);
+        messageListener.processMessage(json, "topic", 1, 0L, ack, consumer);
 
-        verify(processService, never()).getProcessInstance(any(CorrelationKey.class));
+        verifyZeroInteractions(jdbcTemplate);
         verify(processService, never()).signalProcessInstance(any(), any(), any());
 
         verify(ack).acknowledge();
@@ -373,9 +375,9 @@ public class MissionEventTopicListenerTest {
                 "\"field2\":\"value2\"" +
                 "}";
 
-        messageListener.processMessage(json, "topic", 1, ack);
+        messageListener.processMessage(json, "topic", 1, 0L, ack, consumer);
 
-        verify(processService, never()).getProcessInstance(any(CorrelationKey.class));
+        verifyZeroInteractions(jdbcTemplate);
         verify(processService, never()).signalProcessInstance(any(), any(), any());
 
         verify(ack).acknowledge();
@@ -0,0 +1,161 @@
+package com.redhat.cajun.navy.process.message.listeners;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.mockito.MockitoAnnotations.initMocks;
+import static org.springframework.test.util.ReflectionTestUtils.setField;
+
+import java.util.Collections;
+import java.util.Map;
+
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.clients.consumer.OffsetCommitCallback;
+import org.apache.kafka.common.TopicPartition;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Captor;
+import org.mockito.Mock;
+import org.springframework.kafka.support.Acknowledgment;
+
+public class OffsetTrackerTest {
+
+    @Mock
+    private Consumer<String, String> consumer;
+
+    @Mock
+    private Acknowledgment ack;
+
+    @Captor
+    private ArgumentCaptor<Map<TopicPartition, OffsetAndMetadata>> offsetsCaptor;
+
+    @Captor
+    private ArgumentCaptor<OffsetCommitCallback> callbackCaptor;
+
+    private OffsetTracker tracker;
+
+    private TopicPartition topicPartition = new TopicPartition("topic", 0);
+
+    @Before
+    public void init() {
+        initMocks(this);
+        tracker = new OffsetTracker();
+        setField(tracker, "asyncCommit", true, boolean.class);
+        setField(tracker, "commitRecords", 3L, long.class);
+        setField(tracker, "commitInterval", 60000L, long.class);
+        when(consumer.assignment()).thenReturn(Collections.singleton(topicPartition));
+    }
+
+    @Test
+    public void testAcknowledgeThroughContainerWhenAsyncCommitIsOff() {
+        setField(tracker, "asyncCommit", false, boolean.class);
+
+        tracker.acknowledge("topic", 0, 0L, ack, consumer);
+
+        verify(ack).acknowledge();
+        verify(consumer, never()).commitAsync(any(), any());
+    }
+
+    @Test
+    public void testCommitEveryNRecords() {
+        tracker.acknowledge("topic", 0, 0L, ack, consumer);
+        tracker.acknowledge("topic", 0, 1L, ack, consumer);
+        tracker.acknowledge("topic", 0, 2L, ack, consumer);
+        tracker.acknowledge("topic", 0, 3L, ack, consumer);
+
+        // the first record commits right away, the next ones once three of them completed
+        verify(consumer, times(2)).commitAsync(offsetsCaptor.capture(), any(OffsetCommitCallback.class));
+        assertThat(offsetsCaptor.getAllValues().get(0).get(topicPartition).offset(), equalTo(1L));
+        assertThat(offsetsCaptor.getAllValues().get(1).get(topicPartition).offset(), equalTo(4L));
+        verify(ack, never()).acknowledge();
+    }
+
+    @Test
+    public void testCommitUpToLowestRecordInFlight() {
+        OffsetTracker.InFlightRecord first = tracker.dispatched(record(0L));
+        OffsetTracker.InFlightRecord second = tracker.dispatched(record(1L));
+        OffsetTracker.InFlightRecord third = tracker.dispatched(record(2L));
+        first.completed();
+        third.completed();
+
+        tracker.commitAsync(consumer);
+        second.completed();
+        tracker.commitAsync(consumer);
+
+        verify(consumer, times(2)).commitAsync(offsetsCaptor.capture(), any(OffsetCommitCallback.class));
+        assertThat(offsetsCaptor.getAllValues().get(0).get(topicPartition).offset(), equalTo(1L));
+        assertThat(offsetsCaptor.getAllValues().get(1).get(topicPartition).offset(), equalTo(3L));
+    }
+
+    @Test
+    public void testCommitSynchronouslyOnRevocation() {
+        OffsetTracker.InFlightRecord first = tracker.dispatched(record(0L));
+        tracker.dispatched(record(1L));
+        first.completed();
+
+        tracker.onPartitionsRevokedBeforeCommit(consumer, Collections.singleton(topicPartition));
+
+        verify(consumer).commitSync(Collections.singletonMap(topicPartition, new OffsetAndMetadata(1L)));
+        // the partition is not tracked anymore
+        tracker.commitAsync(consumer);
+        verify(consumer, never()).commitAsync(any(), any());
+    }
+
+    @Test
+    public void testRecordsCompletedAfterRevocationAreIgnored() {
+        OffsetTracker.InFlightRecord stale = tracker.dispatched(record(0L));
+        tracker.onPartitionsRevokedBeforeCommit(consumer, Collections.singleton(topicPartition));
+        tracker.dispatched(record(0L));
+
+        stale.completed();
+        tracker.commitAsync(consumer);
+
+        // the redelivered record is still in flight
+        verify(consumer).commitAsync(offsetsCaptor.capture(), any(OffsetCommitCallback.class));
+        assertThat(offsetsCaptor.getValue().get(topicPartition).offset(), equalTo(0L));
+    }
+
+    @Test
+    public void testRewindOnFailedRecordOnceRecordsAheadAreDone() {
+        OffsetTracker.InFlightRecord first = tracker.dispatched(record(0L));
+        OffsetTracker.InFlightRecord second = tracker.dispatched(record(1L));
+        OffsetTracker.InFlightRecord third = tracker.dispatched(record(2L));
+        second.failed();
+
+        assertThat(third.isHeldBack(), equalTo(true));
+        tracker.commitAsync(consumer);
+        verify(consumer, never()).seek(any(), any(Long.class));
+
+        first.completed();
+        tracker.commitAsync(consumer);
+        verify(consumer).seek(topicPartition, 1L);
+        verify(consumer, times(2)).commitAsync(offsetsCaptor.capture(), any(OffsetCommitCallback.class));
+        assertThat(offsetsCaptor.getValue().get(topicPartition).offset(), equalTo(1L));
+
+        // the redelivered records are tracked again
+        assertThat(tracker.dispatched(record(1L)).isHeldBack(), equalTo(false));
+    }
+
+    @Test
+    public void testCommitAgainAfterFailedCommit() {
+        tracker.acknowledge("topic", 0, 0L, ack, consumer);
+        verify(consumer).commitAsync(any(), callbackCaptor.capture());
+
+        callbackCaptor.getValue().onComplete(Collections.singletonMap(topicPartition, new OffsetAndMetadata(1L)), new RuntimeException("failure"));
+        tracker.commitAsync(consumer);
+
+        verify(consumer, times(2)).commitAsync(offsetsCaptor.capture(), any(OffsetCommitCallback.class));
+        assertThat(offsetsCaptor.getValue().get(topicPartition).offset(), equalTo(1L));
+    }
+
+    private ConsumerRecord<String, String> record(long offset) {
+        return new ConsumerRecord<>("topic", 0, offset, "key" + offset, "{}");
+    }
+}
@@ -0,0 +1,183 @@
+package com.redhat.cajun.navy.process.message.listeners;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.reset;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.mockito.MockitoAnnotations.initMocks;
+import static org.springframework.test.util.ReflectionTestUtils.setField;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Predicate;
+
+import com.redhat.cajun.navy.process.signal.ProcessInstanceIdCache;
+import com.redhat.cajun.navy.process.signal.ProcessSignaller;
+import com.redhat.cajun.navy.process.signal.WaitingSignalIndex;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.common.Node;
+import org.apache.kafka.common.PartitionInfo;
+import org.apache.kafka.common.TopicPartition;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Captor;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.springframework.kafka.event.ConsumerStoppingEvent;
+
+public class PartitionStateHandoffTest {
+
+    private static final int PARTITIONS = 4;
+
+    @Mock
+    private WaitingSignalIndex waitingSignalIndex;
+
+    @Mock
+    private ProcessInstanceIdCache processInstanceIdCache;
+
+    @Mock
+    private ProcessSignaller processSignaller;
+
+    @Mock
+    private Consumer<String, Object> consumer;
+
+    @Mock
+    private Consumer<String, Object> otherConsumer;
+
+    @Captor
+    private ArgumentCaptor<Predicate<String>> incidentsCaptor;
+
+    private PartitionStateHandoff handoff;
+
+    @Before
+    public void init() {
+        initMocks(this);
+        List<PartitionInfo> partitionInfos = Arrays.asList(partitionInfo(0), partitionInfo(1), partitionInfo(2), partitionInfo(3));
+        when(consumer.partitionsFor(any())).thenReturn(partitionInfos);
+        when(otherConsumer.partitionsFor(any())).thenReturn(partitionInfos);
+        handoff = new PartitionStateHandoff();
+        setField(handoff, null, waitingSignalIndex, WaitingSignalIndex.class);
+        setField(handoff, null, processInstanceIdCache, ProcessInstanceIdCache.class);
+        setField(handoff, null, processSignaller, ProcessSignaller.class);
+        setField(handoff, null, new SignalRekeyer(), SignalRekeyer.class);
+        setField(handoff, "stateTopics", "topic-incident-event, topic-mission-event", String.class);
+        handoff.init();
+    }
+
+    @Test
+    public void testLoadStateOfAssignedPartitions() {
+        rebalance(consumer, Collections.emptyList(), partitions("topic-mission-event", 0, 1));
+
+        InOrder inOrder = inOrder(waitingSignalIndex);
+        // entries left from an earlier ownership are dropped before the partitions are loaded
+        inOrder.verify(waitingSignalIndex).evict(incidentsCaptor.capture());
+        inOrder.verify(waitingSignalIndex).load(incidentsCaptor.capture());
+        for (Predicate<String> incidents : incidentsCaptor.getAllValues()) {
+            assertThat(incidents.test(incident(0)), equalTo(true));
+            assertThat(incidents.test(incident(1)), equalTo(true));
+            assertThat(incidents.test(incident(2)), equalTo(false));
+        }
+    }
+
+    @Test
+    public void testNoStateLoadedAtStartupWithTopicsKeyedByIncident() {
+        verify(waitingSignalIndex, never()).load(any());
+    }
+
+    @Test
+    public void testAllStateLoadedAtStartupWithoutTopicsKeyedByIncident() {
+        setField(handoff, "stateTopics", "", String.class);
+        handoff.init();
+
+        verify(waitingSignalIndex).load(incidentsCaptor.capture());
+        assertThat(incidentsCaptor.getValue().test(incident(2)), equalTo(true));
+    }
+
+    @Test
+    public void testKeepStateOfPartitionsAssignedAgain() {
+        rebalance(consumer, Collections.emptyList(), partitions("topic-mission-event", 0, 1));
+        reset(waitingSignalIndex);
+
+        rebalance(consumer, partitions("topic-mission-event", 0, 1), partitions("topic-mission-event", 0, 1));
+
+        verify(waitingSignalIndex, never()).evict(any());
+        verify(waitingSignalIndex, never()).load(any());
+        verify(processSignaller, never()).deliverPending(any());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testReleaseStateOfLostPartitions() {
+        rebalance(consumer, Collections.emptyList(), partitions("topic-mission-event", 0, 1));
+        reset(waitingSignalIndex);
+
+        rebalance(consumer, partitions("topic-mission-event", 0, 1), partitions("topic-mission-event", 0));
+
+        verify(processSignaller).deliverPending(any());
+        verify(processInstanceIdCache).evict(any(Predicate.class));
+        verify(waitingSignalIndex).evict(incidentsCaptor.capture());
+        assertThat(incidentsCaptor.getValue().test(incident(1)), equalTo(true));
+        assertThat(incidentsCaptor.getValue().test(incident(0)), equalTo(false));
+    }
+
+    @Test
+    public void testKeepStateOfPartitionStillOwnedThroughAnotherTopic() {
+        rebalance(consumer, Collections.emptyList(), partitions("topic-mission-event", 1));
+        rebalance(otherConsumer, Collections.emptyList(), partitions("topic-incident-event", 1));
+        reset(waitingSignalIndex);
+
+        rebalance(consumer, partitions("topic-mission-event", 1), Collections.emptyList());
+
+        verify(waitingSignalIndex, never()).evict(any());
+    }
+
+    @Test
+    public void testReleaseStateOfStoppedConsumer() {
+        rebalance(consumer, Collections.emptyList(), partitions("topic-mission-event", 2));
+        reset(waitingSignalIndex);
+
+        handoff.onStopping(new ConsumerStoppingEvent(this, consumer, partitions("topic-mission-event", 2)));
+
+        verify(waitingSignalIndex).evict(incidentsCaptor.capture());
+        assertThat(incidentsCaptor.getValue().test(incident(2)), equalTo(true));
+    }
+
+    @Test
+    public void testIgnoreTopicsNotKeyedByIncident() {
+        rebalance(consumer, Collections.emptyList(), partitions("topic-responder-event", 0));
+
+        verify(waitingSignalIndex, never()).load(any());
+    }
+
+    private void rebalance(Consumer<?, ?> consumer, Collection<TopicPartition> revoked, Collection<TopicPartition> assigned) {
+        handoff.onPartitionsRevokedAfterCommit(consumer, revoked);
+        handoff.onPartitionsAssigned(consumer, assigned);
+    }
+
+    private static List<TopicPartition> partitions(String topic, int... partitions) {
+        TopicPartition[] topicPartitions = new TopicPartition[partitions.length];
+        for (int i = 0; i < partitions.length; i++) {
+            topicPartitions[i] = new TopicPartition(topic, partitions[i]);
+        }
+        return Arrays.asList(topicPartitions);
+    }
+
+    private static String incident(int partition) {
+        for (int i = 0; ; i++) {
+            if (PartitionStateHandoff.partition("incident" + i, PARTITIONS) == partition) {
+                return "incident" + i;
+            }
+        }
+    }
+
+    private static PartitionInfo partitionInfo(int partition) {
+        return new PartitionInfo("topic", partition, Node.noNode(), new Node[0], new Node[0]);
+    }
+}
@@ -4,27 +4,35 @@ import static org.hamcrest.CoreMatchers.equalTo;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
-import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyZeroInteractions;
 import static org.mockito.Mockito.when;
 import static org.mockito.MockitoAnnotations.initMocks;
 import static org.springframework.test.util.ReflectionTestUtils.setField;
 
+import java.util.Arrays;
 import java.util.Collections;
-
-import org.jbpm.process.instance.ProcessInstance;
+import java.util.List;
+
+import com.redhat.cajun.navy.process.message.MessageDecoder;
+import com.redhat.cajun.navy.process.message.ProcessedMessageStore;
+import com.redhat.cajun.navy.process.message.listeners.SignalsByCorrelationKeyHelper.ProcessInstanceSignals;
+import com.redhat.cajun.navy.process.signal.PendingSignalBuffer;
+import com.redhat.cajun.navy.process.signal.ProcessInstanceIdCache;
+import com.redhat.cajun.navy.process.signal.ProcessSignaller;
+import com.redhat.cajun.navy.process.signal.WaitingSignalIndex;
+import com.redhat.cajun.navy.process.wih.ResponderFactBase;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
 import org.jbpm.services.api.ProcessService;
-import org.jbpm.services.api.query.QueryResultMapper;
-import org.jbpm.services.api.query.QueryService;
-import org.jbpm.services.api.query.model.QueryParam;
 import org.junit.Before;
 import org.junit.Test;
-import org.kie.api.runtime.query.QueryContext;
-import org.kie.internal.process.CorrelationKey;
-import org.mockito.ArgumentCaptor;
-import org.mockito.Captor;
 import org.mockito.Mock;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.ResultSetExtractor;
 import org.springframework.kafka.support.Acknowledgment;
 import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.transaction.TransactionStatus;
@@ -41,16 +49,16 @@ public class ResponderUpdatedEventMessageListenerTest {
     private ProcessService processService;
 
     @Mock
-    private ProcessInstance processInstance;
+    private Acknowledgment ack;
 
     @Mock
-    private Acknowledgment ack;
+    private Consumer<String, Object> consumer;
 
     @Mock
-    private QueryService queryService;
+    private ProcessedMessageStore processedMessageStore;
 
-    @Captor
-    private ArgumentCaptor<CorrelationKey> correlationKeyCaptor;
+    @Mock
+    private JdbcTemplate jdbcTemplate;
 
     private ResponderUpdatedEventMessageListener messageListener;
 
@@ -58,11 +66,31 @@ public class ResponderUpdatedEventMessageListenerTest {
     public void init() {
         initMocks(this);
         messageListener = new ResponderUpdatedEventMessageListener();
-        setField(messageListener, null, ptm, PlatformTransactionManager.class);
-        setField(messageListener, null, processService, ProcessService.class);
-        setField(messageListener, null, queryService, QueryService.class);
+        PendingSignalBuffer pendingSignalBuffer = new PendingSignalBuffer();
+        setField(pendingSignalBuffer, "expiry", 30000L, long.class);
+        ProcessSignaller processSignaller = new ProcessSignaller();
+        setField(processSignaller, null, ptm, PlatformTransactionManager.class);
+        setField(processSignaller, null, processService, ProcessService.class);
+        WaitingSignalIndex waitingSignalIndex = new WaitingSignalIndex();
+        setField(waitingSignalIndex, null, jdbcTemplate, JdbcTemplate.class);
+        setField(waitingSignalIndex, null, ptm, PlatformTransactionManager.class);
+        ProcessInstanceIdCache processInstanceIdCache = new ProcessInstanceIdCache();
+        setField(processInstanceIdCache, null, ptm, PlatformTransactionManager.class);
+        setField(processInstanceIdCache, "size", 10, int.class);
+        setField(waitingSignalIndex, null, processInstanceIdCache, ProcessInstanceIdCache.class);
+        setField(processSignaller, null, waitingSignalIndex, WaitingSignalIndex.class);
+        setField(processSignaller, null, pendingSignalBuffer, PendingSignalBuffer.class);
+        setField(processSignaller, null, processedMessageStore, ProcessedMessageStore.class);
+        setField(messageListener, null, processSignaller, ProcessSignaller.class);
+        setField(messageListener, null, new MessageDecoder(), MessageDecoder.class);
+        setField(messageListener, null, new ListenerConcurrencyController(), ListenerConcurrencyController.class);
+        setField(messageListener, null, new SaturationMonitor(), SaturationMonitor.class);
+        setField(messageListener, null, new OffsetTracker(), OffsetTracker.class);
+        setField(messageListener, null, new SignalRekeyer(), SignalRekeyer.class);
+        setField(messageListener, null, new CatchUpController(), CatchUpController.class);
+        setField(messageListener, null, new ResponderFactBase(), ResponderFactBase.class);
+        setField(messageListener, null, processedMessageStore, ProcessedMessageStore.class);
         when(ptm.getTransaction(any())).thenReturn(transactionStatus);
-        when(processInstance.getId()).thenReturn(100L);
     }
 
     @Test
@@ -86,16 +114,13 @@ public class ResponderUpdatedEventMessageListenerTest {
                 "\"available\" : false" +
                 "}" + "}" + "}";
 
-        when(processService.getProcessInstance(any(CorrelationKey.class))).thenReturn(processInstance);
-        when(queryService.query(anyString(), any(QueryResultMapper.class), any(QueryContext.class), any(QueryParam.class)))
-                .thenReturn(Collections.singletonList("ResponderAvailable"));
+        when(jdbcTemplate.query(anyString(), any(ResultSetExtractor.class), eq("incident123")))
+                .thenReturn(new ProcessInstanceSignals(100L, Collections.singletonList("ResponderAvailable")));
 
-        messageListener.processMessage(json, "responderId", "test-topic", 1, ack);
+        messageListener.processMessage(new ConsumerRecord<>("test-topic", 1, 0L, "responderId", json), ack, consumer);
 
         verify(processService).signalProcessInstance(100L, "ResponderAvailable", true);
-        verify(processService).getProcessInstance(correlationKeyCaptor.capture());
-        CorrelationKey correlationKey = correlationKeyCaptor.getValue();
-        assertThat(correlationKey.getName(), equalTo("incident123"));
+        verify(jdbcTemplate).query(anyString(), any(ResultSetExtractor.class), eq("incident123"));
         verify(ack).acknowledge();
     }
 
@@ -121,16 +146,13 @@ public class ResponderUpdatedEventMessageListenerTest {
                 "\"person\" : false" +
                 "}" + "}" + "}";
 
-        when(processService.getProcessInstance(any(CorrelationKey.class))).thenReturn(processInstance);
-        when(queryService.query(anyString(), any(QueryResultMapper.class), any(QueryContext.class), any(QueryParam.class)))
-                .thenReturn(Collections.singletonList("ResponderAvailable"));
+        when(jdbcTemplate.query(anyString(), any(ResultSetExtractor.class), eq("incident123")))
+                .thenReturn(new ProcessInstanceSignals(100L, Collections.singletonList("ResponderAvailable")));
 
-        messageListener.processMessage(json, "responderId", "test-topic", 1, ack);
+        messageListener.processMessage(new ConsumerRecord<>("test-topic", 1, 0L, "responderId", json), ack, consumer);
 
         verify(processService).signalProcessInstance(100L, "ResponderAvailable", true);
-        verify(processService).getProcessInstance(correlationKeyCaptor.capture());
-        CorrelationKey correlationKey = correlationKeyCaptor.getValue();
-        assertThat(correlationKey.getName(), equalTo("incident123"));
+        verify(jdbcTemplate).query(anyString(), any(ResultSetExtractor.class), eq("incident123"));
         verify(ack).acknowledge();
     }
 
@@ -155,16 +177,13 @@ public class ResponderUpdatedEventMessageListenerTest {
                 "\"available\" : false" +
                 "}" + "}" + "}";
 
-        when(processService.getProcessInstance(any(CorrelationKey.class))).thenReturn(processInstance);
-        when(queryService.query(anyString(), any(QueryResultMapper.class), any(QueryContext.class), any(QueryParam.class)))
-                .thenReturn(Collections.singletonList("ResponderAvailable"));
+        when(jdbcTemplate.query(anyString(), any(ResultSetExtractor.class), eq("incident123")))
+                .thenReturn(new ProcessInstanceSignals(100L, Collections.singletonList("ResponderAvailable")));
 
-        messageListener.processMessage(json, "responderId", "test-topic", 1, ack);
+        messageListener.processMessage(new ConsumerRecord<>("test-topic", 1, 0L, "responderId", json), ack, consumer);
 
         verify(processService).signalProcessInstance(100L, "ResponderAvailable", false);
-        verify(processService).getProcessInstance(correlationKeyCaptor.capture());
-        CorrelationKey correlationKey = correlationKeyCaptor.getValue();
-        assertThat(correlationKey.getName(), equalTo("incident123"));
+        verify(jdbcTemplate).query(anyString(), any(ResultSetExtractor.class), eq("incident123"));
 
         verify(ack).acknowledge();
     }
@@ -189,10 +208,10 @@ public class ResponderUpdatedEventMessageListenerTest {
                 "\"available\" : false" +
                 "}" + "}" + "}";
 
-        messageListener.processMessage(json, "responderId", "test-topic", 1, ack);
+        messageListener.processMessage(new ConsumerRecord<>("test-topic", 1, 0L, "responderId", json), ack, consumer);
 
         verify(processService, never()).signalProcessInstance(any(), any(), any());
-        verify(processService, never()).getProcessInstance(any(CorrelationKey.class));
+        verifyZeroInteractions(jdbcTemplate);
 
         verify(ack).acknowledge();
     }
@@ -218,15 +237,15 @@ public class ResponderUpdatedEventMessageListenerTest {
                 "\"available\" : false" +
                 "}" + "}" + "}";
 
-        when(processService.getProcessInstance(any(CorrelationKey.class))).thenReturn(null);
-        when(queryService.query(anyString(), any(QueryResultMapper.class), any(QueryContext.class), any(QueryParam.class)))
-                .thenReturn(Collections.emptyList());
+        when(jdbcTemplate.query(anyString(), any(ResultSetExtractor.class), eq("incident123")))
+                .thenReturn(new ProcessInstanceSignals(100L, Collections.emptyList()));
 
-        messageListener.processMessage(json, "responderId", "test-topic", 1, ack);
+        messageListener.processMessage(new ConsumerRecord<>("test-topic", 1, 0L, "responderId", json), ack, consumer);
 
         verify(processService, never()).signalProcessInstance(any(), any(), any());
-        verify(queryService, times(5))
-                .query(anyString(), any(QueryResultMapper.class), any(QueryContext.class), any(QueryParam.class));
+        // checked once, and once more by process instance id after the signal is parked
+        verify(jdbcTemplate).query(anyString(), any(ResultSetExtractor.class), eq("incident123"));
+        verify(jdbcTemplate).queryForList(anyString(), eq(String.class), eq(100L));
 
         verify(ack).acknowledge();
     }
@@ -251,10 +270,10 @@ public class ResponderUpdatedEventMessageListenerTest {
                 "\"available\" : false" +
                 "}" + "}" + "}";
 
-        messageListener.processMessage(json, "responderId", "test-topic", 1, ack);
+        messageListener.processMessage(new ConsumerRecord<>("test-topic", 1, 0L, "responderId", json), ack, consumer);
 
         verify(processService, never()).signalProcessInstance(any(), any(), any());
-        verify(processService, never()).getProcessInstance(any(CorrelationKey.class));
+        verifyZeroInteractions(jdbcTemplate);
 
         verify(ack).acknowledge();
     }
@@ -265,10 +284,10 @@ public class ResponderUpdatedEventMessageListenerTest {
                 "\"field2\":\"calue2\"" +
                 "}";
 
-        messageListener.processMessage(json, "responderId", "test-topic", 1, ack);
+        messageListener.processMessage(new ConsumerRecord<>("test-topic", 1, 0L, "responderId", json), ack, consumer);
 
         verify(processService, never()).signalProcessInstance(any(), any(), any());
-        verify(processService, never()).getProcessInstance(any(CorrelationKey.class));
+        verifyZeroInteractions(jdbcTemplate);
 
         verify(ack).acknowledge();
     }
@@ -276,4 +295,35 @@ public class ResponderUpdatedEventMessageListenerTest {
 
 
 
+
+    @Test
+    public void testCoalesceSupersededUpdatesWhileCatchingUp() {
+        CatchUpController catchUpController = mock(CatchUpController.class);
+        when(catchUpController.isCatchingUp("responder-updated-event")).thenReturn(true);
+        setField(messageListener, null, catchUpController, CatchUpController.class);
+        setField(messageListener, "destination", "test-topic", String.class);
+        ConsumerRecord<String, Object> first = responderRecord(0L, "responder1", "incident1");
+        ConsumerRecord<String, Object> other = responderRecord(1L, "responder2", "incident1");
+        ConsumerRecord<String, Object> last = responderRecord(2L, "responder1", "incident1");
+
+        List<ConsumerRecord<String, Object>> records = messageListener.coalesce(Arrays.asList(first, other, last));
+
+        assertThat(records, equalTo(Arrays.asList(other, last)));
+        verify(catchUpController).recordCoalesced("responder-updated-event", 1);
+    }
+
+    @Test
+    public void testNoCoalescingInSteadyMode() {
+        List<ConsumerRecord<String, Object>> records = Arrays.asList(responderRecord(0L, "responder1", "incident1"),
+                responderRecord(1L, "responder1", "incident1"));
+
+        assertThat(messageListener.coalesce(records), equalTo(records));
+    }
+
+    private ConsumerRecord<String, Object> responderRecord(long offset, String responderId, String incidentId) {
+        String json = "{\"messageType\" : \"ResponderUpdatedEvent\",\"id\":\"message" + offset + "\"," +
+                "\"header\" : {\"incidentId\" : \"" + incidentId + "\"}," +
+                "\"body\" : {\"status\" : \"success\"}}";
+        return new ConsumerRecord<>("test-topic", 0, offset, responderId, json);
+    }
 }
@@ -0,0 +1,127 @@
+package com.redhat.cajun.navy.process.message.listeners;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.mockito.MockitoAnnotations.initMocks;
+import static org.springframework.test.util.ReflectionTestUtils.setField;
+
+import java.util.Collections;
+import javax.sql.DataSource;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.kafka.config.KafkaListenerEndpointRegistry;
+import org.springframework.kafka.listener.MessageListenerContainer;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionStatus;
+
+public class SaturationMonitorTest {
+
+    @Mock
+    private KafkaListenerEndpointRegistry registry;
+
+    @Mock
+    private MessageListenerContainer container;
+
+    @Mock
+    private DataSource dataSource;
+
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+
+    @Mock
+    private PlatformTransactionManager ptm;
+
+    @Mock
+    private TransactionStatus transactionStatus;
+
+    private SaturationMonitor monitor;
+
+    @Before
+    public void init() {
+        initMocks(this);
+        when(ptm.getTransaction(any())).thenReturn(transactionStatus);
+        when(registry.getListenerContainers()).thenReturn(Collections.singletonList(container));
+        when(container.getListenerId()).thenReturn("incident-reported-event");
+        when(container.isRunning()).thenReturn(true);
+        monitor = new SaturationMonitor();
+        setField(monitor, null, registry, KafkaListenerEndpointRegistry.class);
+        setField(monitor, null, dataSource, DataSource.class);
+        setField(monitor, null, jdbcTemplate, JdbcTemplate.class);
+        setField(monitor, null, ptm, PlatformTransactionManager.class);
+        setField(monitor, "poolUtilizationHigh", 0.9, double.class);
+        setField(monitor, "poolUtilizationLow", 0.6, double.class);
+        setField(monitor, "poolWaitHigh", 500L, long.class);
+        setField(monitor, "poolWaitLow", 50L, long.class);
+        setField(monitor, "executorQueueHigh", 1000L, long.class);
+        setField(monitor, "executorQueueLow", 200L, long.class);
+        setField(monitor, "inFlightHigh", 2, int.class);
+        setField(monitor, "inFlightLow", 1, int.class);
+        monitor.init();
+    }
+
+    @Test
+    public void testPauseAndResumeWithHysteresis() {
+        when(jdbcTemplate.queryForObject(anyString(), eq(Long.class), any())).thenReturn(2000L);
+        monitor.check();
+        assertThat(monitor.isSaturated(), equalTo(true));
+        verify(container).pause();
+        when(container.isPauseRequested()).thenReturn(true);
+
+        // under the high watermark, but not under the low watermark
+        when(jdbcTemplate.queryForObject(anyString(), eq(Long.class), any())).thenReturn(500L);
+        monitor.check();
+        assertThat(monitor.isSaturated(), equalTo(true));
+        verify(container, never()).resume();
+
+        when(jdbcTemplate.queryForObject(anyString(), eq(Long.class), any())).thenReturn(100L);
+        monitor.check();
+        assertThat(monitor.isSaturated(), equalTo(false));
+        verify(container).resume();
+        assertThat(monitor.pauseCount(), equalTo(1L));
+    }
+
+    @Test
+    public void testPauseOnHandlersInFlight() {
+        when(jdbcTemplate.queryForObject(anyString(), eq(Long.class), any())).thenReturn(0L);
+        monitor.handlerStarted();
+        monitor.handlerStarted();
+
+        monitor.check();
+
+        verify(container).pause();
+        monitor.handlerFinished();
+        monitor.handlerFinished();
+        monitor.check();
+        verify(container).resume();
+    }
+
+    @Test
+    public void testDoNotResumeContainersPausedElsewhere() {
+        when(jdbcTemplate.queryForObject(anyString(), eq(Long.class), any())).thenReturn(0L);
+        when(container.isPauseRequested()).thenReturn(true);
+
+        monitor.check();
+
+        verify(container, never()).pause();
+        verify(container, never()).resume();
+    }
+
+    @Test
+    public void testPauseRestartedContainerAgain() {
+        when(jdbcTemplate.queryForObject(anyString(), eq(Long.class), any())).thenReturn(2000L);
+        monitor.check();
+        monitor.check();
+
+        verify(container, times(2)).pause();
+    }
+}
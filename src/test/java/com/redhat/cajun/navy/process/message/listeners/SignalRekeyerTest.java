@@ -0,0 +1,117 @@
+package com.redhat.cajun.navy.process.message.listeners;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.mockito.MockitoAnnotations.initMocks;
+import static org.springframework.test.util.ReflectionTestUtils.setField;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import com.redhat.cajun.navy.process.message.KafkaRecordHeaders;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.header.internals.RecordHeaders;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Captor;
+import org.mockito.Mock;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.support.SendResult;
+import org.springframework.util.concurrent.SettableListenableFuture;
+
+public class SignalRekeyerTest {
+
+    @Mock
+    private KafkaTemplate<String, byte[]> kafkaTemplate;
+
+    @Captor
+    private ArgumentCaptor<ProducerRecord<String, byte[]>> recordCaptor;
+
+    private SettableListenableFuture<SendResult<String, byte[]>> future;
+
+    private SignalRekeyer rekeyer;
+
+    @Before
+    @SuppressWarnings("unchecked")
+    public void init() {
+        initMocks(this);
+        future = new SettableListenableFuture<>();
+        when(kafkaTemplate.send(any(ProducerRecord.class))).thenReturn(future);
+        rekeyer = new SignalRekeyer();
+        setField(rekeyer, null, kafkaTemplate, KafkaTemplate.class);
+        setField(rekeyer, "enabled", true, boolean.class);
+    }
+
+    @Test
+    public void testRekeyByIncident() {
+        future.set(null);
+
+        boolean rekeyed = rekeyer.rekey("topic-responder-event", "{}", null, () -> "incident1");
+
+        assertThat(rekeyed, equalTo(true));
+        verify(kafkaTemplate).send(recordCaptor.capture());
+        ProducerRecord<String, byte[]> record = recordCaptor.getValue();
+        assertThat(record.topic(), equalTo("topic-responder-event-by-incident"));
+        assertThat(record.key(), equalTo("incident1"));
+        assertThat(new String(record.value(), StandardCharsets.UTF_8), equalTo("{}"));
+        assertThat(KafkaRecordHeaders.value(record.headers(), KafkaRecordHeaders.INCIDENT_ID), equalTo("incident1"));
+        assertThat(rekeyer.rekeyedCount(), equalTo(1L));
+    }
+
+    @Test
+    public void testRekeyKeepsHeaders() {
+        future.set(null);
+        RecordHeaders headers = new RecordHeaders();
+        headers.add("messageType", "ResponderUpdatedEvent".getBytes(StandardCharsets.UTF_8));
+        headers.add("contentType", "application/x-jackson-smile".getBytes(StandardCharsets.UTF_8));
+        headers.add(KafkaRecordHeaders.INCIDENT_ID, "incident0".getBytes(StandardCharsets.UTF_8));
+
+        rekeyer.rekey("topic-responder-event", "{}", headers, () -> "incident1");
+
+        verify(kafkaTemplate).send(recordCaptor.capture());
+        ProducerRecord<String, byte[]> record = recordCaptor.getValue();
+        assertThat(KafkaRecordHeaders.value(record.headers(), "messageType"), equalTo("ResponderUpdatedEvent"));
+        assertThat(KafkaRecordHeaders.value(record.headers(), "contentType"), equalTo("application/x-jackson-smile"));
+        assertThat(KafkaRecordHeaders.value(record.headers(), KafkaRecordHeaders.INCIDENT_ID), equalTo("incident1"));
+        assertThat(record.headers().toArray().length, equalTo(3));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testHandleInPlaceWithoutIncident() {
+        boolean rekeyed = rekeyer.rekey("topic-responder-event", "{}", null, () -> null);
+
+        assertThat(rekeyed, equalTo(false));
+        verify(kafkaTemplate, never()).send(any(ProducerRecord.class));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testHandleInPlaceWhenDisabled() {
+        setField(rekeyer, "enabled", false, boolean.class);
+
+        boolean rekeyed = rekeyer.rekey("topic-responder-event", "{}", null, () -> "incident1");
+
+        assertThat(rekeyed, equalTo(false));
+        verify(kafkaTemplate, never()).send(any(ProducerRecord.class));
+        assertThat(Arrays.asList(rekeyer.topics("topic-responder-event")), equalTo(Arrays.asList("topic-responder-event")));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testRekeyFailsWhenRecordCannotBeSent() {
+        future.setException(new RuntimeException("broker not available"));
+
+        rekeyer.rekey("topic-responder-event", "{}", null, () -> "incident1");
+    }
+
+    @Test
+    public void testTopics() {
+        assertThat(Arrays.asList(rekeyer.topics("topic-responder-event")),
+                equalTo(Arrays.asList("topic-responder-event", "topic-responder-event-by-incident")));
+    }
+}
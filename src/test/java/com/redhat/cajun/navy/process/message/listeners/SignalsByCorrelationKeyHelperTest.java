@@ -0,0 +1,67 @@
+package com.redhat.cajun.navy.process.message.listeners;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.empty;
+
+import com.redhat.cajun.navy.process.message.listeners.SignalsByCorrelationKeyHelper.ProcessInstanceSignals;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.jdbc.datasource.init.DatabasePopulatorUtils;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+
+public class SignalsByCorrelationKeyHelperTest {
+
+    private JdbcTemplate jdbcTemplate;
+
+    @Before
+    public void init() {
+        DriverManagerDataSource dataSource = new DriverManagerDataSource("jdbc:h2:mem:signals;DB_CLOSE_DELAY=-1", "sa", "");
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.execute("CREATE TABLE correlationkeyinfo (keyid BIGINT PRIMARY KEY, name VARCHAR(255), processinstanceid BIGINT)");
+        jdbcTemplate.execute("CREATE TABLE eventtypes (instanceid BIGINT, element VARCHAR(255))");
+        ResourceDatabasePopulator populator = new ResourceDatabasePopulator(new ClassPathResource("db/signals-by-correlation-key-indexes.sql"));
+        DatabasePopulatorUtils.execute(populator, dataSource);
+        // the scripts can be applied more than once
+        DatabasePopulatorUtils.execute(populator, dataSource);
+        jdbcTemplate.update("INSERT INTO correlationkeyinfo VALUES (1, 'incident123', 100)");
+        jdbcTemplate.update("INSERT INTO correlationkeyinfo VALUES (2, 'incident456', 200)");
+        jdbcTemplate.update("INSERT INTO eventtypes VALUES (100, 'ResponderAvailable')");
+        jdbcTemplate.update("INSERT INTO eventtypes VALUES (100, 'MissionStarted')");
+        jdbcTemplate.update("INSERT INTO eventtypes VALUES (300, 'VictimPickedUp')");
+    }
+
+    @After
+    public void cleanup() {
+        jdbcTemplate.execute("DROP ALL OBJECTS");
+    }
+
+    @Test
+    public void testWaitingSignals() {
+        ProcessInstanceSignals processInstanceSignals = SignalsByCorrelationKeyHelper.waitingSignals(jdbcTemplate, "incident123");
+
+        assertThat(processInstanceSignals.getProcessInstanceId(), equalTo(100L));
+        assertThat(processInstanceSignals.getSignals(), containsInAnyOrder("ResponderAvailable", "MissionStarted"));
+        assertThat(processInstanceSignals.isWaitingFor("ResponderAvailable"), equalTo(true));
+        assertThat(processInstanceSignals.isWaitingFor("VictimPickedUp"), equalTo(false));
+    }
+
+    @Test
+    public void testWaitingSignalsWhenNotWaiting() {
+        ProcessInstanceSignals processInstanceSignals = SignalsByCorrelationKeyHelper.waitingSignals(jdbcTemplate, "incident456");
+
+        assertThat(processInstanceSignals.getProcessInstanceId(), equalTo(200L));
+        assertThat(processInstanceSignals.getSignals(), empty());
+    }
+
+    @Test
+    public void testWaitingSignalsWhenNotFound() {
+        assertThat(SignalsByCorrelationKeyHelper.waitingSignals(jdbcTemplate, "incident789"), nullValue());
+    }
+}
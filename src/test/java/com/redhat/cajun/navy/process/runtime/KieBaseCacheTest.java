@@ -0,0 +1,119 @@
+package com.redhat.cajun.navy.process.runtime;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.stream.Stream;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.kie.api.KieBase;
+import org.kie.api.KieServices;
+import org.kie.api.builder.KieFileSystem;
+import org.kie.api.builder.ReleaseId;
+import org.kie.api.runtime.KieContainer;
+import org.kie.api.runtime.KieSession;
+import org.kie.api.runtime.process.ProcessInstance;
+import org.springframework.test.util.ReflectionTestUtils;
+
+public class KieBaseCacheTest {
+
+    private static final String PROCESS_ID = "signal-process";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private KieBaseCache cache;
+
+    @Before
+    public void init() {
+        cache = new KieBaseCache();
+        ReflectionTestUtils.setField(cache, "enabled", true);
+        ReflectionTestUtils.setField(cache, "dir", folder.getRoot().getAbsolutePath());
+    }
+
+    @Test
+    public void testKieBaseIsBuiltThenReadFromTheCache() throws Exception {
+        KieBase built = cache.container(container("1.0", "")).getKieBase();
+
+        assertThat(cache.isLoaded(), equalTo(false));
+        assertThat(cacheFiles(), equalTo(1L));
+
+        KieContainer kieContainer = cache.container(container("1.0", ""));
+        KieBase loaded = kieContainer.getKieBase();
+
+        assertThat(cache.isLoaded(), equalTo(true));
+        assertThat(loaded, not(sameInstance(built)));
+        assertThat(loaded.getProcess(PROCESS_ID), notNullValue());
+        assertThat(kieContainer.getKieBase(), sameInstance(loaded));
+
+        KieSession ksession = loaded.newKieSession();
+        try {
+            ProcessInstance processInstance = ksession.startProcess(PROCESS_ID);
+            ksession.signalEvent("go", null, processInstance.getId());
+            assertThat(processInstance.getState(), equalTo(ProcessInstance.STATE_COMPLETED));
+        } finally {
+            ksession.dispose();
+        }
+    }
+
+    @Test
+    public void testKieBaseIsBuiltWhenTheContentsChange() throws Exception {
+        cache.container(container("1.0", "")).getKieBase();
+        cache.container(container("1.1", "<!-- changed -->")).getKieBase();
+
+        assertThat(cache.isLoaded(), equalTo(false));
+        assertThat(cacheFiles(), equalTo(1L));
+    }
+
+    @Test
+    public void testKieBaseIsBuiltWhenTheCacheFileIsCorrupt() throws Exception {
+        cache.container(container("1.0", "")).getKieBase();
+        try (Stream<Path> files = Files.list(folder.getRoot().toPath())) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                Files.write(file, new byte[] { 1, 2, 3 });
+            }
+        }
+
+        KieBase kieBase = cache.container(container("1.0", "")).getKieBase();
+
+        assertThat(cache.isLoaded(), equalTo(false));
+        assertThat(kieBase.getProcess(PROCESS_ID), notNullValue());
+    }
+
+    @Test
+    public void testContainerIsUnchangedWhenDisabled() {
+        ReflectionTestUtils.setField(cache, "enabled", false);
+        KieContainer kieContainer = container("1.0", "");
+
+        assertThat(cache.container(kieContainer), sameInstance(kieContainer));
+    }
+
+    private KieContainer container(String version, String suffix) {
+        KieServices ks = KieServices.Factory.get();
+        ReleaseId releaseId = ks.newReleaseId("com.redhat.cajun.navy", "kbase-cache-test", version);
+        KieFileSystem kfs = ks.newKieFileSystem().generateAndWritePomXML(releaseId);
+        try {
+            byte[] process = Files.readAllBytes(new File(getClass().getResource("/signal-process.bpmn2").toURI()).toPath());
+            kfs.write("src/main/resources/signal-process.bpmn2", new String(process, "UTF-8") + suffix);
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+        ks.newKieBuilder(kfs).buildAll();
+        return ks.newKieContainer(releaseId);
+    }
+
+    private long cacheFiles() throws Exception {
+        try (Stream<Path> files = Files.list(folder.getRoot().toPath())) {
+            return files.filter(f -> f.toString().endsWith(".kbase")).count();
+        }
+    }
+}
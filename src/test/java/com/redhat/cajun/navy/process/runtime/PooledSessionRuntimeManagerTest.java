@@ -0,0 +1,153 @@
+package com.redhat.cajun.navy.process.runtime;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.instanceOf;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.withSettings;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.jbpm.runtime.manager.impl.SimpleRegisterableItemsFactory;
+import org.jbpm.runtime.manager.impl.factory.InMemorySessionFactory;
+import org.jbpm.runtime.manager.impl.tx.NoOpTransactionManager;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.kie.api.io.ResourceType;
+import org.kie.api.runtime.EnvironmentName;
+import org.kie.api.runtime.KieSession;
+import org.kie.api.runtime.manager.RuntimeEngine;
+import org.kie.api.runtime.manager.RuntimeEnvironment;
+import org.kie.api.runtime.manager.RuntimeEnvironmentBuilder;
+import org.kie.api.runtime.process.ProcessInstance;
+import org.kie.internal.io.ResourceFactory;
+import org.kie.internal.runtime.manager.TaskServiceFactory;
+import org.kie.internal.runtime.manager.context.EmptyContext;
+import org.kie.internal.task.api.EventService;
+import org.kie.internal.task.api.InternalTaskService;
+
+public class PooledSessionRuntimeManagerTest {
+
+    private static final String PROCESS_ID = "signal-process";
+
+    private PooledSessionRuntimeManager manager;
+
+    @Before
+    public void init() {
+        manager = manager(2);
+    }
+
+    @After
+    public void close() {
+        if (!manager.isClosed()) {
+            manager.close();
+        }
+    }
+
+    @Test
+    public void testSessionsAreCreatedUpFront() {
+        assertThat(manager.idleCount(), equalTo(2));
+    }
+
+    @Test
+    public void testSessionsAreReused() {
+        Set<Long> sessionIds = new HashSet<>();
+        for (int i = 0; i < 10; i++) {
+            RuntimeEngine engine = manager.getRuntimeEngine(EmptyContext.get());
+            KieSession ksession = engine.getKieSession();
+            ProcessInstance processInstance = ksession.startProcess(PROCESS_ID);
+            ksession.signalEvent("go", null, processInstance.getId());
+            assertThat(processInstance.getState(), equalTo(ProcessInstance.STATE_COMPLETED));
+            sessionIds.add(ksession.getIdentifier());
+            manager.disposeRuntimeEngine(engine);
+        }
+
+        assertThat(sessionIds.size() <= 2, equalTo(true));
+        assertThat(manager.idleCount(), equalTo(2));
+    }
+
+    @Test
+    public void testSameEngineUntilDisposed() {
+        RuntimeEngine engine = manager.getRuntimeEngine(EmptyContext.get());
+        engine.getKieSession();
+
+        assertThat(manager.getRuntimeEngine(EmptyContext.get()), sameInstance(engine));
+        assertThat(manager.idleCount(), equalTo(1));
+
+        manager.disposeRuntimeEngine(engine);
+        manager.disposeRuntimeEngine(engine);
+
+        assertThat(manager.idleCount(), equalTo(2));
+        assertThat(manager.getRuntimeEngine(EmptyContext.get()) == engine, equalTo(false));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testDisposedEngineCannotBeUsed() {
+        RuntimeEngine engine = manager.getRuntimeEngine(EmptyContext.get());
+        engine.getKieSession();
+        manager.disposeRuntimeEngine(engine);
+
+        engine.getKieSession();
+    }
+
+    @Test
+    public void testBorrowTimesOutWhenAllSessionsAreInUse() throws Exception {
+        manager.close();
+        manager = manager(1);
+        RuntimeEngine engine = manager.getRuntimeEngine(EmptyContext.get());
+        engine.getKieSession();
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<Throwable> result = executor.submit(() -> {
+                try {
+                    manager.getRuntimeEngine(EmptyContext.get()).getKieSession();
+                    return null;
+                } catch (RuntimeException e) {
+                    return e;
+                }
+            });
+            assertThat(result.get(), instanceOf(IllegalStateException.class));
+        } finally {
+            executor.shutdownNow();
+            manager.disposeRuntimeEngine(engine);
+        }
+    }
+
+    @Test
+    public void testCloseDestroysIdleSessions() {
+        manager.close();
+
+        assertThat(manager.idleCount(), equalTo(0));
+    }
+
+    static RuntimeEnvironment environment() {
+        return RuntimeEnvironmentBuilder.Factory.get().newDefaultInMemoryBuilder()
+                .addAsset(ResourceFactory.newClassPathResource("signal-process.bpmn2"), ResourceType.BPMN2)
+                .addEnvironmentEntry(EnvironmentName.TRANSACTION_MANAGER, new NoOpTransactionManager())
+                .registerableItemsFactory(new SimpleRegisterableItemsFactory())
+                .get();
+    }
+
+    static TaskServiceFactory taskServiceFactory() {
+        TaskServiceFactory taskServiceFactory = mock(TaskServiceFactory.class);
+        when(taskServiceFactory.newTaskService()).thenReturn(mock(InternalTaskService.class, withSettings().extraInterfaces(EventService.class)));
+        return taskServiceFactory;
+    }
+
+    private PooledSessionRuntimeManager manager(int poolSize) {
+        RuntimeEnvironment environment = environment();
+        String identifier = "pooled-" + System.nanoTime();
+        PooledSessionRuntimeManager pooled = new PooledSessionRuntimeManager(environment,
+                new InMemorySessionFactory(environment, identifier), taskServiceFactory(), identifier, poolSize, 50);
+        pooled.init();
+        return pooled;
+    }
+}
@@ -0,0 +1,94 @@
+package com.redhat.cajun.navy.process.runtime;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Function;
+
+import org.jbpm.runtime.manager.impl.PerProcessInstanceRuntimeManager;
+import org.jbpm.runtime.manager.impl.factory.InMemorySessionFactory;
+import org.junit.Test;
+import org.kie.api.runtime.KieSession;
+import org.kie.api.runtime.manager.Context;
+import org.kie.api.runtime.manager.RuntimeEngine;
+import org.kie.api.runtime.manager.RuntimeEnvironment;
+import org.kie.api.runtime.manager.RuntimeManager;
+import org.kie.api.runtime.manager.RuntimeManagerFactory;
+import org.kie.internal.runtime.manager.context.EmptyContext;
+import org.kie.internal.runtime.manager.context.ProcessInstanceIdContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Compares the start and signal throughput of the runtime strategies.
+ *
+ * Each request gets a runtime engine, starts a process instance, or starts and signals a process instance, and disposes
+ * the runtime engine. The sessions are in memory: the cost of the persistent sessions of the per request strategy,
+ * which are inserted and deleted for each request, is left out.
+ *
+ * Not run with the tests, run with {@code mvn test -Dtest=RuntimeStrategyBenchmark}, with the number of requests set
+ * with {@code -Dbenchmark.requests} and the size of the pool with {@code -Dbenchmark.pool-size}.
+ */
+public class RuntimeStrategyBenchmark {
+
+    private static final Logger log = LoggerFactory.getLogger(RuntimeStrategyBenchmark.class);
+
+    private static final String PROCESS_ID = "signal-process";
+
+    private final int requests = Integer.getInteger("benchmark.requests", 5000);
+
+    private final int poolSize = Integer.getInteger("benchmark.pool-size", 4);
+
+    @Test
+    public void benchmark() {
+        Map<String, Function<RuntimeEnvironment, RuntimeManager>> strategies = new LinkedHashMap<>();
+        strategies.put("SINGLETON", env -> RuntimeManagerFactory.Factory.get().newSingletonRuntimeManager(env, identifier("singleton")));
+        strategies.put("PER_REQUEST", env -> RuntimeManagerFactory.Factory.get().newPerRequestRuntimeManager(env, identifier("per-request")));
+        strategies.put("PER_PROCESS_INSTANCE", env -> RuntimeManagerFactory.Factory.get().newPerProcessInstanceRuntimeManager(env, identifier("per-process-instance")));
+        strategies.put("POOLED", env -> {
+            String identifier = identifier("pooled");
+            PooledSessionRuntimeManager manager = new PooledSessionRuntimeManager(env, new InMemorySessionFactory(env, identifier),
+                    PooledSessionRuntimeManagerTest.taskServiceFactory(), identifier, poolSize, 30000);
+            manager.init();
+            return manager;
+        });
+
+        strategies.forEach((strategy, factory) -> {
+            double starts = throughput(factory, false);
+            double signals = throughput(factory, true);
+            log.info(String.format("%-20s start: %10.1f req/s, start and signal: %10.1f req/s", strategy, starts, signals));
+        });
+    }
+
+    private double throughput(Function<RuntimeEnvironment, RuntimeManager> factory, boolean signal) {
+        RuntimeManager manager = factory.apply(PooledSessionRuntimeManagerTest.environment());
+        try {
+            // warm up
+            run(manager, requests / 10, signal);
+            long start = System.nanoTime();
+            run(manager, requests, signal);
+            return requests / ((System.nanoTime() - start) / 1e9);
+        } finally {
+            manager.close();
+        }
+    }
+
+    private void run(RuntimeManager manager, int count, boolean signal) {
+        for (int i = 0; i < count; i++) {
+            Context<?> context = manager instanceof PerProcessInstanceRuntimeManager ? ProcessInstanceIdContext.get() : EmptyContext.get();
+            RuntimeEngine engine = manager.getRuntimeEngine(context);
+            try {
+                KieSession ksession = engine.getKieSession();
+                long processInstanceId = ksession.startProcess(PROCESS_ID).getId();
+                if (signal) {
+                    ksession.signalEvent("go", null, processInstanceId);
+                }
+            } finally {
+                manager.disposeRuntimeEngine(engine);
+            }
+        }
+    }
+
+    private static String identifier(String strategy) {
+        return strategy + "-" + System.nanoTime();
+    }
+}
@@ -0,0 +1,53 @@
+package com.redhat.cajun.navy.process.signal;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.springframework.test.util.ReflectionTestUtils.setField;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class PendingSignalBufferTest {
+
+    private PendingSignalBuffer buffer;
+
+    @Before
+    public void init() {
+        buffer = new PendingSignalBuffer();
+        setField(buffer, "expiry", 30000L, long.class);
+    }
+
+    @Test
+    public void testTakeParkedSignal() {
+        buffer.park("incident123", "ResponderAvailable", true, "messageId");
+
+        assertThat(buffer.contains("incident123", "ResponderAvailable"), equalTo(true));
+        assertThat(buffer.take("incident123", "MissionStarted"), nullValue());
+        PendingSignalBuffer.PendingSignal pendingSignal = buffer.take("incident123", "ResponderAvailable");
+        assertThat(pendingSignal, notNullValue());
+        assertThat(pendingSignal.getEvent(), equalTo(true));
+        assertThat(buffer.take("incident123", "ResponderAvailable"), nullValue());
+        assertThat(buffer.contains("incident123", "ResponderAvailable"), equalTo(false));
+    }
+
+    @Test
+    public void testSignalsAreTakenInOrder() {
+        buffer.park("incident123", "ResponderAvailable", false, "messageId");
+        buffer.park("incident123", "ResponderAvailable", true, "messageId");
+
+        assertThat(buffer.take("incident123", "ResponderAvailable").getEvent(), equalTo(false));
+        assertThat(buffer.take("incident123", "ResponderAvailable").getEvent(), equalTo(true));
+    }
+
+    @Test
+    public void testExpiredSignalIsDiscarded() {
+        setField(buffer, "expiry", 0L, long.class);
+        buffer.park("incident123", "MissionStarted", null, "messageId");
+
+        assertThat(buffer.take("incident123", "MissionStarted"), nullValue());
+        buffer.expire();
+        assertThat(buffer.contains("incident123", "MissionStarted"), equalTo(false));
+    }
+}
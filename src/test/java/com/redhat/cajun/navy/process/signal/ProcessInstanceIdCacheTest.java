@@ -0,0 +1,63 @@
+package com.redhat.cajun.navy.process.signal;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.mockito.MockitoAnnotations.initMocks;
+import static org.springframework.test.util.ReflectionTestUtils.setField;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.springframework.transaction.PlatformTransactionManager;
+
+public class ProcessInstanceIdCacheTest {
+
+    @Mock
+    private PlatformTransactionManager ptm;
+
+    private ProcessInstanceIdCache cache;
+
+    @Before
+    public void init() {
+        initMocks(this);
+        cache = new ProcessInstanceIdCache();
+        setField(cache, null, ptm, PlatformTransactionManager.class);
+        setField(cache, "size", 2, int.class);
+    }
+
+    @Test
+    public void testGet() {
+        cache.put("incident123", 100L);
+
+        assertThat(cache.get("incident123"), equalTo(100L));
+        assertThat(cache.get("incident456"), nullValue());
+        assertThat(cache.hitCount(), equalTo(1L));
+        assertThat(cache.missCount(), equalTo(1L));
+    }
+
+    @Test
+    public void testEvict() {
+        cache.put("incident123", 100L);
+
+        cache.evict("incident123");
+        cache.evict("incident456");
+
+        assertThat(cache.get("incident123"), nullValue());
+        assertThat(cache.evictionCount(), equalTo(1L));
+    }
+
+    @Test
+    public void testLeastRecentlyUsedEntryIsEvicted() {
+        cache.put("incident123", 100L);
+        cache.put("incident456", 200L);
+        cache.get("incident123");
+
+        cache.put("incident789", 300L);
+
+        assertThat(cache.size(), equalTo(2));
+        assertThat(cache.get("incident456"), nullValue());
+        assertThat(cache.get("incident123"), equalTo(100L));
+        assertThat(cache.evictionCount(), equalTo(1L));
+    }
+}
@@ -0,0 +1,119 @@
+package com.redhat.cajun.navy.process.signal;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.mockito.MockitoAnnotations.initMocks;
+import static org.springframework.test.util.ReflectionTestUtils.setField;
+
+import java.util.Collections;
+
+import com.redhat.cajun.navy.process.message.ProcessedMessageStore;
+import com.redhat.cajun.navy.process.message.listeners.SignalsByCorrelationKeyHelper.ProcessInstanceSignals;
+import org.jbpm.services.api.ProcessService;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.ResultSetExtractor;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionStatus;
+
+public class ProcessSignallerTest {
+
+    @Mock
+    private PlatformTransactionManager ptm;
+
+    @Mock
+    private TransactionStatus transactionStatus;
+
+    @Mock
+    private ProcessService processService;
+
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+
+    @Mock
+    private ProcessedMessageStore processedMessageStore;
+
+    private PendingSignalBuffer pendingSignalBuffer;
+
+    private ProcessSignaller processSignaller;
+
+    @Before
+    public void init() {
+        initMocks(this);
+        pendingSignalBuffer = new PendingSignalBuffer();
+        setField(pendingSignalBuffer, "expiry", 30000L, long.class);
+        processSignaller = new ProcessSignaller();
+        setField(processSignaller, null, ptm, PlatformTransactionManager.class);
+        setField(processSignaller, null, processService, ProcessService.class);
+        WaitingSignalIndex waitingSignalIndex = new WaitingSignalIndex();
+        setField(waitingSignalIndex, null, jdbcTemplate, JdbcTemplate.class);
+        setField(waitingSignalIndex, null, ptm, PlatformTransactionManager.class);
+        ProcessInstanceIdCache processInstanceIdCache = new ProcessInstanceIdCache();
+        setField(processInstanceIdCache, null, ptm, PlatformTransactionManager.class);
+        setField(processInstanceIdCache, "size", 10, int.class);
+        setField(waitingSignalIndex, null, processInstanceIdCache, ProcessInstanceIdCache.class);
+        setField(processSignaller, null, waitingSignalIndex, WaitingSignalIndex.class);
+        setField(processSignaller, null, pendingSignalBuffer, PendingSignalBuffer.class);
+        setField(processSignaller, null, processedMessageStore, ProcessedMessageStore.class);
+        processSignaller.init();
+        when(ptm.getTransaction(any())).thenReturn(transactionStatus);
+    }
+
+    @After
+    public void cleanup() throws InterruptedException {
+        processSignaller.shutdown();
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testSignalWhenWaiting() {
+        when(jdbcTemplate.query(anyString(), any(ResultSetExtractor.class), eq("incident123")))
+                .thenReturn(new ProcessInstanceSignals(100L, Collections.singletonList("ResponderAvailable")));
+
+        processSignaller.signal("incident123", "ResponderAvailable", true, "messageId");
+
+        verify(processService).signalProcessInstance(100L, "ResponderAvailable", true);
+        verify(processedMessageStore).markProcessed("messageId");
+        assertThat(pendingSignalBuffer.contains("incident123", "ResponderAvailable"), equalTo(false));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testSignalIsParkedWhenNotWaiting() {
+        when(jdbcTemplate.query(anyString(), any(ResultSetExtractor.class), eq("incident123")))
+                .thenReturn(new ProcessInstanceSignals(100L, Collections.emptyList()));
+
+        processSignaller.signal("incident123", "ResponderAvailable", true, "messageId");
+
+        verify(processService, never()).signalProcessInstance(any(), any(), any());
+        verify(processedMessageStore, never()).markProcessed(any());
+        assertThat(pendingSignalBuffer.contains("incident123", "ResponderAvailable"), equalTo(true));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testParkedSignalIsDeliveredWhenProcessReachesCatchEvent() {
+        when(jdbcTemplate.query(anyString(), any(ResultSetExtractor.class), eq("incident123")))
+                .thenReturn(new ProcessInstanceSignals(100L, Collections.emptyList()));
+        when(jdbcTemplate.queryForList(anyString(), eq(String.class), eq(100L)))
+                .thenReturn(Collections.emptyList())
+                .thenReturn(Collections.singletonList("ResponderAvailable"));
+
+        processSignaller.signal("incident123", "ResponderAvailable", true, "messageId");
+        processSignaller.deliverPendingAfterCommit("incident123", "ResponderAvailable");
+
+        verify(processService, timeout(5000)).signalProcessInstance(eq(100L), eq("ResponderAvailable"), eq(true));
+        verify(processedMessageStore, timeout(5000)).markProcessed("messageId");
+        assertThat(pendingSignalBuffer.contains("incident123", "ResponderAvailable"), equalTo(false));
+    }
+}
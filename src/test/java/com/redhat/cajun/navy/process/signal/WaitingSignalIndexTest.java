@@ -0,0 +1,124 @@
+package com.redhat.cajun.navy.process.signal;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.mockito.MockitoAnnotations.initMocks;
+import static org.springframework.test.util.ReflectionTestUtils.setField;
+
+import java.sql.ResultSet;
+import java.util.Collections;
+
+import com.redhat.cajun.navy.process.message.listeners.SignalsByCorrelationKeyHelper.ProcessInstanceSignals;
+import org.jbpm.workflow.instance.impl.WorkflowProcessInstanceImpl;
+import org.junit.Before;
+import org.junit.Test;
+import org.kie.api.runtime.process.ProcessInstance;
+import org.mockito.Mock;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.PreparedStatementCreator;
+import org.springframework.jdbc.core.ResultSetExtractor;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionStatus;
+
+public class WaitingSignalIndexTest {
+
+    @Mock
+    private PlatformTransactionManager ptm;
+
+    @Mock
+    private TransactionStatus transactionStatus;
+
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+
+    @Mock
+    private ResultSet resultSet;
+
+    @Mock
+    private WorkflowProcessInstanceImpl processInstance;
+
+    private WaitingSignalIndex waitingSignalIndex;
+
+    @Before
+    public void init() {
+        initMocks(this);
+        waitingSignalIndex = new WaitingSignalIndex();
+        setField(waitingSignalIndex, null, jdbcTemplate, JdbcTemplate.class);
+        setField(waitingSignalIndex, null, ptm, PlatformTransactionManager.class);
+        ProcessInstanceIdCache processInstanceIdCache = new ProcessInstanceIdCache();
+        setField(processInstanceIdCache, null, ptm, PlatformTransactionManager.class);
+        setField(processInstanceIdCache, "size", 10, int.class);
+        setField(waitingSignalIndex, null, processInstanceIdCache, ProcessInstanceIdCache.class);
+        when(ptm.getTransaction(any())).thenReturn(transactionStatus);
+        when(processInstance.getId()).thenReturn(100L);
+        when(processInstance.getCorrelationKey()).thenReturn("incident123");
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testLoadIndex() throws Exception {
+        when(resultSet.getString(1)).thenReturn("incident123");
+        when(resultSet.getLong(2)).thenReturn(100L);
+        when(resultSet.getString(3)).thenReturn("ResponderAvailable");
+        doAnswer(invocation -> {
+            invocation.<RowCallbackHandler>getArgument(1).processRow(resultSet);
+            return null;
+        }).when(jdbcTemplate).query(any(PreparedStatementCreator.class), any(RowCallbackHandler.class));
+
+        waitingSignalIndex.load(correlationKey -> true);
+
+        ProcessInstanceSignals processInstanceSignals = waitingSignalIndex.waitingSignals("incident123", "ResponderAvailable");
+        assertThat(processInstanceSignals.getProcessInstanceId(), equalTo(100L));
+        verify(jdbcTemplate, never()).query(anyString(), any(ResultSetExtractor.class), eq("incident123"));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testWaitingSignalsFallsBackToQueryOnMiss() {
+        when(jdbcTemplate.query(anyString(), any(ResultSetExtractor.class), eq("incident123")))
+                .thenReturn(new ProcessInstanceSignals(100L, Collections.singletonList("ResponderAvailable")));
+        when(jdbcTemplate.queryForList(anyString(), eq(String.class), eq(100L)))
+                .thenReturn(Collections.singletonList("ResponderAvailable"));
+
+        assertThat(waitingSignalIndex.waitingSignals("incident123", "ResponderAvailable").isWaitingFor("ResponderAvailable"), equalTo(true));
+        // the process instance id is cached by the first lookup
+        assertThat(waitingSignalIndex.waitingSignals("incident123", "VictimPickedUp").isWaitingFor("VictimPickedUp"), equalTo(false));
+        verify(jdbcTemplate).query(anyString(), any(ResultSetExtractor.class), eq("incident123"));
+        verify(jdbcTemplate).queryForList(anyString(), eq(String.class), eq(100L));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testTrackProcessInstance() {
+        when(processInstance.getState()).thenReturn(ProcessInstance.STATE_ACTIVE);
+        when(processInstance.getEventTypes()).thenReturn(new String[]{"ResponderAvailable"});
+
+        waitingSignalIndex.track(processInstance);
+
+        ProcessInstanceSignals processInstanceSignals = waitingSignalIndex.waitingSignals("incident123", "ResponderAvailable");
+        assertThat(processInstanceSignals.getProcessInstanceId(), equalTo(100L));
+        verify(jdbcTemplate, never()).query(anyString(), any(ResultSetExtractor.class), eq("incident123"));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testTrackCompletedProcessInstance() {
+        waitingSignalIndex.update("incident123", new ProcessInstanceSignals(100L, Collections.singletonList("ResponderAvailable")));
+        when(processInstance.getState()).thenReturn(ProcessInstance.STATE_COMPLETED);
+        when(processInstance.getEventTypes()).thenReturn(new String[]{"ResponderAvailable"});
+
+        waitingSignalIndex.track(processInstance);
+
+        assertThat(waitingSignalIndex.waitingSignals("incident123", "ResponderAvailable"), nullValue());
+        verify(jdbcTemplate).query(anyString(), any(ResultSetExtractor.class), eq("incident123"));
+    }
+}
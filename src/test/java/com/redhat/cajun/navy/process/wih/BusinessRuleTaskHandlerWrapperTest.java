@@ -0,0 +1,175 @@
+package com.redhat.cajun.navy.process.wih;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.instanceOf;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import com.redhat.cajun.navy.rules.model.Mission;
+import com.redhat.cajun.navy.rules.model.Status;
+
+import org.drools.compiler.kie.builder.impl.InternalKieModule;
+import org.drools.compiler.kie.builder.impl.KieContainerImpl;
+import org.drools.modelcompiler.CanonicalKieModule;
+import org.drools.modelcompiler.ExecutableModelProject;
+import org.jbpm.process.workitem.bpmn2.BusinessRuleTaskHandler;
+import org.junit.Before;
+import org.junit.Test;
+import org.kie.api.KieServices;
+import org.kie.api.builder.KieBuilder;
+import org.kie.api.builder.KieFileSystem;
+import org.kie.api.builder.ReleaseId;
+import org.kie.api.builder.model.KieModuleModel;
+import org.kie.api.builder.model.KieSessionModel;
+import org.kie.api.runtime.KieContainer;
+import org.kie.api.runtime.StatelessKieSession;
+import org.kie.api.runtime.process.WorkItem;
+import org.kie.api.runtime.process.WorkItemManager;
+import org.mockito.ArgumentCaptor;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.test.util.ReflectionTestUtils;
+
+public class BusinessRuleTaskHandlerWrapperTest {
+
+    private static final String GROUP_ID = "com.redhat.cajun.navy";
+
+    private static final String ARTIFACT_ID = "precompiled-rules-test";
+
+    private static final String RULE = "package com.redhat.cajun.navy.rules\n"
+            + "global java.util.List results\n"
+            + "rule \"assign\" when\n"
+            + "  $s : String()\n"
+            + "then\n"
+            + "  results.add($s);\n"
+            + "end\n";
+
+    private BusinessRuleTaskHandlerWrapper wih;
+
+    @Before
+    public void beforeTest() {
+        wih = new BusinessRuleTaskHandlerWrapper();
+        ReflectionTestUtils.setField(wih, "groupId", GROUP_ID);
+        ReflectionTestUtils.setField(wih, "artifactId", ARTIFACT_ID);
+        ReflectionTestUtils.setField(wih, "scannerInterval", "-1");
+        ReflectionTestUtils.setField(wih, "mode", BusinessRuleTaskHandlerWrapper.MODE_PRECOMPILED);
+        ReflectionTestUtils.setField(wih, "execution", BusinessRuleTaskHandlerWrapper.EXECUTION_HANDLER);
+        ReflectionTestUtils.setField(wih, "responderFactBase", new ResponderFactBase());
+    }
+
+    @Test
+    public void testPrecompiledRules() {
+        ReflectionTestUtils.setField(wih, "version", "1.0.0");
+        ReflectionTestUtils.setField(wih, "precompiledLocation", new ByteArrayResource(kjar("1.0.0", true)));
+
+        wih.init();
+
+        KieContainer kieContainer = kieContainer();
+        assertThat(((KieContainerImpl) kieContainer).getKieProject().getKieModuleForKBase(kieContainer.getKieBaseNames().iterator().next()),
+                instanceOf(CanonicalKieModule.class));
+        List<Object> results = new ArrayList<>();
+        StatelessKieSession session = kieContainer.newStatelessKieSession();
+        session.setGlobal("results", results);
+        session.execute("mission");
+        assertThat(results.size(), equalTo(1));
+    }
+
+    @Test
+    public void testPrecompiledRulesWithoutExecutableModel() {
+        ReflectionTestUtils.setField(wih, "version", "1.1.0");
+        ReflectionTestUtils.setField(wih, "precompiledLocation", new ByteArrayResource(kjar("1.1.0", false)));
+
+        wih.init();
+
+        assertThat(kieContainer().getKieBase(), notNullValue());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testPrecompiledRulesWithOtherVersion() {
+        ReflectionTestUtils.setField(wih, "version", "1.2.0");
+        ReflectionTestUtils.setField(wih, "precompiledLocation", new ByteArrayResource(kjar("1.2.1", true)));
+
+        wih.init();
+    }
+
+    @Test
+    public void testPooledExecution() {
+        ReflectionTestUtils.setField(wih, "version", "1.3.0");
+        ReflectionTestUtils.setField(wih, "precompiledLocation", new ByteArrayResource(kjar("1.3.0", true, RuleSessionPoolTest.RULES)));
+        ReflectionTestUtils.setField(wih, "execution", BusinessRuleTaskHandlerWrapper.EXECUTION_POOLED);
+        ReflectionTestUtils.setField(wih, "poolSize", 2);
+        wih.init();
+
+        for (long id = 1; id <= 3; id++) {
+            Map<String, Object> parameters = RuleSessionPoolTest.facts("incident-" + id);
+            parameters.put("KieSessionType", "stateless");
+            WorkItem workItem = mock(WorkItem.class);
+            when(workItem.getId()).thenReturn(id);
+            when(workItem.getParameters()).thenReturn(parameters);
+            when(workItem.getParameter("Incident")).thenReturn(parameters.get("Incident"));
+            WorkItemManager manager = mock(WorkItemManager.class);
+
+            wih.executeWorkItem(workItem, manager);
+
+            ArgumentCaptor<Map<String, Object>> results = ArgumentCaptor.forClass(Map.class);
+            verify(manager).completeWorkItem(eq(id), results.capture());
+            Mission mission = (Mission) results.getValue().get("Mission");
+            assertThat(mission.getIncidentId(), equalTo("incident-" + id));
+            assertThat(mission.getStatus(), equalTo(Status.ASSIGNED));
+            assertThat(results.getValue().containsKey("KieSessionType"), equalTo(false));
+        }
+        wih.close();
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testUnknownExecution() {
+        ReflectionTestUtils.setField(wih, "version", "1.4.0");
+        ReflectionTestUtils.setField(wih, "precompiledLocation", new ByteArrayResource(kjar("1.4.0", true)));
+        ReflectionTestUtils.setField(wih, "execution", "other");
+
+        wih.init();
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testUnknownMode() {
+        ReflectionTestUtils.setField(wih, "mode", "other");
+
+        wih.init();
+    }
+
+    private KieContainer kieContainer() {
+        BusinessRuleTaskHandler handler = (BusinessRuleTaskHandler) ReflectionTestUtils.getField(wih, "businessRuleTaskHandler");
+        return handler.getKieContainer();
+    }
+
+    private static byte[] kjar(String version, boolean executableModel) {
+        return kjar(version, executableModel, RULE);
+    }
+
+    private static byte[] kjar(String version, boolean executableModel, String rules) {
+        KieServices kieServices = KieServices.Factory.get();
+        ReleaseId releaseId = kieServices.newReleaseId(GROUP_ID, ARTIFACT_ID, version);
+        KieModuleModel kieModuleModel = kieServices.newKieModuleModel();
+        kieModuleModel.newKieBaseModel("assignment").setDefault(true)
+                .newKieSessionModel("assignment-session").setType(KieSessionModel.KieSessionType.STATELESS).setDefault(true);
+        KieFileSystem kfs = kieServices.newKieFileSystem().generateAndWritePomXML(releaseId).writeKModuleXML(kieModuleModel.toXML());
+        kfs.write("src/main/resources/com/redhat/cajun/navy/rules/assign.drl", rules);
+        KieBuilder kieBuilder = kieServices.newKieBuilder(kfs);
+        if (executableModel) {
+            kieBuilder.buildAll(ExecutableModelProject.class);
+        } else {
+            kieBuilder.buildAll();
+        }
+        InternalKieModule kieModule = (InternalKieModule) kieBuilder.getKieModule();
+        // built modules are added to the repository: only the one read by the handler is kept
+        kieServices.getRepository().removeKieModule(releaseId);
+        return kieModule.getBytes();
+    }
+}
@@ -61,6 +61,7 @@ public class GetRespondersRestWorkItemHandlerTest {
         ReflectionTestUtils.setField(wih, "responderServiceScheme", "http", null);
         ReflectionTestUtils.setField(wih, "responderServiceUrl", "localhost:" + wireMockRule.port(), null);
         ReflectionTestUtils.setField(wih, "availableRespondersPath", "/responders/available", null);
+        ReflectionTestUtils.setField(wih, "responderFactBase", new ResponderFactBase(), null);
         when(workItem.getId()).thenReturn(1L);
     }
 
@@ -8,6 +8,7 @@ import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyMap;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyZeroInteractions;
 import static org.mockito.Mockito.when;
 import static org.mockito.MockitoAnnotations.initMocks;
 import static org.springframework.test.util.ReflectionTestUtils.setField;
@@ -17,6 +18,8 @@ import java.util.HashMap;
 import java.util.Map;
 
 import com.fasterxml.jackson.annotation.JsonAutoDetect;
+import com.redhat.cajun.navy.process.message.KafkaRecordHeaders;
+import com.redhat.cajun.navy.process.message.MessageOutbox;
 import com.redhat.cajun.navy.process.message.model.CreateMissionCommand;
 import com.redhat.cajun.navy.process.message.model.IncidentAssignmentEvent;
 import com.redhat.cajun.navy.process.message.model.Message;
@@ -28,6 +31,7 @@ import com.redhat.cajun.navy.rules.model.Mission;
 import com.redhat.cajun.navy.rules.model.Status;
 import org.apache.commons.lang3.tuple.ImmutablePair;
 import org.apache.commons.lang3.tuple.Pair;
+import org.apache.kafka.clients.producer.ProducerRecord;
 import org.junit.Before;
 import org.junit.Test;
 import org.kie.api.runtime.process.WorkItem;
@@ -44,6 +48,9 @@ public class KafkaMessageSenderWorkItemHandlerTest {
     @Mock
     private KafkaTemplate<String, Message<?>> kafkaTemplate;
 
+    @Mock
+    private MessageOutbox messageOutbox;
+
     @Mock
     private WorkItem workItem;
 
@@ -51,7 +58,7 @@ public class KafkaMessageSenderWorkItemHandlerTest {
     private WorkItemManager workItemManager;
 
     @Captor
-    private ArgumentCaptor<Message<?>> messageCaptor;
+    private ArgumentCaptor<ProducerRecord<String, Message<?>>> recordCaptor;
 
     private KafkaMessageSenderWorkItemHandler wih;
 
@@ -60,6 +67,8 @@ public class KafkaMessageSenderWorkItemHandlerTest {
         initMocks(this);
         wih = new KafkaMessageSenderWorkItemHandler();
         setField(wih, null, kafkaTemplate, KafkaTemplate.class);
+        setField(wih, null, messageOutbox, MessageOutbox.class);
+        setField(wih, "mode", "direct", String.class);
         setField(wih, "createMissionCommandDestination", "topic-mission-command", String.class);
         setField(wih, "updateResponderCommandDestination", "topic-responder-command", String.class);
         setField(wih, "updateIncidentCommandDestination", "topic-incident-command", String.class);
@@ -76,11 +85,30 @@ public class KafkaMessageSenderWorkItemHandlerTest {
 
         wih.addPayloadBuilder("testPayloadType", "testMessageType", "topic-test", TestMessageEvent::build);
 
-        when(kafkaTemplate.send(any(String.class), any(String.class), any(Message.class))).thenReturn(new SettableListenableFuture<>());
+        when(kafkaTemplate.send(any(ProducerRecord.class))).thenReturn(new SettableListenableFuture<>());
+
+        wih.executeWorkItem(workItem, workItemManager);
+        verify(workItemManager).completeWorkItem(eq(1L), anyMap());
+        verify(kafkaTemplate).send(recordCaptor.capture());
+        assertThat(recordCaptor.getValue().topic(), equalTo("topic-test"));
+        assertThat(recordCaptor.getValue().key(), equalTo("testKey"));
+    }
+
+    @Test
+    public void testExecuteWorkItemInOutboxMode() {
+        setField(wih, "mode", "outbox", String.class);
+        wih.init();
+        Map<String, Object> parameters = new HashMap<>();
+        parameters.put("MessageType", "testPayloadType");
+        when(workItem.getParameters()).thenReturn(parameters);
+        when(workItem.getId()).thenReturn(1L);
+
+        wih.addPayloadBuilder("testPayloadType", "testMessageType", "topic-test", TestMessageEvent::build);
 
         wih.executeWorkItem(workItem, workItemManager);
         verify(workItemManager).completeWorkItem(eq(1L), anyMap());
-        verify(kafkaTemplate).send(eq("topic-test"), eq("testKey"), any(Message.class));
+        verify(messageOutbox).add(eq("topic-test"), eq("testKey"), eq("testKey"), any(Message.class));
+        verifyZeroInteractions(kafkaTemplate);
     }
 
     @Test
@@ -103,13 +131,17 @@ public class KafkaMessageSenderWorkItemHandlerTest {
         when(workItem.getParameters()).thenReturn(parameters);
         when(workItem.getId()).thenReturn(1L);
 
-        when(kafkaTemplate.send(any(String.class), any(String.class), any(Message.class))).thenReturn(new SettableListenableFuture<>());
+        when(kafkaTemplate.send(any(ProducerRecord.class))).thenReturn(new SettableListenableFuture<>());
 
         wih.executeWorkItem(workItem, workItemManager);
         verify(workItemManager).completeWorkItem(eq(1L), anyMap());
-        verify(kafkaTemplate).send(eq("topic-mission-command"), eq("incident123"), messageCaptor.capture());
+        verify(kafkaTemplate).send(recordCaptor.capture());
+        assertThat(recordCaptor.getValue().topic(), equalTo("topic-mission-command"));
+        assertThat(recordCaptor.getValue().key(), equalTo("incident123"));
+        assertThat(KafkaRecordHeaders.value(recordCaptor.getValue().headers(), KafkaRecordHeaders.MESSAGE_TYPE), equalTo("CreateMissionCommand"));
+        assertThat(KafkaRecordHeaders.value(recordCaptor.getValue().headers(), KafkaRecordHeaders.INCIDENT_ID), equalTo("incident123"));
 
-        Message<CreateMissionCommand> message = (Message<CreateMissionCommand>) messageCaptor.getValue();
+        Message<CreateMissionCommand> message = (Message<CreateMissionCommand>) recordCaptor.getValue().value();
         assertThat(message.getMessageType(), equalTo("CreateMissionCommand"));
         assertThat(message.getInvokingService(), equalTo("IncidentProcessService"));
         assertThat(message.getBody(), notNullValue());
@@ -143,13 +175,17 @@ public class KafkaMessageSenderWorkItemHandlerTest {
         when(workItem.getParameters()).thenReturn(parameters);
         when(workItem.getId()).thenReturn(1L);
 
-        when(kafkaTemplate.send(any(String.class), any(String.class), any(Message.class))).thenReturn(new SettableListenableFuture<>());
+        when(kafkaTemplate.send(any(ProducerRecord.class))).thenReturn(new SettableListenableFuture<>());
 
         wih.executeWorkItem(workItem, workItemManager);
         verify(workItemManager).completeWorkItem(eq(1L), anyMap());
-        verify(kafkaTemplate).send(eq("topic-responder-command"), eq("responder123"), messageCaptor.capture());
+        verify(kafkaTemplate).send(recordCaptor.capture());
+        assertThat(recordCaptor.getValue().topic(), equalTo("topic-responder-command"));
+        assertThat(recordCaptor.getValue().key(), equalTo("responder123"));
+        assertThat(KafkaRecordHeaders.value(recordCaptor.getValue().headers(), KafkaRecordHeaders.MESSAGE_TYPE), equalTo("UpdateResponderCommand"));
+        assertThat(KafkaRecordHeaders.value(recordCaptor.getValue().headers(), KafkaRecordHeaders.INCIDENT_ID), equalTo("incident123"));
 
-        Message<UpdateResponderCommand> message = (Message<UpdateResponderCommand>) messageCaptor.getValue();
+        Message<UpdateResponderCommand> message = (Message<UpdateResponderCommand>) recordCaptor.getValue().value();
         assertThat(message.getMessageType(), equalTo("UpdateResponderCommand"));
         assertThat(message.getInvokingService(), equalTo("IncidentProcessService"));
         assertThat(message.getHeaderValue("incidentId"), equalTo("incident123"));
@@ -181,13 +217,15 @@ public class KafkaMessageSenderWorkItemHandlerTest {
         when(workItem.getParameters()).thenReturn(parameters);
         when(workItem.getId()).thenReturn(1L);
 
-        when(kafkaTemplate.send(any(String.class), any(String.class), any(Message.class))).thenReturn(new SettableListenableFuture<>());
+        when(kafkaTemplate.send(any(ProducerRecord.class))).thenReturn(new SettableListenableFuture<>());
 
         wih.executeWorkItem(workItem, workItemManager);
         verify(workItemManager).completeWorkItem(eq(1L), anyMap());
-        verify(kafkaTemplate).send(eq("topic-incident-command"), eq("incident123"), messageCaptor.capture());
+        verify(kafkaTemplate).send(recordCaptor.capture());
+        assertThat(recordCaptor.getValue().topic(), equalTo("topic-incident-command"));
+        assertThat(recordCaptor.getValue().key(), equalTo("incident123"));
 
-        Message<UpdateIncidentCommand> message = (Message<UpdateIncidentCommand>) messageCaptor.getValue();
+        Message<UpdateIncidentCommand> message = (Message<UpdateIncidentCommand>) recordCaptor.getValue().value();
         assertThat(message.getMessageType(), equalTo("UpdateIncidentCommand"));
         assertThat(message.getInvokingService(), equalTo("IncidentProcessService"));
         assertThat(message.getBody(), notNullValue());
@@ -212,13 +250,15 @@ public class KafkaMessageSenderWorkItemHandlerTest {
         when(workItem.getParameters()).thenReturn(parameters);
         when(workItem.getId()).thenReturn(1L);
 
-        when(kafkaTemplate.send(any(String.class), any(String.class), any(Message.class))).thenReturn(new SettableListenableFuture<>());
+        when(kafkaTemplate.send(any(ProducerRecord.class))).thenReturn(new SettableListenableFuture<>());
 
         wih.executeWorkItem(workItem, workItemManager);
         verify(workItemManager).completeWorkItem(eq(1L), anyMap());
-        verify(kafkaTemplate).send(eq("topic-incident-command"), eq("incident123"), messageCaptor.capture());
+        verify(kafkaTemplate).send(recordCaptor.capture());
+        assertThat(recordCaptor.getValue().topic(), equalTo("topic-incident-command"));
+        assertThat(recordCaptor.getValue().key(), equalTo("incident123"));
 
-        Message<UpdateIncidentCommand> message = (Message<UpdateIncidentCommand>) messageCaptor.getValue();
+        Message<UpdateIncidentCommand> message = (Message<UpdateIncidentCommand>) recordCaptor.getValue().value();
         assertThat(message.getMessageType(), equalTo("UpdateIncidentCommand"));
         assertThat(message.getInvokingService(), equalTo("IncidentProcessService"));
         assertThat(message.getBody(), notNullValue());
@@ -243,13 +283,15 @@ public class KafkaMessageSenderWorkItemHandlerTest {
         when(workItem.getParameters()).thenReturn(parameters);
         when(workItem.getId()).thenReturn(1L);
 
-        when(kafkaTemplate.send(any(String.class), any(String.class), any(Message.class))).thenReturn(new SettableListenableFuture<>());
+        when(kafkaTemplate.send(any(ProducerRecord.class))).thenReturn(new SettableListenableFuture<>());
 
         wih.executeWorkItem(workItem, workItemManager);
         verify(workItemManager).completeWorkItem(eq(1L), anyMap());
-        verify(kafkaTemplate).send(eq("topic-incident-command"), eq("incident123"), messageCaptor.capture());
+        verify(kafkaTemplate).send(recordCaptor.capture());
+        assertThat(recordCaptor.getValue().topic(), equalTo("topic-incident-command"));
+        assertThat(recordCaptor.getValue().key(), equalTo("incident123"));
 
-        Message<UpdateIncidentCommand> message = (Message<UpdateIncidentCommand>) messageCaptor.getValue();
+        Message<UpdateIncidentCommand> message = (Message<UpdateIncidentCommand>) recordCaptor.getValue().value();
         assertThat(message.getMessageType(), equalTo("UpdateIncidentCommand"));
         assertThat(message.getInvokingService(), equalTo("IncidentProcessService"));
         assertThat(message.getBody(), notNullValue());
@@ -281,13 +323,15 @@ public class KafkaMessageSenderWorkItemHandlerTest {
         when(workItem.getParameters()).thenReturn(parameters);
         when(workItem.getId()).thenReturn(1L);
 
-        when(kafkaTemplate.send(any(String.class), any(String.class), any(Message.class))).thenReturn(new SettableListenableFuture<>());
+        when(kafkaTemplate.send(any(ProducerRecord.class))).thenReturn(new SettableListenableFuture<>());
 
         wih.executeWorkItem(workItem, workItemManager);
         verify(workItemManager).completeWorkItem(eq(1L), anyMap());
-        verify(kafkaTemplate).send(eq("topic-incident-event"), eq("incident123"), messageCaptor.capture());
+        verify(kafkaTemplate).send(recordCaptor.capture());
+        assertThat(recordCaptor.getValue().topic(), equalTo("topic-incident-event"));
+        assertThat(recordCaptor.getValue().key(), equalTo("incident123"));
 
-        Message<IncidentAssignmentEvent> message = (Message<IncidentAssignmentEvent>) messageCaptor.getValue();
+        Message<IncidentAssignmentEvent> message = (Message<IncidentAssignmentEvent>) recordCaptor.getValue().value();
         assertThat(message.getMessageType(), equalTo("IncidentAssignmentEvent"));
         assertThat(message.getInvokingService(), equalTo("IncidentProcessService"));
         assertThat(message.getBody(), notNullValue());
@@ -317,13 +361,15 @@ public class KafkaMessageSenderWorkItemHandlerTest {
         when(workItem.getParameters()).thenReturn(parameters);
         when(workItem.getId()).thenReturn(1L);
 
-        when(kafkaTemplate.send(any(String.class), any(String.class), any(Message.class))).thenReturn(new SettableListenableFuture<>());
+        when(kafkaTemplate.send(any(ProducerRecord.class))).thenReturn(new SettableListenableFuture<>());
 
         wih.executeWorkItem(workItem, workItemManager);
         verify(workItemManager).completeWorkItem(eq(1L), anyMap());
-        verify(kafkaTemplate).send(eq("topic-incident-event"), eq("incident123"), messageCaptor.capture());
+        verify(kafkaTemplate).send(recordCaptor.capture());
+        assertThat(recordCaptor.getValue().topic(), equalTo("topic-incident-event"));
+        assertThat(recordCaptor.getValue().key(), equalTo("incident123"));
 
-        Message<IncidentAssignmentEvent> message = (Message<IncidentAssignmentEvent>) messageCaptor.getValue();
+        Message<IncidentAssignmentEvent> message = (Message<IncidentAssignmentEvent>) recordCaptor.getValue().value();
         assertThat(message.getMessageType(), equalTo("IncidentAssignmentEvent"));
         assertThat(message.getInvokingService(), equalTo("IncidentProcessService"));
         assertThat(message.getBody(), notNullValue());
@@ -0,0 +1,163 @@
+package com.redhat.cajun.navy.process.wih;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import java.io.File;
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.Map;
+
+import com.redhat.cajun.navy.rules.model.Incident;
+import com.redhat.cajun.navy.rules.model.Mission;
+import com.redhat.cajun.navy.rules.model.Responder;
+import com.redhat.cajun.navy.rules.model.Status;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.kie.api.runtime.KieContainer;
+import org.kie.api.runtime.KieSession;
+import org.springframework.test.util.ReflectionTestUtils;
+
+public class ResponderFactBaseTest {
+
+    private static final String RULES = "package com.redhat.cajun.navy.rules\n"
+            + "import com.redhat.cajun.navy.rules.model.Incident\n"
+            + "import com.redhat.cajun.navy.rules.model.Mission\n"
+            + "import com.redhat.cajun.navy.rules.model.Responder\n"
+            + "import com.redhat.cajun.navy.rules.model.Status\n"
+            + "rule \"assign\" when\n"
+            + "  $incident : Incident()\n"
+            + "  $mission : Mission(incidentId == $incident.id, status == null)\n"
+            + "  $responder : Responder(boatCapacity >= $incident.numPeople)\n"
+            + "then\n"
+            + "  modify($mission) { setResponderId($responder.getId()), setStatus(Status.ASSIGNED) }\n"
+            + "end\n"
+            + "rule \"note\" when\n"
+            + "  Incident($id : id)\n"
+            + "then\n"
+            + "  insert(new String($id));\n"
+            + "end\n";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private KieContainer kieContainer;
+
+    private ResponderFactBase factBase;
+
+    private File snapshot;
+
+    @Before
+    public void init() {
+        kieContainer = RuleSessionPoolTest.kieContainer(RULES);
+        snapshot = new File(folder.getRoot(), "responders.snapshot");
+        factBase = factBase();
+        factBase.start(kieContainer);
+    }
+
+    @After
+    public void close() throws Exception {
+        factBase.shutdown();
+    }
+
+    @Test
+    public void testIncidentIsMatchedAgainstTheResponders() {
+        factBase.reconcile(Arrays.asList(responder("1", 2), responder("2", 6)));
+
+        Mission mission = assign("incident-1", 4);
+
+        assertThat(mission.getStatus(), equalTo(Status.ASSIGNED));
+        assertThat(mission.getResponderId(), equalTo("2"));
+
+        // the facts of the incident are deleted after the evaluation
+        Mission other = assign("incident-2", 10);
+        assertThat(other.getStatus(), nullValue());
+    }
+
+    @Test
+    public void testRespondersAreUpdatedIncrementally() {
+        factBase.reconcile(Arrays.asList(responder("1", 2), responder("2", 6)));
+
+        factBase.update(new com.redhat.cajun.navy.process.message.model.Responder.Builder("2").available(false).build());
+        assertThat(factBase.size(), equalTo(1));
+        assertThat(assign("incident-1", 4).getStatus(), nullValue());
+
+        factBase.update(new com.redhat.cajun.navy.process.message.model.Responder.Builder("1").boatCapacity(8).build());
+        assertThat(factBase.size(), equalTo(1));
+        assertThat(assign("incident-2", 4).getResponderId(), equalTo("1"));
+
+        // the update of a responder which is not known does not carry all its fields
+        factBase.update(new com.redhat.cajun.navy.process.message.model.Responder.Builder("3").boatCapacity(12).available(true).build());
+        assertThat(factBase.size(), equalTo(1));
+        assertThat(assign("incident-3", 10).getStatus(), nullValue());
+    }
+
+    @Test
+    public void testFactsInsertedByTheRulesAreDeleted() {
+        factBase.reconcile(Arrays.asList(responder("1", 2)));
+        KieSession session = (KieSession) ReflectionTestUtils.getField(factBase, "session");
+        long before = session.getFactCount();
+
+        assign("incident-1", 1);
+        assign("incident-2", 1);
+
+        assertThat(session.getFactCount(), equalTo(before));
+    }
+
+    @Test
+    public void testUpdateKeepsTheFieldsWhichAreNotSet() {
+        Responder current = responder("1", 2);
+        current.setFullname("John Doe");
+
+        Responder merged = ResponderFactBase.merge(current,
+                new com.redhat.cajun.navy.process.message.model.Responder.Builder("1").latitude(new BigDecimal("34.1")).build());
+
+        assertThat(merged.getFullname(), equalTo("John Doe"));
+        assertThat(merged.getBoatCapacity(), equalTo(2));
+        assertThat(merged.getLatitude(), equalTo(new BigDecimal("34.1")));
+    }
+
+    @Test
+    public void testRespondersAreRestoredFromTheSnapshot() throws Exception {
+        factBase.reconcile(Arrays.asList(responder("1", 2), responder("2", 6)));
+        factBase.shutdown();
+
+        assertThat(snapshot.exists(), equalTo(true));
+
+        factBase = factBase();
+        factBase.start(kieContainer);
+
+        assertThat(factBase.size(), equalTo(2));
+        assertThat(assign("incident-1", 4).getResponderId(), equalTo("2"));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testEvaluateWhenNotStarted() {
+        new ResponderFactBase().evaluate(RuleSessionPoolTest.facts("incident-1"));
+    }
+
+    private ResponderFactBase factBase() {
+        ResponderFactBase responderFactBase = new ResponderFactBase();
+        ReflectionTestUtils.setField(responderFactBase, "enabled", true);
+        ReflectionTestUtils.setField(responderFactBase, "snapshotFile", snapshot.getAbsolutePath());
+        ReflectionTestUtils.setField(responderFactBase, "snapshotInterval", 0L);
+        return responderFactBase;
+    }
+
+    private Mission assign(String incidentId, int numPeople) {
+        Map<String, Object> facts = RuleSessionPoolTest.facts(incidentId);
+        ((Incident) facts.get("Incident")).setNumPeople(numPeople);
+        return (Mission) factBase.evaluate(facts).get("Mission");
+    }
+
+    private static Responder responder(String id, int boatCapacity) {
+        Responder responder = new Responder();
+        responder.setId(id);
+        responder.setBoatCapacity(boatCapacity);
+        return responder;
+    }
+}
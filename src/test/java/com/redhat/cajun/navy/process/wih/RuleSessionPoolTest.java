@@ -0,0 +1,106 @@
+package com.redhat.cajun.navy.process.wih;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import com.redhat.cajun.navy.rules.model.Incident;
+import com.redhat.cajun.navy.rules.model.Mission;
+import com.redhat.cajun.navy.rules.model.Status;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.kie.api.KieServices;
+import org.kie.api.builder.KieFileSystem;
+import org.kie.api.builder.ReleaseId;
+import org.kie.api.runtime.KieContainer;
+
+public class RuleSessionPoolTest {
+
+    static final String RULES = "package com.redhat.cajun.navy.rules\n"
+            + "import com.redhat.cajun.navy.rules.model.Incident\n"
+            + "import com.redhat.cajun.navy.rules.model.Mission\n"
+            + "import com.redhat.cajun.navy.rules.model.Status\n"
+            + "rule \"assign\" when\n"
+            + "  $incident : Incident()\n"
+            + "  $mission : Mission(incidentId == $incident.id, status == null)\n"
+            + "then\n"
+            + "  modify($mission) { setStatus(Status.ASSIGNED) }\n"
+            + "end\n"
+            + "rule \"fail\" when\n"
+            + "  Incident(id == \"failing\")\n"
+            + "then\n"
+            + "  throw new IllegalStateException(\"failing\");\n"
+            + "end\n";
+
+    private RuleSessionPool sessionPool;
+
+    @Before
+    public void init() {
+        sessionPool = new RuleSessionPool(kieContainer(RULES), 2);
+    }
+
+    @After
+    public void close() {
+        sessionPool.shutdown();
+    }
+
+    @Test
+    public void testStatefulSessionsAreReused() {
+        for (int i = 0; i < 5; i++) {
+            Map<String, Object> result = sessionPool.execute(null, RuleSessionPool.STATEFUL, facts("incident-" + i));
+            Mission mission = (Mission) result.get("Mission");
+            assertThat(mission.getStatus(), equalTo(Status.ASSIGNED));
+            assertThat(((Incident) result.get("Incident")).getId(), equalTo("incident-" + i));
+        }
+    }
+
+    @Test
+    public void testFactsOfAnEvaluationAreNotSeenByTheNext() {
+        Map<String, Object> first = facts("incident-1");
+        first.remove("Mission");
+        sessionPool.execute(null, null, first);
+
+        // a mission of the same incident without its incident is not assigned
+        Map<String, Object> second = facts("incident-1");
+        second.remove("Incident");
+        Map<String, Object> result = sessionPool.execute(null, null, second);
+
+        assertThat(((Mission) result.get("Mission")).getStatus(), equalTo(null));
+    }
+
+    @Test
+    public void testFailingEvaluationDoesNotFailTheNext() {
+        try {
+            sessionPool.execute(null, null, facts("failing"));
+        } catch (RuntimeException e) {
+            // expected
+        }
+
+        Map<String, Object> result = sessionPool.execute(null, null, facts("incident-2"));
+
+        assertThat(((Mission) result.get("Mission")).getStatus(), equalTo(Status.ASSIGNED));
+    }
+
+    static Map<String, Object> facts(String incidentId) {
+        Incident incident = new Incident();
+        incident.setId(incidentId);
+        Mission mission = new Mission();
+        mission.setIncidentId(incidentId);
+        Map<String, Object> facts = new HashMap<>();
+        facts.put("Incident", incident);
+        facts.put("Mission", mission);
+        return facts;
+    }
+
+    static KieContainer kieContainer(String rules) {
+        KieServices kieServices = KieServices.Factory.get();
+        ReleaseId releaseId = kieServices.newReleaseId("com.redhat.cajun.navy", "rule-session-pool-test", "1.0.0");
+        KieFileSystem kfs = kieServices.newKieFileSystem().generateAndWritePomXML(releaseId);
+        kfs.write("src/main/resources/com/redhat/cajun/navy/rules/assign.drl", rules);
+        kieServices.newKieBuilder(kfs).buildAll();
+        return kieServices.newKieContainer(releaseId);
+    }
+}